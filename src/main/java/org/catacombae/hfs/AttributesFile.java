@@ -22,7 +22,6 @@ import java.util.LinkedList;
 import org.catacombae.hfs.io.ForkFilter;
 import org.catacombae.hfs.plus.HFSPlusVolume;
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderNode;
-import org.catacombae.hfs.types.hfscommon.CommonBTIndexRecord;
 import org.catacombae.hfs.types.hfscommon.CommonBTNode;
 import org.catacombae.hfs.types.hfscommon.CommonHFSAttributesIndexNode;
 import org.catacombae.hfs.types.hfscommon.CommonHFSAttributesKey;
@@ -72,14 +71,14 @@ public class AttributesFile extends BTreeFile<CommonHFSAttributesKey, CommonHFSA
                 vol.getCommonHFSCatalogNodeID(ReservedID.ATTRIBUTES_FILE).toLong(),
                 header.getAttributesFile(),
                 vol.extentsOverflowFile,
-                view.createFSStream(),
+                view.createMetadataStream(),
                 0,
                 header.getAllocationBlockSize(),
                 header.getAllocationBlockStart() * view.getPhysicalBlockSize());
     }
 
     @Override
-    BTreeFileSession openSession() {
+    BTreeFileSession createSession() {
         return new Session();
     }
 
@@ -132,15 +131,6 @@ public class AttributesFile extends BTreeFile<CommonHFSAttributesKey, CommonHFSA
     }
 
     public void listAttributeRecords(CommonHFSCatalogNodeID nodeID, LinkedList<CommonHFSAttributesLeafRecord> list) {
-        CommonBTNode<?> rootNode = getRootNode();
-        if (rootNode != null) {
-            listAttributeRecords(rootNode, nodeID, list);
-        }
-    }
-
-    private void listAttributeRecords(CommonBTNode<?> curNode,
-                                      CommonHFSCatalogNodeID nodeID,
-                                      LinkedList<CommonHFSAttributesLeafRecord> list) {
         CommonHFSAttributesKey searchKey = CommonHFSAttributesKey.create(new HFSPlusAttributesKey(
                         ((CommonHFSCatalogNodeID.HFSPlusImplementation) nodeID).
                                 getHFSCatalogNodeID(), 0, new char[0]));
@@ -148,26 +138,8 @@ public class AttributesFile extends BTreeFile<CommonHFSAttributesKey, CommonHFSA
                         ((CommonHFSCatalogNodeID.HFSPlusImplementation)
                                 nodeID.add(1)).getHFSCatalogNodeID(), 0, new char[0]));
 
-        if (curNode instanceof CommonHFSAttributesLeafNode leafNode) {
-
-            int listSizeBefore = list.size();
-            if (!findLEKeys(leafNode, searchKey, endKey, true, list)) {
-                while (list.size() > listSizeBefore) {
-                    list.removeLast();
-                }
-            }
-        } else if (curNode instanceof CommonHFSAttributesIndexNode indexNode) {
-            LinkedList<CommonBTIndexRecord<CommonHFSAttributesKey>> recList = new LinkedList<>();
-
-            // Search for all keys in index node between search key (inclusive)
-            // and end key (exclusive).
-            findLEKeys(indexNode, searchKey, endKey, false, recList);
-
-            for (CommonBTIndexRecord<CommonHFSAttributesKey> rec : recList) {
-                listAttributeRecords(getNode(rec.getIndex()), nodeID, list);
-            }
-        } else {
-            throw new RuntimeException("Unexpected node type: " + curNode.getClass());
-        }
+        // Search for all keys between search key (inclusive) and end key
+        // (exclusive).
+        listRecords(searchKey, endKey, list);
     }
 }
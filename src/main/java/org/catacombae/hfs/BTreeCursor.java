@@ -0,0 +1,260 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import org.catacombae.hfs.types.hfscommon.CommonBTIndexRecord;
+import org.catacombae.hfs.types.hfscommon.CommonBTKey;
+import org.catacombae.hfs.types.hfscommon.CommonBTKeyedNode;
+import org.catacombae.hfs.types.hfscommon.CommonBTLeafRecord;
+import org.catacombae.hfs.types.hfscommon.CommonBTNode;
+import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor.NodeType;
+
+
+/**
+ * A cursor over the leaf records of a B-tree file.
+ * <p>
+ * The cursor is positioned once with {@link #seek(CommonBTKey)} (one descent
+ * from the root), and then moves through the leaf records in key order by
+ * following the forward and backward links of the leaf nodes. This makes a
+ * range scan cost one descent plus the leaf nodes in the range.
+ * <p>
+ * The cursor is positioned between two records, like a
+ * {@link java.util.ListIterator}. It holds a session of its B-tree file and
+ * must be closed after usage. A cursor must not be used by more than one
+ * thread at a time.
+ *
+ * @param <K> the key type of the B-tree file.
+ * @param <L> the leaf record type of the B-tree file.
+ */
+public class BTreeCursor<K extends CommonBTKey<K>, L extends CommonBTLeafRecord<K>> implements AutoCloseable {
+
+    private final BTreeFile<K, L> file;
+    private final BTreeFile<K, L>.BTreeFileSession ses;
+
+    /** The current leaf node, or <code>null</code> if the tree is empty. */
+    private CommonBTKeyedNode<L> leaf = null;
+
+    /** The index in {@link #leaf} of the record returned by {@link #next()}. */
+    private int index = 0;
+
+    /**
+     * Upper bound for the number of links that can be followed after the
+     * cursor is positioned, so that a corrupt volume with a cycle in its leaf
+     * chain can't make the cursor loop forever, even through empty leaves.
+     */
+    private final long maxLinks;
+
+    /** The number of links followed since the cursor was last positioned. */
+    private long linksFollowed = 0;
+
+    BTreeCursor(BTreeFile<K, L> file) {
+        this.file = file;
+        this.ses = file.openSession();
+        this.maxLinks = ses.bthr.getTotalNodes();
+    }
+
+    /**
+     * Positions the cursor before the first record with a key greater than or
+     * equal to <code>searchKey</code>.
+     *
+     * @param searchKey the key to seek to.
+     */
+    public void seek(K searchKey) {
+        long rootNodeNumber = ses.bthr.getRootNodeNumber();
+        if (rootNodeNumber == 0) {
+            leaf = null;
+            index = 0;
+            return;
+        }
+
+        CommonBTNode<?> node = file.getNode(rootNodeNumber, ses);
+        while (node != null && node.getNodeDescriptor().getNodeType() == NodeType.INDEX) {
+            CommonBTKeyedNode<? extends CommonBTIndexRecord<K>> indexNode = file.asIndexNode(node);
+
+            CommonBTIndexRecord<K> matchingRecord = file.findLEKey(indexNode, searchKey);
+            if (matchingRecord == null) {
+                // All keys in the tree are greater than the search key.
+                if (indexNode.getNumberOfRecords() == 0) {
+                    throw new RuntimeException("Empty index node in B-tree.");
+                }
+
+                matchingRecord = indexNode.getBTKeyedRecord(0);
+            }
+
+            node = file.getNode(matchingRecord.getIndex(), ses);
+        }
+
+        leaf = toLeafNode(node);
+        index = BTreeFile.lowerBound(leaf, searchKey);
+        linksFollowed = 0;
+    }
+
+    /**
+     * Positions the cursor before the first record of the B-tree.
+     */
+    public void seekFirst() {
+        seekLeaf(ses.bthr.getFirstLeafNodeNumber(), false);
+    }
+
+    /**
+     * Positions the cursor after the last record of the B-tree.
+     */
+    public void seekLast() {
+        seekLeaf(ses.bthr.getLastLeafNodeNumber(), true);
+    }
+
+    private void seekLeaf(long nodeNumber, boolean end) {
+        linksFollowed = 0;
+        if (nodeNumber == 0) {
+            leaf = null;
+            index = 0;
+        } else {
+            leaf = toLeafNode(file.getNode(nodeNumber, ses));
+            index = end ? leaf.getNumberOfRecords() : 0;
+        }
+    }
+
+    /**
+     * Returns the key of the record that the next call to {@link #next()}
+     * would return, without decoding the record itself or moving the cursor.
+     *
+     * @return the next key, or <code>null</code> if the cursor is at the end
+     * of the B-tree.
+     */
+    public K peekKey() {
+        if (!skipToRecord()) {
+            return null;
+        }
+
+        return getKey(leaf, index);
+    }
+
+    /**
+     * Returns the next record and moves the cursor past it.
+     *
+     * @return the next record, or <code>null</code> if the cursor is at the
+     * end of the B-tree.
+     */
+    public L next() {
+        if (!skipToRecord()) {
+            return null;
+        }
+
+        return leaf.getBTKeyedRecord(index++);
+    }
+
+    /**
+     * Returns the previous record and moves the cursor before it.
+     *
+     * @return the previous record, or <code>null</code> if the cursor is at
+     * the start of the B-tree.
+     */
+    public L prev() {
+        if (leaf == null) {
+            return null;
+        }
+
+        K followingKey = null;
+        while (index == 0) {
+            long backwardLink = leaf.getNodeDescriptor().getBackwardLink();
+            if (backwardLink == 0) {
+                return null;
+            }
+
+            if (leaf.getNumberOfRecords() > 0) {
+                followingKey = getKey(leaf, 0);
+            }
+
+            checkLinkCount();
+            leaf = toLeafNode(file.getNode(backwardLink, ses));
+            index = leaf.getNumberOfRecords();
+        }
+
+        // The keys must keep decreasing, which they don't if the links form
+        // a cycle.
+        if (followingKey != null && getKey(leaf, index - 1).compareTo(followingKey) >= 0) {
+            throw new RuntimeException("B-tree leaf node links are out of order or form a cycle.");
+        }
+
+        return leaf.getBTKeyedRecord(--index);
+    }
+
+    /**
+     * Moves to the next leaf node(s) if the cursor is at the end of the
+     * current one.
+     *
+     * @return <code>true</code> if there is a record after the cursor.
+     */
+    private boolean skipToRecord() {
+        if (leaf == null) {
+            return false;
+        }
+
+        K precedingKey = null;
+        while (index >= leaf.getNumberOfRecords()) {
+            long forwardLink = leaf.getNodeDescriptor().getForwardLink();
+            if (forwardLink == 0) {
+                return false;
+            }
+
+            if (leaf.getNumberOfRecords() > 0) {
+                precedingKey = getKey(leaf, leaf.getNumberOfRecords() - 1);
+            }
+
+            checkLinkCount();
+            leaf = toLeafNode(file.getNode(forwardLink, ses));
+            index = 0;
+        }
+
+        // The keys must keep increasing, which they don't if the links form
+        // a cycle.
+        if (precedingKey != null && getKey(leaf, index).compareTo(precedingKey) <= 0) {
+            throw new RuntimeException("B-tree leaf node links are out of order or form a cycle.");
+        }
+
+        return true;
+    }
+
+    private void checkLinkCount() {
+        if (++linksFollowed > maxLinks) {
+            throw new RuntimeException("Cycle detected in B-tree leaf node links.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K getKey(CommonBTKeyedNode<L> node, int index) {
+        return (K) node.getBTKey(index);
+    }
+
+    private CommonBTKeyedNode<L> toLeafNode(CommonBTNode<?> node) {
+        if (node == null || node.getNodeDescriptor().getNodeType() != NodeType.LEAF) {
+            throw new RuntimeException("Expected leaf node. Found other kind: " +
+                    BTreeFile.getNodeTypeString(node));
+        }
+
+        return file.asLeafNode(node);
+    }
+
+    /**
+     * Releases the session held by this cursor.
+     */
+    @Override
+    public void close() {
+        ses.close();
+    }
+}
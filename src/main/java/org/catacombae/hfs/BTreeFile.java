@@ -19,8 +19,15 @@ package org.catacombae.hfs;
 
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderNode;
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderRecord;
@@ -36,6 +43,8 @@ import org.catacombae.hfs.types.hfscommon.CommonHFSVolumeHeader;
 import org.catacombae.io.Readable;
 import org.catacombae.io.ReadableRandomAccessStream;
 import org.catacombae.io.RuntimeIOException;
+import org.catacombae.storage.io.PositionalReadable;
+import org.catacombae.util.Util;
 
 import static java.lang.System.getLogger;
 
@@ -47,12 +56,34 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
 
     private static final Logger logger = getLogger(BTreeFile.class.getName());
 
+    /** The size of the chunks that {@link #scanAll()} reads (4 MiB). */
+    public static final int SCAN_CHUNK_SIZE = 4 * 1024 * 1024;
+
     final HFSVolume vol;
 
+    /** Guards {@link #currentSession}. */
+    private final Object sessionLock = new Object();
+
+    /**
+     * The session shared by all lookups in this B-tree file, or
+     * <code>null</code> if none has been opened yet (or the last one was
+     * invalidated).
+     */
+    private BTreeFileSession currentSession = null;
+
+    private final AtomicLong sessionRebuildCount = new AtomicLong();
+    private final AtomicLong sessionReuseCount = new AtomicLong();
+
     BTreeFile(HFSVolume vol) {
         this.vol = vol;
     }
 
+    /**
+     * The state needed to read nodes from a B-tree file. Sessions are shared
+     * between threads and reference counted. Every successful call to
+     * {@link #openSession()} must be paired with a call to {@link #close()},
+     * and the underlying stream is closed when the last reference is dropped.
+     */
     abstract class BTreeFileSession {
 
         final CommonHFSVolumeHeader header;
@@ -60,6 +91,18 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
         final CommonBTHeaderRecord bthr;
         final ReadableRandomAccessStream btreeStream;
 
+        /** The volume header stamp at the time this session was created. */
+        private long headerStamp;
+
+        /** Number of references to this session, including the cached one. */
+        private int refCount = 1;
+
+        /**
+         * Cleared when this session is no longer the current one, after which
+         * nodes read through it are no longer added to the node cache.
+         */
+        private volatile boolean current = true;
+
         public BTreeFileSession() {
             this.header = vol.getVolumeHeader();
 //            header.print(System.err, "    ");
@@ -77,14 +120,89 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
 //            this.bthr.print(System.err, "    ");
         }
 
+        /**
+         * Creates a session over <code>btreeStream</code> with a header record
+         * that has already been read, without a volume. Only for tests that
+         * build B-trees in memory, since sessions are otherwise created with
+         * {@link #createSession()}. {@link #header} and {@link #btnd} are
+         * <code>null</code> in such a session.
+         */
+        BTreeFileSession(CommonBTHeaderRecord bthr, ReadableRandomAccessStream btreeStream) {
+            this.header = null;
+            this.btnd = null;
+            this.bthr = bthr;
+            this.btreeStream = btreeStream;
+        }
+
+        /**
+         * Reads the node with number <code>nodeNumber</code> into
+         * <code>nodeData</code>, which must be exactly one node in size.
+         * Safe to call from multiple threads at once.
+         */
+        void readNode(long nodeNumber, byte[] nodeData) {
+            readFullyAt(nodeNumber * nodeData.length, nodeData, 0, nodeData.length);
+        }
+
+        /**
+         * Reads exactly <code>len</code> bytes at <code>pos</code> in the
+         * B-tree file. If the B-tree stream supports positional reads (a
+         * ForkFilter over the volume does), concurrent calls don't
+         * wait for each other, otherwise they take turns seeking and reading.
+         */
+        void readFullyAt(long pos, byte[] data, int off, int len) {
+            if (btreeStream instanceof PositionalReadable p) {
+                p.readFullyAt(pos, data, off, len);
+            } else {
+                synchronized (btreeStream) {
+                    btreeStream.seek(pos);
+                    btreeStream.readFully(data, off, len);
+                }
+            }
+        }
+
+        synchronized BTreeFileSession retain() {
+            ++refCount;
+            return this;
+        }
+
         public final void close() {
-            this.btreeStream.close();
+            boolean lastReference;
+            synchronized (this) {
+                lastReference = --refCount == 0;
+            }
+
+            if (lastReference) {
+                this.btreeStream.close();
+            }
         }
 
         protected abstract ReadableRandomAccessStream getBTreeStream(CommonHFSVolumeHeader header);
     }
 
+    /**
+     * Finds the record with the largest key that is less than or equal to
+     * <code>searchKey</code> in <code>indexNode</code>.<br>
+     * The node is binary searched, and scanned linearly if the search finds
+     * its keys out of order (which may happen with corrupt volumes).
+     *
+     * @return the matching record, or <code>null</code> if all keys in the
+     * node are greater than <code>searchKey</code>.
+     */
     protected <R extends CommonBTKeyedRecord<K>> R findLEKey(CommonBTKeyedNode<R> indexNode, K searchKey) {
+        int index = binarySearch(indexNode, searchKey);
+        if (index == UNORDERED) {
+            return findLEKeyLinear(indexNode, searchKey);
+        }
+
+        if (index < 0) {
+            // Not found. Get the record before the insertion point.
+            index = -(index + 1) - 1;
+        }
+
+        return index >= 0 ? indexNode.getBTKeyedRecord(index) : null;
+    }
+
+    private <R extends CommonBTKeyedRecord<K>> R findLEKeyLinear(CommonBTKeyedNode<R> indexNode, K searchKey) {
         //
         // Algorithm:
         //   input: Key searchKey
@@ -120,6 +238,136 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
         return largestMatchingRecord;
     }
 
+    /**
+     * Finds the record with a key equal to <code>searchKey</code> in
+     * <code>keyedNode</code>. The node is binary searched, and scanned
+     * linearly if the search finds its keys out of order.
+     *
+     * @return the matching record, or <code>null</code> if there is none.
+     */
+    protected <R extends CommonBTKeyedRecord<K>> R findEqualKey(CommonBTKeyedNode<R> keyedNode, K searchKey) {
+        int index = binarySearch(keyedNode, searchKey);
+        if (index != UNORDERED) {
+            return index >= 0 ? keyedNode.getBTKeyedRecord(index) : null;
+        }
+
+        for (R rec : keyedNode.getBTKeyedRecords()) {
+            if (rec.getKey().compareTo(searchKey) == 0) {
+                return rec;
+            }
+        }
+
+        return null;
+    }
+
+    /** Returned by {@link #binarySearch} if the keys of the node are out of order. */
+    private static final int UNORDERED = Integer.MIN_VALUE;
+
+    /**
+     * Binary searches <code>node</code> for <code>searchKey</code>. Only the
+     * keys of the visited records and of the neighbours of the result are
+     * decoded.<br>
+     * The keys are not checked for order beforehand. Instead, each visited
+     * key must lie strictly between the keys that bound the search so far,
+     * and the keys next to the result must be in order. If not, or if a key
+     * can't be decoded, the node is marked as unordered (see
+     * {@link CommonBTKeyedNode#setUnorderedKeys()}) and the caller has to
+     * fall back to a linear scan.
+     *
+     * @return the index of the matching record if found, otherwise
+     * <code>(-(insertion point) - 1)</code> like
+     * {@link java.util.Collections#binarySearch(List, Object)}, or
+     * {@link #UNORDERED} if the keys of the node are out of order.
+     */
+    private static <K extends CommonBTKey<K>> int binarySearch(CommonBTKeyedNode<?> node, K searchKey) {
+        if (node.hasUnorderedKeys()) {
+            return UNORDERED;
+        }
+
+        try {
+            int result = binarySearchChecked(node, searchKey);
+            if (result == UNORDERED) {
+                node.setUnorderedKeys();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            // A record that can't be decoded can't be ordered either.
+            node.setUnorderedKeys();
+            return UNORDERED;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends CommonBTKey<K>> int binarySearchChecked(CommonBTKeyedNode<?> node, K searchKey) {
+        final int count = node.getNumberOfRecords();
+        int low = 0;
+        int high = count - 1;
+        // The keys at low - 1 and high + 1, once they have been visited.
+        K lowKey = null;
+        K highKey = null;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            K key = (K) node.getBTKey(mid);
+            if (key == null || (lowKey != null && key.compareTo(lowKey) <= 0) ||
+                    (highKey != null && key.compareTo(highKey) >= 0)) {
+                return UNORDERED;
+            }
+
+            int cmp = key.compareTo(searchKey);
+            if (cmp < 0) {
+                low = mid + 1;
+                lowKey = key;
+            } else if (cmp > 0) {
+                high = mid - 1;
+                highKey = key;
+            } else {
+                return isOrderedAt(node, mid - 1) && isOrderedAt(node, mid) ? mid : UNORDERED;
+            }
+        }
+
+        // The insertion point is between low - 1 and low, which have been
+        // visited. Check their other neighbours as well.
+        return isOrderedAt(node, low - 2) && isOrderedAt(node, low) ? -(low + 1) : UNORDERED;
+    }
+
+    /**
+     * Returns whether the keys at <code>index</code> and
+     * <code>index + 1</code> are in order, or <code>true</code> if either is
+     * outside of the node.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends CommonBTKey<K>> boolean isOrderedAt(CommonBTKeyedNode<?> node, int index) {
+        if (index < 0 || index + 1 >= node.getNumberOfRecords()) {
+            return true;
+        }
+
+        K key = (K) node.getBTKey(index);
+        K nextKey = (K) node.getBTKey(index + 1);
+        return key != null && nextKey != null && key.compareTo(nextKey) < 0;
+    }
+
+    /**
+     * Returns the index of the first record in <code>node</code> with a key
+     * greater than or equal to <code>searchKey</code>, or the number of
+     * records in the node if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    static <K extends CommonBTKey<K>> int lowerBound(CommonBTKeyedNode<?> node, K searchKey) {
+        int index = binarySearch(node, searchKey);
+        if (index != UNORDERED) {
+            return index >= 0 ? index : -(index + 1);
+        }
+
+        for (int i = 0; i < node.getNumberOfRecords(); ++i) {
+            if (((K) node.getBTKey(i)).compareTo(searchKey) >= 0) {
+                return i;
+            }
+        }
+
+        return node.getNumberOfRecords();
+    }
+
     /**
      * Find records with keys <code>k</code> in the range
      * <code>minKeyInclusive</code> &lt;= <code>k</code> &lt;
@@ -174,12 +422,42 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
     protected <R extends CommonBTKeyedRecord<K>> boolean findLEKeys(
             CommonBTKeyedNode<R> keyedNode, K minKeyInclusive,
             K maxKeyExclusive, boolean strict, LinkedList<R> result) {
+        int first = binarySearch(keyedNode, minKeyInclusive);
+        int end = first != UNORDERED ? binarySearch(keyedNode, maxKeyExclusive) : UNORDERED;
+        if (end == UNORDERED) {
+            return findLEKeysLinear(keyedNode, minKeyInclusive, maxKeyExclusive, strict, result);
+        }
+
+        if (first < 0) {
+            first = -(first + 1);
+        }
+
+        if (end < 0) {
+            end = -(end + 1);
+        }
+
+        boolean found = end > first;
+        if (result != null) {
+            if (first > 0 && (!found || !strict)) {
+                result.addLast(keyedNode.getBTKeyedRecord(first - 1));
+            }
+
+            for (int i = first; i < end; ++i) {
+                result.addLast(keyedNode.getBTKeyedRecord(i));
+            }
+        }
+
+        return found;
+    }
+
+    private <R extends CommonBTKeyedRecord<K>> boolean findLEKeysLinear(
+            CommonBTKeyedNode<R> keyedNode, K minKeyInclusive,
+            K maxKeyExclusive, boolean strict, LinkedList<R> result) {
+        final int resultSizeBefore = result != null ? result.size() : 0;
         boolean found = false;
         K largestLEKey = null;
         R largestLERecord = null;
 
-        // TODO Iteration could be optimized to binary search since keys are
-        //  (supposed to be) ordered.
         for (R record : keyedNode.getBTKeyedRecords()) {
             K key = record.getKey();
 
@@ -200,7 +478,7 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
 
         if (largestLEKey != null && (!found || !strict)) {
             if (result != null) {
-                result.addFirst(largestLERecord);
+                result.add(resultSizeBefore, largestLERecord);
             }
         }
 
@@ -233,7 +511,79 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
         return vol;
     }
 
-    abstract BTreeFileSession openSession();
+    /**
+     * Creates a new session by reading the volume header and the B-tree
+     * header node from disk.
+     */
+    abstract BTreeFileSession createSession();
+
+    /**
+     * Opens a session for reading this B-tree file. The session is reused
+     * between calls for as long as the volume header stamp (see
+     * {@link HFSVolume#getVolumeHeaderStamp()}) stays the same. The volume
+     * reads the stamp from disk at most once per recheck interval, so most
+     * lookups don't read anything from disk to get a session. The returned
+     * session must be closed after usage.
+     */
+    BTreeFileSession openSession() {
+        final long headerStamp = vol.getVolumeHeaderStamp();
+
+        synchronized (sessionLock) {
+            BTreeFileSession ses = currentSession;
+            if (ses != null && ses.headerStamp == headerStamp) {
+                sessionReuseCount.incrementAndGet();
+                return ses.retain();
+            }
+
+            if (ses != null) {
+                // Drop the cached reference. Users of the old session keep it
+                // alive until they close it.
+                currentSession = null;
+                ses.current = false;
+                ses.close();
+            }
+
+            // The volume header has changed, so the cached nodes may be stale.
+            vol.nodeCache.invalidate(this);
+
+            ses = createSession();
+            ses.headerStamp = headerStamp;
+            currentSession = ses.retain();
+            sessionRebuildCount.incrementAndGet();
+
+            return ses;
+        }
+    }
+
+    /**
+     * Drops the cached session so that the next lookup creates a new one. Must
+     * be called when the volume's underlying stream is replaced or closed.
+     */
+    void invalidateSession() {
+        synchronized (sessionLock) {
+            if (currentSession != null) {
+                currentSession.current = false;
+                currentSession.close();
+                currentSession = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of times a session had to be created (from reading
+     * the volume header and the B-tree header node) for this B-tree file.
+     */
+    public long getSessionRebuildCount() {
+        return sessionRebuildCount.get();
+    }
+
+    /**
+     * Returns the number of times a lookup could reuse the existing session,
+     * i.e. the number of session rebuilds that were avoided.
+     */
+    public long getSessionReuseCount() {
+        return sessionReuseCount.get();
+    }
 
     /**
      * Returns the root node of the B-tree file. If it does not exist
@@ -273,15 +623,38 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
         }
     }
 
+    /**
+     * Returns the number of leaf records in the B-tree file, according to its
+     * header record.
+     */
+    public long getLeafRecordCount() {
+        BTreeFileSession ses = openSession();
+
+        try {
+            return ses.bthr.getNumberOfLeafRecords();
+        } finally {
+            ses.close();
+        }
+    }
+
+    /**
+     * Returns the requested node, either from the volume's node cache or by
+     * reading and decoding it through <code>ses</code>. Returns
+     * <code>null</code> for node types other than header, index and leaf.
+     */
     CommonBTNode<?> getNode(long nodeNumber, BTreeFileSession ses) {
         final String METHOD = "getNode";
+
+        CommonBTNode<?> node = vol.nodeCache.get(this, nodeNumber);
+        if (node != null) {
+            return node;
+        }
+
         int nodeSize = ses.bthr.getNodeSize();
 
-        CommonBTNode<?> node;
         byte[] nodeData = new byte[nodeSize];
         try {
-            ses.btreeStream.seek(nodeNumber * nodeSize);
-            ses.btreeStream.readFully(nodeData);
+            ses.readNode(nodeNumber, nodeData);
         } catch (RuntimeException e) {
             logger.log(Level.DEBUG, "RuntimeException in " + METHOD + ". Printing additional information:");
             logger.log(Level.DEBUG, "  nodeNumber=" + nodeNumber);
@@ -299,9 +672,31 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
             default -> null;
         };
 
+        if (node != null && ses.current) {
+            vol.nodeCache.put(this, nodeNumber, node, nodeSize);
+        }
+
         return node;
     }
 
+    /**
+     * Returns the type of <code>node</code>, as returned by
+     * {@link #getNode(long, BTreeFileSession)}, for use in error messages.
+     */
+    static String getNodeTypeString(CommonBTNode<?> node) {
+        return node != null ? node.getNodeDescriptor().getNodeType().toString() : "unsupported node type";
+    }
+
+    @SuppressWarnings("unchecked")
+    CommonBTKeyedNode<? extends CommonBTIndexRecord<K>> asIndexNode(CommonBTNode<?> node) {
+        return (CommonBTKeyedNode<? extends CommonBTIndexRecord<K>>) node;
+    }
+
+    @SuppressWarnings("unchecked")
+    CommonBTKeyedNode<L> asLeafNode(CommonBTNode<?> node) {
+        return (CommonBTKeyedNode<L>) node;
+    }
+
     /**
      * Returns the requested node in the B-tree file. If the requested node is
      * not a header, index or leaf node, <code>null</code> is returned because
@@ -320,6 +715,159 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
         }
     }
 
+    /**
+     * Opens a cursor over the leaf records of this B-tree file. The cursor
+     * must be closed after usage.
+     *
+     * @return a new cursor, positioned at the start of the B-tree.
+     */
+    public BTreeCursor<K, L> openCursor() {
+        BTreeCursor<K, L> cursor = new BTreeCursor<>(this);
+        try {
+            cursor.seekFirst();
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+
+        return cursor;
+    }
+
+    /**
+     * Lists the leaf records with keys <code>k</code> in the range
+     * <code>minKeyInclusive</code> &lt;= <code>k</code> &lt;
+     * <code>maxKeyExclusive</code>, in key order. This costs one descent
+     * through the B-tree plus reading the leaf nodes in the range.
+     *
+     * @param minKeyInclusive the smallest key in the range (inclusive).
+     * @param maxKeyExclusive the largest key in the range (exclusive).
+     * @param result          receives the matching records.
+     */
+    protected void listRecords(K minKeyInclusive, K maxKeyExclusive, List<? super L> result) {
+        BTreeCursor<K, L> cursor = new BTreeCursor<>(this);
+        try {
+            cursor.seek(minKeyInclusive);
+
+            K key;
+            while ((key = cursor.peekKey()) != null && key.compareTo(maxKeyExclusive) < 0) {
+                result.add(cursor.next());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Streams all leaf records of this B-tree file in physical node order.
+     * <p>
+     * Instead of descending through the index nodes, the B-tree file is read
+     * sequentially in large chunks and the allocated leaf nodes are decoded in
+     * the order in which they are stored. This turns a walk over the whole
+     * tree into a single sequential pass. The records are only in key order
+     * within each leaf node.
+     * <p>
+     * The stream holds a session of this B-tree file until it has been
+     * consumed, so it should be closed after usage if it may not be.
+     *
+     * @return a sequential stream of all leaf records.
+     */
+    public Stream<L> scanAll() {
+        BTreeFileSession ses = openSession();
+
+        BTreeLeafSpliterator<K, L> spliterator;
+        try {
+            spliterator = new BTreeLeafSpliterator<>(this, ses, SCAN_CHUNK_SIZE);
+        } catch (RuntimeException e) {
+            ses.close();
+            throw e;
+        }
+
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Scans all leaf records of this B-tree file in parallel on
+     * <code>pool</code>, and aggregates them.
+     * <p>
+     * The leaf node range is divided among the workers of the pool, and each
+     * worker reads its nodes in chunks, decodes them and accumulates the
+     * records into its own result container created by
+     * <code>supplier</code>. The per-worker containers are then merged with
+     * <code>combiner</code>, so the accumulator and combiner don't need to be
+     * thread safe. The records are visited in no particular order.
+     *
+     * @param pool        the pool to run the scan on.
+     * @param supplier    creates a new (empty) result container.
+     * @param accumulator adds a record to a result container.
+     * @param combiner    merges the second result container into the first.
+     * @param <R>         the type of the result container.
+     * @return the merged result.
+     */
+    public <R> R scanAllParallel(ForkJoinPool pool, Supplier<R> supplier,
+                                 BiConsumer<R, ? super L> accumulator, BiConsumer<R, R> combiner) {
+        try (Stream<L> records = scanAll()) {
+            Stream<L> parallelRecords = records.parallel().unordered();
+            return pool.submit(() -> parallelRecords.collect(supplier, accumulator, combiner)).join();
+        }
+    }
+
+    /**
+     * Scans all leaf records of this B-tree file in parallel on the common
+     * fork/join pool, and aggregates them.
+     *
+     * @see #scanAllParallel(ForkJoinPool, Supplier, BiConsumer, BiConsumer)
+     */
+    public <R> R scanAllParallel(Supplier<R> supplier, BiConsumer<R, ? super L> accumulator,
+                                 BiConsumer<R, R> combiner) {
+        return scanAllParallel(ForkJoinPool.commonPool(), supplier, accumulator, combiner);
+    }
+
+    /**
+     * Reads the node map of the B-tree file, i.e. the bitmap of allocated
+     * nodes that is stored in the map record of the header node and in any
+     * following map nodes.
+     */
+    BitSet readNodeMap(BTreeFileSession ses) {
+        final int nodeSize = ses.bthr.getNodeSize();
+        final long totalNodes = ses.bthr.getTotalNodes();
+        if (totalNodes > Integer.MAX_VALUE) {
+            throw new RuntimeException("Too many nodes in B-tree: " + totalNodes);
+        }
+
+        BitSet nodeMap = new BitSet((int) totalNodes);
+        byte[] nodeData = new byte[nodeSize];
+
+        long nodeNumber = 0;
+        // The map record is the third record of the header node, and the only
+        // record of each map node.
+        int recordNumber = 2;
+        long bitNumber = 0;
+        long mapNodeCount = 0;
+        do {
+            ses.readNode(nodeNumber, nodeData);
+
+            int start = Util.readShortBE(nodeData, nodeSize - (recordNumber + 1) * 2) & 0xFFFF;
+            int end = Util.readShortBE(nodeData, nodeSize - (recordNumber + 2) * 2) & 0xFFFF;
+            if (start > end || end > nodeSize) {
+                throw new RuntimeException("Invalid map record in B-tree node " + nodeNumber + ".");
+            }
+
+            for (int i = start; i < end && bitNumber < totalNodes; ++i) {
+                for (int bit = 0; bit < 8 && bitNumber < totalNodes; ++bit, ++bitNumber) {
+                    if ((nodeData[i] & (0x80 >> bit)) != 0) {
+                        nodeMap.set((int) bitNumber);
+                    }
+                }
+            }
+
+            // The forward link is the first field of the node descriptor.
+            nodeNumber = Util.readIntBE(nodeData, 0) & 0xFFFFFFFFL;
+            recordNumber = 0;
+        } while (nodeNumber != 0 && bitNumber < totalNodes && ++mapNodeCount < totalNodes);
+
+        return nodeMap;
+    }
+
     /**
      * Get a record from the B* tree with the specified key.<br>
      * <p>
@@ -335,45 +883,25 @@ public abstract class BTreeFile<K extends CommonBTKey<K>, L extends CommonBTLeaf
         BTreeFileSession ses = openSession();
 
         try {
-            int nodeSize = ses.bthr.getNodeSize();
-
-            long currentNodeOffset = ses.bthr.getRootNodeNumber() * nodeSize;
-
-            byte[] currentNodeData = new byte[nodeSize];
-            ses.btreeStream.seek(currentNodeOffset);
-            ses.btreeStream.readFully(currentNodeData);
-            CommonBTNodeDescriptor nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
+            CommonBTNode<?> currentNode = getNode(ses.bthr.getRootNodeNumber(), ses);
 
             // Search down through the layers of indices (O(log n) steps, where
             // n is the size of the tree)
-            while (nodeDescriptor.getNodeType() == NodeType.INDEX) {
-                CommonBTKeyedNode<? extends CommonBTIndexRecord<K>> currentNode =
-                        createIndexNode(currentNodeData, 0, nodeSize);
-                CommonBTIndexRecord<K> matchingRecord = findLEKey(currentNode, searchKey);
+            while (currentNode != null && currentNode.getNodeDescriptor().getNodeType() == NodeType.INDEX) {
+                CommonBTIndexRecord<K> matchingRecord = findLEKey(asIndexNode(currentNode), searchKey);
 
                 if (matchingRecord == null) {
                     return null;
                 }
 
-                currentNodeOffset = matchingRecord.getIndex() * nodeSize;
-                ses.btreeStream.seek(currentNodeOffset);
-                ses.btreeStream.readFully(currentNodeData);
-                nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
+                currentNode = getNode(matchingRecord.getIndex(), ses);
             }
 
             // Leaf node reached. Find record.
-            if (nodeDescriptor.getNodeType() == NodeType.LEAF) {
-                CommonBTKeyedNode<L> leaf = createLeafNode(currentNodeData, 0, nodeSize);
-
-                for (L rec : leaf.getBTRecords()) {
-                    if (rec.getKey().compareTo(searchKey) == 0) {
-                        return rec;
-                    }
-                }
-
-                return null;
+            if (currentNode != null && currentNode.getNodeDescriptor().getNodeType() == NodeType.LEAF) {
+                return findEqualKey(asLeafNode(currentNode), searchKey);
             } else {
-                throw new RuntimeException("Expected leaf node. Found other kind: " + nodeDescriptor.getNodeType());
+                throw new RuntimeException("Expected leaf node. Found other kind: " + getNodeTypeString(currentNode));
             }
         } finally {
             ses.close();
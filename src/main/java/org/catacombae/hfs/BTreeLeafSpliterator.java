@@ -0,0 +1,221 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.catacombae.hfs.types.hfscommon.CommonBTKey;
+import org.catacombae.hfs.types.hfscommon.CommonBTKeyedNode;
+import org.catacombae.hfs.types.hfscommon.CommonBTLeafRecord;
+import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor.NodeType;
+
+
+/**
+ * Iterates over the leaf records of a B-tree file in physical node order.
+ * <p>
+ * The B-tree file is read sequentially in large chunks, and every node that
+ * is allocated according to the B-tree's node map and is a leaf node is
+ * decoded. Index, header, map and free nodes are skipped. The records come
+ * in physical order, which is only the key order within each node.
+ * <p>
+ * The spliterator splits by node range, so that each part of a parallel
+ * stream reads its own chunks and decodes its own nodes. Reads from the
+ * B-tree file are serialized, but node and record decoding run in parallel.
+ * The session is shared by all parts and closed when all of them are done.
+ */
+class BTreeLeafSpliterator<K extends CommonBTKey<K>, L extends CommonBTLeafRecord<K>> implements Spliterator<L> {
+
+    /** State shared by a spliterator and all the spliterators split from it. */
+    private static class ScanState {
+
+        private final BTreeFile<?, ?>.BTreeFileSession ses;
+        private final BitSet nodeMap;
+
+        /** The number of spliterators that haven't reached their end. */
+        private final AtomicInteger activeCount = new AtomicInteger(1);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        ScanState(BTreeFile<?, ?>.BTreeFileSession ses, BitSet nodeMap) {
+            this.ses = ses;
+            this.nodeMap = nodeMap;
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                ses.close();
+            }
+        }
+    }
+
+    private final BTreeFile<K, L> file;
+    private final BTreeFile<K, L>.BTreeFileSession ses;
+    private final ScanState state;
+    private final int nodeSize;
+    private final int chunkNodes;
+
+    /** The next node to examine. */
+    private long nextNode;
+    /** The node after the last node to examine. */
+    private long endNode;
+
+    private byte[] chunk = null;
+    private long chunkFirstNode = 0;
+    private int chunkNodeCount = 0;
+
+    private CommonBTKeyedNode<L> currentLeaf = null;
+    private int recordIndex = 0;
+
+    private boolean finished = false;
+
+    /**
+     * Creates a spliterator over all nodes of the B-tree file. The spliterator
+     * takes over the reference to <code>ses</code> and closes it when it and
+     * all spliterators split from it have reached their end, or when
+     * {@link #close()} is called.
+     */
+    BTreeLeafSpliterator(BTreeFile<K, L> file, BTreeFile<K, L>.BTreeFileSession ses, int chunkSize) {
+        this(file, ses, new ScanState(ses, file.readNodeMap(ses)), chunkSize, 0,
+                Math.min(ses.bthr.getTotalNodes(), ses.btreeStream.length() / ses.bthr.getNodeSize()));
+    }
+
+    private BTreeLeafSpliterator(BTreeFile<K, L> file, BTreeFile<K, L>.BTreeFileSession ses, ScanState state,
+                                 int chunkSize, long startNode, long endNode) {
+        this.file = file;
+        this.ses = ses;
+        this.state = state;
+        this.nodeSize = ses.bthr.getNodeSize();
+        this.chunkNodes = Math.max(1, chunkSize / nodeSize);
+        this.nextNode = startNode;
+        this.endNode = endNode;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super L> action) {
+        while (currentLeaf == null || recordIndex >= currentLeaf.getNumberOfRecords()) {
+            currentLeaf = nextLeaf();
+            recordIndex = 0;
+
+            if (currentLeaf == null) {
+                finish();
+                return false;
+            }
+        }
+
+        action.accept(currentLeaf.getBTKeyedRecord(recordIndex++));
+        return true;
+    }
+
+    /**
+     * Returns the next allocated leaf node, or <code>null</code> if there are
+     * no more leaf nodes.
+     */
+    private CommonBTKeyedNode<L> nextLeaf() {
+        while (nextNode < endNode) {
+            long nodeNumber = nextNode++;
+            if (!state.nodeMap.get((int) nodeNumber)) {
+                continue;
+            }
+
+            if (nodeNumber >= chunkFirstNode + chunkNodeCount) {
+                readChunk(nodeNumber);
+            }
+
+            int offset = (int) (nodeNumber - chunkFirstNode) * nodeSize;
+            if (file.createCommonBTNodeDescriptor(chunk, offset).getNodeType() == NodeType.LEAF) {
+                // Copy the node so that the decoded records don't keep the
+                // whole chunk alive.
+                byte[] nodeData = Arrays.copyOfRange(chunk, offset, offset + nodeSize);
+                return file.createLeafNode(nodeData, 0, nodeSize);
+            }
+        }
+
+        return null;
+    }
+
+    private void readChunk(long firstNode) {
+        int nodeCount = (int) Math.min(chunkNodes, endNode - firstNode);
+        if (chunk == null || chunk.length < nodeCount * nodeSize) {
+            chunk = new byte[nodeCount * nodeSize];
+        }
+
+        ses.readFullyAt(firstNode * nodeSize, chunk, 0, nodeCount * nodeSize);
+
+        chunkFirstNode = firstNode;
+        chunkNodeCount = nodeCount;
+    }
+
+    /**
+     * Splits off the second half of the remaining node range, if it is at
+     * least one chunk.
+     */
+    @Override
+    public Spliterator<L> trySplit() {
+        long remaining = endNode - nextNode;
+        if (finished || remaining < 2L * chunkNodes) {
+            return null;
+        }
+
+        // Split at a whole number of chunks from the start of the range.
+        long splitNode = nextNode + (remaining / 2 / chunkNodes) * chunkNodes;
+        BTreeLeafSpliterator<K, L> suffix = new BTreeLeafSpliterator<>(file, ses, state,
+                chunkNodes * nodeSize, splitNode, endNode);
+        state.activeCount.incrementAndGet();
+        this.endNode = splitNode;
+
+        return suffix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long totalNodes = ses.bthr.getTotalNodes();
+        if (totalNodes == 0) {
+            return 0;
+        }
+
+        // Assume that the leaf records are evenly spread over the nodes.
+        return (long) (ses.bthr.getNumberOfLeafRecords() * ((double) (endNode - nextNode) / totalNodes));
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            chunk = null;
+            if (state.activeCount.decrementAndGet() == 0) {
+                state.close();
+            }
+        }
+    }
+
+    /**
+     * Releases the session held by this spliterator and all spliterators
+     * split from it. Safe to call more than once.
+     */
+    void close() {
+        state.close();
+    }
+}
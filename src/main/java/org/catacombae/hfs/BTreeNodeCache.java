@@ -0,0 +1,195 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.catacombae.hfs.types.hfscommon.CommonBTNode;
+import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor.NodeType;
+
+
+/**
+ * A per-volume cache of decoded B-tree nodes, keyed by B-tree file and node
+ * number, with a budget in bytes.
+ * <p>
+ * Index nodes and other nodes are kept in two separate LRU lists. When the
+ * budget is exceeded, the least recently used non-index node is evicted first,
+ * and index nodes are only evicted when there are no other nodes left. Since
+ * every lookup descends through the same few index nodes, this keeps the
+ * upper levels of the trees in memory even when a scan touches many leaves.
+ * <p>
+ * The cost of a node is approximated by the node size of its B-tree.
+ */
+public class BTreeNodeCache {
+
+    /** The default budget (8 MiB). */
+    public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+
+    private static final class Key {
+
+        private final BTreeFile<?, ?> file;
+        private final long nodeNumber;
+
+        Key(BTreeFile<?, ?> file, long nodeNumber) {
+            this.file = file;
+            this.nodeNumber = nodeNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key k))
+                return false;
+            return file == k.file && nodeNumber == k.nodeNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(file) * 31 + Long.hashCode(nodeNumber);
+        }
+    }
+
+    private static final class Entry {
+
+        private final CommonBTNode<?> node;
+        private final int cost;
+
+        Entry(CommonBTNode<?> node, int cost) {
+            this.node = node;
+            this.cost = cost;
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> indexNodes = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Entry> otherNodes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long budget;
+    private long usedBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    BTreeNodeCache(long budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * Sets the maximum number of bytes of nodes to keep in the cache. A budget
+     * of 0 disables the cache.
+     *
+     * @param budget the new budget in bytes.
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("'budget' must not be negative");
+
+        this.budget = budget;
+        evict();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    synchronized CommonBTNode<?> get(BTreeFile<?, ?> file, long nodeNumber) {
+        Key key = new Key(file, nodeNumber);
+
+        Entry e = indexNodes.get(key);
+        if (e == null)
+            e = otherNodes.get(key);
+
+        if (e == null) {
+            ++missCount;
+            return null;
+        }
+
+        ++hitCount;
+        return e.node;
+    }
+
+    synchronized void put(BTreeFile<?, ?> file, long nodeNumber, CommonBTNode<?> node, int nodeSize) {
+        if (nodeSize > budget)
+            return;
+
+        Key key = new Key(file, nodeNumber);
+        boolean isIndexNode = node.getNodeDescriptor().getNodeType() == NodeType.INDEX;
+
+        Entry old = (isIndexNode ? indexNodes : otherNodes).put(key, new Entry(node, nodeSize));
+        if (old != null)
+            usedBytes -= old.cost;
+        usedBytes += nodeSize;
+
+        evict();
+    }
+
+    /**
+     * Removes all nodes belonging to <code>file</code> from the cache.
+     */
+    synchronized void invalidate(BTreeFile<?, ?> file) {
+        removeAll(indexNodes, file);
+        removeAll(otherNodes, file);
+    }
+
+    /**
+     * Removes all nodes from the cache.
+     */
+    public synchronized void clear() {
+        indexNodes.clear();
+        otherNodes.clear();
+        usedBytes = 0;
+    }
+
+    private void removeAll(Map<Key, Entry> map, BTreeFile<?, ?> file) {
+        Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().file == file) {
+                usedBytes -= e.getValue().cost;
+                it.remove();
+            }
+        }
+    }
+
+    private void evict() {
+        while (usedBytes > budget) {
+            LinkedHashMap<Key, Entry> victims = otherNodes.isEmpty() ? indexNodes : otherNodes;
+            Iterator<Entry> it = victims.values().iterator();
+            usedBytes -= it.next().cost;
+            it.remove();
+            ++evictionCount;
+        }
+    }
+}
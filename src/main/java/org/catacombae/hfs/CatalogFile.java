@@ -19,17 +19,12 @@ package org.catacombae.hfs;
 
 import java.io.PrintStream;
 import java.util.LinkedList;
-import java.util.List;
 
 import org.catacombae.csjc.PrintableStruct;
 import org.catacombae.hfs.io.ForkFilter;
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderNode;
-import org.catacombae.hfs.types.hfscommon.CommonBTHeaderRecord;
 import org.catacombae.hfs.types.hfscommon.CommonBTIndexRecord;
-import org.catacombae.hfs.types.hfscommon.CommonBTKeyedNode;
 import org.catacombae.hfs.types.hfscommon.CommonBTNode;
-import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor;
-import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor.NodeType;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFileThreadRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolder;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolderRecord;
@@ -46,7 +41,6 @@ import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogThread;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogThreadRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSVolumeHeader;
 import org.catacombae.io.ReadableRandomAccessStream;
-import org.catacombae.io.ReadableRandomAccessSubstream;
 
 
 /**
@@ -55,6 +49,12 @@ import org.catacombae.io.ReadableRandomAccessSubstream;
 public class CatalogFile
         extends BTreeFile<CommonHFSCatalogKey, CommonHFSCatalogLeafRecord> {
 
+    /**
+     * The CNID index, if one has been built with {@link #buildNodeIndex()},
+     * otherwise <code>null</code>.
+     */
+    private volatile CatalogNodeIndex nodeIndex = null;
+
     CatalogFile(HFSVolume vol) {
         super(vol);
     }
@@ -70,7 +70,7 @@ public class CatalogFile
                     vol.getCommonHFSCatalogNodeID(ReservedID.CATALOG_FILE).toLong(),
                     header.getCatalogFile(),
                     vol.extentsOverflowFile,
-                    new ReadableRandomAccessSubstream(vol.hfsFile),
+                    vol.createMetadataStream(),
                     0,
                     header.getAllocationBlockSize(),
                     header.getAllocationBlockStart() * vol.physicalBlockSize);
@@ -82,7 +82,7 @@ public class CatalogFile
      * variables (the "session").
      */
     @Override
-    BTreeFileSession openSession() {
+    BTreeFileSession createSession() {
         return new CatalogFileSession();
     }
 
@@ -121,35 +121,25 @@ public class CatalogFile
     private CommonHFSCatalogFolderRecord doGetRootFolder(BTreeFileSession ses) {
         // Search down through the layers of indices to the record with parentID 1.
         CommonHFSCatalogNodeID parentID = vol.getCommonHFSCatalogNodeID(ReservedID.ROOT_PARENT);
-        int nodeSize = ses.bthr.getNodeSize();
-        long currentNodeOffset = ses.bthr.getRootNodeNumber() * ses.bthr.getNodeSize();
 
 //        logger.log(Level.DEBUG, "Got header record: ");
 //        init.bthr.print(System.err, " ");
 
-        byte[] currentNodeData = new byte[nodeSize];
-        ses.btreeStream.seek(currentNodeOffset);
-        ses.btreeStream.readFully(currentNodeData);
-        CommonBTNodeDescriptor nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
-        while (nodeDescriptor.getNodeType() == NodeType.INDEX) {
-            CommonHFSCatalogIndexNode currentNode = newCatalogIndexNode(currentNodeData, 0, ses.bthr.getNodeSize());
+        CommonBTNode<?> node = getNode(ses.bthr.getRootNodeNumber(), ses);
+        while (node instanceof CommonHFSCatalogIndexNode currentNode) {
 //            logger.log(Level.DEBUG, "currentNode:");
 //            currentNode.print(System.err, "  ");
             CommonBTIndexRecord<CommonHFSCatalogKey> matchingRecord = findKey(currentNode, parentID);
 
 //            currentNodeNumber = matchingRecord.getIndex();
-            currentNodeOffset = matchingRecord.getIndex() * nodeSize;
-            ses.btreeStream.seek(currentNodeOffset);
-            ses.btreeStream.readFully(currentNodeData);
-            nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
+            node = getNode(matchingRecord.getIndex(), ses);
         }
 
         // Leaf node reached. Find record with parent id 1. (or whatever value is in the parentID variable :) )
-        if (nodeDescriptor.getNodeType() == NodeType.LEAF) {
-            CommonHFSCatalogLeafNode leaf = newCatalogLeafNode(currentNodeData, 0, nodeSize);
-            CommonHFSCatalogLeafRecord[] recs = leaf.getLeafRecords();
-            for (CommonHFSCatalogLeafRecord rec : recs) {
-                if (rec != null && rec.getKey().getParentID().toLong() == parentID.toLong()) {
+        if (node instanceof CommonHFSCatalogLeafNode leaf) {
+            for (int i = 0; i < leaf.getNumberOfRecords(); ++i) {
+                if (leaf.getBTKey(i).getParentID().toLong() == parentID.toLong()) {
+                    CommonHFSCatalogLeafRecord rec = leaf.getBTRecord(i);
                     if (rec instanceof CommonHFSCatalogFolderRecord)
                         return (CommonHFSCatalogFolderRecord) rec;
                     else
@@ -159,7 +149,7 @@ public class CatalogFile
             }
             return null;
         } else {
-            throw new RuntimeException("Expected leaf node. Found other kind: " + nodeDescriptor.getNodeType());
+            throw new RuntimeException("Expected leaf node. Found other kind: " + getNodeTypeString(node));
         }
     }
 
@@ -225,6 +215,50 @@ public class CatalogFile
     }
 
 
+    /**
+     * Builds an index from catalog node ID to parent ID and name, from the
+     * thread records of the catalog file, in one parallel scan. Once built,
+     * the index is used by {@link #getPathTo(CommonHFSCatalogNodeID)} and
+     * {@link #getPathTo(CommonHFSCatalogLeafRecord)} instead of looking up
+     * thread records, and it can be used to reconstruct paths without any
+     * disk access. The index is dropped if the volume header stamp changes
+     * (see {@link HFSVolume#invalidateVolumeHeaderStamp()}).
+     *
+     * @return the new index.
+     */
+    public CatalogNodeIndex buildNodeIndex() {
+        long headerStamp = vol.getVolumeHeaderStamp();
+
+        CatalogNodeIndex index = scanAllParallel(CatalogNodeIndex::new, CatalogNodeIndex::add,
+                CatalogNodeIndex::addAll);
+        index.headerStamp = headerStamp;
+
+        nodeIndex = index;
+        return index;
+    }
+
+    /**
+     * Returns the CNID index, or <code>null</code> if none has been built or
+     * if it is out of date, which is checked against the volume header stamp.
+     * The volume reads the stamp from disk at most once per recheck interval.
+     */
+    public CatalogNodeIndex getNodeIndex() {
+        CatalogNodeIndex index = nodeIndex;
+        if (index != null && index.headerStamp != vol.getVolumeHeaderStamp()) {
+            nodeIndex = null;
+            return null;
+        }
+
+        return index;
+    }
+
+    /**
+     * Drops the CNID index, if any, to free its memory.
+     */
+    public void dropNodeIndex() {
+        nodeIndex = null;
+    }
+
     /**
      * Calculates the path in the file system hierarchy to <code>leaf</code>.
      * The path will be returned as a list where the first element is the root
@@ -236,6 +270,18 @@ public class CatalogFile
      * <code>leaf</code> as tail.
      */
     public LinkedList<CommonHFSCatalogLeafRecord> getPathTo(CommonHFSCatalogNodeID leafID) {
+        CatalogNodeIndex index = getNodeIndex();
+        if (index != null && index.contains(leafID.toLong())) {
+            CommonHFSCatalogLeafRecord leaf = getRecord(
+                    vol.createCommonHFSCatalogNodeID((int) index.getParentID(leafID.toLong())),
+                    index.getName(leafID.toLong()));
+            if (leaf == null) {
+                throw new RuntimeException("No record found for leaf id " + leafID.toLong());
+            }
+
+            return getPathTo(leaf, index);
+        }
+
         CommonHFSCatalogLeafRecord leafThreadRec = getRecord(leafID, vol.getEmptyString());
 
         if (leafThreadRec != null) {
@@ -256,7 +302,7 @@ public class CatalogFile
                 throw new RuntimeException("No record found for leaf id " + leafID.toLong());
             }
 
-            return getPathTo(leaf);
+            return getPathTo(leaf, index);
         } else {
             throw new RuntimeException("No thread record found for leaf id " + leafID.toLong() + "!");
         }
@@ -273,6 +319,10 @@ public class CatalogFile
      * <code>leaf</code> as tail.
      */
     public LinkedList<CommonHFSCatalogLeafRecord> getPathTo(CommonHFSCatalogLeafRecord leaf) {
+        return getPathTo(leaf, getNodeIndex());
+    }
+
+    private LinkedList<CommonHFSCatalogLeafRecord> getPathTo(CommonHFSCatalogLeafRecord leaf, CatalogNodeIndex index) {
         if (leaf == null)
             throw new IllegalArgumentException("argument \"leaf\" must not be null!");
 
@@ -280,6 +330,16 @@ public class CatalogFile
         pathList.addLast(leaf);
         CommonHFSCatalogNodeID parentID = leaf.getKey().getParentID();
         while (!parentID.equals(parentID.getReservedID(ReservedID.ROOT_PARENT))) {
+            if (index != null && index.contains(parentID.toLong())) {
+                // The index has the key of the parent's folder record, so we
+                // don't need to look up its thread record.
+                CommonHFSCatalogNodeID grandParentID =
+                        vol.createCommonHFSCatalogNodeID((int) index.getParentID(parentID.toLong()));
+                pathList.addFirst(getRecord(grandParentID, index.getName(parentID.toLong())));
+                parentID = grandParentID;
+                continue;
+            }
+
             CommonHFSCatalogLeafRecord parent = getRecord(parentID, vol.getEmptyString()); // Look for the thread record associated with the parent dir
             if (parent == null)
                 throw new RuntimeException("No folder thread found!");
@@ -335,68 +395,15 @@ public class CatalogFile
      * happen.
      */
     public CommonHFSCatalogLeafRecord[] listRecords(CommonHFSCatalogNodeID folderID) {
-        BTreeFileSession init = openSession();
-        try {
-            return collectFilesInDir(folderID, init.bthr.getRootNodeNumber(), init.header, init.bthr, init.btreeStream);
-        } finally {
-            init.close();
-        }
-    }
-
-    private CommonHFSCatalogLeafRecord[] collectFilesInDir(
-            CommonHFSCatalogNodeID dirID, long currentNodeIndex,
-            CommonHFSVolumeHeader header, CommonBTHeaderRecord bthr,
-            ReadableRandomAccessStream catalogFile) {
-        int nodeSize = bthr.getNodeSize();
-
-        byte[] currentNodeData = new byte[nodeSize];
-        catalogFile.seek(currentNodeIndex * nodeSize);
-        catalogFile.readFully(currentNodeData);
-
-        CommonBTNodeDescriptor nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
-        if (nodeDescriptor.getNodeType() == NodeType.INDEX) {
-            CommonBTKeyedNode<CommonBTIndexRecord<CommonHFSCatalogKey>> currentNode =
-                    newCatalogIndexNode(currentNodeData, 0, nodeSize);
-            List<CommonBTIndexRecord<CommonHFSCatalogKey>> matchingRecords = findLEChildKeys(currentNode, dirID);
-//            System.out.println("Matching records: " + matchingRecords.length);
-
-            LinkedList<CommonHFSCatalogLeafRecord> results = new LinkedList<>();
-
-            for (CommonBTIndexRecord<?> bir : matchingRecords) {
-                CommonHFSCatalogLeafRecord[] partResult =
-                        collectFilesInDir(dirID, bir.getIndex(), header, bthr, catalogFile);
-                for (CommonHFSCatalogLeafRecord curRes : partResult)
-                    results.addLast(curRes);
-            }
-            return results.toArray(CommonHFSCatalogLeafRecord[]::new);
-        } else if (nodeDescriptor.getNodeType() == NodeType.LEAF) {
-            CommonHFSCatalogLeafNode currentNode = newCatalogLeafNode(currentNodeData, 0, nodeSize);
-
-            return getChildrenTo(currentNode, dirID);
-        } else
-            throw new RuntimeException("Illegal type for node! (" + nodeDescriptor.getNodeType() + ")");
-    }
-
-    private List<CommonBTIndexRecord<CommonHFSCatalogKey>> findLEChildKeys(
-            CommonBTKeyedNode<CommonBTIndexRecord<CommonHFSCatalogKey>> indexNode,
-            CommonHFSCatalogNodeID rootFolderID) {
-        CommonHFSCatalogNodeID nextCNID = vol.createCommonHFSCatalogNodeID((int) (rootFolderID.toLong() + 1));
-        CommonHFSCatalogKey minKeyInclusive = vol.createCommonHFSCatalogKey(rootFolderID, vol.getEmptyString());
+        // All records of the folder are adjacent in the leaf chain, so we can
+        // seek to the first one and read the leaf nodes in order from there.
+        CommonHFSCatalogNodeID nextCNID = vol.createCommonHFSCatalogNodeID((int) (folderID.toLong() + 1));
+        CommonHFSCatalogKey minKeyInclusive = vol.createCommonHFSCatalogKey(folderID, vol.getEmptyString());
         CommonHFSCatalogKey maxKeyExclusive = vol.createCommonHFSCatalogKey(nextCNID, vol.getEmptyString());
 
-        return findLEKeys(indexNode, minKeyInclusive, maxKeyExclusive, false);
-    }
-
-    private static CommonHFSCatalogLeafRecord[] getChildrenTo(CommonHFSCatalogLeafNode leafNode,
-                                                              CommonHFSCatalogNodeID nodeID) {
-        LinkedList<CommonHFSCatalogLeafRecord> children = new LinkedList<>();
-        CommonHFSCatalogLeafRecord[] records = leafNode.getLeafRecords();
-        for (CommonHFSCatalogLeafRecord curRec : records) {
-            if (curRec != null && curRec.getKey().getParentID().toLong() == nodeID.toLong()) {
-                children.addLast(curRec);
-            }
-        }
-        return children.toArray(CommonHFSCatalogLeafRecord[]::new);
+        LinkedList<CommonHFSCatalogLeafRecord> results = new LinkedList<>();
+        listRecords(minKeyInclusive, maxKeyExclusive, results);
+        return results.toArray(CommonHFSCatalogLeafRecord[]::new);
     }
 
 //    private static HFSPlusCatalogLeafRecord findRecordID(HFSPlusCatalogLeafNode leafNode, HFSCatalogNodeID nodeID) {
@@ -0,0 +1,242 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import java.util.LinkedList;
+
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolderThreadRecord;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogLeafRecord;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogString;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogThread;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogThreadRecord;
+
+
+/**
+ * An in-memory index from catalog node ID (CNID) to the key of the node's
+ * file or folder record, i.e. its parent ID and name. It holds the same
+ * information as the catalog's thread records and is built from them in one
+ * scan of the catalog file (see {@link CatalogFile#buildNodeIndex()}).
+ * <p>
+ * The index is an open-addressing hash table with linear probing, keyed by
+ * the 32-bit CNID in a plain <code>int</code> array, so it doesn't need an
+ * object per key.
+ * <p>
+ * Instances are not thread safe while they are being built, but can be read
+ * concurrently once built.
+ */
+public class CatalogNodeIndex {
+
+    /** Marks an empty slot. CNID 0 is never used by a catalog node. */
+    private static final int EMPTY = 0;
+
+    /** The root folder's parent ID, which is the top of every path. */
+    private static final int ROOT_PARENT_ID = 1;
+
+    private int[] cnids;
+    private int[] parentIDs;
+    private CommonHFSCatalogString[] names;
+    private boolean[] folders;
+
+    private int size = 0;
+
+    /** The volume header stamp when the index was built. */
+    long headerStamp;
+
+    CatalogNodeIndex() {
+        this(1024);
+    }
+
+    CatalogNodeIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        // Keep the load factor at or below 0.5.
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        cnids = new int[capacity];
+        parentIDs = new int[capacity];
+        names = new CommonHFSCatalogString[capacity];
+        folders = new boolean[capacity];
+    }
+
+    private static int hash(int cnid) {
+        // Fibonacci hashing, since CNIDs are mostly sequential.
+        int h = cnid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot of <code>cnid</code>, or the empty slot where it would
+     * be inserted.
+     */
+    private int slot(int cnid) {
+        int mask = cnids.length - 1;
+        int i = hash(cnid) & mask;
+        while (cnids[i] != EMPTY && cnids[i] != cnid) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void put(int cnid, int parentID, CommonHFSCatalogString name, boolean folder) {
+        if (cnid == EMPTY) {
+            return;
+        }
+
+        if ((size + 1) * 2 > cnids.length) {
+            rehash(cnids.length * 2);
+        }
+
+        int i = slot(cnid);
+        if (cnids[i] == EMPTY) {
+            cnids[i] = cnid;
+            ++size;
+        }
+
+        parentIDs[i] = parentID;
+        names[i] = name;
+        folders[i] = folder;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldCNIDs = cnids;
+        int[] oldParentIDs = parentIDs;
+        CommonHFSCatalogString[] oldNames = names;
+        boolean[] oldFolders = folders;
+
+        allocate(capacity);
+        for (int j = 0; j < oldCNIDs.length; ++j) {
+            if (oldCNIDs[j] != EMPTY) {
+                int i = slot(oldCNIDs[j]);
+                cnids[i] = oldCNIDs[j];
+                parentIDs[i] = oldParentIDs[j];
+                names[i] = oldNames[j];
+                folders[i] = oldFolders[j];
+            }
+        }
+    }
+
+    /**
+     * Adds the node described by <code>rec</code> to the index if it is a
+     * thread record. Other records are ignored.
+     */
+    void add(CommonHFSCatalogLeafRecord rec) {
+        if (rec instanceof CommonHFSCatalogThreadRecord<?> threadRec) {
+            CommonHFSCatalogThread thread = threadRec.getData();
+            // The key of a thread record is the CNID of the node it describes.
+            put((int) rec.getKey().getParentID().toLong(), (int) thread.getParentID().toLong(),
+                    thread.getNodeName(), rec instanceof CommonHFSCatalogFolderThreadRecord);
+        }
+    }
+
+    /**
+     * Adds all entries of <code>other</code> to this index.
+     */
+    void addAll(CatalogNodeIndex other) {
+        for (int j = 0; j < other.cnids.length; ++j) {
+            if (other.cnids[j] != EMPTY) {
+                put(other.cnids[j], other.parentIDs[j], other.names[j], other.folders[j]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int find(long cnid) {
+        if (cnid <= EMPTY || cnid > 0xFFFFFFFFL) {
+            return -1;
+        }
+
+        int i = slot((int) cnid);
+        return cnids[i] != EMPTY ? i : -1;
+    }
+
+    /**
+     * Returns whether <code>cnid</code> is in the index.
+     */
+    public boolean contains(long cnid) {
+        return find(cnid) >= 0;
+    }
+
+    /**
+     * Returns the parent ID of <code>cnid</code>, or -1 if it isn't in the
+     * index.
+     */
+    public long getParentID(long cnid) {
+        int i = find(cnid);
+        return i >= 0 ? parentIDs[i] & 0xFFFFFFFFL : -1;
+    }
+
+    /**
+     * Returns the name of <code>cnid</code>, or <code>null</code> if it isn't
+     * in the index.
+     */
+    public CommonHFSCatalogString getName(long cnid) {
+        int i = find(cnid);
+        return i >= 0 ? names[i] : null;
+    }
+
+    /**
+     * Returns whether <code>cnid</code> is a folder (as opposed to a file).
+     * Returns <code>false</code> if it isn't in the index.
+     */
+    public boolean isFolder(long cnid) {
+        int i = find(cnid);
+        return i >= 0 && folders[i];
+    }
+
+    /**
+     * Returns the names of the nodes on the path from the root folder to
+     * <code>cnid</code>, without touching the disk. The first element is the
+     * name of the root folder (the volume name), and the last element is the
+     * name of <code>cnid</code>.
+     *
+     * @param cnid the catalog node ID to get the path to.
+     * @return the path components, or <code>null</code> if
+     * <code>cnid</code> or any of its ancestors is missing from the index.
+     */
+    public CommonHFSCatalogString[] getPath(long cnid) {
+        LinkedList<CommonHFSCatalogString> path = new LinkedList<>();
+
+        long currentID = cnid;
+        while (currentID != ROOT_PARENT_ID) {
+            int i = find(currentID);
+            if (i < 0 || path.size() > size) {
+                // Missing node, or a loop in a corrupt catalog.
+                return null;
+            }
+
+            path.addFirst(names[i]);
+            currentID = parentIDs[i] & 0xFFFFFFFFL;
+        }
+
+        return path.toArray(CommonHFSCatalogString[]::new);
+    }
+}
@@ -25,10 +25,7 @@ import java.util.LinkedList;
 import org.catacombae.hfs.io.ForkFilter;
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderNode;
 import org.catacombae.hfs.types.hfscommon.CommonBTIndexRecord;
-import org.catacombae.hfs.types.hfscommon.CommonBTKeyedNode;
 import org.catacombae.hfs.types.hfscommon.CommonBTNode;
-import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor;
-import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor.NodeType;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFile;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFileRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogLeafRecord;
@@ -43,7 +40,6 @@ import org.catacombae.hfs.types.hfscommon.CommonHFSForkData;
 import org.catacombae.hfs.types.hfscommon.CommonHFSForkType;
 import org.catacombae.hfs.types.hfscommon.CommonHFSVolumeHeader;
 import org.catacombae.io.ReadableRandomAccessStream;
-import org.catacombae.io.ReadableRandomAccessSubstream;
 
 import static java.lang.System.getLogger;
 
@@ -67,7 +63,7 @@ public class ExtentsOverflowFile extends BTreeFile<CommonHFSExtentKey, CommonHFS
                     vol.getCommonHFSCatalogNodeID(ReservedID.EXTENTS_FILE).toLong(),
                     header.getExtentsOverflowFile(),
                     null,
-                    new ReadableRandomAccessSubstream(vol.hfsFile),
+                    vol.createMetadataStream(),
                     0,
                     header.getAllocationBlockSize(),
                     header.getAllocationBlockStart() * vol.physicalBlockSize);
@@ -75,7 +71,7 @@ public class ExtentsOverflowFile extends BTreeFile<CommonHFSExtentKey, CommonHFS
     }
 
     @Override
-    BTreeFileSession openSession() {
+    BTreeFileSession createSession() {
         return new ExtentsOverflowFileSession();
     }
 
@@ -114,60 +110,26 @@ public class ExtentsOverflowFile extends BTreeFile<CommonHFSExtentKey, CommonHFS
     }
 
     private CommonHFSExtentLeafRecord getOverflowExtent(BTreeFileSession init, CommonHFSExtentKey key) {
-        int nodeSize = init.bthr.getNodeSize();
-
-        long currentNodeOffset = init.bthr.getRootNodeNumber() * nodeSize;
-
         // Search down through the layers of indices (O(log n) steps, where n is the size of the tree)
 
-        byte[] currentNodeData = new byte[nodeSize];
-        init.btreeStream.seek(currentNodeOffset);
-        init.btreeStream.readFully(currentNodeData);
-//        logger.log(Level.DEBUG, "  Calling createCommonBTNodeDescriptor(byte[" + currentNodeData.length + "], 0)...");
-        CommonBTNodeDescriptor nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
+        CommonBTNode<?> node = getNode(init.bthr.getRootNodeNumber(), init);
 
-        while (nodeDescriptor.getNodeType() == NodeType.INDEX) {
+        while (node instanceof CommonHFSExtentIndexNode currentNode) {
 //            logger.log(Level.DEBUG, "getOverflowExtent(): Processing index node...");
-            CommonBTKeyedNode<CommonBTIndexRecord<CommonHFSExtentKey>> currentNode =
-                    createCommonHFSExtentIndexNode(currentNodeData, 0, nodeSize);
-
             CommonBTIndexRecord<CommonHFSExtentKey> matchingRecord = findLEKey(currentNode, key);
 //            logger.log(Level.DEBUG, "getOverflowExtent(): findLEKey found a child node with key: " +
 //                    getDebugString(matchingRecord.getKey()));
 //            matchingRecord.getKey().printFields(System.err, "getOverflowExtent():   ");
 
-            currentNodeOffset = matchingRecord.getIndex() * nodeSize;
-            init.btreeStream.seek(currentNodeOffset);
-            init.btreeStream.readFully(currentNodeData);
-//            logger.log(Level.DEBUG, "  Calling createCommonBTNodeDescriptor(byte[" + currentNodeData.length + "], 0)...");
-            nodeDescriptor = createCommonBTNodeDescriptor(currentNodeData, 0);
+            node = getNode(matchingRecord.getIndex(), init);
         }
 
         // Leaf node reached. Find record.
-        if (nodeDescriptor.getNodeType() == NodeType.LEAF) {
-            CommonHFSExtentLeafNode leaf = createCommonHFSExtentLeafNode(currentNodeData, 0, nodeSize);
+        if (node instanceof CommonHFSExtentLeafNode leaf) {
 //            logger.log(Level.DEBUG, "getOverflowExtent(): Processing leaf node...");
-            CommonHFSExtentLeafRecord[] recs = leaf.getLeafRecords();
-            for (CommonHFSExtentLeafRecord rec : recs) {
-                CommonHFSExtentKey curKey = rec.getKey();
-//                logger.log(Level.DEBUG, "getOverflowExtent(): checking how " + getDebugString(curKey));
-//                logger.log(Level.DEBUG, " compares to " + getDebugString(key));
-//                logger.log(Level.DEBUG, "...");
-                if (curKey.compareTo(key) == 0)
-                    return rec;
-            }
-//            try {
-//                java.io.FileOutputStream dataDump = new java.io.FileOutputStream("node_dump.dmp");
-//                dataDump.write(currentNodeData);
-//                dataDump.close();
-//                logger.log(Level.DEBUG, "A dump of the node has been written to node_dump.dmp");
-//            } catch (Exception e) {
-//                logger.log(Level.ERROR, e.getMessage(), e);
-//            }
-//            logger.log(Level.DEBUG, "Returning from getOverflowExtent(..)");
-            return null;
+            return findEqualKey(leaf, key);
         } else
-            throw new RuntimeException("Expected leaf node. Found other kind: " + nodeDescriptor.getNodeType());
+            throw new RuntimeException("Expected leaf node. Found other kind: " + getNodeTypeString(node));
     }
 
     public CommonHFSExtentLeafRecord getOverflowExtent(boolean isResource, int cnid, long startBlock) {
@@ -200,24 +162,31 @@ public class ExtentsOverflowFile extends BTreeFile<CommonHFSExtentKey, CommonHFS
             LinkedList<CommonHFSExtentDescriptor> resultList = new LinkedList<>(Arrays.asList(forkData.getBasicExtents()));
             long totalBlockCount = basicExtentsBlockCount;
 
-            while (totalBlockCount * allocationBlockSize < forkData.getLogicalSize()) {
-                CommonHFSExtentKey extentKey = createCommonHFSExtentKey(forkType, fileID, (int) totalBlockCount);
+            // The overflow records of the fork are adjacent in the leaf chain,
+            // so seek to the first one and read the following ones in order.
+            BTreeCursor<CommonHFSExtentKey, CommonHFSExtentLeafRecord> cursor = new BTreeCursor<>(this);
+            try {
+                cursor.seek(createCommonHFSExtentKey(forkType, fileID, (int) totalBlockCount));
+
+                while (totalBlockCount * allocationBlockSize < forkData.getLogicalSize()) {
+                    CommonHFSExtentKey extentKey = createCommonHFSExtentKey(forkType, fileID, (int) totalBlockCount);
 
-                CommonHFSExtentLeafRecord currentRecord = getOverflowExtent(extentKey);
-                if (currentRecord == null) {
-                    logger.log(Level.DEBUG, "ERROR: currentRecord == null!!");
-                    logger.log(Level.DEBUG, "       extentKey");
-                    if (extentKey != null) {
-                        logger.log(Level.DEBUG, ":");
+                    CommonHFSExtentLeafRecord currentRecord = cursor.next();
+                    if (currentRecord == null || currentRecord.getKey().compareTo(extentKey) != 0) {
+                        logger.log(Level.DEBUG, "ERROR: no overflow extent record for extentKey:");
                         extentKey.print(System.err, "         ");
-                    } else
-                        logger.log(Level.DEBUG, " == null!!");
-                }
-                CommonHFSExtentDescriptor[] currentRecordData = currentRecord.getRecordData();
-                for (CommonHFSExtentDescriptor cur : currentRecordData) {
-                    resultList.add(cur);
-                    totalBlockCount += cur.getBlockCount();
+                        throw new RuntimeException("No overflow extent record found for file " +
+                                fileID.toLong() + " at block " + totalBlockCount + ".");
+                    }
+
+                    CommonHFSExtentDescriptor[] currentRecordData = currentRecord.getRecordData();
+                    for (CommonHFSExtentDescriptor cur : currentRecordData) {
+                        resultList.add(cur);
+                        totalBlockCount += cur.getBlockCount();
+                    }
                 }
+            } finally {
+                cursor.close();
             }
 //            logger.log(Level.DEBUG, "  Finished reading extents... (currentblock: " + currentBlock + " total: " + forkData.getTotalBlocks() + ")");
 
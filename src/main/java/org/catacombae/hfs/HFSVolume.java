@@ -21,9 +21,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.nio.channels.WritableByteChannel;
 
+import org.catacombae.hfs.io.ConcurrentBlockCache;
+import org.catacombae.hfs.io.ForkExtentCache;
 import org.catacombae.hfs.io.ForkFilter;
-import org.catacombae.hfs.io.ReadableBlockCachingStream;
+import org.catacombae.hfs.io.ReadAheadStream;
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderNode;
 import org.catacombae.hfs.types.hfscommon.CommonBTHeaderRecord;
 import org.catacombae.hfs.types.hfscommon.CommonBTNodeDescriptor;
@@ -37,6 +40,7 @@ import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogLeafRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogNodeID;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogNodeID.ReservedID;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogString;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentDescriptor;
 import org.catacombae.hfs.types.hfscommon.CommonHFSExtentIndexNode;
 import org.catacombae.hfs.types.hfscommon.CommonHFSExtentKey;
 import org.catacombae.hfs.types.hfscommon.CommonHFSExtentLeafNode;
@@ -48,6 +52,10 @@ import org.catacombae.io.ReadableRandomAccessStream;
 import org.catacombae.io.ReadableRandomAccessSubstream;
 import org.catacombae.io.SynchronizedReadableRandomAccess;
 import org.catacombae.io.SynchronizedReadableRandomAccessStream;
+import org.catacombae.storage.io.ChannelTransferable;
+import org.catacombae.storage.io.PositionalReadable;
+import org.catacombae.storage.io.ReadablePositionalStream;
+import org.catacombae.util.Util;
 
 import static java.lang.System.getLogger;
 
@@ -87,6 +95,32 @@ public abstract class HFSVolume {
     private volatile SynchronizedReadableRandomAccessStream hfsStream;
 //    private final SynchronizedReadableRandomAccessStream backingFile;
     private final SynchronizedReadableRandomAccessStream sourceStream;
+    /**
+     * Positional reads of {@link #sourceStream}. If the stream we were
+     * created with can't read at a position by itself, this falls back to the
+     * stream's lock.
+     */
+    private final PositionalReadable sourceReader;
+    /**
+     * The stream we were created with, if it may be stored as-is in a file
+     * that fork data can be transferred from.
+     */
+    private final ChannelTransferable sourceTransfer;
+    /**
+     * Positional reads of the file system data, either {@link #sourceReader}
+     * or the block cache in front of it. Fork and B-tree streams read through
+     * this, and so don't wait for the lock of {@link #hfsStream}.
+     */
+    private volatile PositionalReadable fsReader;
+    /**
+     * Like {@link #fsReader}, but for file system metadata, which is cached
+     * in a tier of its own.
+     */
+    private volatile PositionalReadable metadataReader;
+    /** The block cache for file data, if file system caching is enabled. */
+    private volatile ConcurrentBlockCache blockCache;
+    /** The block cache for metadata, if file system caching is enabled. */
+    private volatile ConcurrentBlockCache metadataCache;
     protected final int physicalBlockSize;
 
     // Variables for reading cached files.
@@ -95,6 +129,33 @@ public abstract class HFSVolume {
     protected final CatalogFile catalogFile;
     protected final ExtentsOverflowFile extentsOverflowFile;
 
+    /** Decoded B-tree nodes of all the B-tree files of this volume. */
+    final BTreeNodeCache nodeCache = new BTreeNodeCache(BTreeNodeCache.DEFAULT_BUDGET);
+
+    /** Overflow extents of the forks of this volume that have been read. */
+    private final ForkExtentCache forkExtentCache = new ForkExtentCache(ForkExtentCache.DEFAULT_BUDGET);
+
+    /** Read-ahead settings for fork streams. A maximum in flight of 0 disables read-ahead. */
+    private volatile int readAheadInitialWindow = ReadAheadStream.DEFAULT_INITIAL_WINDOW;
+    private volatile int readAheadMaxWindow = ReadAheadStream.DEFAULT_MAX_WINDOW;
+    private volatile long readAheadMaxInFlight = ReadAheadStream.DEFAULT_MAX_IN_FLIGHT;
+    private final ReadAheadStream.Statistics readAheadStatistics = new ReadAheadStream.Statistics();
+
+    /** The volume header stamp last read from disk. */
+    private final VolumeHeaderStamp headerStamp = new VolumeHeaderStamp(this::readVolumeHeaderStamp,
+            System::nanoTime, this::clearBlockCaches);
+    /** Reused for reading the volume header stamp, which happens on one thread at a time. */
+    private final byte[] headerStampBuffer = new byte[4];
+
+    /**
+     * The allocation block size and the byte offset of the first allocation
+     * block, read from the volume header on first use. They never change for
+     * a volume, so they are kept for as long as it is open. 0 means not read
+     * yet, since no volume has an allocation block size of 0.
+     */
+    private volatile long allocationBlockSize = 0;
+    private volatile long allocationBlockStartOffset;
+
     private boolean closed = false;
 
     protected HFSVolume(ReadableRandomAccessStream hfsFile, boolean cachingEnabled) {
@@ -102,8 +163,12 @@ public abstract class HFSVolume {
 //                cachingEnabled + ", " + btreeOperations + ", " +
 //                catalogOperations + ", " + extentsOverflowOperations + ");");
         this.sourceStream = new SynchronizedReadableRandomAccessStream(hfsFile);
+        this.sourceReader = hfsFile instanceof PositionalReadable p ? p : sourceStream::readFrom;
+        this.sourceTransfer = hfsFile instanceof ChannelTransferable t ? t : null;
         this.hfsStream = new SynchronizedReadableRandomAccessStream(new ReadableRandomAccessSubstream(sourceStream));
         this.hfsFile = hfsStream;
+        this.fsReader = sourceReader;
+        this.metadataReader = sourceReader;
 
         // This seems to be a built in assumption of HFSish file systems, even
         // when using media with other physical block sizes (for instance CDs,
@@ -205,22 +270,99 @@ public abstract class HFSVolume {
 
     /**
      * Returns a stream covering the entire file system, from start to end.
-     * This means creating a substream of hfsStream starting at
-     * <code>fsOffset</code> and ending at the end of the file system.
+     * The stream has its own file pointer and reads at explicit positions
+     * (see {@link PositionalReadable}), so streams created by this method can
+     * be read from concurrently.
      * This stream must be closed after usage.
      *
      * @return a stream covering the entire file system, from start to end.
      */
     public ReadableRandomAccessStream createFSStream() {
-        ReadableRandomAccessSubstream subs = new ReadableRandomAccessSubstream(hfsFile);
+        ReadablePositionalStream subs = new ReadablePositionalStream(fsReader, 0, sourceStream.length(), null);
 
         return subs;
 //        long fsLength = getVolumeHeader().getFileSystemEnd();
 //        return new ReadableConcatenatedStream(subs, fsOffset, fsLength);
     }
 
+    /**
+     * Returns a stream covering the entire file system like
+     * {@link #createFSStream()}, for reading the B-tree files and the
+     * allocation file. When file system caching is enabled, data read through
+     * this stream is cached in a tier of its own, so that reading file data
+     * can't evict it.
+     * This stream must be closed after usage.
+     *
+     * @return a stream covering the entire file system, from start to end.
+     */
+    protected ReadableRandomAccessStream createMetadataStream() {
+        return new ReadablePositionalStream(metadataReader, 0, sourceStream.length(), null);
+    }
+
     public abstract CommonHFSVolumeHeader getVolumeHeader();
 
+    /**
+     * Returns a value that changes whenever the modify date or the write count
+     * of the volume header changes, for checking whether state derived from
+     * the volume header (like B-tree sessions) is still valid. The two
+     * fields are read from disk again at most once per recheck interval (see
+     * {@link #setVolumeHeaderRecheckInterval(long)}), so changes made to the
+     * volume while it is open are noticed, while checking the stamp on every
+     * lookup stays cheap.
+     *
+     * @return the modify date and write count of the volume header, packed
+     * into a <code>long</code>.
+     */
+    public long getVolumeHeaderStamp() {
+        return headerStamp.get();
+    }
+
+    /**
+     * Makes the next call to {@link #getVolumeHeaderStamp()} read the volume
+     * header stamp from disk, even if the recheck interval hasn't passed.
+     * Caches that are checked against the stamp are dropped if it has
+     * changed.
+     */
+    public void invalidateVolumeHeaderStamp() {
+        headerStamp.invalidate();
+    }
+
+    /**
+     * Sets how often, at most, the volume header stamp is read from disk to
+     * find out whether the volume has changed. 0 reads it on every check.
+     *
+     * @param millis the recheck interval in milliseconds.
+     */
+    public void setVolumeHeaderRecheckInterval(long millis) {
+        headerStamp.setRecheckInterval(millis);
+    }
+
+    public long getVolumeHeaderRecheckInterval() {
+        return headerStamp.getRecheckInterval();
+    }
+
+    /**
+     * Reads the volume header stamp (see {@link #getVolumeHeaderStamp()})
+     * from disk. Only called by one thread at a time.
+     */
+    protected abstract long readVolumeHeaderStamp();
+
+    /**
+     * Reads the 32-bit fields at <code>modifyDateOffset</code> and
+     * <code>writeCountOffset</code> of the volume header, and packs them into
+     * a volume header stamp. Only those 8 bytes are read, straight from the
+     * underlying stream at an explicit position, so this neither waits for
+     * the lock of the volume stream nor gets the header from the block cache.
+     * Only called by one thread at a time.
+     */
+    protected final long readVolumeHeaderStamp(int modifyDateOffset, int writeCountOffset) {
+        sourceReader.readFullyAt(1024 + modifyDateOffset, headerStampBuffer, 0, 4);
+        long modifyDate = Util.unsign(Util.readIntBE(headerStampBuffer, 0));
+        sourceReader.readFullyAt(1024 + writeCountOffset, headerStampBuffer, 0, 4);
+        long writeCount = Util.unsign(Util.readIntBE(headerStampBuffer, 0));
+        return (modifyDate << 32) | writeCount;
+    }
+
 //    public abstract VolumeHeader getVolumeHeader();
 
     public CatalogFile getCatalogFile() {
@@ -231,6 +373,63 @@ public abstract class HFSVolume {
         return extentsOverflowFile;
     }
 
+    /**
+     * Returns the cache of decoded B-tree nodes shared by the B-tree files of
+     * this volume. The budget of the cache can be adjusted, or set to 0 to
+     * disable it.
+     */
+    public BTreeNodeCache getNodeCache() {
+        return nodeCache;
+    }
+
+    /**
+     * Returns the cache of overflow extents consulted by the fork streams of
+     * this volume. The budget of the cache can be adjusted, or set to 0 to
+     * disable it.
+     */
+    public ForkExtentCache getForkExtentCache() {
+        return forkExtentCache;
+    }
+
+    /**
+     * Sets how fork streams opened after this call read ahead when they are
+     * read sequentially (see {@link ReadAheadStream}).
+     *
+     * @param initialWindow the size of the first window read ahead.
+     * @param maxWindow     the maximum window size.
+     * @param maxInFlight   the maximum number of bytes read ahead per stream,
+     *                      or 0 to disable read-ahead.
+     */
+    public void setReadAhead(int initialWindow, int maxWindow, long maxInFlight) {
+        if (initialWindow <= 0 || maxWindow < initialWindow || maxInFlight < 0)
+            throw new IllegalArgumentException("Invalid read-ahead settings: " + initialWindow + ", " +
+                    maxWindow + ", " + maxInFlight);
+
+        this.readAheadInitialWindow = initialWindow;
+        this.readAheadMaxWindow = maxWindow;
+        this.readAheadMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Returns the read-ahead counters of all fork streams of this volume.
+     */
+    public ReadAheadStream.Statistics getReadAheadStatistics() {
+        return readAheadStatistics;
+    }
+
+    /**
+     * Wraps <code>forkStream</code> in a stream that reads ahead, unless
+     * read-ahead is disabled.
+     */
+    private ReadableRandomAccessStream withReadAhead(ReadableRandomAccessStream forkStream) {
+        long maxInFlight = readAheadMaxInFlight;
+        if (maxInFlight == 0)
+            return forkStream;
+
+        return new ReadAheadStream(forkStream, readAheadInitialWindow, readAheadMaxWindow, maxInFlight, null,
+                readAheadStatistics);
+    }
+
     public abstract AllocationFile getAllocationFile();
 
     public abstract boolean hasAttributesFile();
@@ -302,6 +501,9 @@ public abstract class HFSVolume {
             throw new RuntimeException("Already closed.");
         }
 
+        invalidateBTreeSessions();
+        nodeCache.clear();
+        forkExtentCache.clear();
         hfsStream.close();
         sourceStream.close();
         closed = true;
@@ -318,16 +520,97 @@ public abstract class HFSVolume {
     }
 
     public void enableFileSystemCaching(int blockSize, int blocksInCache) {
+        // 256 pages of 32 KiB each for metadata, which is read in nodes of a
+        // few KiB scattered over the volume.
+        enableFileSystemCaching(blockSize, blocksInCache, 32 * 1024, 256);
+    }
+
+    /**
+     * Enables caching of file system data, with separate budgets for file
+     * data and for metadata (the B-tree files and the allocation file).
+     *
+     * @param blockSize             the block size of the file data tier.
+     * @param blocksInCache         the number of blocks in the file data tier.
+     * @param metadataBlockSize     the block size of the metadata tier.
+     * @param metadataBlocksInCache the number of blocks in the metadata tier.
+     */
+    public void enableFileSystemCaching(int blockSize, int blocksInCache,
+                                        int metadataBlockSize, int metadataBlocksInCache) {
+        invalidateBTreeSessions();
         hfsStream.close();
-        hfsStream = new SynchronizedReadableRandomAccessStream(new ReadableBlockCachingStream(
-                new ReadableRandomAccessSubstream(sourceStream), blockSize, blocksInCache));
+        ConcurrentBlockCache dataTier = new ConcurrentBlockCache(sourceReader, sourceStream.length(),
+                blockSize, blocksInCache);
+        ConcurrentBlockCache metadataTier = new ConcurrentBlockCache(sourceReader, sourceStream.length(),
+                metadataBlockSize, metadataBlocksInCache);
+        // The volume header is metadata too.
+        hfsStream = new SynchronizedReadableRandomAccessStream(
+                new ReadablePositionalStream(metadataTier, 0, metadataTier.length(), () -> {
+                    dataTier.close();
+                    metadataTier.close();
+                }));
         hfsFile = hfsStream;
+        fsReader = dataTier;
+        metadataReader = metadataTier;
+        blockCache = dataTier;
+        metadataCache = metadataTier;
     }
 
     public void disableFileSystemCaching() {
+        invalidateBTreeSessions();
         hfsStream.close();
         hfsStream = new SynchronizedReadableRandomAccessStream(new ReadableRandomAccessSubstream(sourceStream));
         hfsFile = hfsStream;
+        fsReader = sourceReader;
+        metadataReader = sourceReader;
+        blockCache = null;
+        metadataCache = null;
+    }
+
+    /**
+     * Drops everything in the block cache, if file system caching is enabled.
+     * Called when the volume header stamp changes, since the cached blocks may
+     * then be out of date. The B-tree files compare the stamp themselves and
+     * drop their sessions and nodes.
+     */
+    private void clearBlockCaches() {
+        ConcurrentBlockCache cache = blockCache;
+        if (cache != null)
+            cache.clear();
+        cache = metadataCache;
+        if (cache != null)
+            cache.clear();
+    }
+
+    /**
+     * Returns the file data tier of the block cache, for its statistics, or
+     * <code>null</code> if file system caching is disabled.
+     */
+    public ConcurrentBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Returns the metadata tier of the block cache, for its statistics, or
+     * <code>null</code> if file system caching is disabled.
+     */
+    public ConcurrentBlockCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Drops the cached sessions of all B-tree files, since they read from
+     * {@link #hfsFile} which is about to be replaced or closed.
+     */
+    private void invalidateBTreeSessions() {
+        invalidateVolumeHeaderStamp();
+
+        // May be called from the constructor before the B-tree files exist.
+        if (catalogFile != null)
+            catalogFile.invalidateSession();
+        if (extentsOverflowFile != null)
+            extentsOverflowFile.invalidateSession();
+        if (hasAttributesFile())
+            getAttributesFile().invalidateSession();
     }
 
 //    /**
@@ -365,34 +648,82 @@ public abstract class HFSVolume {
     private long extractForkToStream(ForkFilter.ForkType forkType,
                                      long cnid, CommonHFSForkData forkData, OutputStream os,
                                      ProgressMonitor pm) throws IOException {
-        CommonHFSVolumeHeader header = getVolumeHeader();
-        ForkFilter forkFilter = new ForkFilter(forkType,
+        ReadableRandomAccessStream forkFilter = withReadAhead(new ForkFilter(forkType,
                 cnid,
                 forkData,
                 extentsOverflowFile,
-                new ReadableRandomAccessSubstream(hfsFile), 0,
-                header.getAllocationBlockSize(),
-                header.getAllocationBlockStart() * physicalBlockSize);
+                createFSStream(), 0,
+                getAllocationBlockSize(),
+                getAllocationBlockStartOffset()));
         long bytesToRead = forkData.getLogicalSize();
         byte[] buffer = new byte[4096];
-        while (bytesToRead > 0) {
-            if (pm.cancelSignaled())
-                break;
+        try {
+            while (bytesToRead > 0) {
+                if (pm.cancelSignaled())
+                    break;
+
+//                System.out.print("forkFilter.read([].length=" + buffer.length + ", 0, " +
+//                        (bytesToRead < buffer.length ? (int) bytesToRead : buffer.length) + "...");
+                int bytesRead = forkFilter.read(buffer, 0,
+                        (bytesToRead < buffer.length ? (int) bytesToRead : buffer.length));
+//                System.out.println("done. bytesRead = " + bytesRead);
+                if (bytesRead < 0)
+                    break;
+                else {
+                    pm.addDataProgress(bytesRead);
+                    os.write(buffer, 0, bytesRead);
+                    bytesToRead -= bytesRead;
+                }
+            }
+        } finally {
+            forkFilter.close();
+        }
+        return forkData.getLogicalSize() - bytesToRead;
+    }
 
-//            System.out.print("forkFilter.read([].length=" + buffer.length + ", 0, " +
-//                    (bytesToRead < buffer.length ? (int) bytesToRead : buffer.length) + "...");
-            int bytesRead = forkFilter.read(buffer, 0,
-                    (bytesToRead < buffer.length ? (int) bytesToRead : buffer.length));
-//            System.out.println("done. bytesRead = " + bytesRead);
-            if (bytesRead < 0)
+    /**
+     * Copies <code>count</code> bytes at <code>pos</code> in the fork made up
+     * of <code>extents</code> to <code>target</code>, straight from the file
+     * that the volume is stored in (see {@link ChannelTransferable}). The
+     * caller is responsible for not reading beyond the fork's logical length.
+     *
+     * @return the number of bytes copied, which is less than
+     * <code>count</code> only if the extents or the volume end before that,
+     * or -1 if the volume isn't stored as-is in a file, in which case the
+     * fork has to be read through a stream.
+     */
+    public long transferExtentsTo(CommonHFSExtentDescriptor[] extents, long pos, long count,
+                                  WritableByteChannel target) {
+        if (sourceTransfer == null || !sourceTransfer.isTransferable())
+            return -1;
+
+        long allocationBlockSize = getAllocationBlockSize();
+        long firstBlockByteOffset = getAllocationBlockStartOffset();
+
+        long bytesTransferred = 0;
+        long extentStart = 0;
+        for (CommonHFSExtentDescriptor extent : extents) {
+            if (bytesTransferred >= count)
                 break;
-            else {
-                pm.addDataProgress(bytesRead);
-                os.write(buffer, 0, bytesRead);
-                bytesToRead -= bytesRead;
+
+            long extentLength = extent.getBlockCount() * allocationBlockSize;
+            long curPos = pos + bytesTransferred;
+            if (curPos < extentStart + extentLength) {
+                long posInExtent = curPos - extentStart;
+                long bytesToTransfer = Math.min(count - bytesTransferred, extentLength - posInExtent);
+                long sourcePos = fileReadOffset + firstBlockByteOffset +
+                        extent.getStartBlock() * allocationBlockSize + posInExtent;
+
+                long curBytesTransferred = sourceTransfer.transferTo(sourcePos, bytesToTransfer, target);
+                bytesTransferred += curBytesTransferred;
+                if (curBytesTransferred < bytesToTransfer)
+                    break;
             }
+
+            extentStart += extentLength;
         }
-        return forkData.getLogicalSize() - bytesToRead;
+
+        return bytesTransferred;
     }
 
     /**
@@ -431,15 +762,14 @@ public abstract class HFSVolume {
 
     private ReadableRandomAccessStream getReadableForkStream(
             ForkFilter.ForkType forkType, long cnid, CommonHFSForkData forkData) {
-        CommonHFSVolumeHeader header = getVolumeHeader();
-        return new ForkFilter(forkType,
+        return withReadAhead(new ForkFilter(forkType,
                 cnid,
                 forkData,
                 extentsOverflowFile,
-                new ReadableRandomAccessSubstream(hfsFile),
+                createFSStream(),
                 fileReadOffset,
-                header.getAllocationBlockSize(),
-                header.getAllocationBlockStart() * physicalBlockSize);
+                getAllocationBlockSize(),
+                getAllocationBlockStartOffset()));
     }
 
     private static String getDebugString(CommonHFSExtentKey key) {
@@ -500,6 +830,36 @@ public abstract class HFSVolume {
         return physicalBlockSize;
     }
 
+    /**
+     * Returns the size of the allocation blocks of this volume. The volume
+     * header is only read the first time.
+     */
+    public long getAllocationBlockSize() {
+        readAllocationGeometry();
+        return allocationBlockSize;
+    }
+
+    /**
+     * Returns the byte offset of the first allocation block from the start of
+     * the volume, which is 0 for HFS+ and lies after the volume bitmap for
+     * HFS. The volume header is only read the first time.
+     */
+    public long getAllocationBlockStartOffset() {
+        readAllocationGeometry();
+        return allocationBlockStartOffset;
+    }
+
+    private void readAllocationGeometry() {
+        if (allocationBlockSize != 0)
+            return;
+
+        CommonHFSVolumeHeader header = getVolumeHeader();
+        // The size is written last, so that a reader that sees it also sees
+        // the start offset.
+        allocationBlockStartOffset = header.getAllocationBlockStart() * physicalBlockSize;
+        allocationBlockSize = header.getAllocationBlockSize();
+    }
+
     public abstract CommonBTHeaderNode createCommonBTHeaderNode(byte[] currentNodeData, int offset, int nodeSize);
 
     public abstract CommonBTNodeDescriptor readNodeDescriptor(Readable rd);
@@ -0,0 +1,108 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import java.util.function.LongSupplier;
+
+
+/**
+ * Keeps the volume header stamp (see {@link HFSVolume#getVolumeHeaderStamp()})
+ * that was last read from disk, and reads it again once it is older than the
+ * recheck interval. Lookups can then check the stamp all the time, while the
+ * disk is read at most once per interval. Changes made to the volume by
+ * someone else are noticed within one interval, at which point the change
+ * handler is run so that data cached from the old state can be dropped.
+ */
+final class VolumeHeaderStamp {
+
+    /** The default recheck interval, in milliseconds. */
+    static final long DEFAULT_RECHECK_INTERVAL = 1000;
+
+    private final LongSupplier reader;
+    private final LongSupplier clock;
+    private final Runnable changeHandler;
+
+    private volatile long recheckIntervalNanos;
+
+    private volatile long stamp;
+    /** When {@link #stamp} was read, according to {@link #clock}. */
+    private volatile long readTime;
+    private volatile boolean valid = false;
+    /** Whether {@link #stamp} has been read at all. Guarded by this. */
+    private boolean hasBeenRead = false;
+
+    /**
+     * @param reader        reads the stamp from disk. It is only called by one
+     *                      thread at a time.
+     * @param clock         returns the current time in nanoseconds, like
+     *                      {@link System#nanoTime()}.
+     * @param changeHandler run when a stamp is read that differs from the one
+     *                      read before it, before the new stamp is returned.
+     */
+    VolumeHeaderStamp(LongSupplier reader, LongSupplier clock, Runnable changeHandler) {
+        this.reader = reader;
+        this.clock = clock;
+        this.changeHandler = changeHandler;
+        setRecheckInterval(DEFAULT_RECHECK_INTERVAL);
+    }
+
+    /**
+     * Returns the stamp, reading it from disk if it hasn't been read within
+     * the recheck interval.
+     */
+    long get() {
+        if (valid && clock.getAsLong() - readTime < recheckIntervalNanos)
+            return stamp;
+
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (!valid || now - readTime >= recheckIntervalNanos) {
+                long newStamp = reader.getAsLong();
+                // Drop the old state before anyone can see the new stamp.
+                if (hasBeenRead && newStamp != stamp)
+                    changeHandler.run();
+
+                stamp = newStamp;
+                readTime = now;
+                hasBeenRead = true;
+                valid = true;
+            }
+            return stamp;
+        }
+    }
+
+    /** Makes the next call to {@link #get()} read the stamp from disk. */
+    synchronized void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Sets how old, in milliseconds, the stamp may get before it is read
+     * again. 0 reads it on every call.
+     */
+    void setRecheckInterval(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("'millis' must not be negative");
+
+        recheckIntervalNanos = millis * 1000000;
+    }
+
+    long getRecheckInterval() {
+        return recheckIntervalNanos / 1000000;
+    }
+}
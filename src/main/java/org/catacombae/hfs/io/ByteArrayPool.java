@@ -0,0 +1,111 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A bounded pool of byte arrays of one size, for code that would otherwise
+ * allocate a large buffer for every operation. Arrays are handed out with
+ * {@link #acquire()} and given back with {@link #release(byte[])}; if the pool
+ * is empty a new array is allocated, and if it is full a released array is
+ * left to the garbage collector. Safe for use by several threads.
+ * <p>
+ * Arrays handed out by the pool are not cleared, so they may contain data
+ * from their previous use.
+ */
+public class ByteArrayPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+
+    private final ConcurrentLinkedQueue<byte[]> pooled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    private final LongAdder allocationCount = new LongAdder();
+    private final LongAdder reuseCount = new LongAdder();
+
+    /**
+     * Creates a pool of arrays of <code>bufferSize</code> bytes, keeping at
+     * most <code>maxPooled</code> of them when they aren't in use.
+     */
+    public ByteArrayPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("'bufferSize' must be positive");
+        if (maxPooled < 0)
+            throw new IllegalArgumentException("'maxPooled' must not be negative");
+
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns an array of {@link #getBufferSize()} bytes, from the pool if
+     * there is one.
+     */
+    public byte[] acquire() {
+        byte[] buffer = pooled.poll();
+        if (buffer != null) {
+            pooledCount.decrementAndGet();
+            reuseCount.increment();
+            return buffer;
+        }
+
+        allocationCount.increment();
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Gives <code>buffer</code> back to the pool. The caller must not use it
+     * afterwards. Arrays of the wrong size are ignored.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize)
+            return;
+
+        if (pooledCount.incrementAndGet() <= maxPooled)
+            pooled.offer(buffer);
+        else
+            pooledCount.decrementAndGet();
+    }
+
+    /** Returns the number of arrays that had to be allocated. */
+    public long getAllocationCount() {
+        return allocationCount.sum();
+    }
+
+    /** Returns the number of arrays that were handed out from the pool. */
+    public long getReuseCount() {
+        return reuseCount.sum();
+    }
+
+    /**
+     * Drops all pooled arrays.
+     */
+    public void clear() {
+        while (pooled.poll() != null)
+            pooledCount.decrementAndGet();
+    }
+}
@@ -0,0 +1,492 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.catacombae.io.RuntimeIOException;
+import org.catacombae.storage.io.PositionalReadable;
+
+
+/**
+ * A bounded block cache in front of a {@link PositionalReadable}, which can be
+ * read from by several threads at once.
+ * <p>
+ * Blocks are spread over a number of stripes by block number, and each stripe
+ * has its own lock, so readers only wait for each other when they touch the
+ * same stripe. Blocks are read from the source without holding any lock.
+ * Concurrent misses for the same block are coalesced: the first thread reads
+ * the block, and the others wait for that read instead of reading the block
+ * again.
+ * <p>
+ * Each stripe uses a W-TinyLFU policy: new blocks enter a small LRU window,
+ * and when they leave it they are only admitted to the main part of the
+ * stripe (a segmented LRU with a probation and a protected segment) if they
+ * have been accessed more often than the block they would replace. Access
+ * frequencies are kept in a small count-min sketch that is halved
+ * periodically. This keeps a large sequential scan from flushing out blocks
+ * that are used over and over, like B-tree nodes.
+ * <p>
+ * The cache never holds more than its capacity in blocks, and the metadata
+ * is bounded by the capacity as well. Block buffers of evicted blocks are
+ * reused for new ones.
+ */
+public class ConcurrentBlockCache implements PositionalReadable {
+
+    /** The maximum number of stripes. */
+    private static final int MAX_STRIPES = 16;
+    /** The smallest number of blocks per stripe when there are several stripes. */
+    private static final int MIN_BLOCKS_PER_STRIPE = 4;
+
+    private static final class Block {
+
+        final byte[] data;
+        /** The number of valid bytes in <code>data</code>. */
+        final int length;
+        /** Set (under the stripe lock) when <code>data</code> is given back to the pool. */
+        boolean evicted = false;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, estimating how often each block
+     * has been accessed recently.
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+                0x97cb3127_5d9b2f8dL, 0xab2c3e17_c5f3a1e9L, 0x6a09e667_f3bcc909L, 0xbb67ae85_84caa73bL
+        };
+
+        private final byte[] counters;
+        private final int mask;
+        private final int resetThreshold;
+        private int additions = 0;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(64, capacity * 8) - 1) << 1;
+            this.counters = new byte[SEEDS.length * width];
+            this.mask = width - 1;
+            this.resetThreshold = 10 * width;
+        }
+
+        private int index(long blockNumber, int row) {
+            long h = (blockNumber + 1) * SEEDS[row];
+            h ^= h >>> 29;
+            return row * (mask + 1) + ((int) h & mask);
+        }
+
+        void increment(long blockNumber) {
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; ++row) {
+                int i = index(blockNumber, row);
+                if (counters[i] < 15) {
+                    ++counters[i];
+                    added = true;
+                }
+            }
+
+            if (added && ++additions >= resetThreshold) {
+                // Age the counts, so that old popularity fades.
+                for (int i = 0; i < counters.length; ++i)
+                    counters[i] >>= 1;
+                additions /= 2;
+            }
+        }
+
+        int frequency(long blockNumber) {
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; ++row)
+                frequency = Math.min(frequency, counters[index(blockNumber, row)]);
+            return frequency;
+        }
+    }
+
+    /** One stripe of the cache. All access is synchronized on the stripe. */
+    private final class Stripe {
+
+        private final LinkedHashMap<Long, Block> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Block> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Block> protectedBlocks = new LinkedHashMap<>(16, 0.75f, true);
+        /** Blocks being read from the source, by the thread that missed first. */
+        private final HashMap<Long, CompletableFuture<Block>> pendingReads = new HashMap<>();
+        private final FrequencySketch sketch;
+
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+
+        Stripe(int capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = mainCapacity * 4 / 5;
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        /**
+         * Records an access to <code>blockNumber</code> and returns the block
+         * if it is cached.
+         */
+        Block get(long blockNumber) {
+            sketch.increment(blockNumber);
+            return lookup(blockNumber);
+        }
+
+        Block lookup(long blockNumber) {
+            Block b = window.get(blockNumber);
+            if (b == null)
+                b = protectedBlocks.get(blockNumber);
+            if (b == null) {
+                b = probation.remove(blockNumber);
+                if (b != null) {
+                    // A second hit in the main part, so promote it.
+                    protectedBlocks.put(blockNumber, b);
+                    if (protectedBlocks.size() > protectedCapacity) {
+                        Map.Entry<Long, Block> demoted = removeEldest(protectedBlocks);
+                        probation.put(demoted.getKey(), demoted.getValue());
+                    }
+                }
+            }
+
+            return b;
+        }
+
+        void put(long blockNumber, Block b) {
+            window.put(blockNumber, b);
+            if (window.size() <= windowCapacity)
+                return;
+
+            Map.Entry<Long, Block> candidate = removeEldest(window);
+            if (probation.size() + protectedBlocks.size() < mainCapacity) {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return;
+            }
+
+            LinkedHashMap<Long, Block> victimSegment = !probation.isEmpty() ? probation : protectedBlocks;
+            if (victimSegment.isEmpty()) {
+                evict(candidate.getValue());
+                return;
+            }
+
+            Map.Entry<Long, Block> victim = victimSegment.entrySet().iterator().next();
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                victimSegment.remove(victim.getKey());
+                evict(victim.getValue());
+                probation.put(candidate.getKey(), candidate.getValue());
+            } else {
+                evict(candidate.getValue());
+            }
+        }
+
+        int size() {
+            return window.size() + probation.size() + protectedBlocks.size();
+        }
+
+        void clear() {
+            for (Block b : window.values())
+                release(b);
+            for (Block b : probation.values())
+                release(b);
+            for (Block b : protectedBlocks.values())
+                release(b);
+            window.clear();
+            probation.clear();
+            protectedBlocks.clear();
+        }
+    }
+
+    private final PositionalReadable source;
+    private final long length;
+    private final int blockSize;
+    private final int capacity;
+    private final Stripe[] stripes;
+    private final ByteArrayPool bufferPool;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a cache of at most <code>blockCount</code> blocks of
+     * <code>blockSize</code> bytes over the first <code>length</code> bytes of
+     * <code>source</code>.
+     */
+    public ConcurrentBlockCache(PositionalReadable source, long length, int blockSize, int blockCount) {
+        if (source == null)
+            throw new IllegalArgumentException("'source' can not be null");
+        if (length < 0)
+            throw new IllegalArgumentException("'length' must not be negative");
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("'blockSize' must be positive");
+        if (blockCount < 1)
+            throw new IllegalArgumentException("'blockCount' must be at least 1");
+
+        this.source = source;
+        this.length = length;
+        this.blockSize = blockSize;
+
+        // No point in having room for more blocks than the source has.
+        long sourceBlocks = (length + blockSize - 1) / blockSize;
+        this.capacity = (int) Math.max(1, Math.min(blockCount, sourceBlocks));
+
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && stripeCount * 2 * MIN_BLOCKS_PER_STRIPE <= capacity)
+            stripeCount *= 2;
+
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i)
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+
+        this.bufferPool = new ByteArrayPool(blockSize, stripeCount);
+    }
+
+    private Stripe stripeFor(long blockNumber) {
+        long h = blockNumber * 0x9e3779b97f4a7c15L;
+        return stripes[(int) (h >>> 32) & (stripes.length - 1)];
+    }
+
+    @Override
+    public int readAt(long pos, byte[] data, int off, int len) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Cache is closed.");
+        if (pos >= length)
+            return len == 0 ? 0 : -1;
+
+        int totalBytesToRead = (int) Math.min(len, length - pos);
+        int bytesRead = 0;
+        while (bytesRead < totalBytesToRead) {
+            long curPos = pos + bytesRead;
+            int curBytesRead = readFromBlock(curPos / blockSize, (int) (curPos % blockSize),
+                    data, off + bytesRead, totalBytesToRead - bytesRead);
+            if (curBytesRead <= 0)
+                break;
+
+            bytesRead += curBytesRead;
+        }
+
+        return bytesRead == 0 && totalBytesToRead > 0 ? -1 : bytesRead;
+    }
+
+    /**
+     * Copies up to <code>len</code> bytes starting at <code>posInBlock</code>
+     * in block <code>blockNumber</code>, reading the block from the source if
+     * it isn't cached, or waiting for another thread that is already reading
+     * it.
+     */
+    private int readFromBlock(long blockNumber, int posInBlock, byte[] data, int off, int len) {
+        Stripe stripe = stripeFor(blockNumber);
+        while (true) {
+            CompletableFuture<Block> pendingRead;
+            boolean reader = false;
+            synchronized (stripe) {
+                Block b = stripe.get(blockNumber);
+                if (b != null) {
+                    hitCount.increment();
+                    return copy(b, posInBlock, data, off, len);
+                }
+
+                pendingRead = stripe.pendingReads.get(blockNumber);
+                if (pendingRead == null) {
+                    pendingRead = new CompletableFuture<>();
+                    stripe.pendingReads.put(blockNumber, pendingRead);
+                    reader = true;
+                }
+            }
+
+            if (reader)
+                return readBlock(stripe, blockNumber, pendingRead, posInBlock, data, off, len);
+
+            coalescedCount.increment();
+            Block b = awaitRead(pendingRead);
+            synchronized (stripe) {
+                // The block may have been evicted before we got here, in
+                // which case we start over.
+                if (!b.evicted)
+                    return copy(b, posInBlock, data, off, len);
+            }
+        }
+    }
+
+    /**
+     * Reads block <code>blockNumber</code> from the source on behalf of all
+     * threads waiting for <code>pendingRead</code>, and adds it to the cache.
+     */
+    private int readBlock(Stripe stripe, long blockNumber, CompletableFuture<Block> pendingRead,
+                          int posInBlock, byte[] data, int off, int len) {
+        missCount.increment();
+        byte[] buffer = bufferPool.acquire();
+        int blockLength;
+        try {
+            blockLength = fill(blockNumber, buffer);
+        } catch (RuntimeException | Error e) {
+            bufferPool.release(buffer);
+            synchronized (stripe) {
+                stripe.pendingReads.remove(blockNumber);
+            }
+            pendingRead.completeExceptionally(e);
+            throw e;
+        }
+
+        synchronized (stripe) {
+            Block b = new Block(buffer, blockLength);
+            stripe.put(blockNumber, b);
+            stripe.pendingReads.remove(blockNumber);
+            pendingRead.complete(b);
+
+            return copy(b, posInBlock, data, off, len);
+        }
+    }
+
+    private static Block awaitRead(CompletableFuture<Block> pendingRead) {
+        try {
+            return pendingRead.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw new RuntimeIOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    private static int copy(Block b, int posInBlock, byte[] data, int off, int len) {
+        int bytesToCopy = Math.min(len, b.length - posInBlock);
+        if (bytesToCopy <= 0)
+            return -1;
+
+        System.arraycopy(b.data, posInBlock, data, off, bytesToCopy);
+        return bytesToCopy;
+    }
+
+    /**
+     * Reads block <code>blockNumber</code> into <code>buffer</code>, and
+     * returns how many bytes of it there are.
+     */
+    private int fill(long blockNumber, byte[] buffer) {
+        long blockPos = blockNumber * blockSize;
+        int bytesToRead = (int) Math.min(blockSize, length - blockPos);
+        int bytesRead = 0;
+        while (bytesRead < bytesToRead) {
+            int curBytesRead = source.readAt(blockPos + bytesRead, buffer, bytesRead, bytesToRead - bytesRead);
+            if (curBytesRead <= 0)
+                break;
+
+            bytesRead += curBytesRead;
+        }
+
+        return bytesRead;
+    }
+
+    private void evict(Block b) {
+        evictionCount.increment();
+        release(b);
+    }
+
+    private void release(Block b) {
+        b.evicted = true;
+        bufferPool.release(b.data);
+    }
+
+    private static Map.Entry<Long, Block> removeEldest(LinkedHashMap<Long, Block> map) {
+        Iterator<Map.Entry<Long, Block>> it = map.entrySet().iterator();
+        Map.Entry<Long, Block> eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    /** Returns the length of the cached data. */
+    public long length() {
+        return length;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /** Returns the maximum number of blocks in the cache. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Returns the number of blocks currently in the cache. */
+    public int getBlockCount() {
+        int blockCount = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                blockCount += stripe.size();
+            }
+        }
+
+        return blockCount;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of misses that waited for another thread's read of
+     * the same block instead of reading it themselves.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Removes all blocks from the cache.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes all blocks from the cache and makes further reads fail. The
+     * source is not closed.
+     */
+    public void close() {
+        closed = true;
+        clear();
+        bufferPool.clear();
+    }
+}
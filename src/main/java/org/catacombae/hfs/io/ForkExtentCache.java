@@ -0,0 +1,221 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.catacombae.hfs.io.ForkFilter.ForkType;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentDescriptor;
+
+
+/**
+ * A per-volume cache of the overflow extents of forks, keyed by CNID and fork
+ * type, so that a {@link ForkFilter} opened on a fork that has been read
+ * before doesn't have to look them up in the extents overflow file again.
+ * <p>
+ * An entry is only used if the fork still has the same length and basic
+ * extents as when the entry was stored, since any change to a fork's
+ * allocation shows up there first. Entries may hold only the overflow
+ * extents that have been mapped so far, in which case the rest are looked up
+ * as usual.
+ * <p>
+ * The cache is bounded by a budget counted in extents, and evicts the least
+ * recently used forks first. Each fork is charged the extents it holds, both
+ * basic and overflow, plus {@link #ENTRY_COST} for the entry itself, so that
+ * forks without overflow extents count too.
+ */
+public class ForkExtentCache {
+
+    /** The default budget (number of extents). */
+    public static final int DEFAULT_BUDGET = 256 * 1024;
+
+    /**
+     * What an entry costs in addition to its extents, roughly the memory of
+     * the key and entry objects measured in extents.
+     */
+    public static final int ENTRY_COST = 4;
+
+    private static final class Key {
+
+        private final long cnid;
+        private final ForkType forkType;
+
+        Key(long cnid, ForkType forkType) {
+            this.cnid = cnid;
+            this.forkType = forkType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key k))
+                return false;
+            return cnid == k.cnid && forkType == k.forkType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(cnid) * 31 + forkType.hashCode();
+        }
+    }
+
+    /** The overflow extents of a fork, and what they were resolved for. */
+    static final class Entry {
+
+        private final long forkLength;
+        private final CommonHFSExtentDescriptor[] basicExtents;
+        final CommonHFSExtentDescriptor[] overflowExtents;
+        final boolean complete;
+
+        Entry(long forkLength, CommonHFSExtentDescriptor[] basicExtents,
+              CommonHFSExtentDescriptor[] overflowExtents, boolean complete) {
+            this.forkLength = forkLength;
+            this.basicExtents = basicExtents;
+            this.overflowExtents = overflowExtents;
+            this.complete = complete;
+        }
+
+        private boolean matches(long forkLength, CommonHFSExtentDescriptor[] basicExtents) {
+            if (forkLength != this.forkLength || basicExtents.length != this.basicExtents.length)
+                return false;
+
+            for (int i = 0; i < basicExtents.length; ++i) {
+                if (basicExtents[i].getStartBlock() != this.basicExtents[i].getStartBlock() ||
+                        basicExtents[i].getBlockCount() != this.basicExtents[i].getBlockCount())
+                    return false;
+            }
+
+            return true;
+        }
+
+        /** Returns what the entry is charged against the budget. */
+        int getCost() {
+            return ENTRY_COST + basicExtents.length + overflowExtents.length;
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int budget;
+    private long usedBudget = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public ForkExtentCache(int budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * Sets the budget of the cache, counted in extents (see
+     * {@link #ENTRY_COST}). A budget of 0 disables the cache.
+     *
+     * @param budget the new budget in number of extents.
+     */
+    public synchronized void setBudget(int budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("'budget' must not be negative");
+
+        this.budget = budget;
+        evict();
+    }
+
+    public synchronized int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns how much of the budget the cached forks are charged, counted in
+     * extents.
+     */
+    public synchronized long getUsedBudget() {
+        return usedBudget;
+    }
+
+    /**
+     * Returns the number of forks in the cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Removes all forks from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBudget = 0;
+    }
+
+    /**
+     * Returns the cached overflow extents of a fork, or <code>null</code> if
+     * there are none or if the fork has changed since they were stored.
+     */
+    synchronized Entry get(long cnid, ForkType forkType, long forkLength,
+                           CommonHFSExtentDescriptor[] basicExtents) {
+        Key key = new Key(cnid, forkType);
+        Entry e = entries.get(key);
+        if (e != null && !e.matches(forkLength, basicExtents)) {
+            entries.remove(key);
+            usedBudget -= e.getCost();
+            e = null;
+        }
+
+        if (e == null) {
+            ++missCount;
+            return null;
+        }
+
+        ++hitCount;
+        return e;
+    }
+
+    synchronized void put(long cnid, ForkType forkType, Entry e) {
+        if (e.getCost() > budget)
+            return;
+
+        Entry old = entries.put(new Key(cnid, forkType), e);
+        if (old != null)
+            usedBudget -= old.getCost();
+        usedBudget += e.getCost();
+
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBudget > budget) {
+            usedBudget -= it.next().getCost();
+            it.remove();
+            ++evictionCount;
+        }
+    }
+}
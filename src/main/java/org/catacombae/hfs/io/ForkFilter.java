@@ -27,6 +27,7 @@ import org.catacombae.hfs.types.hfscommon.CommonHFSExtentLeafRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSForkData;
 import org.catacombae.io.ReadableRandomAccessStream;
 import org.catacombae.io.RuntimeIOException;
+import org.catacombae.storage.io.PositionalReadable;
 
 
 /**
@@ -40,34 +41,64 @@ import org.catacombae.io.RuntimeIOException;
  * Model:
  *
  * - seeking does not do anything except setting a pointer value
- * - when read is called:
- *   - if logicalPosition is different from our last position
- *     - seek to the right position
- *   - else if file pointer is different from our last file pointer
- *     - seek to last fp
+ * - when read is called, readAt is called with logicalPosition
+ * - when readAt is called:
+ *   - find the extent containing the position (the current extent or the
+ *     next one for sequential reads, otherwise a binary search over the
+ *     logical start blocks of the extents mapped so far)
+ *   - read from the right position in each extent, at that position in the
+ *     source if it is a PositionalReadable, otherwise by seeking and reading
+ *     while holding the source's lock
  * </pre>
+ * The extent map is shared between readers and guarded by its own lock,
+ * which isn't held while reading from the source. This means that readAt may
+ * be called by several threads at once, while read and seek use the stream's
+ * file pointer and should only be called by one thread at a time.
  *
  * @author <a href="https://catacombae.org" target="_top">Erik Larsson</a>
  */
-public class ForkFilter implements ReadableRandomAccessStream {
+public class ForkFilter implements ReadableRandomAccessStream, PositionalReadable {
 
     private final long forkLength;
     private final ArrayList<CommonHFSExtentDescriptor> extentDescriptors;
     private final OverflowExtentsStore overflowExtentsStore;
     private final ReadableRandomAccessStream sourceFile;
+    /** <code>sourceFile</code> if it can be read at a position, otherwise <code>null</code>. */
+    private final PositionalReadable sourceReader;
     private final long fsOffset;
     private final long allocationBlockSize;
     private final long firstBlockByteOffset;
     private long logicalPosition; // The current position in the fork
-    private final long lastLogicalPos; // The position in the fork where we stopped reading last time
-    private long lastPhysicalPos; // The position in the fork where we stopped reading last time
+    /** Buffer for the single byte reads, which use the file pointer as well. */
+    private final byte[] oneByte = new byte[1];
     private boolean all_extents_mapped = false;
 
+    /** Guards the extent map and the extent cache state below. */
+    private final Object extentLock = new Object();
+
+    /**
+     * The logical start block of each extent in <code>extentDescriptors</code>,
+     * followed by the logical end block of the last one (prefix sums of the
+     * block counts).
+     */
+    private long[] extentStartBlocks = new long[16];
+    /** The extent that the last read ended in, which is checked first. */
+    private int currentExtent = 0;
+
+    /** The basic extents that this fork was opened with. */
+    private final CommonHFSExtentDescriptor[] basicExtents;
+    /** The number of non-empty basic extents at the start of <code>extentDescriptors</code>. */
+    private final int basicExtentCount;
+    /** The number of extents in the fork's entry in the extent cache. */
+    private int cachedExtentCount;
+    private boolean cachedComplete = false;
+
     public enum ForkType {DATA, RESOURCE}
 
     /**
-     * Creates a new ForkFilter. This class assumes that it has exclusive access
-     * to <code>sourceFile</code>.
+     * Creates a new ForkFilter. Unless <code>sourceFile</code> is a
+     * {@link PositionalReadable}, reads synchronize on it while seeking and
+     * reading.
      *
      * @param forkType             <b>(in)</b> The type of the fork (for constructing extents overflow
      *                             file keys).
@@ -95,8 +126,9 @@ public class ForkFilter implements ReadableRandomAccessStream {
     }
 
     /**
-     * Creates a new ForkFilter. This class assumes that it has exclusive access
-     * to <code>sourceFile</code>.
+     * Creates a new ForkFilter. Unless <code>sourceFile</code> is a
+     * {@link PositionalReadable}, reads synchronize on it while seeking and
+     * reading.
      *
      * @param forkType             <b>(in)</b> The type of the fork (for constructing extents overflow
      *                             file keys).
@@ -127,8 +159,9 @@ public class ForkFilter implements ReadableRandomAccessStream {
     }
 
     /**
-     * Creates a new ForkFilter. This class assumes that it has exclusive access
-     * to <code>sourceFile</code>.
+     * Creates a new ForkFilter. Unless <code>sourceFile</code> is a
+     * {@link PositionalReadable}, reads synchronize on it while seeking and
+     * reading.
      *
      * @param forkLength           <b>(in)</b> The length of the fork.
      * @param allExtents           <b>(in)</b> All the extents of the fork. All extents must have been
@@ -160,17 +193,35 @@ public class ForkFilter implements ReadableRandomAccessStream {
 //        logger.log(Level.DEBUG, "  fork has " + extentDescriptors.length + " extents.");
 
         this.forkLength = forkLength;
-        this.extentDescriptors =
-                new ArrayList<>(Arrays.asList(
-                        initialExtents));
+        this.extentDescriptors = new ArrayList<>(initialExtents.length);
+        for (CommonHFSExtentDescriptor curDescriptor : initialExtents) {
+            // Empty extents can't contain any position, so leave them out of
+            // the extent map.
+            if (curDescriptor.getBlockCount() != 0)
+                addExtent(curDescriptor);
+        }
+        this.basicExtents = initialExtents;
+        this.basicExtentCount = extentDescriptors.size();
+
+        // Start from the overflow extents that were mapped the last time the
+        // fork was opened, if any.
+        ForkExtentCache.Entry cached = overflowExtentsStore != null ?
+                overflowExtentsStore.getCachedExtents(forkLength, initialExtents) : null;
+        if (cached != null) {
+            for (CommonHFSExtentDescriptor curDescriptor : cached.overflowExtents)
+                addExtent(curDescriptor);
+            all_extents_mapped = cached.complete;
+            cachedComplete = cached.complete;
+        }
+        this.cachedExtentCount = extentDescriptors.size();
+
         this.overflowExtentsStore = overflowExtentsStore;
         this.sourceFile = sourceFile;
+        this.sourceReader = sourceFile instanceof PositionalReadable p ? p : null;
         this.fsOffset = fsOffset;
         this.allocationBlockSize = allocationBlockSize;
         this.firstBlockByteOffset = firstBlockByteOffset;
         this.logicalPosition = 0;
-        this.lastLogicalPos = -1; // Set differently from logicalPosition to trigger a seek at first read
-        this.lastPhysicalPos = 0; // Set differently from logicalPosition to trigger a seek at first read
     }
 
     @Override
@@ -181,7 +232,6 @@ public class ForkFilter implements ReadableRandomAccessStream {
 
     @Override
     public int read() {
-        byte[] oneByte = new byte[1];
         if (read(oneByte) == 1)
             return oneByte[0] & 0xFF;
         else
@@ -193,94 +243,187 @@ public class ForkFilter implements ReadableRandomAccessStream {
         return read(data, 0, data.length);
     }
 
-    private CommonHFSExtentDescriptor getExtent(int extIndex, long startBlock) {
-        long curStartBlock = startBlock;
+    private void addExtent(CommonHFSExtentDescriptor descriptor) {
+        int extIndex = extentDescriptors.size();
+        if (extIndex + 1 >= extentStartBlocks.length)
+            extentStartBlocks = Arrays.copyOf(extentStartBlocks, extentStartBlocks.length * 2);
 
-        while (extIndex >= extentDescriptors.size()) {
-            // Need to read the next overflow extent into
-            // extentDescriptors.
+        extentStartBlocks[extIndex + 1] = extentStartBlocks[extIndex] + descriptor.getBlockCount();
+        extentDescriptors.add(descriptor);
+    }
 
-            if (overflowExtentsStore == null) {
-                throw new RuntimeIOException("No overflow extents store to " +
-                        "query for overflow extents.");
-            }
+    /**
+     * Reads the next overflow extent record into <code>extentDescriptors</code>.
+     *
+     * @return <code>false</code> if all extents of the fork have already been
+     * mapped, <code>true</code> otherwise.
+     */
+    private boolean mapNextExtents() {
+        if (all_extents_mapped) {
+            return false;
+        } else if (overflowExtentsStore == null) {
+            throw new RuntimeIOException("No overflow extents store to " +
+                    "query for overflow extents.");
+        }
 
-            CommonHFSExtentLeafRecord extentRecord;
+        int extentCount = extentDescriptors.size();
+        CommonHFSExtentLeafRecord extentRecord =
+                overflowExtentsStore.getExtentRecord(extentStartBlocks[extentCount]);
 
-            if (all_extents_mapped) {
-                extentRecord = null;
-            } else {
-                extentRecord = overflowExtentsStore.getExtentRecord(curStartBlock);
+        for (CommonHFSExtentDescriptor curDescriptor : extentRecord.getRecordData()) {
+            if (curDescriptor.getBlockCount() == 0) {
+                // End-of-fork at first occurrence of block count 0.
+                all_extents_mapped = true;
+                break;
             }
 
-            CommonHFSExtentDescriptor[] descriptors = extentRecord.getRecordData();
+            addExtent(curDescriptor);
+        }
+
+        if (extentDescriptors.size() == extentCount) {
+            // An empty overflow record, so there is nothing more to map.
+            all_extents_mapped = true;
+        }
 
-            for (CommonHFSExtentDescriptor curDescriptor : descriptors) {
-                long blockCount = curDescriptor.getBlockCount();
+        if (all_extents_mapped)
+            updateExtentCache();
 
-                if (blockCount == 0) {
-                    // End-of-fork at first occurrence of block count 0.
-                    all_extents_mapped = true;
-                    break;
-                }
+        return true;
+    }
+
+    /**
+     * Stores the overflow extents mapped so far in the extent cache, if there
+     * are more of them than when the cache was last updated.
+     */
+    private void updateExtentCache() {
+        if (overflowExtentsStore == null ||
+                (extentDescriptors.size() == cachedExtentCount && all_extents_mapped == cachedComplete)) {
+            return;
+        }
+
+        CommonHFSExtentDescriptor[] overflowExtents = extentDescriptors.
+                subList(basicExtentCount, extentDescriptors.size()).
+                toArray(CommonHFSExtentDescriptor[]::new);
+        overflowExtentsStore.putCachedExtents(forkLength, basicExtents, overflowExtents, all_extents_mapped);
+
+        cachedExtentCount = extentDescriptors.size();
+        cachedComplete = all_extents_mapped;
+    }
+
+    /**
+     * Returns the index of the extent containing <code>logicalBlock</code>,
+     * mapping overflow extents as needed, or -1 if the fork has no such
+     * block.
+     */
+    private int findExtent(long logicalBlock) {
+        int extentCount = extentDescriptors.size();
+
+        // Sequential reads stay in the current extent or move to the next one.
+        for (int i = currentExtent; i < extentCount && i <= currentExtent + 1; ++i) {
+            if (logicalBlock >= extentStartBlocks[i] && logicalBlock < extentStartBlocks[i + 1])
+                return i;
+        }
 
-                extentDescriptors.add(curDescriptor);
-                curStartBlock += blockCount;
+        while (logicalBlock >= extentStartBlocks[extentDescriptors.size()]) {
+            if (!mapNextExtents())
+                return -1;
+        }
+
+        // Binary search for the last extent starting at or before
+        // logicalBlock. It can't be empty, since logicalBlock is before the
+        // end of the last extent.
+        int low = 0;
+        int high = extentDescriptors.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (extentStartBlocks[mid] <= logicalBlock)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the extent at <code>extIndex</code>, mapping the next overflow
+     * extents if needed, or <code>null</code> if the fork has no such extent.
+     */
+    private CommonHFSExtentDescriptor getExtent(int extIndex) {
+        synchronized (extentLock) {
+            if (extIndex >= extentDescriptors.size() &&
+                    !(mapNextExtents() && extIndex < extentDescriptors.size())) {
+                return null;
             }
+
+            currentExtent = extIndex;
+            return extentDescriptors.get(extIndex);
         }
+    }
+
+    /**
+     * Returns the logical position where the extent containing
+     * <code>position</code> ends, which is at most the fork length. Data up
+     * to that position is contiguous in the source.
+     */
+    public long getExtentEnd(long position) {
+        if (position >= forkLength)
+            return forkLength;
+
+        synchronized (extentLock) {
+            int extIndex = findExtent(position / allocationBlockSize);
+            if (extIndex < 0)
+                return forkLength;
 
-        return extentDescriptors.get(extIndex);
+            return Math.min(forkLength, extentStartBlocks[extIndex + 1] * allocationBlockSize);
+        }
+    }
+
+    /**
+     * Reads from the source at <code>sourcePos</code>, without holding any
+     * lock if the source supports positional reads.
+     */
+    private int readSource(long sourcePos, byte[] data, int pos, int len) {
+        if (sourceReader != null)
+            return sourceReader.readAt(sourcePos, data, pos, len);
+
+        synchronized (sourceFile) {
+            sourceFile.seek(sourcePos);
+            return sourceFile.read(data, pos, len);
+        }
     }
 
     @Override
     public int read(byte[] data, int pos, int len) {
 //        logger.log(Level.DEBUG, "ForkFilter.read(" + data + ", " + pos + ", " + len);
-        long offset = Long.MAX_VALUE; // MAX_VALUE as a sentinel for seek
-        long bytesToSkip = logicalPosition;
-        long curLogicalBlock = 0;
-        int extIndex;
-        long currentExtentLength;
+        int bytesRead = readAt(logicalPosition, data, pos, len);
+
+        // Update tracker variables before returning
+        if (bytesRead > 0)
+            logicalPosition += bytesRead;
 
-        if (extentDescriptors.isEmpty() || logicalPosition >= forkLength) {
+        return bytesRead;
+    }
+
+    @Override
+    public int readAt(long position, byte[] data, int pos, int len) {
+        if (position >= forkLength) {
             return -1; // EOF
         }
 
-        // Skip all extents whose range is located before the requested position (logicalPosition)
-//        System.out.println("ForkFilter.read: skipping extents (bytesToSkip=" +
-//                bytesToSkip + ")...");
-        for (extIndex = 0; ; ++extIndex) {
-            CommonHFSExtentDescriptor cur =
-                    getExtent(extIndex, curLogicalBlock);
-            if (cur == null) {
+        int extIndex;
+        long bytesToSkip;
+        synchronized (extentLock) {
+            extIndex = findExtent(position / allocationBlockSize);
+            if (extIndex < 0) {
                 // No such extent available.
                 return -1;
             }
 
-            long currentBlockCount = cur.getBlockCount();
-            currentExtentLength = currentBlockCount * allocationBlockSize;
-
-            if (bytesToSkip >= currentExtentLength) {
-                bytesToSkip -= currentExtentLength;
-                curLogicalBlock += currentBlockCount;
-            } else {
-                offset = fsOffset + firstBlockByteOffset +
-                        (cur.getStartBlock() * allocationBlockSize) + bytesToSkip;
-                break;
-            }
-        }
-//        System.out.println("done. skipped " + extIndex + " extents.");
-
-        if (logicalPosition != lastLogicalPos) {
-//            System.out.print("ForkFilter.read: (1)seeking to " + offset + "...");
-            sourceFile.seek(offset); // Seek to the correct position
-//            System.out.println("done.");
-        } else if (sourceFile.getFilePointer() != lastPhysicalPos) {
-//            System.out.print("ForkFilter.read: (2)seeking to " + offset + "...");
-            sourceFile.seek(lastPhysicalPos);
-//            System.out.println("done.");
+            bytesToSkip = position - extentStartBlocks[extIndex] * allocationBlockSize;
         }
 
-        long bytesLeftInStream = forkLength - logicalPosition;
+        long bytesLeftInStream = forkLength - position;
 //        logger.log(Level.DEBUG, "bytesLeftInStream: " + bytesLeftInStream + " len: " + len);
         int totalBytesToRead = bytesLeftInStream < len ? (int) bytesLeftInStream : len;
         int bytesLeftToRead = totalBytesToRead;
@@ -291,7 +434,7 @@ public class ForkFilter implements ReadableRandomAccessStream {
 
             CommonHFSExtentDescriptor cur;
             try {
-                cur = getExtent(extIndex, curLogicalBlock);
+                cur = getExtent(extIndex);
             } catch (RuntimeException e) {
                 if (bytesLeftToRead == totalBytesToRead) {
                     throw e;
@@ -300,8 +443,12 @@ public class ForkFilter implements ReadableRandomAccessStream {
                 }
             }
 
-            sourceFile.seek(fsOffset + firstBlockByteOffset +
-                    (cur.getStartBlock() * allocationBlockSize) + bytesToSkip);
+            if (cur == null) {
+                break;
+            }
+
+            long extentPos = fsOffset + firstBlockByteOffset +
+                    (cur.getStartBlock() * allocationBlockSize) + bytesToSkip;
 
             long blockCount = cur.getBlockCount();
             long bytesInExtent = blockCount * allocationBlockSize - bytesToSkip;
@@ -312,30 +459,20 @@ public class ForkFilter implements ReadableRandomAccessStream {
                 int bytesToRead = bytesToReadFromExtent - bytesReadFromExtent;
                 int positionInArray = pos + (totalBytesToRead - bytesLeftToRead) + bytesReadFromExtent;
 
-                int bytesRead = sourceFile.read(data, positionInArray, bytesToRead);
+                int bytesRead = readSource(extentPos + bytesReadFromExtent, data, positionInArray, bytesToRead);
                 if (bytesRead > 0)
                     bytesReadFromExtent += bytesRead;
-                else {
-                    // Update tracker variables before returning
-                    lastPhysicalPos = sourceFile.getFilePointer();
-                    int totalBytesRead = positionInArray - pos;
-                    logicalPosition += totalBytesRead;
-                    return totalBytesRead;
-                }
+                else
+                    return positionInArray - pos;
             }
 
             bytesLeftToRead -= bytesReadFromExtent;
             bytesToSkip = 0;
-            curLogicalBlock += blockCount;
 
             if (bytesLeftToRead == 0)
                 break;
         }
 
-        // Update tracker variables before returning
-        lastPhysicalPos = sourceFile.getFilePointer();
-        logicalPosition += totalBytesToRead - bytesLeftToRead;
-
         if (bytesLeftToRead < totalBytesToRead) {
             int bytesRead = totalBytesToRead - bytesLeftToRead;
 //            logger.log(Level.DEBUG, "final bytesRead: " + bytesRead);
@@ -346,9 +483,8 @@ public class ForkFilter implements ReadableRandomAccessStream {
 
     @Override
     public byte readFully() throws RuntimeIOException {
-        byte[] data = new byte[1];
-        readFully(data);
-        return data[0];
+        readFully(oneByte);
+        return oneByte[0];
     }
 
     @Override
@@ -389,6 +525,11 @@ public class ForkFilter implements ReadableRandomAccessStream {
 
     @Override
     public void close() {
+        // Keep the extents mapped by this stream for the next one opened on
+        // the same fork.
+        synchronized (extentLock) {
+            updateExtentCache();
+        }
         sourceFile.close();
     }
 
@@ -396,11 +537,18 @@ public class ForkFilter implements ReadableRandomAccessStream {
 
         public abstract CommonHFSExtentLeafRecord getExtentRecord(
                 long startBlock);
+
+        public abstract ForkExtentCache.Entry getCachedExtents(long forkLength,
+                CommonHFSExtentDescriptor[] basicExtents);
+
+        public abstract void putCachedExtents(long forkLength, CommonHFSExtentDescriptor[] basicExtents,
+                CommonHFSExtentDescriptor[] overflowExtents, boolean complete);
     }
 
     private static class ExtentsOverflowFileStore extends OverflowExtentsStore {
 
         private final ExtentsOverflowFile extentsOverflowFile;
+        private final ForkExtentCache extentCache;
         private final ForkType forkType;
         private final long cnid;
 
@@ -417,6 +565,8 @@ public class ForkFilter implements ReadableRandomAccessStream {
             }
 
             this.extentsOverflowFile = extentsOverflowFile;
+            this.extentCache = extentsOverflowFile != null ?
+                    extentsOverflowFile.getVolume().getForkExtentCache() : null;
             this.forkType = forkType;
             this.cnid = cnid;
         }
@@ -437,5 +587,20 @@ public class ForkFilter implements ReadableRandomAccessStream {
 
             return rec;
         }
+
+        @Override
+        public ForkExtentCache.Entry getCachedExtents(long forkLength,
+                CommonHFSExtentDescriptor[] basicExtents) {
+            return extentCache != null ? extentCache.get(cnid, forkType, forkLength, basicExtents) : null;
+        }
+
+        @Override
+        public void putCachedExtents(long forkLength, CommonHFSExtentDescriptor[] basicExtents,
+                CommonHFSExtentDescriptor[] overflowExtents, boolean complete) {
+            if (extentCache != null) {
+                extentCache.put(cnid, forkType,
+                        new ForkExtentCache.Entry(forkLength, basicExtents, overflowExtents, complete));
+            }
+        }
     }
 }
@@ -0,0 +1,481 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.lang.System.Logger.Level;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.catacombae.io.BasicReadableRandomAccessStream;
+import org.catacombae.io.ReadableRandomAccessStream;
+import org.catacombae.io.RuntimeIOException;
+import org.catacombae.storage.io.PositionalReadable;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * A stream that reads ahead of its consumer when the stream is read
+ * sequentially. After two reads in a row that continue where the previous one
+ * ended, the following data is read in windows on a background executor, so
+ * that the latency of the source (disk reads, decompression) overlaps with
+ * the consumer's processing. The window starts at
+ * <code>initialWindow</code> bytes and doubles with every window up to
+ * <code>maxWindow</code>, and no more than <code>maxInFlight</code> bytes are
+ * read ahead at any time. Any other access pattern drops the data read ahead
+ * and starts over with the initial window.
+ * <p>
+ * If the source is a {@link ForkFilter}, windows end at the end of an extent
+ * where possible, so that each background read is physically contiguous.
+ * <p>
+ * Window buffers come from pools shared by all streams, and go back to them
+ * once a window has been consumed or dropped.
+ * <p>
+ * The stream itself should only be used by one thread at a time, except for
+ * {@link #readAt(long, byte[], int, int)}, which reads straight from the
+ * source and is as thread safe as the source's positional reads.
+ */
+public class ReadAheadStream extends BasicReadableRandomAccessStream implements PositionalReadable {
+
+    private static final System.Logger logger = getLogger(ReadAheadStream.class.getName());
+
+    /** The default size of the first window (128 KiB). */
+    public static final int DEFAULT_INITIAL_WINDOW = 128 * 1024;
+    /** The default maximum window size (4 MiB). */
+    public static final int DEFAULT_MAX_WINDOW = 4 * 1024 * 1024;
+    /** The default maximum number of bytes read ahead (16 MiB). */
+    public static final long DEFAULT_MAX_IN_FLIGHT = 16 * 1024 * 1024;
+
+    /** The number of window buffers of each size kept for reuse. */
+    private static final int POOLED_WINDOW_BUFFERS = 4;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    /** Pools of window buffers, by buffer size. */
+    private static final ConcurrentHashMap<Integer, ByteArrayPool> windowBufferPools = new ConcurrentHashMap<>();
+
+    /**
+     * Counters of how read-ahead worked out, which can be shared between
+     * streams.
+     */
+    public static class Statistics {
+
+        private final LongAdder hitBytes = new LongAdder();
+        private final LongAdder missBytes = new LongAdder();
+        private final LongAdder readAheadBytes = new LongAdder();
+        private final LongAdder wastedBytes = new LongAdder();
+        private final LongAdder windowCount = new LongAdder();
+
+        /** Returns the number of bytes served from data read ahead. */
+        public long getHitBytes() {
+            return hitBytes.sum();
+        }
+
+        /** Returns the number of bytes read from the source in the consumer's thread. */
+        public long getMissBytes() {
+            return missBytes.sum();
+        }
+
+        /** Returns the number of bytes read ahead. */
+        public long getReadAheadBytes() {
+            return readAheadBytes.sum();
+        }
+
+        /** Returns the number of bytes read ahead that were never used. */
+        public long getWastedBytes() {
+            return wastedBytes.sum();
+        }
+
+        /** Returns the number of windows read ahead. */
+        public long getWindowCount() {
+            return windowCount.sum();
+        }
+    }
+
+    /** A window of data that is being or has been read ahead. */
+    private final class Window {
+
+        private static final int PENDING = 0;
+        private static final int FILLING = 1;
+        private static final int FILLED = 2;
+        private static final int RELEASED = 3;
+
+        final long pos;
+        final int length;
+        final FutureTask<Integer> task;
+        private final ByteArrayPool bufferPool;
+        private final byte[] data;
+        /**
+         * Whether the buffer is being filled, and whether it has been given
+         * back, so that a buffer that is dropped while it is being filled is
+         * given back by the thread filling it.
+         */
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Window(long pos, int length) {
+            this.pos = pos;
+            this.length = length;
+            this.bufferPool = getWindowBufferPool(length);
+            this.data = bufferPool.acquire();
+            this.task = new FutureTask<>(this::fill);
+        }
+
+        private int fill() {
+            if (!state.compareAndSet(PENDING, FILLING))
+                return 0;
+
+            int bytesRead = 0;
+            try {
+                while (bytesRead < length) {
+                    int curBytesRead = readSource(pos + bytesRead, data, bytesRead, length - bytesRead);
+                    if (curBytesRead <= 0)
+                        break;
+
+                    bytesRead += curBytesRead;
+                }
+            } finally {
+                if (!state.compareAndSet(FILLING, FILLED))
+                    bufferPool.release(data);
+            }
+
+            return bytesRead;
+        }
+
+        /**
+         * Waits for the window to be read, and returns the number of bytes in
+         * it, or -1 if reading failed.
+         */
+        int await() {
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                logger.log(Level.DEBUG, "Read-ahead at " + pos + " failed: " + e.getCause());
+                return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeIOException(e);
+            }
+        }
+
+        /**
+         * Copies <code>len</code> bytes at <code>pos</code> out of the window,
+         * which must have been read.
+         */
+        void copy(long pos, byte[] dest, int off, int len) {
+            System.arraycopy(data, (int) (pos - this.pos), dest, off, len);
+        }
+
+        /**
+         * Gives the buffer back to its pool, now or, if it is being filled,
+         * once that is done. The window can't be used afterwards.
+         */
+        void release() {
+            task.cancel(false);
+            int oldState = state.getAndSet(RELEASED);
+            if (oldState == PENDING || oldState == FILLED)
+                bufferPool.release(data);
+        }
+    }
+
+    private final ReadableRandomAccessStream source;
+    private final PositionalReadable sourceReader;
+    private final ForkFilter forkFilter;
+    private final long length;
+    private final int initialWindow;
+    private final int maxWindow;
+    private final long maxInFlight;
+    private final Executor executor;
+    private final Statistics statistics;
+
+    private final ArrayDeque<Window> windows = new ArrayDeque<>();
+    private long inFlightBytes = 0;
+    /** The position after the last window that has been scheduled. */
+    private long nextWindowPos = 0;
+    private int windowSize;
+
+    private long fp = 0;
+    /** The position where the previous read ended, or -1. */
+    private long lastReadEnd = -1;
+    private boolean sequential = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a stream reading ahead of <code>source</code> with the default
+     * settings, on a shared executor.
+     */
+    public ReadAheadStream(ReadableRandomAccessStream source) {
+        this(source, DEFAULT_INITIAL_WINDOW, DEFAULT_MAX_WINDOW, DEFAULT_MAX_IN_FLIGHT, null, new Statistics());
+    }
+
+    /**
+     * Creates a stream reading ahead of <code>source</code>.
+     *
+     * @param source        the stream to read from. It is owned by this
+     *                      stream from now on, and closed with it.
+     * @param initialWindow the size of the first window read ahead.
+     * @param maxWindow     the maximum window size.
+     * @param maxInFlight   the maximum number of bytes read ahead at a time.
+     * @param executor      the executor that windows are read on, or
+     *                      <code>null</code> for a shared one with daemon
+     *                      threads.
+     * @param statistics    the counters to update.
+     */
+    public ReadAheadStream(ReadableRandomAccessStream source, int initialWindow, int maxWindow, long maxInFlight,
+                           Executor executor, Statistics statistics) {
+        if (initialWindow <= 0)
+            throw new IllegalArgumentException("'initialWindow' must be positive");
+        if (maxWindow < initialWindow)
+            throw new IllegalArgumentException("'maxWindow' must be at least 'initialWindow'");
+        if (maxInFlight < 0)
+            throw new IllegalArgumentException("'maxInFlight' must not be negative");
+
+        this.source = source;
+        this.sourceReader = source instanceof PositionalReadable p ? p : null;
+        this.forkFilter = source instanceof ForkFilter f ? f : null;
+        this.length = source.length();
+        this.initialWindow = initialWindow;
+        this.maxWindow = maxWindow;
+        this.maxInFlight = maxInFlight;
+        this.executor = executor != null ? executor : getDefaultExecutor();
+        this.statistics = statistics;
+        this.windowSize = initialWindow;
+    }
+
+    private static ExecutorService getDefaultExecutor() {
+        ExecutorService e = defaultExecutor;
+        if (e == null) {
+            synchronized (ReadAheadStream.class) {
+                e = defaultExecutor;
+                if (e == null) {
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    e = Executors.newCachedThreadPool(r -> {
+                        Thread t = new Thread(r, "read-ahead-" + threadNumber.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    defaultExecutor = e;
+                }
+            }
+        }
+
+        return e;
+    }
+
+    /**
+     * Returns the pool for window buffers of at least <code>length</code>
+     * bytes. The buffer sizes are powers of two from the initial window size
+     * up to the maximum window size, so the windows of one stream, which
+     * double in size, use a few pools only.
+     */
+    private ByteArrayPool getWindowBufferPool(int length) {
+        long bufferSize = initialWindow;
+        while (bufferSize < length)
+            bufferSize *= 2;
+
+        return windowBufferPools.computeIfAbsent((int) Math.min(maxWindow, bufferSize),
+                size -> new ByteArrayPool(size, POOLED_WINDOW_BUFFERS));
+    }
+
+    /**
+     * Reads from the source at <code>pos</code>. Unless the source supports
+     * positional reads, this locks the source, since background reads share
+     * it with the consumer.
+     */
+    private int readSource(long pos, byte[] data, int off, int len) {
+        if (sourceReader != null)
+            return sourceReader.readAt(pos, data, off, len);
+
+        synchronized (source) {
+            source.seek(pos);
+            return source.read(data, off, len);
+        }
+    }
+
+    @Override
+    public int read(byte[] data, int off, int len) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (len == 0)
+            return 0;
+        if (fp >= length)
+            return -1;
+
+        if (fp != lastReadEnd) {
+            // Not a sequential read, so start over.
+            dropWindows();
+            windowSize = initialWindow;
+            sequential = false;
+        } else {
+            sequential = true;
+        }
+
+        int bytesRead = 0;
+        while (bytesRead < len && !windows.isEmpty()) {
+            Window w = windows.peekFirst();
+            if (fp < w.pos)
+                break;
+
+            int windowLength = w.await();
+            if (windowLength < 0) {
+                // Read it here instead, where any error will reach the caller.
+                dropWindows();
+                break;
+            }
+
+            long windowEnd = w.pos + windowLength;
+            if (fp < windowEnd) {
+                int bytesToCopy = (int) Math.min(len - bytesRead, windowEnd - fp);
+                w.copy(fp, data, off + bytesRead, bytesToCopy);
+                fp += bytesToCopy;
+                bytesRead += bytesToCopy;
+                statistics.hitBytes.add(bytesToCopy);
+            }
+
+            if (fp >= windowEnd) {
+                windows.removeFirst();
+                w.release();
+                inFlightBytes -= w.length;
+                if (windowLength < w.length) {
+                    // The source ended early, so the rest can't be trusted.
+                    dropWindows();
+                }
+            }
+        }
+
+        if (bytesRead == 0) {
+            dropWindows();
+            bytesRead = readSource(fp, data, off, len);
+            if (bytesRead <= 0)
+                return -1;
+
+            fp += bytesRead;
+            statistics.missBytes.add(bytesRead);
+        }
+
+        lastReadEnd = fp;
+        if (sequential)
+            scheduleWindows();
+
+        return bytesRead;
+    }
+
+    /**
+     * Schedules windows after the current position until the in-flight limit
+     * is reached.
+     */
+    private void scheduleWindows() {
+        if (windows.isEmpty())
+            nextWindowPos = fp;
+
+        while (nextWindowPos < length && (windows.isEmpty() || inFlightBytes + windowSize <= maxInFlight)) {
+            long windowEnd = Math.min(length, nextWindowPos + windowSize);
+            if (forkFilter != null) {
+                // End at the end of the extent if that doesn't make the window
+                // too small.
+                long extentEnd = forkFilter.getExtentEnd(nextWindowPos);
+                if (extentEnd < windowEnd && extentEnd - nextWindowPos >= initialWindow)
+                    windowEnd = extentEnd;
+            }
+
+            Window w = new Window(nextWindowPos, (int) (windowEnd - nextWindowPos));
+            windows.addLast(w);
+            inFlightBytes += w.length;
+            nextWindowPos = windowEnd;
+            windowSize = Math.min(maxWindow, windowSize * 2);
+
+            statistics.readAheadBytes.add(w.length);
+            statistics.windowCount.increment();
+            executor.execute(w.task);
+        }
+    }
+
+    /**
+     * Drops all windows that haven't been consumed. Windows that are being
+     * read finish in the background, and their data is thrown away.
+     */
+    private void dropWindows() {
+        for (Window w : windows) {
+            w.release();
+            long consumed = Math.max(0, Math.min(fp - w.pos, w.length));
+            statistics.wastedBytes.add(w.length - consumed);
+        }
+
+        windows.clear();
+        inFlightBytes = 0;
+    }
+
+    /**
+     * Reads from the source at <code>pos</code>, without using or affecting
+     * the data read ahead or the file pointer.
+     */
+    @Override
+    public int readAt(long pos, byte[] data, int off, int len) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative position: " + pos);
+        if (len == 0)
+            return 0;
+        if (pos >= length)
+            return -1;
+
+        return readSource(pos, data, off, len);
+    }
+
+    @Override
+    public void seek(long pos) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative seek position: " + pos);
+
+        fp = pos;
+    }
+
+    @Override
+    public long length() throws RuntimeIOException {
+        return length;
+    }
+
+    @Override
+    public long getFilePointer() throws RuntimeIOException {
+        return fp;
+    }
+
+    /** Returns the counters that this stream updates. */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void close() throws RuntimeIOException {
+        if (closed)
+            return;
+
+        closed = true;
+        dropWindows();
+        source.close();
+    }
+}
@@ -49,7 +49,6 @@ import org.catacombae.hfs.types.hfscommon.CommonHFSVolumeHeader;
 import org.catacombae.io.Readable;
 import org.catacombae.io.ReadableConcatenatedStream;
 import org.catacombae.io.ReadableRandomAccessStream;
-import org.catacombae.io.ReadableRandomAccessSubstream;
 import org.catacombae.util.Util;
 
 
@@ -90,6 +89,12 @@ public class HFSOriginalVolume extends HFSVolume {
         return CommonHFSVolumeHeader.create(getHFSMasterDirectoryBlock());
     }
 
+    @Override
+    protected long readVolumeHeaderStamp() {
+        // drLsMod is located at offset 6 and drWrCnt at offset 70.
+        return readVolumeHeaderStamp(6, 70);
+    }
+
     private HFSOriginalAllocationFile createAllocationFile() {
         MasterDirectoryBlock mdb = getHFSMasterDirectoryBlock();
 
@@ -97,7 +102,7 @@ public class HFSOriginalVolume extends HFSVolume {
         int volumeBitmapSize = numAllocationBlocks / 8 + (numAllocationBlocks % 8 != 0 ? 1 : 0);
 
         ReadableConcatenatedStream volumeBitmapStream =
-                new ReadableConcatenatedStream(new ReadableRandomAccessSubstream(hfsFile),
+                new ReadableConcatenatedStream(createMetadataStream(),
                         512L * Util.unsign(mdb.getDrVBMSt()), volumeBitmapSize);
 
         return new HFSOriginalAllocationFile(this, volumeBitmapStream);
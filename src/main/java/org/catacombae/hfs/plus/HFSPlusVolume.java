@@ -48,7 +48,6 @@ import org.catacombae.hfs.types.hfsplus.HFSPlusVolumeHeader;
 import org.catacombae.hfs.types.hfsplus.HFSUniStr255;
 import org.catacombae.io.Readable;
 import org.catacombae.io.ReadableRandomAccessStream;
-import org.catacombae.io.ReadableRandomAccessSubstream;
 import org.catacombae.io.SynchronizedReadableRandomAccess;
 import org.catacombae.util.Util;
 
@@ -108,6 +107,12 @@ public class HFSPlusVolume extends HFSVolume {
         return CommonHFSVolumeHeader.create(getHFSPlusVolumeHeader());
     }
 
+    @Override
+    protected long readVolumeHeaderStamp() {
+        // modifyDate is located at offset 20 and writeCount at offset 68.
+        return readVolumeHeaderStamp(20, 68);
+    }
+
     private HFSPlusAllocationFile createAllocationFile() {
         HFSPlusVolumeHeader vh = getHFSPlusVolumeHeader();
 
@@ -118,7 +123,7 @@ public class HFSPlusVolume extends HFSVolume {
                 getCommonHFSCatalogNodeID(ReservedID.ALLOCATION_FILE).toLong(),
                 allocationFileFork,
                 extentsOverflowFile,
-                new ReadableRandomAccessSubstream(hfsFile),
+                createMetadataStream(),
                 0, Util.unsign(vh.getBlockSize()), 0);
 
         return new HFSPlusAllocationFile(this, allocationFileStream);
@@ -18,6 +18,7 @@
 package org.catacombae.hfs.types.hfscommon;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
@@ -26,8 +27,73 @@ import java.util.List;
 public abstract class CommonBTKeyedNode<R extends CommonBTKeyedRecord<?>>
         extends CommonBTNode<R> {
 
+    /** Set by {@link #setUnorderedKeys()}. */
+    private volatile boolean unorderedKeys = false;
+
+    /** Keys that have been decoded so far, without their records. */
+    private final AtomicReferenceArray<CommonBTKey<?>> decodedKeys;
+
     protected CommonBTKeyedNode(byte[] data, int offset, int nodeSize, FSType type) {
         super(data, offset, nodeSize, type);
+        this.decodedKeys = new AtomicReferenceArray<>(getNumberOfRecords());
+    }
+
+    /**
+     * Decodes only the key of a record. Subclasses whose records are
+     * expensive to decode should override this so that searching the node
+     * doesn't have to decode the records. The default implementation returns
+     * <code>null</code>, which means that the whole record is decoded.
+     *
+     * @param recordNumber the index of the record in the node.
+     * @param data         the node data.
+     * @param offset       the offset of the record in <code>data</code>.
+     * @param length       the length of the record.
+     * @return the key of the record, or <code>null</code> if not supported.
+     */
+    protected CommonBTKey<?> createBTKey(int recordNumber, byte[] data, int offset, int length) {
+        return null;
+    }
+
+    /**
+     * Returns the key of the record at <code>index</code>. If the record
+     * hasn't been decoded yet, only the key is decoded when possible.
+     *
+     * @param index the index of the record in the node.
+     * @return the key of the record.
+     */
+    public CommonBTKey<?> getBTKey(int index) {
+        CommonBTKey<?> key = decodedKeys.get(index);
+        if (key == null) {
+            key = createBTKey(index, ic.data, ic.getRecordOffset(index), ic.getRecordLength(index));
+            if (key == null) {
+                key = getBTRecord(index).getKey();
+            }
+            decodedKeys.set(index, key);
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns whether the keys of the records in this node have been found to
+     * be out of order, so that the node can't be binary searched. A well
+     * formed node always has ordered keys, but nodes read from a corrupt
+     * volume might not. The keys are not checked up front; searches report
+     * disorder with {@link #setUnorderedKeys()} when they come across it.
+     *
+     * @return <code>true</code> if the keys of this node are known to be out
+     * of order, <code>false</code> otherwise.
+     */
+    public boolean hasUnorderedKeys() {
+        return unorderedKeys;
+    }
+
+    /**
+     * Records that the keys of this node are out of order, so that later
+     * searches scan the node linearly.
+     */
+    public void setUnorderedKeys() {
+        unorderedKeys = true;
     }
 
     public R getBTKeyedRecord(int index) {
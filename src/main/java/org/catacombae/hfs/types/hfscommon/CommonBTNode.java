@@ -18,9 +18,10 @@
 package org.catacombae.hfs.types.hfscommon;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.catacombae.csjc.PrintableStruct;
 import org.catacombae.hfs.types.hfs.NodeDescriptor;
@@ -31,6 +32,12 @@ import org.catacombae.util.Util;
 /**
  * Generalization of a B-tree node which suits both HFS and HFS+/HFSX
  * implementations.
+ * <p>
+ * A node is a view over the raw node data that it was created from. Only the
+ * node descriptor and the record offset table are decoded up front, and each
+ * record is decoded the first time it is accessed. The node data array is
+ * referenced, not copied, so it must not be modified after the node has been
+ * created.
  *
  * @author <a href="https://catacombae.org" target="_top">Erik Larsson</a>
  */
@@ -61,6 +68,14 @@ public abstract class CommonBTNode<R extends CommonBTRecord> implements Printabl
         return ic.getBTRecord(index);
     }
 
+    /**
+     * Returns the number of records in this node, without decoding any of
+     * them.
+     */
+    public int getNumberOfRecords() {
+        return ic.getNumberOfRecords();
+    }
+
     public List<R> getBTRecords() {
         return ic.getBTRecords();
     }
@@ -95,18 +110,33 @@ public abstract class CommonBTNode<R extends CommonBTRecord> implements Printabl
         protected final List<R> records;
         protected final short[] offsets;
 
+        /** The raw node data that records are decoded from. */
+        protected final byte[] data;
+        protected final int offset;
+
+        /** Records that have been decoded so far. */
+        private final AtomicReferenceArray<R> decodedRecords;
+
         protected InternalContainer(CommonBTNodeDescriptor nodeDescriptor, byte[] data, int offset, int nodeSize) {
             this.nodeDescriptor = nodeDescriptor;
+            this.data = data;
+            this.offset = offset;
             offsets = new short[nodeDescriptor.getNumberOfRecords() + 1]; // Last one is free space index
             for (int i = 0; i < offsets.length; ++i) {
                 offsets[i] = Util.readShortBE(data, offset + nodeSize - ((i + 1) * 2));
             }
-            ArrayList<R> tmpRecords = new ArrayList<>(offsets.length - 1);
-            for (int i = 0; i < offsets.length - 1; ++i) {
-                int len = offsets[i + 1] - offsets[i];
-                tmpRecords.add(createBTRecord(i, data, offset + offsets[i], len));
-            }
-            this.records = Collections.unmodifiableList(tmpRecords);
+            this.decodedRecords = new AtomicReferenceArray<>(offsets.length - 1);
+            this.records = new RecordList();
+        }
+
+        /** Returns the offset of record <code>index</code> in {@link #data}. */
+        protected int getRecordOffset(int index) {
+            return offset + offsets[index];
+        }
+
+        /** Returns the length of record <code>index</code>. */
+        protected int getRecordLength(int index) {
+            return offsets[index + 1] - offsets[index];
         }
 
         public CommonBTNodeDescriptor getNodeDescriptor() {
@@ -114,7 +144,33 @@ public abstract class CommonBTNode<R extends CommonBTRecord> implements Printabl
         }
 
         public R getBTRecord(int index) {
-            return records.get(index);
+            R record = decodedRecords.get(index);
+            if (record == null) {
+                // Concurrent callers may decode the same record twice, which is
+                // harmless since records are immutable.
+                record = createBTRecord(index, data, getRecordOffset(index), getRecordLength(index));
+                decodedRecords.set(index, record);
+            }
+
+            return record;
+        }
+
+        public int getNumberOfRecords() {
+            return decodedRecords.length();
+        }
+
+        /** Unmodifiable list decoding the records of the node on access. */
+        private class RecordList extends AbstractList<R> implements RandomAccess {
+
+            @Override
+            public R get(int index) {
+                return getBTRecord(index);
+            }
+
+            @Override
+            public int size() {
+                return getNumberOfRecords();
+            }
         }
 
         public List<R> getBTRecords() {
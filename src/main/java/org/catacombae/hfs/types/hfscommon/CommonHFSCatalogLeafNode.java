@@ -17,7 +17,9 @@
 
 package org.catacombae.hfs.types.hfscommon;
 
+import org.catacombae.hfs.types.hfs.CatKeyRec;
 import org.catacombae.hfs.types.hfsplus.HFSPlusCatalogKey;
+import org.catacombae.hfs.types.hfsx.HFSXCatalogKey;
 
 
 /**
@@ -33,6 +35,11 @@ public abstract class CommonHFSCatalogLeafNode extends CommonBTKeyedNode<CommonH
         return ic.records.toArray(CommonHFSCatalogLeafRecord[]::new);
     }
 
+    @Override
+    public CommonHFSCatalogKey getBTKey(int index) {
+        return (CommonHFSCatalogKey) super.getBTKey(index);
+    }
+
     public static CommonHFSCatalogLeafNode createHFSPlus(byte[] data, int offset, int nodeSize) {
         return new HFSPlusImplementation(data, offset, nodeSize);
     }
@@ -52,8 +59,9 @@ public abstract class CommonHFSCatalogLeafNode extends CommonBTKeyedNode<CommonH
             super(data, offset, nodeSize, FSType.HFS_PLUS);
         }
 
-        protected HFSPlusCatalogKey createKey(byte[] data, int offset, int length) {
-            return new HFSPlusCatalogKey(data, offset);
+        @Override
+        protected CommonHFSCatalogKey createBTKey(int recordNumber, byte[] data, int offset, int length) {
+            return CommonHFSCatalogKey.create(new HFSPlusCatalogKey(data, offset));
         }
 
         @Override
@@ -73,6 +81,11 @@ public abstract class CommonHFSCatalogLeafNode extends CommonBTKeyedNode<CommonH
                 super(data, offset, nodeSize, FSType.HFS_PLUS);
             }
 
+            @Override
+            protected CommonHFSCatalogKey createBTKey(int recordNumber, byte[] data, int offset, int length) {
+                return CommonHFSCatalogKey.create(new HFSXCatalogKey(data, offset, keyCompareType));
+            }
+
             @Override
             protected CommonHFSCatalogLeafRecord createBTRecord(int recordNumber, byte[] data, int offset, int length) {
                 return CommonHFSCatalogLeafRecord.createHFSX(data, offset, length, keyCompareType);
@@ -95,6 +108,11 @@ public abstract class CommonHFSCatalogLeafNode extends CommonBTKeyedNode<CommonH
             super(data, offset, nodeSize, FSType.HFS);
         }
 
+        @Override
+        protected CommonHFSCatalogKey createBTKey(int recordNumber, byte[] data, int offset, int length) {
+            return CommonHFSCatalogKey.create(new CatKeyRec(data, offset));
+        }
+
         @Override
         protected CommonHFSCatalogLeafRecord createBTRecord(int recordNumber, byte[] data, int offset, int length) {
             return CommonHFSCatalogLeafRecord.createHFS(data, offset, length);
@@ -21,6 +21,7 @@ import java.io.File;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.catacombae.hfs.ProgressMonitor;
 
@@ -76,6 +77,9 @@ public interface ExtractProgressMonitor extends ProgressMonitor {
         private volatile DirectoryExistsAction dirExistsAction = DirectoryExistsAction.PROMPT_USER;
         private volatile FileExistsAction fileExistsAction = FileExistsAction.PROMPT_USER;
         private volatile UnhandledExceptionAction unhandledExceptionAction = UnhandledExceptionAction.PROMPT_USER;
+        private volatile boolean sparseFiles = false;
+        private volatile boolean physicalOrder = false;
+        private final LongAdder holeBytes = new LongAdder();
 
         public CreateDirectoryFailedAction getCreateDirectoryFailedAction() {
             return createDirAction;
@@ -97,6 +101,30 @@ public interface ExtractProgressMonitor extends ProgressMonitor {
             return unhandledExceptionAction;
         }
 
+        /**
+         * Returns whether files should be written with holes where they
+         * contain whole blocks of zeros.
+         */
+        public boolean getSparseFiles() {
+            return sparseFiles;
+        }
+
+        /**
+         * Returns whether files should be extracted in the order that their
+         * data is stored on disk, rather than in catalog order.
+         */
+        public boolean getPhysicalOrder() {
+            return physicalOrder;
+        }
+
+        /**
+         * Returns the number of bytes of zeros that have been left as holes
+         * in sparse files so far.
+         */
+        public long getHoleBytes() {
+            return holeBytes.sum();
+        }
+
         public void setCreateDirectoryFailedAction(CreateDirectoryFailedAction action) {
             createDirAction = action;
             notifyListeners(action);
@@ -122,6 +150,27 @@ public interface ExtractProgressMonitor extends ProgressMonitor {
             notifyListeners(action);
         }
 
+        /**
+         * Sets whether files should be written as sparse files. This is not
+         * a reaction to a failure, so listeners aren't notified.
+         */
+        public void setSparseFiles(boolean sparseFiles) {
+            this.sparseFiles = sparseFiles;
+        }
+
+        /**
+         * Sets whether files should be extracted in physical order. This
+         * only has an effect before the extraction starts, so listeners
+         * aren't notified.
+         */
+        public void setPhysicalOrder(boolean physicalOrder) {
+            this.physicalOrder = physicalOrder;
+        }
+
+        public void addHoleBytes(long bytes) {
+            holeBytes.add(bytes);
+        }
+
         public void addListener(ExtractPropertiesListener listener) {
             listeners.addLast(listener);
         }
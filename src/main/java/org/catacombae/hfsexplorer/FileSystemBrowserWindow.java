@@ -36,14 +36,18 @@ import java.lang.System.Logger.Level;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Stream;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
@@ -80,15 +84,20 @@ import org.catacombae.hfsexplorer.fs.AppleSingleBuilder;
 import org.catacombae.hfsexplorer.fs.AppleSingleBuilder.AppleSingleVersion;
 import org.catacombae.hfsexplorer.fs.AppleSingleBuilder.FileSystem;
 import org.catacombae.hfsexplorer.fs.AppleSingleBuilder.FileType;
+import org.catacombae.hfsexplorer.fs.PhysicalOrderPlan;
+import org.catacombae.hfsexplorer.fs.ZipExtractor;
 import org.catacombae.hfsexplorer.gui.ErrorSummaryPanel;
 import org.catacombae.hfsexplorer.gui.FileOperationsPanel;
 import org.catacombae.hfsexplorer.gui.HFSExplorerJFrame;
 import org.catacombae.hfsexplorer.gui.MemoryStatisticsPanel;
 import org.catacombae.hfsexplorer.helpbrowser.HelpBrowserPanel;
+import org.catacombae.hfsexplorer.io.ParallelZipWriter;
+import org.catacombae.hfsexplorer.io.SparseFileOutputStream;
 import org.catacombae.io.ReadableConcatenatedStream;
 import org.catacombae.io.ReadableFileStream;
 import org.catacombae.io.ReadableRandomAccessStream;
 import org.catacombae.io.ReadableRandomAccessSubstream;
+import org.catacombae.io.RuntimeIOException;
 import org.catacombae.io.SynchronizedReadableRandomAccessStream;
 import org.catacombae.storage.fs.FSAttributes.POSIXFileAttributes;
 import org.catacombae.storage.fs.FSEntry;
@@ -106,6 +115,8 @@ import org.catacombae.storage.fs.hfscommon.HFSCommonFileSystemHandler;
 import org.catacombae.storage.fs.hfscommon.HFSCommonFileSystemRecognizer;
 import org.catacombae.storage.fs.hfscommon.HFSCommonFileSystemRecognizer.FileSystemType;
 import org.catacombae.storage.io.DataLocator;
+import org.catacombae.storage.io.MappedFileDataLocator;
+import org.catacombae.storage.io.ReadableFileChannelStream;
 import org.catacombae.storage.io.ReadableStreamDataLocator;
 import org.catacombae.storage.io.win32.ReadableWin32FileStream;
 import org.catacombae.storage.ps.Partition;
@@ -710,6 +721,8 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
                 fsFile = new ReadableSparseBundleStream(f);
             } else if (ReadableWin32FileStream.isSystemSupported()) {
                 fsFile = new ReadableWin32FileStream(filename);
+            } else if (MappedFileDataLocator.isSupported(f)) {
+                fsFile = openMappedFile(f);
             } else {
                 fsFile = new ReadableFileStream(filename);
             }
@@ -731,6 +744,19 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
         }
     }
 
+    /**
+     * Opens a plain file through memory mapping, or through a regular file
+     * stream if it can't be mapped.
+     */
+    private static ReadableRandomAccessStream openMappedFile(File f) {
+        try {
+            return new MappedFileDataLocator(f).createReadOnlyFile();
+        } catch (RuntimeException e) {
+            logger.log(Level.DEBUG, "Could not memory map \"" + f + "\", falling back to regular reads: " + e);
+            return new ReadableFileChannelStream(f);
+        }
+    }
+
     public void loadFSWithUDIFAutodetect(String displayName,
                                          ReadableRandomAccessStream fsFile, long pos) {
         {
@@ -1084,29 +1110,92 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
     }
 
     private static long extractForkToStream(FSFork theFork, OutputStream os, ProgressMonitor pm) throws IOException {
-        ReadableRandomAccessStream forkFilter = theFork.getReadableRandomAccessStream();
-//        System.out.println("extractForkToStream working with a " + forkFilter.getClass());
         long originalLength = theFork.getLength();
-        long bytesToRead = originalLength;
-        byte[] buffer = new byte[1 * 1024 * 1024];
-        while (bytesToRead > 0) {
-            if (pm.cancelSignaled()) {
-                break;
-//                System.out.print("forkFilter.read([].length=" + buffer.length + ", 0, " + (bytesToRead < buffer.length ? (int)bytesToRead : buffer.length) + "...");
+        if (os instanceof FileOutputStream fos) {
+            long bytesTransferred = transferForkToFile(theFork, fos, pm);
+            if (bytesTransferred >= 0)
+                return bytesTransferred;
+        }
+
+        ReadableRandomAccessStream forkFilter = theFork.getReadableRandomAccessStream();
+        try {
+            if (originalLength >= IOUtil.PIPELINE_THRESHOLD) {
+                // Large enough that reading and writing should overlap.
+                return IOUtil.pipelinedCopy(forkFilter, os, pm);
+            }
+
+//            System.out.println("extractForkToStream working with a " + forkFilter.getClass());
+            long bytesToRead = originalLength;
+            byte[] buffer = new byte[1 * 1024 * 1024];
+            while (bytesToRead > 0) {
+                if (pm.cancelSignaled()) {
+                    break;
+//                    System.out.print("forkFilter.read([].length=" + buffer.length + ", 0, " + (bytesToRead < buffer.length ? (int)bytesToRead : buffer.length) + "...");
+                }
+                int bytesRead = forkFilter.read(buffer, 0, (bytesToRead < buffer.length ? (int) bytesToRead : buffer.length));
+//                System.out.println("done. bytesRead = " + bytesRead);
+                if (bytesRead < 0) {
+                    break;
+                } else {
+//                    System.out.println("Read the following from the forkfilter (" + bytesRead + " bytes): ");
+//                    System.out.println(Util.byteArrayToHexString(buffer, 0, bytesRead));
+                    pm.addDataProgress(bytesRead);
+                    os.write(buffer, 0, bytesRead);
+                    bytesToRead -= bytesRead;
+                }
             }
-            int bytesRead = forkFilter.read(buffer, 0, (bytesToRead < buffer.length ? (int) bytesToRead : buffer.length));
-//            System.out.println("done. bytesRead = " + bytesRead);
-            if (bytesRead < 0) {
+            return originalLength - bytesToRead;
+        } finally {
+            // Stops any read-ahead that is still going on.
+            forkFilter.close();
+        }
+    }
+
+    /**
+     * Copies <code>theFork</code> to <code>fos</code> in chunks with
+     * {@link FSFork#transferTo}, so that the operating system moves the data.
+     *
+     * @return the number of bytes copied, or -1 if the fork can't be copied
+     * this way.
+     */
+    private static long transferForkToFile(FSFork theFork, FileOutputStream fos, ProgressMonitor pm) {
+        final long chunkSize = 8 * 1024 * 1024;
+        long length = theFork.getLength();
+        long bytesTransferred = 0;
+        while (bytesTransferred < length) {
+            if (pm.cancelSignaled())
+                break;
+
+            long curBytesTransferred = theFork.transferTo(bytesTransferred,
+                    Math.min(chunkSize, length - bytesTransferred), fos.getChannel());
+            if (curBytesTransferred < 0) {
+                if (bytesTransferred == 0)
+                    return -1;
+
+                throw new RuntimeIOException("Fork could no longer be transferred after " + bytesTransferred +
+                        " bytes.");
+            } else if (curBytesTransferred == 0) {
                 break;
-            } else {
-//                System.out.println("Read the following from the forkfilter (" + bytesRead + " bytes): ");
-//                System.out.println(Util.byteArrayToHexString(buffer, 0, bytesRead));
-                pm.addDataProgress(bytesRead);
-                os.write(buffer, 0, bytesRead);
-                bytesToRead -= bytesRead;
             }
+
+            pm.addDataProgress(curBytesTransferred);
+            bytesTransferred += curBytesTransferred;
+        }
+
+        return bytesTransferred;
+    }
+
+    /**
+     * Reads all of <code>fork</code> into memory, and closes the stream that
+     * it was read from.
+     */
+    private static byte[] readForkFully(FSFork fork) {
+        ReadableRandomAccessStream in = fork.getReadableRandomAccessStream();
+        try {
+            return IOUtil.readFully(in);
+        } finally {
+            in.close();
         }
-        return originalLength - bytesToRead;
     }
 
     private static long extractAdditionalForksToAppleDoubleStream(
@@ -1126,13 +1215,13 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
             for (FSFork f : entry.getAllForks()) {
                 FSForkType forkType = f.getType();
                 if (forkType == FSForkType.MACOS_RESOURCE) {
-                    resourceForkData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                    resourceForkData = readForkFully(f);
                     extractedBytes += resourceForkData.length;
                 } else if (forkType == FSForkType.MACOS_FINDERINFO) {
-                    finderInfoData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                    finderInfoData = readForkFully(f);
                     extractedBytes += finderInfoData.length;
                 } else if (f.hasXattrName()) {
-                    byte[] attributeData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                    byte[] attributeData = readForkFully(f);
                     attributeList.add(new Pair<>(f.getXattrName(), attributeData));
                     extractedBytes += attributeData.length;
                 }
@@ -1494,8 +1583,14 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
 
                                 if (!progress.cancelSignaled()) {
                                     if (errorMessages.isEmpty()) {
+                                        String message = "Extraction finished.";
+                                        ExtractProperties extractProperties = progress.getExtractProperties();
+                                        if (extractProperties.getSparseFiles()) {
+                                            message += "\n" + extractProperties.getHoleBytes() +
+                                                    " bytes of zeros were left as holes in sparse files.";
+                                        }
                                         JOptionPane.showMessageDialog(progress,
-                                                "Extraction finished.", "Information",
+                                                message, "Information",
                                                 JOptionPane.INFORMATION_MESSAGE);
                                     } else {
                                         ErrorSummaryPanel.createErrorSummaryDialog(progress, errorMessages).setVisible(true);
@@ -1544,6 +1639,93 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
 //        fileChooser.setCurrentDirectory(fileChooser.getCurrentDirectory());
     }
 
+    /**
+     * Extracts the selection, with resource forks and extended attributes, into
+     * a ZIP archive. The data is compressed on all processors.
+     */
+    private void actionExtractToZip(String[] parentPath, List<FSEntry> selection) {
+        if (selection.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No file or folder selected.",
+                    "Information", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        JFileChooser jfc = new JFileChooser();
+        jfc.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        jfc.setMultiSelectionEnabled(false);
+        SimplerFileFilter ffZip = new SimplerFileFilter(".zip", "ZIP archive (.zip)");
+        jfc.setFileFilter(ffZip);
+        if (selection.size() == 1)
+            jfc.setSelectedFile(new File(selection.get(0).getName() + ffZip.getExtension()));
+        if (jfc.showSaveDialog(FileSystemBrowserWindow.this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        File selectedFile = jfc.getSelectedFile();
+        File saveFile;
+        if (jfc.getFileFilter() == ffZip && !selectedFile.getName().endsWith(ffZip.getExtension()))
+            saveFile = new File(selectedFile.getParentFile(), selectedFile.getName() + ffZip.getExtension());
+        else
+            saveFile = selectedFile;
+
+        if (saveFile.exists()) {
+            int res = JOptionPane.showConfirmDialog(this, "The file:\n  " + saveFile.getPath() +
+                            "\nAlready exists. Do you want to overwrite?", "Confirm overwrite",
+                    JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (res != JOptionPane.YES_OPTION)
+                return;
+        }
+
+        ExtractProgressDialog progress = new ExtractProgressDialog(this);
+        Runnable r = () -> {
+            try {
+                // Only file data is counted as progress, AppleDouble files
+                // are small in comparison.
+                long dataSize = calculateForkSizeRecursive(parentPath, selection, progress, true, false, false);
+                if (progress.cancelSignaled()) {
+                    progress.confirmCancel();
+                    return;
+                }
+                progress.setDataSize(dataSize);
+
+                LinkedList<String> errorMessages = new LinkedList<>();
+                FileChannel channel = FileChannel.open(saveFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try (ParallelZipWriter zip =
+                             new ParallelZipWriter(channel, Runtime.getRuntime().availableProcessors())) {
+                    ZipExtractor z = new ZipExtractor(zip, true, progress, errorMessages::addLast);
+                    for (FSEntry e : selection) {
+                        if (progress.cancelSignaled())
+                            break;
+                        z.addEntry(e, e.getName());
+                    }
+                }
+
+                if (!progress.cancelSignaled()) {
+                    if (errorMessages.isEmpty()) {
+                        JOptionPane.showMessageDialog(progress, "Extraction finished.", "Information",
+                                JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        ErrorSummaryPanel.createErrorSummaryDialog(progress, errorMessages).setVisible(true);
+                    }
+                } else {
+                    // An archive of part of the selection would only be
+                    // mistaken for the whole thing later on.
+                    saveFile.delete();
+                    JOptionPane.showMessageDialog(progress, "Extraction was aborted.",
+                            "Aborted extraction", JOptionPane.WARNING_MESSAGE);
+                    progress.confirmCancel();
+                }
+            } catch (Throwable t) {
+                logger.log(Level.ERROR, t.getMessage(), t);
+                GUIUtil.displayExceptionDialog(t, progress);
+            } finally {
+                progress.dispose();
+            }
+        };
+        new Thread(r).start();
+        progress.setVisible(true);
+    }
+
     private void actionOpenInHFSExplorer(List<FSEntry> selection) {
         for (FSEntry e : selection) {
             ReadableRandomAccessStream stream;
@@ -1587,10 +1769,67 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
                                             boolean calculateAdditionalForksSize, boolean followSymlinks) {
         CalculateTreeSizeVisitor sizeVisitor = new CalculateTreeSizeVisitor(progress, calculateDataForkSize,
                 calculateAdditionalForksSize);
-        traverseTree(parentPath, selection, sizeVisitor, followSymlinks);
+        if (!followSymlinks && isSubtreeScanPreferred(selection)) {
+            // Without links to follow, the files in large subtrees are found
+            // faster by scanning the catalog than by walking the tree.
+            scanTree(parentPath, selection, sizeVisitor);
+        } else {
+            traverseTree(parentPath, selection, sizeVisitor, followSymlinks);
+        }
         return sizeVisitor.getSize();
     }
 
+    private boolean isSubtreeScanPreferred(List<FSEntry> selection) {
+        FSFolder[] folders = selection.stream().
+                filter(e -> e instanceof FSFolder).
+                toArray(FSFolder[]::new);
+        return folders.length > 0 && fsHandler.isSubtreeScanPreferred(folders);
+    }
+
+    /**
+     * Visits the files in the trees rooted at <code>entries</code> in no
+     * particular order, without following symbolic links. Only the selected
+     * folders are reported to
+     * {@link TreeVisitor#startDirectory(String[], FSFolder)}, and
+     * {@link TreeVisitor#endDirectory(String[], FSFolder)} is never called.
+     */
+    private void scanTree(String[] parentPath, List<FSEntry> entries, TreeVisitor visitor) {
+        String[] parentPathArray = parentPath != null ? parentPath : new String[0];
+        LinkedList<FSFolder> folders = new LinkedList<>();
+
+        for (FSEntry entry : entries) {
+            if (entry instanceof FSFile) {
+                visitor.file((FSFile) entry);
+            } else if (entry instanceof FSFolder folder) {
+                if (visitor.startDirectory(parentPathArray, folder)) {
+                    folders.add(folder);
+                }
+            } else if (entry instanceof FSLink) {
+                visitor.link((FSLink) entry);
+            }
+        }
+
+        if (folders.isEmpty() || visitor.cancelTraversal()) {
+            return;
+        }
+
+        try (Stream<FSEntry> subtreeEntries = fsHandler.scanSubtrees(folders.toArray(FSFolder[]::new))) {
+            Iterator<FSEntry> it = subtreeEntries.iterator();
+            while (it.hasNext() && !visitor.cancelTraversal()) {
+                FSEntry entry = it.next();
+                if (entry instanceof FSFile) {
+                    visitor.file((FSFile) entry);
+                } else if (entry instanceof FSLink) {
+                    visitor.link((FSLink) entry);
+                } else if (entry instanceof FSFolder) {
+                    // A directory hard link. Its contents are elsewhere in the
+                    // catalog, so walk it the usual way.
+                    traverseTree(parentPath, List.of(entry), visitor, false);
+                }
+            }
+        }
+    }
+
     private void traverseTree(
             String[] parentPath, List<FSEntry> entries, TreeVisitor visitor, boolean followSymbolicLinks) {
         LinkedList<String[]> absPathsStack = new LinkedList<>();
@@ -1843,6 +2082,7 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
         ExtractVisitor ev = new ExtractVisitor(progressDialog, errorMessages,
                 outDir, extractMainFork, extractAdditionalForks);
         traverseTree(parentPath, recs, ev, followSymbolicLinks);
+        ev.finish();
     }
 
 //    private void extractRecursive(FSEntry rec, LinkedList<String> pathStack,
@@ -2174,7 +2414,7 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
                 }
             }
 
-            FileOutputStream fos = null;
+            OutputStream fos = null;
             boolean extracted = false;
             try {
 //                try {
@@ -2206,6 +2446,13 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
                     fos = new FileOutputStream(outFile);
                     extractAdditionalForksToAppleDoubleStream(rec, fos,
                             progressDialog);
+                } else if (rec instanceof FSFile && extractProperties.getSparseFiles()) {
+                    SparseFileOutputStream sparseOut = new SparseFileOutputStream(outFile);
+                    fos = sparseOut;
+                    extractForkToStream(((FSFile) rec).getMainFork(), sparseOut,
+                            progressDialog);
+                    sparseOut.close();
+                    extractProperties.addHoleBytes(sparseOut.getSkippedBytes());
                 } else if (rec instanceof FSFile) {
                     fos = new FileOutputStream(outFile);
                     extractForkToStream(((FSFile) rec).getMainFork(), fos,
@@ -2490,6 +2737,15 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
         private final boolean extractMainFork;
         private final boolean extractAdditionalForks;
         private final LinkedList<File> outDirStack = new LinkedList<>();
+        /**
+         * Files waiting to be extracted in physical order, or null when
+         * files are extracted as they are visited.
+         */
+        private final PhysicalOrderPlan<Runnable> plan;
+        /** Directories whose attributes are set after the planned files. */
+        private final LinkedList<Runnable> directoryActions = new LinkedList<>();
+        /** Directories where the user chose to skip the rest of the files. */
+        private final HashSet<File> skippedDirs = new HashSet<>();
 
         public ExtractVisitor(ExtractProgressMonitor pm, LinkedList<String> errorMessages, File outDir,
                               boolean extractMainFork, boolean extractAdditionalForks) {
@@ -2499,6 +2755,7 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
             this.extractMainFork = extractMainFork;
             this.extractAdditionalForks = extractAdditionalForks;
             this.extractProperties = this.pm.getExtractProperties();
+            this.plan = extractProperties.getPhysicalOrder() ? new PhysicalOrderPlan<>() : null;
 
             if (this.pm == null)
                 throw new IllegalArgumentException("pm == null");
@@ -2652,19 +2909,29 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
         @Override
         public void endDirectory(String[] parentPath, FSFolder folder) {
             File outDir = outDirStack.removeLast();
+            File parentOutDir = outDirStack.getLast();
 
-            // Extract any extended attributes into an AppleDouble file in
-            // outDir's parent.
-            if (extractAdditionalForks) {
-                extractEntry(folder, outDirStack.getLast(), pm, errorMessages,
-                        extractProperties, skipDirectory, true);
-            }
+            Runnable finishDirectory = () -> {
+                // Extract any extended attributes into an AppleDouble file in
+                // outDir's parent.
+                if (extractAdditionalForks) {
+                    extractEntry(folder, parentOutDir, pm, errorMessages,
+                            extractProperties, skipDirectory, true);
+                }
+
+                // Finally reset the attributes of the directory to the attributes
+                // of the FSFolder to make sure that times, mode, ownership, etc.
+                // matches what we have in the file system (provided that there is
+                // support for these attributes in the target file system).
+                setExtractedEntryAttributes(outDir, folder, errorMessages);
+            };
 
-            // Finally reset the attributes of the directory to the attributes
-            // of the FSFolder to make sure that times, mode, ownership, etc.
-            // matches what we have in the file system (provided that there is
-            // support for these attributes in the target file system).
-            setExtractedEntryAttributes(outDir, folder, errorMessages);
+            if (plan != null) {
+                // The files in the directory haven't been extracted yet.
+                directoryActions.addLast(finishDirectory);
+            } else {
+                finishDirectory.run();
+            }
 
             skipDirectory.o = false;
         }
@@ -2676,6 +2943,22 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
 
             File outDir = outDirStack.getLast();
 
+            if (plan != null) {
+                // The forks are usually in different places, so they are
+                // ordered separately.
+                if (extractMainFork) {
+                    plan.add(PhysicalOrderPlan.getPosition(fsf.getMainFork()),
+                            () -> extractPlannedEntry(fsf, outDir, false));
+                }
+
+                if (extractAdditionalForks) {
+                    plan.add(PhysicalOrderPlan.getPosition(fsf, FSForkType.MACOS_RESOURCE),
+                            () -> extractPlannedEntry(fsf, outDir, true));
+                }
+
+                return;
+            }
+
             if (extractMainFork) {
                 extractEntry(fsf, outDir, pm, errorMessages, extractProperties,
                         skipDirectory, false);
@@ -2687,6 +2970,39 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
             }
         }
 
+        private void extractPlannedEntry(FSFile fsf, File outDir, boolean extractAdditionalForks) {
+            if (skippedDirs.contains(outDir))
+                return;
+
+            skipDirectory.o = false;
+            extractEntry(fsf, outDir, pm, errorMessages, extractProperties,
+                    skipDirectory, extractAdditionalForks);
+            if (skipDirectory.o)
+                skippedDirs.add(outDir);
+        }
+
+        /**
+         * Extracts the files collected in physical order, if that was
+         * chosen, and then sets the attributes of their directories.
+         */
+        public void finish() {
+            if (plan == null)
+                return;
+
+            for (Runnable job : plan.drain()) {
+                if (pm.cancelSignaled())
+                    return;
+                job.run();
+            }
+
+            skipDirectory.o = false;
+            for (Runnable action : directoryActions) {
+                if (pm.cancelSignaled())
+                    return;
+                action.run();
+            }
+        }
+
         @Override
         public void link(FSLink fsl) {
             File outDir = outDirStack.getLast();
@@ -2794,6 +3110,10 @@ public class FileSystemBrowserWindow extends HFSExplorerJFrame {
             bothExtractItem.addActionListener(e -> FileSystemBrowserWindow.this.actionExtractToDir(parentPath, userObjectList, true, true));
             jpm.add(bothExtractItem);
 
+            JMenuItem zipExtractItem = new JMenuItem("Extract to ZIP archive...");
+            zipExtractItem.addActionListener(e -> FileSystemBrowserWindow.this.actionExtractToZip(parentPath, userObjectList));
+            jpm.add(zipExtractItem);
+
             JMenuItem openInHFSExplorerItem = new JMenuItem("Open in HFSExplorer");
             openInHFSExplorerItem.addActionListener(e -> FileSystemBrowserWindow.this.actionOpenInHFSExplorer(userObjectList));
             jpm.add(openInHFSExplorerItem);
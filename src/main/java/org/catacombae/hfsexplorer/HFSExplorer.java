@@ -735,9 +735,7 @@ outer:
             throw new RuntimeException("Unexpected HFS fsHandler type: " + fsHandler.getClass());
 
         HFSVolume fsView = hfsHandler.getFSView();
-        CommonHFSCatalogFolderRecord rootRecord = fsView.getCatalogFile().getRootFolder();
-        CommonHFSCatalogFolderRecord currentDir = rootRecord;
-        recursiveFragmentSearch(fsView, rootRecord, mostFragmentedList, numberOfFilesToDisplay, options.verbose);
+        fragmentSearch(fsView, mostFragmentedList, numberOfFilesToDisplay, options.verbose);
         if (!options.verbose) println();
 
         println("Most fragmented files: ");
@@ -746,42 +744,67 @@ outer:
         }
     }
 
-    private static void recursiveFragmentSearch(HFSVolume fsView, CommonHFSCatalogLeafRecord currentDir,
-                                                ArrayList<Pair<CommonHFSCatalogLeafRecord, Integer>> mostFragmentedList,
-                                                int listMaxLength, boolean verbose) {
-        for (CommonHFSCatalogLeafRecord rec : fsView.getCatalogFile().listRecords(currentDir)) {
-            if (rec instanceof CommonHFSCatalogFileRecord) {
-                CommonHFSCatalogFile catFile = ((CommonHFSCatalogFileRecord) rec).getData();
+    /**
+     * Finds the most fragmented files of the volume in a single parallel scan
+     * of the catalog file. Each worker keeps its own list of the most
+     * fragmented files, and the lists are merged at the end.
+     */
+    private static void fragmentSearch(HFSVolume fsView,
+                                       ArrayList<Pair<CommonHFSCatalogLeafRecord, Integer>> mostFragmentedList,
+                                       int listMaxLength, boolean verbose) {
+        FragmentList result = fsView.getCatalogFile().scanAllParallel(() -> new FragmentList(listMaxLength),
+                (list, rec) -> {
+                    if (rec instanceof CommonHFSCatalogFileRecord) {
+                        CommonHFSExtentDescriptor[] descs =
+                                fsView.getExtentsOverflowFile().getAllDataExtentDescriptors(rec);
+                        list.add(new Pair<>(rec, descs.length));
+                    } else if (rec instanceof CommonHFSCatalogFolderRecord) {
+                        if (verbose) println("  Processing folder \"" + rec.getKey().getNodeName().toString() + "\"");
+                        else print(".");
+                    } else if (!(rec instanceof CommonHFSCatalogFolderThreadRecord) &&
+                            !(rec instanceof CommonHFSCatalogFileThreadRecord))
+                        throw new RuntimeException("Unknown record type: " + rec.getClass());
+                }, FragmentList::addAll);
+
+        for (Pair<CommonHFSCatalogLeafRecord, Integer> item : result.items)
+            mostFragmentedList.add(item);
+    }
 
-                CommonHFSExtentDescriptor[] descs = fsView.getExtentsOverflowFile().getAllDataExtentDescriptors(rec);
+    /**
+     * The most fragmented files seen so far, with the most fragmented first,
+     * and no more than <code>maxLength</code> of them.
+     */
+    private static class FragmentList {
 
-                mostFragmentedList.add(new Pair<>(rec, descs.length));
+        private final int maxLength;
+        private final ArrayList<Pair<CommonHFSCatalogLeafRecord, Integer>> items = new ArrayList<>();
 
-                // Let the new item bubble up to its position in the list
-                for (int i = mostFragmentedList.size() - 1; i > 0; --i) {
-                    Pair<CommonHFSCatalogLeafRecord, Integer> lower = mostFragmentedList.get(i);
-                    Pair<CommonHFSCatalogLeafRecord, Integer> higher = mostFragmentedList.get(i - 1);
+        FragmentList(int maxLength) {
+            this.maxLength = maxLength;
+        }
 
-                    if (lower.getB() > higher.getB()) {
-                        // Switch places.
-                        mostFragmentedList.set(i - 1, lower);
-                        mostFragmentedList.set(i, higher);
-                    } else
-                        break;
-                }
-                while (mostFragmentedList.size() > listMaxLength)
-                    mostFragmentedList.remove(mostFragmentedList.size() - 1);
-            } else if (rec instanceof CommonHFSCatalogFolderRecord) {
-                CommonHFSCatalogFolder catFolder = ((CommonHFSCatalogFolderRecord) rec).getData();
-                if (verbose) println("  Processing folder \"" + rec.getKey().getNodeName().toString() + "\"");
-                else print(".");
-                recursiveFragmentSearch(fsView, rec, mostFragmentedList, listMaxLength, verbose);
-            } else if (rec instanceof CommonHFSCatalogFolderThreadRecord) {
-                CommonHFSCatalogFolderThread catThread = ((CommonHFSCatalogFolderThreadRecord) rec).getData();
-            } else if (rec instanceof CommonHFSCatalogFileThreadRecord) {
-                CommonHFSCatalogFileThread catThread = ((CommonHFSCatalogFileThreadRecord) rec).getData();
-            } else
-                throw new RuntimeException("Unknown record type: " + rec.getClass());
+        void add(Pair<CommonHFSCatalogLeafRecord, Integer> item) {
+            items.add(item);
+
+            // Let the new item bubble up to its position in the list
+            for (int i = items.size() - 1; i > 0; --i) {
+                Pair<CommonHFSCatalogLeafRecord, Integer> lower = items.get(i);
+                Pair<CommonHFSCatalogLeafRecord, Integer> higher = items.get(i - 1);
+
+                if (lower.getB() > higher.getB()) {
+                    // Switch places.
+                    items.set(i - 1, lower);
+                    items.set(i, higher);
+                } else
+                    break;
+            }
+            while (items.size() > maxLength)
+                items.remove(items.size() - 1);
+        }
+
+        void addAll(FragmentList other) {
+            for (Pair<CommonHFSCatalogLeafRecord, Integer> item : other.items)
+                add(item);
         }
     }
 
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.catacombae.hfs.ProgressMonitor;
+import org.catacombae.hfsexplorer.io.CopyPipeline;
 import org.catacombae.io.InputStreamReadable;
 import org.catacombae.io.OutputStreamWritable;
 import org.catacombae.io.Readable;
@@ -35,6 +37,12 @@ import org.catacombae.io.Writable;
  */
 public class IOUtil extends org.catacombae.util.IOUtil {
 
+    /**
+     * The size from which it pays off to copy with
+     * {@link #pipelinedCopy(Readable, OutputStream, ProgressMonitor)}.
+     */
+    public static final long PIPELINE_THRESHOLD = 32 * 1024 * 1024;
+
     public static long streamCopy(InputStream is, OutputStream os, int bufferSize) throws IOException {
         try {
             return streamCopy(new InputStreamReadable(is), new OutputStreamWritable(os), bufferSize);
@@ -59,6 +67,31 @@ public class IOUtil extends org.catacombae.util.IOUtil {
         }
     }
 
+    /**
+     * Transfers the entire contents of <code>is</code> to <code>os</code>,
+     * reading on another thread while writing, through a ring of
+     * {@link CopyPipeline#DEFAULT_BUFFER_COUNT} buffers of
+     * {@link CopyPipeline#DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param is the source stream.
+     * @param os the sink stream.
+     * @param pm a progress monitor that is told about the data written and
+     *           can cancel the copy, or <code>null</code>.
+     * @return the number of bytes copied.
+     */
+    public static long pipelinedCopy(Readable is, OutputStream os, ProgressMonitor pm) throws IOException {
+        try {
+            return CopyPipeline.copy(is, new OutputStreamWritable(os), CopyPipeline.DEFAULT_BUFFER_SIZE,
+                    CopyPipeline.DEFAULT_BUFFER_COUNT, pm);
+        } catch (RuntimeIOException e) {
+            IOException cause = e.getIOCause();
+            if (cause != null)
+                throw cause;
+            else
+                throw e;
+        }
+    }
+
     public static long streamCopy(InputStream is, Writable os, int bufferSize) throws IOException {
         try {
             return streamCopy(new InputStreamReadable(is), os, bufferSize);
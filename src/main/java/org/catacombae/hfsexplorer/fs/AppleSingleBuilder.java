@@ -22,10 +22,14 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.catacombae.hfsexplorer.IOUtil;
 import org.catacombae.hfsexplorer.types.applesingle.AppleSingleHeader;
 import org.catacombae.hfsexplorer.types.applesingle.AttributeEntry;
 import org.catacombae.hfsexplorer.types.applesingle.AttributeHeader;
 import org.catacombae.hfsexplorer.types.applesingle.EntryDescriptor;
+import org.catacombae.storage.fs.FSEntry;
+import org.catacombae.storage.fs.FSFork;
+import org.catacombae.storage.fs.FSForkType;
 import org.catacombae.util.Util;
 import org.catacombae.util.Util.Pair;
 
@@ -291,6 +295,51 @@ public class AppleSingleBuilder {
         entryList.add(new Pair<>(EntryType.FINDER_INFO, new FinderInfoEntry(finderInfoData, attributeDataList)));
     }
 
+    /**
+     * Builds the AppleDouble file that Mac OS X would create next to
+     * <code>entry</code> on a file system without forks, holding its resource
+     * fork, Finder info and extended attributes.
+     *
+     * @return the AppleDouble data, or <code>null</code> if <code>entry</code>
+     * has none of these.
+     */
+    public static byte[] buildAppleDouble(FSEntry entry) {
+        LinkedList<Pair<String, byte[]>> attributeList = new LinkedList<>();
+        byte[] finderInfoData = null;
+        byte[] resourceForkData = null;
+        long extractedBytes = 0;
+
+        for (FSFork f : entry.getAllForks()) {
+            FSForkType forkType = f.getType();
+            if (forkType == FSForkType.MACOS_RESOURCE) {
+                resourceForkData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                extractedBytes += resourceForkData.length;
+            } else if (forkType == FSForkType.MACOS_FINDERINFO) {
+                finderInfoData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                extractedBytes += finderInfoData.length;
+            } else if (f.hasXattrName()) {
+                byte[] attributeData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                attributeList.add(new Pair<>(f.getXattrName(), attributeData));
+                extractedBytes += attributeData.length;
+            }
+        }
+
+        if (extractedBytes == 0)
+            return null;
+
+        AppleSingleBuilder builder = new AppleSingleBuilder(FileType.APPLEDOUBLE, AppleSingleVersion.VERSION_2_0,
+                FileSystem.MACOS_X);
+        if (finderInfoData != null || !attributeList.isEmpty())
+            builder.addFinderInfo(finderInfoData, attributeList);
+
+        if (resourceForkData != null)
+            builder.addResourceFork(resourceForkData);
+        else
+            builder.addEmptyResourceFork();
+
+        return builder.getResult();
+    }
+
     /**
      * Serializes the current state of the builder into a valid AppleSingle data representation that
      * can be written down to file.
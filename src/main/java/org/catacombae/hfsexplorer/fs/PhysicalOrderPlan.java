@@ -0,0 +1,90 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.fs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.catacombae.storage.fs.FSEntry;
+import org.catacombae.storage.fs.FSFork;
+import org.catacombae.storage.fs.FSForkType;
+
+
+/**
+ * Collects extraction jobs together with where their data starts on disk, and
+ * hands them back in ascending physical order, so that extracting a tree
+ * turns into a mostly sequential sweep over the disk instead of jumping
+ * around in catalog (alphabetical) order. This matters on spinning disks and
+ * optical media.
+ * <p>
+ * Jobs at the same position keep the order they were added in. Jobs whose
+ * position isn't known come last, also in the order they were added in.
+ *
+ * @param <T> the type of the jobs.
+ */
+public class PhysicalOrderPlan<T> {
+
+    private record Job<T>(long position, int sequence, T job) {
+    }
+
+    private static final Comparator<Job<?>> ORDER = Comparator
+            .comparingLong((Job<?> j) -> j.position() >= 0 ? j.position() : Long.MAX_VALUE)
+            .thenComparingInt(Job::sequence);
+
+    private final ArrayList<Job<T>> jobs = new ArrayList<>();
+
+    /**
+     * Returns where the data of <code>fork</code> starts on disk, or -1 if
+     * that isn't known. <code>fork</code> may be <code>null</code>.
+     */
+    public static long getPosition(FSFork fork) {
+        return fork != null ? fork.getPhysicalPosition() : -1;
+    }
+
+    /**
+     * Returns where the data of the fork of type <code>type</code> in
+     * <code>entry</code> starts on disk, or -1 if there is no such fork or
+     * its position isn't known.
+     */
+    public static long getPosition(FSEntry entry, FSForkType type) {
+        return getPosition(entry.getForkByType(type));
+    }
+
+    /** Adds <code>job</code>, which reads data starting at <code>position</code>. */
+    public void add(long position, T job) {
+        jobs.add(new Job<>(position, jobs.size(), job));
+    }
+
+    /** Returns the number of jobs in the plan. */
+    public int size() {
+        return jobs.size();
+    }
+
+    /** Returns the jobs in physical order and empties the plan. */
+    public List<T> drain() {
+        jobs.sort(ORDER);
+
+        List<T> result = new ArrayList<>(jobs.size());
+        for (Job<T> j : jobs)
+            result.add(j.job());
+        jobs.clear();
+
+        return result;
+    }
+}
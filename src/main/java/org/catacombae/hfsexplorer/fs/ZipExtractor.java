@@ -0,0 +1,225 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.fs;
+
+import java.util.Date;
+import java.util.function.Consumer;
+
+import org.catacombae.hfs.ProgressMonitor;
+import org.catacombae.hfsexplorer.ExtractProgressMonitor;
+import org.catacombae.hfsexplorer.io.ParallelZipWriter;
+import org.catacombae.io.ReadableByteArrayStream;
+import org.catacombae.io.ReadableFilterStream;
+import org.catacombae.io.ReadableRandomAccessStream;
+import org.catacombae.io.RuntimeIOException;
+import org.catacombae.storage.fs.FSAttributes;
+import org.catacombae.storage.fs.FSEntry;
+import org.catacombae.storage.fs.FSFile;
+import org.catacombae.storage.fs.FSFolder;
+import org.catacombae.storage.fs.FSFork;
+import org.catacombae.storage.fs.FSLink;
+
+
+/**
+ * Writes file system entries into a ZIP archive. Folders, files and symbolic
+ * links keep their permissions and modification times. Resource forks, Finder
+ * info and extended attributes can be added as AppleDouble files under
+ * <code>__MACOSX/</code>, where the Archive Utility in macOS picks them up.
+ * Hard links are archived as separate copies, since ZIP has no notion of
+ * them.
+ * <p>
+ * Problems reading an entry are passed to an error handler and the entry is
+ * archived with the data that could be read, so that one bad file doesn't
+ * stop the rest from being archived.
+ */
+public class ZipExtractor {
+
+    private static final String APPLEDOUBLE_DIR = "__MACOSX/";
+
+    private final ParallelZipWriter zip;
+    private final boolean appleDouble;
+    private final ProgressMonitor pm;
+    private final Consumer<String> errorHandler;
+
+    private long fileCount = 0;
+    private long byteCount = 0;
+
+    /**
+     * @param appleDouble  add resource forks, Finder info and extended
+     *                     attributes as AppleDouble files?
+     * @param pm           monitors the progress and can cancel. If it's an
+     *                     {@link ExtractProgressMonitor} it's also told about
+     *                     each entry.
+     * @param errorHandler gets a message for every entry that couldn't be
+     *                     archived completely.
+     */
+    public ZipExtractor(ParallelZipWriter zip, boolean appleDouble, ProgressMonitor pm,
+                        Consumer<String> errorHandler) {
+        this.zip = zip;
+        this.appleDouble = appleDouble;
+        this.pm = pm != null ? pm : NullProgressMonitor.getInstance();
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Adds <code>entry</code> to the archive as <code>path</code>, and
+     * everything in it if it's a folder.
+     */
+    public void addEntry(FSEntry entry, String path) throws RuntimeIOException {
+        if (pm.cancelSignaled())
+            return;
+
+        if (entry instanceof FSFile file) {
+            addFile(file, path);
+        } else if (entry instanceof FSFolder folder) {
+            addFolder(folder, path);
+        } else if (entry instanceof FSLink link) {
+            zip.addSymlink(path, getMode(link, 0755), getModifyDate(link), link.getLinkTargetString());
+        }
+    }
+
+    /**
+     * Adds the contents of <code>folder</code> to the archive, with their
+     * paths starting with <code>pathPrefix</code>, which is either empty or
+     * ends with '/'.
+     */
+    public void addFolderContents(FSFolder folder, String pathPrefix) throws RuntimeIOException {
+        for (FSEntry e : folder.listEntries()) {
+            if (pm.cancelSignaled())
+                return;
+            addEntry(e, pathPrefix + e.getName());
+        }
+    }
+
+    private void addFolder(FSFolder folder, String path) {
+        if (pm instanceof ExtractProgressMonitor epm)
+            epm.updateCurrentDir(path);
+
+        zip.addDirectory(path, getMode(folder, 0755), getModifyDate(folder));
+        addAppleDouble(folder, path);
+        addFolderContents(folder, path + "/");
+    }
+
+    private void addFile(FSFile file, String path) {
+        FSFork mainFork = file.getMainFork();
+        long length = mainFork.getLength();
+        if (pm instanceof ExtractProgressMonitor epm)
+            epm.updateCurrentFile(path, length);
+
+        ReadableRandomAccessStream in;
+        try {
+            in = new ErrorReportingStream(mainFork.getReadableRandomAccessStream(), path);
+        } catch (RuntimeException e) {
+            errorHandler.accept("Could not open \"" + path + "\": " + e);
+            return;
+        }
+
+        long bytesRead;
+        try {
+            bytesRead = zip.addFile(path, getMode(file, 0644), getModifyDate(file), length, in, false, pm);
+        } finally {
+            try {
+                in.close();
+            } catch (Exception e) {
+            }
+        }
+
+        if (bytesRead < length && !pm.cancelSignaled()) {
+            errorHandler.accept("Could only read " + bytesRead + " of " + length + " bytes of \"" + path +
+                    "\".");
+        }
+
+        addAppleDouble(file, path);
+        fileCount++;
+        byteCount += bytesRead;
+    }
+
+    /** Adds <code>__MACOSX/&lt;dir&gt;/._&lt;name&gt;</code> for <code>entry</code>, if enabled and needed. */
+    private void addAppleDouble(FSEntry entry, String path) {
+        if (!appleDouble)
+            return;
+
+        byte[] data;
+        try {
+            data = AppleSingleBuilder.buildAppleDouble(entry);
+        } catch (RuntimeException e) {
+            errorHandler.accept("Could not read the resource fork or attributes of \"" + path + "\": " + e);
+            return;
+        }
+
+        if (data != null) {
+            int slash = path.lastIndexOf('/');
+            String appleDoublePath = APPLEDOUBLE_DIR + path.substring(0, slash + 1) + "._" +
+                    path.substring(slash + 1);
+            zip.addFile(appleDoublePath, 0644, getModifyDate(entry), data.length,
+                    new ReadableByteArrayStream(data), false, null);
+        }
+    }
+
+    /** Returns the number of files archived so far. */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /** Returns the number of bytes of file data archived so far. */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    private static int getMode(FSEntry entry, int defaultMode) {
+        FSAttributes attrs = entry.getAttributes();
+        if (attrs.hasPOSIXFileAttributes()) {
+            FSAttributes.POSIXFileAttributes posixAttrs = attrs.getPOSIXFileAttributes();
+            // A file type of 0 means that permissions were never set, like
+            // for files written by Mac OS 9.
+            if (posixAttrs.getFileType() != FSAttributes.POSIXFileAttributes.FILETYPE_UNDEFINED)
+                return posixAttrs.getFileModeWord() & 07777;
+        }
+
+        return defaultMode;
+    }
+
+    private static Date getModifyDate(FSEntry entry) {
+        FSAttributes attrs = entry.getAttributes();
+        return attrs.hasModifyDate() ? attrs.getModifyDate() : null;
+    }
+
+    /**
+     * Reports read errors and then acts as if the stream ended, so that the
+     * archive entry stays consistent with what was read.
+     */
+    private class ErrorReportingStream extends ReadableFilterStream {
+
+        private final String path;
+
+        ErrorReportingStream(ReadableRandomAccessStream backing, String path) {
+            super(backing);
+            this.path = path;
+        }
+
+        @Override
+        public int read(byte[] data, int pos, int len) {
+            try {
+                return backingStore.read(data, pos, len);
+            } catch (RuntimeException e) {
+                errorHandler.accept("Error while reading \"" + path + "\": " + e);
+                return -1;
+            }
+        }
+    }
+}
@@ -104,6 +104,11 @@ public class ExtractSettingsPanel extends javax.swing.JPanel {
             }
         });
 
+        sparseFilesBox.setSelected(p.getSparseFiles());
+        sparseFilesBox.addActionListener(e -> p.setSparseFiles(sparseFilesBox.isSelected()));
+        physicalOrderBox.setSelected(p.getPhysicalOrder());
+        physicalOrderBox.addActionListener(e -> p.setPhysicalOrder(physicalOrderBox.isSelected()));
+
         createDirPromptUserButton.doClick();
         createFilePromptUserButton.doClick();
         dirExistsPromptUserButton.doClick();
@@ -214,6 +219,8 @@ public class ExtractSettingsPanel extends javax.swing.JPanel {
     private void initComponents() {
 
         quietModeBox = new javax.swing.JCheckBox();
+        sparseFilesBox = new javax.swing.JCheckBox();
+        physicalOrderBox = new javax.swing.JCheckBox();
         createDirPanel = new javax.swing.JPanel();
         createDirLabel = new javax.swing.JLabel();
         createDirPromptUserButton = new javax.swing.JRadioButton();
@@ -246,6 +253,12 @@ public class ExtractSettingsPanel extends javax.swing.JPanel {
         quietModeBox.setText("Quiet mode");
         quietModeBox.setToolTipText("A non-destructive \"No questions asked\" mode");
 
+        sparseFilesBox.setText("Write sparse files");
+        sparseFilesBox.setToolTipText("Leave holes instead of writing blocks of zeros, where the target file system supports it");
+
+        physicalOrderBox.setText("Extract in disk order");
+        physicalOrderBox.setToolTipText("Extract files in the order they are stored on disk, which avoids seeking on spinning disks and optical media");
+
         createDirLabel.setText("Create directory failed:");
 
         createDirPromptUserButton.setText("Prompt user");
@@ -437,7 +450,9 @@ public class ExtractSettingsPanel extends javax.swing.JPanel {
                                                 .add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING)
                                                         .add(fileExistsPanel, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                                                         .add(createFilePanel, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)))
-                                        .add(quietModeBox))
+                                        .add(quietModeBox)
+                                        .add(sparseFilesBox)
+                                        .add(physicalOrderBox))
                                 .addContainerGap(org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         layout.setVerticalGroup(
@@ -446,6 +461,10 @@ public class ExtractSettingsPanel extends javax.swing.JPanel {
                                 .addContainerGap()
                                 .add(quietModeBox)
                                 .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
+                                .add(sparseFilesBox)
+                                .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
+                                .add(physicalOrderBox)
+                                .addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED)
                                 .add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING)
                                         .add(createDirPanel, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE)
                                         .add(createFilePanel, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
@@ -487,6 +506,8 @@ public class ExtractSettingsPanel extends javax.swing.JPanel {
     private JRadioButton fileExistsSkipDirectoryButton;
     private JRadioButton fileExistsSkipFileButton;
     private JCheckBox quietModeBox;
+    private JCheckBox physicalOrderBox;
+    private JCheckBox sparseFilesBox;
     // End of variables declaration//GEN-END:variables
 
     private abstract static class AbstractListener<A> implements ActionListener {
@@ -0,0 +1,191 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.catacombae.hfs.ProgressMonitor;
+import org.catacombae.io.Readable;
+import org.catacombae.io.RuntimeIOException;
+import org.catacombae.io.Writable;
+
+
+/**
+ * Copies a stream with reading and writing overlapped. A reader thread fills
+ * buffers from the source while the calling thread writes the buffers that
+ * have already been filled, so that the source and the target disk are busy
+ * at the same time instead of taking turns. The two are connected by a fixed
+ * ring of buffers that are reused for the whole copy; when all of them are
+ * full the reader waits, and when all of them are empty the writer waits.
+ * <p>
+ * This is worth it for large files only. For small ones the cost of starting
+ * a thread is larger than what is gained.
+ */
+public class CopyPipeline {
+
+    /** The default size of each buffer (4 MiB). */
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+    /** The default number of buffers, which allows triple buffering. */
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    /** A buffer on its way from the reader to the writer. */
+    private record Chunk(byte[] buffer, int length, Throwable failure) {
+
+        boolean isEnd() {
+            return length <= 0;
+        }
+    }
+
+    private final Readable source;
+    private final ProgressMonitor pm;
+    private final BlockingQueue<byte[]> emptyBuffers;
+    private final BlockingQueue<Chunk> filledBuffers;
+    private volatile boolean stopped = false;
+
+    private CopyPipeline(Readable source, int bufferSize, int bufferCount, ProgressMonitor pm) {
+        this.source = source;
+        this.pm = pm;
+        this.emptyBuffers = new ArrayBlockingQueue<>(bufferCount);
+        // Room for every buffer and the end marker, so the reader never
+        // waits here.
+        this.filledBuffers = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int i = 0; i < bufferCount; ++i)
+            emptyBuffers.add(new byte[bufferSize]);
+    }
+
+    /**
+     * Copies everything in <code>source</code> to <code>target</code>.
+     * <code>source</code> is read on another thread for the duration of the
+     * call.
+     *
+     * @param source      the stream to read from.
+     * @param target      the stream to write to, from the calling thread.
+     * @param bufferSize  the size of each buffer.
+     * @param bufferCount the number of buffers, at least 2.
+     * @param pm          a progress monitor that is told about every buffer
+     *                    written, and that stops the copy when cancelled. May
+     *                    be <code>null</code>.
+     * @return the number of bytes written, which is less than the length of
+     * <code>source</code> only if the copy was cancelled.
+     * @throws RuntimeIOException if reading or writing fails.
+     */
+    public static long copy(Readable source, Writable target, int bufferSize, int bufferCount, ProgressMonitor pm)
+            throws RuntimeIOException {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("'bufferSize' must be positive");
+        if (bufferCount < 2)
+            throw new IllegalArgumentException("'bufferCount' must be at least 2");
+
+        return new CopyPipeline(source, bufferSize, bufferCount, pm).run(target);
+    }
+
+    private boolean isCancelled() {
+        return stopped || (pm != null && pm.cancelSignaled());
+    }
+
+    private long run(Writable target) {
+        Thread reader = new Thread(this::read, "copy-reader-" + threadNumber.incrementAndGet());
+        reader.setDaemon(true);
+        reader.start();
+
+        long bytesWritten = 0;
+        try {
+            while (true) {
+                Chunk chunk = filledBuffers.take();
+                if (chunk.failure() != null) {
+                    Throwable failure = chunk.failure();
+                    if (failure instanceof RuntimeException re)
+                        throw re;
+                    else if (failure instanceof Error e)
+                        throw e;
+                    throw new RuntimeIOException(failure);
+                } else if (chunk.isEnd() || isCancelled()) {
+                    break;
+                }
+
+                target.write(chunk.buffer(), 0, chunk.length());
+                bytesWritten += chunk.length();
+                if (pm != null)
+                    pm.addDataProgress(chunk.length());
+                emptyBuffers.add(chunk.buffer());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException(e);
+        } finally {
+            // The reader isn't interrupted, since that would close a source
+            // backed by a FileChannel. It's woken up with an extra buffer
+            // instead, in case it's waiting for one. The caller may close the
+            // source as soon as this returns, so wait for the reader to let
+            // go of it.
+            stopped = true;
+            emptyBuffers.offer(new byte[0]);
+            joinUninterruptibly(reader);
+        }
+
+        return bytesWritten;
+    }
+
+    private void read() {
+        try {
+            while (!isCancelled()) {
+                byte[] buffer = emptyBuffers.take();
+                if (stopped)
+                    break;
+
+                int bytesRead = 0;
+                while (bytesRead < buffer.length) {
+                    int curBytesRead = source.read(buffer, bytesRead, buffer.length - bytesRead);
+                    if (curBytesRead <= 0)
+                        break;
+                    bytesRead += curBytesRead;
+                }
+
+                if (bytesRead > 0)
+                    filledBuffers.add(new Chunk(buffer, bytesRead, null));
+                if (bytesRead < buffer.length)
+                    break;
+            }
+
+            filledBuffers.add(new Chunk(null, 0, null));
+        } catch (InterruptedException e) {
+            filledBuffers.add(new Chunk(null, 0, e));
+        } catch (Throwable t) {
+            filledBuffers.add(new Chunk(null, 0, t));
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,585 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.catacombae.hfs.ProgressMonitor;
+import org.catacombae.io.Readable;
+import org.catacombae.io.ReadableByteArrayStream;
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * Writes a ZIP archive, with ZIP64 extensions where sizes or offsets need
+ * them, compressing on several threads.
+ * <p>
+ * The data of each file is read in chunks on the calling thread and each
+ * chunk is deflated on its own in a thread pool, primed with the end of the
+ * chunk before it so that little compression is lost. The chunks end on a
+ * byte boundary (a sync flush), so they join up into one deflate stream, the
+ * way pigz does it. This parallelizes large files as well as many small
+ * ones. The compressed chunks are written to the archive in order as they
+ * complete, and only a bounded number of them are in flight at a time.
+ * <p>
+ * Entries whose data doesn't compress, judged from a sample at the start, are
+ * stored instead, as are entries that the caller asks to be stored. Since
+ * the checksum and compressed size of an entry aren't known until it has
+ * been written, its local header is patched afterwards, which is why the
+ * archive must be written to a {@link FileChannel}.
+ */
+public class ParallelZipWriter implements AutoCloseable {
+
+    /** The default size of the chunks that are compressed independently. */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    /**
+     * Entries whose sample doesn't compress to less than this fraction of its
+     * size are stored.
+     */
+    private static final double STORE_RATIO = 0.95;
+    /**
+     * Entries at least this large get ZIP64 sizes in their local header, with
+     * margin for data that grows when deflated.
+     */
+    private static final long ZIP64_LOCAL_THRESHOLD = 0xF0000000L;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    /** Version made by: Unix, so that unzip applies the mode bits. */
+    private static final int VERSION_MADE_BY = (3 << 8) | VERSION_ZIP64;
+    private static final int EXTRA_ZIP64 = 0x0001;
+    private static final int EXTRA_TIMESTAMP = 0x5455;
+
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFDIR = 040000;
+    private static final int S_IFLNK = 0120000;
+
+    /** An entry being written or written. */
+    private static class ZipEntry {
+
+        final byte[] name;
+        final int method;
+        final int mode;
+        final Date modifyDate;
+        final boolean zip64Local;
+        long offset;
+        long crc;
+        long compressedSize = 0;
+        long size;
+
+        ZipEntry(byte[] name, int method, int mode, Date modifyDate, boolean zip64Local) {
+            this.name = name;
+            this.method = method;
+            this.mode = mode;
+            this.modifyDate = modifyDate;
+            this.zip64Local = zip64Local;
+        }
+    }
+
+    private enum StepType {
+        HEADER, DATA, END
+    }
+
+    /** Something to write, in order. */
+    private record Step(StepType type, ZipEntry entry, Future<byte[]> data) {
+    }
+
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final ExecutorService pool;
+    private final int maxPendingSteps;
+    private final ArrayDeque<Step> pending = new ArrayDeque<>();
+    private final List<ZipEntry> entries = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    /** The position in the archive of the start of {@link #buffer}. */
+    private long bufferPosition = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a writer that compresses with <code>threads</code> threads.
+     * <code>channel</code> should be empty and positioned at its start.
+     */
+    public ParallelZipWriter(FileChannel channel, int threads) {
+        this(channel, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelZipWriter(FileChannel channel, int threads, int chunkSize) {
+        if (threads < 1)
+            throw new IllegalArgumentException("'threads' must be at least 1");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("'chunkSize' must be positive");
+
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.pool = threads > 1 ? Executors.newWorkStealingPool(threads) : null;
+        this.maxPendingSteps = 4 * threads;
+    }
+
+    /** Adds a directory. <code>path</code> gets a trailing '/' if it doesn't have one. */
+    public void addDirectory(String path, int mode, Date modifyDate) throws RuntimeIOException {
+        String name = path.endsWith("/") ? path : path + "/";
+        addEntry(name, S_IFDIR | (mode & 07777), modifyDate, 0, new ReadableByteArrayStream(new byte[0]), true,
+                null);
+    }
+
+    /** Adds a symbolic link, stored the way Info-ZIP does it. */
+    public void addSymlink(String path, int mode, Date modifyDate, String target) throws RuntimeIOException {
+        byte[] data = target.getBytes(StandardCharsets.UTF_8);
+        addEntry(path, S_IFLNK | (mode & 07777), modifyDate, data.length, new ReadableByteArrayStream(data), true,
+                null);
+    }
+
+    /**
+     * Adds a file with <code>length</code> bytes of data read from
+     * <code>data</code>. Reading stops early at the end of
+     * <code>data</code> or if <code>pm</code> is cancelled, in which case
+     * the entry gets the data read so far.
+     *
+     * @param store store the data without compressing it, for instance
+     *              because it's known to be compressed already.
+     * @param pm    a progress monitor that is told about the data as it is
+     *              read. May be <code>null</code>.
+     * @return the number of bytes of data read.
+     */
+    public long addFile(String path, int mode, Date modifyDate, long length, Readable data, boolean store,
+                        ProgressMonitor pm) throws RuntimeIOException {
+        return addEntry(path, S_IFREG | (mode & 07777), modifyDate, length, data, store, pm);
+    }
+
+    private long addEntry(String path, int mode, Date modifyDate, long length, Readable data, boolean store,
+                          ProgressMonitor pm) {
+        if (finished)
+            throw new IllegalStateException("The archive has been finished.");
+
+        int requested = (int) Math.min(chunkSize, length);
+        byte[] chunk = readChunk(data, requested);
+        boolean deflate = !store && chunk.length > 0 && isCompressible(chunk);
+        ZipEntry entry = new ZipEntry(path.getBytes(StandardCharsets.UTF_8),
+                deflate ? METHOD_DEFLATED : METHOD_STORED, mode, modifyDate, length >= ZIP64_LOCAL_THRESHOLD);
+        enqueue(new Step(StepType.HEADER, entry, null));
+
+        CRC32 crc = new CRC32();
+        long bytesRead = 0;
+        byte[] previous = null;
+        while (true) {
+            crc.update(chunk);
+            bytesRead += chunk.length;
+            if (pm != null)
+                pm.addDataProgress(chunk.length);
+
+            boolean last = chunk.length < requested || bytesRead >= length || (pm != null && pm.cancelSignaled());
+            Future<byte[]> output;
+            if (deflate)
+                output = compress(chunk, previous, last);
+            else
+                output = CompletableFuture.completedFuture(chunk);
+            enqueue(new Step(StepType.DATA, entry, output));
+
+            if (last)
+                break;
+
+            previous = chunk;
+            requested = (int) Math.min(chunkSize, length - bytesRead);
+            chunk = readChunk(data, requested);
+        }
+
+        entry.crc = crc.getValue();
+        entry.size = bytesRead;
+        enqueue(new Step(StepType.END, entry, null));
+        return bytesRead;
+    }
+
+    /** Reads up to <code>length</code> bytes, fewer only at the end of the stream. */
+    private static byte[] readChunk(Readable data, int length) {
+        byte[] chunk = new byte[length];
+        int bytesRead = 0;
+        while (bytesRead < length) {
+            int curBytesRead = data.read(chunk, bytesRead, length - bytesRead);
+            if (curBytesRead <= 0)
+                break;
+            bytesRead += curBytesRead;
+        }
+
+        return bytesRead == length ? chunk : Arrays.copyOf(chunk, bytesRead);
+    }
+
+    /** Returns whether the start of <code>chunk</code> deflates well enough to be worth it. */
+    private static boolean isCompressible(byte[] chunk) {
+        int sampleLength = Math.min(SAMPLE_SIZE, chunk.length);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(chunk, 0, sampleLength);
+            deflater.finish();
+            byte[] output = new byte[sampleLength];
+            int limit = (int) (sampleLength * STORE_RATIO);
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < limit)
+                compressedLength += deflater.deflate(output, compressedLength, output.length - compressedLength);
+            return deflater.finished() && compressedLength < limit;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Future<byte[]> compress(byte[] chunk, byte[] previous, boolean last) {
+        if (pool == null)
+            return CompletableFuture.completedFuture(deflate(chunk, previous, last));
+        return pool.submit(() -> deflate(chunk, previous, last));
+    }
+
+    /**
+     * Deflates <code>chunk</code> as a continuation of <code>previous</code>.
+     * Unless <code>last</code> is set the output ends with a sync flush, so
+     * that the next chunk can be appended to it.
+     */
+    static byte[] deflate(byte[] chunk, byte[] previous, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (previous != null) {
+                int dictionaryLength = Math.min(DICTIONARY_SIZE, previous.length);
+                deflater.setDictionary(previous, previous.length - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(chunk);
+            if (last)
+                deflater.finish();
+
+            byte[] output = new byte[chunk.length + chunk.length / 1000 + 64];
+            int outputLength = 0;
+            while (true) {
+                if (outputLength == output.length)
+                    output = Arrays.copyOf(output, output.length * 2);
+                outputLength += deflater.deflate(output, outputLength, output.length - outputLength,
+                        last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                // A flush is complete when it doesn't fill the buffer.
+                if (last ? deflater.finished() : outputLength < output.length)
+                    break;
+            }
+
+            return Arrays.copyOf(output, outputLength);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void enqueue(Step step) {
+        pending.addLast(step);
+        while (!pending.isEmpty() &&
+                (pending.size() > maxPendingSteps || pending.peekFirst().data() == null ||
+                        pending.peekFirst().data().isDone())) {
+            write(pending.removeFirst());
+        }
+    }
+
+    private void write(Step step) {
+        ZipEntry entry = step.entry();
+        switch (step.type()) {
+            case HEADER -> {
+                entry.offset = position();
+                writeLocalHeader(entry);
+            }
+            case DATA -> {
+                byte[] data = getData(step.data());
+                writeBytes(data);
+                entry.compressedSize += data.length;
+            }
+            case END -> {
+                patchLocalHeader(entry);
+                entries.add(entry);
+            }
+        }
+    }
+
+    private static byte[] getData(Future<byte[]> data) {
+        try {
+            return data.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void writeLocalHeader(ZipEntry entry) {
+        int extraLength = (entry.zip64Local ? 20 : 0) + (hasUnixTime(entry) ? 9 : 0);
+        ByteBuffer b = newBuffer(30 + entry.name.length + extraLength);
+        b.putInt(0x04034b50);
+        b.putShort((short) (entry.zip64Local ? VERSION_ZIP64 : VERSION_DEFAULT));
+        b.putShort((short) FLAG_UTF8);
+        b.putShort((short) entry.method);
+        b.putInt(dosTime(entry.modifyDate));
+        // The checksum and sizes are filled in by patchLocalHeader.
+        b.putInt(0);
+        b.putInt(entry.zip64Local ? (int) MAX_32 : 0);
+        b.putInt(entry.zip64Local ? (int) MAX_32 : 0);
+        b.putShort((short) entry.name.length);
+        b.putShort((short) extraLength);
+        b.put(entry.name);
+        if (entry.zip64Local) {
+            b.putShort((short) EXTRA_ZIP64);
+            b.putShort((short) 16);
+            b.putLong(0);
+            b.putLong(0);
+        }
+        putUnixTime(b, entry);
+        writeBytes(b.array());
+    }
+
+    private void patchLocalHeader(ZipEntry entry) {
+        ByteBuffer b = newBuffer(4);
+        b.putInt(0, (int) entry.crc);
+        patch(entry.offset + 14, b.array());
+
+        if (entry.zip64Local) {
+            b = newBuffer(16);
+            b.putLong(entry.size);
+            b.putLong(entry.compressedSize);
+            patch(entry.offset + 30 + entry.name.length + 4, b.array());
+        } else {
+            b = newBuffer(8);
+            b.putInt((int) entry.compressedSize);
+            b.putInt((int) entry.size);
+            patch(entry.offset + 18, b.array());
+        }
+    }
+
+    private void writeCentralHeader(ZipEntry entry) {
+        boolean sizeOverflows = entry.size >= MAX_32;
+        boolean compressedSizeOverflows = entry.compressedSize >= MAX_32;
+        boolean offsetOverflows = entry.offset >= MAX_32;
+        int zip64Length = (sizeOverflows ? 8 : 0) + (compressedSizeOverflows ? 8 : 0) + (offsetOverflows ? 8 : 0);
+        boolean zip64 = zip64Length > 0;
+        int extraLength = (zip64 ? 4 + zip64Length : 0) + (hasUnixTime(entry) ? 9 : 0);
+
+        ByteBuffer b = newBuffer(46 + entry.name.length + extraLength);
+        b.putInt(0x02014b50);
+        b.putShort((short) VERSION_MADE_BY);
+        b.putShort((short) (zip64 || entry.zip64Local ? VERSION_ZIP64 : VERSION_DEFAULT));
+        b.putShort((short) FLAG_UTF8);
+        b.putShort((short) entry.method);
+        b.putInt(dosTime(entry.modifyDate));
+        b.putInt((int) entry.crc);
+        b.putInt((int) (compressedSizeOverflows ? MAX_32 : entry.compressedSize));
+        b.putInt((int) (sizeOverflows ? MAX_32 : entry.size));
+        b.putShort((short) entry.name.length);
+        b.putShort((short) extraLength);
+        b.putShort((short) 0); // Comment length.
+        b.putShort((short) 0); // Disk number.
+        b.putShort((short) 0); // Internal attributes.
+        b.putInt((entry.mode << 16) | ((entry.mode & S_IFDIR) == S_IFDIR ? 0x10 : 0));
+        b.putInt((int) (offsetOverflows ? MAX_32 : entry.offset));
+        b.put(entry.name);
+        if (zip64) {
+            b.putShort((short) EXTRA_ZIP64);
+            b.putShort((short) zip64Length);
+            if (sizeOverflows)
+                b.putLong(entry.size);
+            if (compressedSizeOverflows)
+                b.putLong(entry.compressedSize);
+            if (offsetOverflows)
+                b.putLong(entry.offset);
+        }
+        putUnixTime(b, entry);
+        writeBytes(b.array());
+    }
+
+    private static boolean hasUnixTime(ZipEntry entry) {
+        if (entry.modifyDate == null)
+            return false;
+        long seconds = Math.floorDiv(entry.modifyDate.getTime(), 1000);
+        return seconds >= Integer.MIN_VALUE && seconds <= Integer.MAX_VALUE;
+    }
+
+    /** Puts an extended timestamp field with the modification time, in UTC. */
+    private static void putUnixTime(ByteBuffer b, ZipEntry entry) {
+        if (hasUnixTime(entry)) {
+            b.putShort((short) EXTRA_TIMESTAMP);
+            b.putShort((short) 5);
+            b.put((byte) 1);
+            b.putInt((int) Math.floorDiv(entry.modifyDate.getTime(), 1000));
+        }
+    }
+
+    /** Returns <code>date</code> as an MS-DOS date and time in local time. */
+    static int dosTime(Date date) {
+        LocalDateTime t = date != null ?
+                LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+        if (t == null || t.getYear() < 1980)
+            t = LocalDateTime.of(1980, 1, 1, 0, 0);
+        else if (t.getYear() > 2107)
+            t = LocalDateTime.of(2107, 12, 31, 23, 59, 58);
+
+        int dosDate = ((t.getYear() - 1980) << 9) | (t.getMonthValue() << 5) | t.getDayOfMonth();
+        int dosTime = (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() / 2);
+        return (dosDate << 16) | dosTime;
+    }
+
+    /**
+     * Writes everything that is pending and the central directory. Nothing
+     * more can be added afterwards.
+     */
+    public void finish() throws RuntimeIOException {
+        if (finished)
+            return;
+
+        while (!pending.isEmpty())
+            write(pending.removeFirst());
+        finished = true;
+
+        long centralDirectoryOffset = position();
+        for (ZipEntry entry : entries)
+            writeCentralHeader(entry);
+        long centralDirectorySize = position() - centralDirectoryOffset;
+
+        if (entries.size() >= MAX_16 || centralDirectoryOffset >= MAX_32 || centralDirectorySize >= MAX_32) {
+            long zip64EndOffset = position();
+            ByteBuffer b = newBuffer(56 + 20);
+            // ZIP64 end of central directory record.
+            b.putInt(0x06064b50);
+            b.putLong(44);
+            b.putShort((short) VERSION_MADE_BY);
+            b.putShort((short) VERSION_ZIP64);
+            b.putInt(0);
+            b.putInt(0);
+            b.putLong(entries.size());
+            b.putLong(entries.size());
+            b.putLong(centralDirectorySize);
+            b.putLong(centralDirectoryOffset);
+            // ZIP64 end of central directory locator.
+            b.putInt(0x07064b50);
+            b.putInt(0);
+            b.putLong(zip64EndOffset);
+            b.putInt(1);
+            writeBytes(b.array());
+        }
+
+        ByteBuffer b = newBuffer(22);
+        b.putInt(0x06054b50);
+        b.putShort((short) 0);
+        b.putShort((short) 0);
+        b.putShort((short) Math.min(entries.size(), MAX_16));
+        b.putShort((short) Math.min(entries.size(), MAX_16));
+        b.putInt((int) Math.min(centralDirectorySize, MAX_32));
+        b.putInt((int) Math.min(centralDirectoryOffset, MAX_32));
+        b.putShort((short) 0);
+        writeBytes(b.array());
+        flush();
+    }
+
+    /** Finishes the archive and closes the channel. */
+    @Override
+    public void close() throws RuntimeIOException {
+        try {
+            finish();
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+    }
+
+    /** Returns the number of entries written so far. */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    private static ByteBuffer newBuffer(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private long position() {
+        return bufferPosition + buffer.position();
+    }
+
+    private void writeBytes(byte[] data) {
+        if (data.length > buffer.remaining()) {
+            flush();
+            if (data.length >= buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(data), -1);
+                bufferPosition += data.length;
+                return;
+            }
+        }
+
+        buffer.put(data);
+    }
+
+    /** Overwrites bytes that were written earlier at <code>position</code>. */
+    private void patch(long position, byte[] data) {
+        if (position >= bufferPosition) {
+            // Still in the buffer.
+            buffer.put((int) (position - bufferPosition), data);
+        } else {
+            writeFully(ByteBuffer.wrap(data), position);
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        int length = buffer.remaining();
+        writeFully(buffer, -1);
+        buffer.clear();
+        bufferPosition += length;
+    }
+
+    /** Writes all of <code>data</code>, at <code>position</code> or else at the end. */
+    private void writeFully(ByteBuffer data, long position) {
+        try {
+            while (data.hasRemaining()) {
+                if (position < 0)
+                    channel.write(data);
+                else
+                    position += channel.write(data, position);
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+}
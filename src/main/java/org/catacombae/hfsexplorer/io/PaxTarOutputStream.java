@@ -0,0 +1,469 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+
+/**
+ * Writes a POSIX pax (POSIX.1-2001) tar archive to a stream, one entry at a
+ * time. Nothing is buffered beyond a header block and a small copy buffer, so
+ * archives of any size can be written to a pipe.
+ * <p>
+ * Each entry is started with {@link #putEntry(Entry)}, followed by exactly
+ * {@link Entry#setSize(long) size} bytes of data written to this stream for
+ * regular files, and ended with {@link #closeEntry()}. Anything that doesn't
+ * fit in the fixed-size ustar header (long or non-ASCII paths, large sizes and
+ * ids, access times, extended attributes) goes in a pax extended header in
+ * front of the entry. Extended attributes use the <code>SCHILY.xattr.</code>
+ * keywords understood by GNU tar and bsdtar, and their values are streamed
+ * from their sources when the header is written.
+ */
+public class PaxTarOutputStream extends OutputStream {
+
+    public static final char TYPE_FILE = '0';
+    public static final char TYPE_HARD_LINK = '1';
+    public static final char TYPE_SYMLINK = '2';
+    public static final char TYPE_DIRECTORY = '5';
+    private static final char TYPE_PAX_HEADER = 'x';
+
+    private static final int BLOCK_SIZE = 512;
+    private static final long MAX_OCTAL_7 = 07777777L;
+    private static final long MAX_OCTAL_11 = 077777777777L;
+    private static final String XATTR_PREFIX = "SCHILY.xattr.";
+    /** Written for padding, and for the rest of entries that end early. Never modified. */
+    private static final byte[] ZEROS = new byte[64 * 1024];
+
+    /** Opens the value of an extended attribute when it is about to be written. */
+    @FunctionalInterface
+    public interface ValueSource {
+
+        InputStream open() throws IOException;
+    }
+
+    /** A pax record whose value is read from <code>source</code>. */
+    private record Record(String key, long length, ValueSource source) {
+
+        static Record of(String key, String value) {
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            return new Record(key, data.length, () -> new ByteArrayInputStream(data));
+        }
+    }
+
+    /** The description of an entry in the archive. */
+    public static class Entry {
+
+        private final String path;
+        private final char type;
+        private int mode;
+        private long userID = 0;
+        private long groupID = 0;
+        private long size = 0;
+        private Date modifyDate = null;
+        private Date accessDate = null;
+        private String linkPath = null;
+        private final List<Record> xattrs = new ArrayList<>();
+
+        /**
+         * Creates an entry.
+         *
+         * @param path the path of the entry in the archive, with '/' as the
+         *             separator. Directory paths should end with '/'.
+         * @param type one of the <code>TYPE_*</code> constants.
+         */
+        public Entry(String path, char type) {
+            this.path = path;
+            this.type = type;
+            this.mode = type == TYPE_DIRECTORY ? 0755 : 0644;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /** Sets the permission bits, including setuid, setgid and sticky. */
+        public void setMode(int mode) {
+            this.mode = mode & 07777;
+        }
+
+        public void setUserID(long userID) {
+            this.userID = userID;
+        }
+
+        public void setGroupID(long groupID) {
+            this.groupID = groupID;
+        }
+
+        /** Sets the number of data bytes that follow a regular file entry. */
+        public void setSize(long size) {
+            if (size < 0)
+                throw new IllegalArgumentException("Negative size: " + size);
+            this.size = size;
+        }
+
+        public void setModifyDate(Date modifyDate) {
+            this.modifyDate = modifyDate;
+        }
+
+        public void setAccessDate(Date accessDate) {
+            this.accessDate = accessDate;
+        }
+
+        /** Sets the target of a symbolic or hard link. */
+        public void setLinkPath(String linkPath) {
+            this.linkPath = linkPath;
+        }
+
+        public void addXattr(String name, byte[] value) {
+            addXattr(name, value.length, () -> new ByteArrayInputStream(value));
+        }
+
+        /**
+         * Adds an extended attribute whose value is <code>length</code> bytes
+         * read from <code>source</code> when the entry is written.
+         */
+        public void addXattr(String name, long length, ValueSource source) {
+            xattrs.add(new Record(XATTR_PREFIX + name, length, source));
+        }
+    }
+
+    private final OutputStream out;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private final byte[] copyBuffer = new byte[64 * 1024];
+    private Entry currentEntry = null;
+    private long remaining = 0;
+    private boolean finished = false;
+
+    public PaxTarOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the headers of <code>entry</code>, ending the current entry
+     * first if there is one.
+     *
+     * @throws IOException if writing fails, or if the value of an extended
+     *                     attribute doesn't have the length it was added with.
+     */
+    public void putEntry(Entry entry) throws IOException {
+        ensureOpen();
+        if (currentEntry != null)
+            closeEntry();
+
+        List<Record> records = getPaxRecords(entry);
+        if (!records.isEmpty())
+            writePaxHeader(entry, records);
+
+        long size = entry.type == TYPE_FILE ? entry.size : 0;
+        fillHeader(asciiName(entry.path, 100), entry.type, entry.mode, entry.userID, entry.groupID, size,
+                entry.modifyDate, entry.linkPath != null ? asciiName(entry.linkPath, 100) : "");
+        setPathFields(entry.path);
+        writeHeader();
+
+        currentEntry = entry;
+        remaining = size;
+    }
+
+    /**
+     * Ends the current entry. If less data than the size of the entry was
+     * written, the rest is filled with zeros so that the archive stays
+     * readable.
+     *
+     * @return the number of zeros that were filled in, 0 if all the data
+     * was written.
+     */
+    public long closeEntry() throws IOException {
+        ensureOpen();
+        if (currentEntry == null)
+            return 0;
+
+        long missing = remaining;
+        writeZeros(missing);
+        long size = currentEntry.type == TYPE_FILE ? currentEntry.size : 0;
+        writeZeros(padding(size));
+
+        currentEntry = null;
+        remaining = 0;
+        return missing;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len > remaining) {
+            throw new IOException("Attempted to write " + len + " bytes with " + remaining + " bytes left of " +
+                    (currentEntry != null ? "\"" + currentEntry.path + "\"" : "no entry") + ".");
+        }
+
+        out.write(b, off, len);
+        remaining -= len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Ends the current entry and the archive without closing the underlying
+     * stream. Nothing more can be written afterwards.
+     */
+    public void finish() throws IOException {
+        ensureOpen();
+        try {
+            closeEntry();
+            // The end of the archive is marked by two zero blocks.
+            writeZeros(2 * BLOCK_SIZE);
+            out.flush();
+        } finally {
+            finished = true;
+        }
+    }
+
+    /** Ends the current entry and the archive, and closes the underlying stream. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!finished)
+                finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished)
+            throw new IOException("The archive has been finished.");
+    }
+
+    private static List<Record> getPaxRecords(Entry entry) {
+        List<Record> records = new ArrayList<>();
+
+        if (splitPath(entry.path) == null)
+            records.add(Record.of("path", entry.path));
+        if (entry.linkPath != null && !fitsAscii(entry.linkPath, 100))
+            records.add(Record.of("linkpath", entry.linkPath));
+        if (entry.type == TYPE_FILE && entry.size > MAX_OCTAL_11)
+            records.add(Record.of("size", Long.toString(entry.size)));
+        if (entry.userID > MAX_OCTAL_7)
+            records.add(Record.of("uid", Long.toString(entry.userID)));
+        if (entry.groupID > MAX_OCTAL_7)
+            records.add(Record.of("gid", Long.toString(entry.groupID)));
+        if (entry.modifyDate != null && !fitsUstarTime(entry.modifyDate))
+            records.add(Record.of("mtime", formatTime(entry.modifyDate)));
+        if (entry.accessDate != null)
+            records.add(Record.of("atime", formatTime(entry.accessDate)));
+        records.addAll(entry.xattrs);
+
+        return records;
+    }
+
+    private void writePaxHeader(Entry entry, List<Record> records) throws IOException {
+        long dataLength = 0;
+        for (Record r : records)
+            dataLength += recordLength(r.key().getBytes(StandardCharsets.UTF_8).length, r.length());
+
+        String path = entry.path.endsWith("/") ? entry.path.substring(0, entry.path.length() - 1) : entry.path;
+        String baseName = path.substring(path.lastIndexOf('/') + 1);
+        fillHeader(asciiName("PaxHeaders/" + baseName, 100), TYPE_PAX_HEADER, 0644, 0, 0, dataLength,
+                entry.modifyDate, "");
+        writeHeader();
+
+        for (Record r : records)
+            writeRecord(r);
+        writeZeros(padding(dataLength));
+    }
+
+    /** Writes a record as "&lt;length&gt; &lt;key&gt;=&lt;value&gt;\n". */
+    private void writeRecord(Record r) throws IOException {
+        byte[] key = r.key().getBytes(StandardCharsets.UTF_8);
+        long length = recordLength(key.length, r.length());
+        out.write((length + " " + r.key() + "=").getBytes(StandardCharsets.UTF_8));
+
+        long valueBytes = 0;
+        try (InputStream in = r.source().open()) {
+            int n;
+            while (valueBytes < r.length() &&
+                    (n = in.read(copyBuffer, 0, (int) Math.min(copyBuffer.length, r.length() - valueBytes))) > 0) {
+                out.write(copyBuffer, 0, n);
+                valueBytes += n;
+            }
+        }
+        if (valueBytes != r.length()) {
+            throw new IOException("Value of \"" + r.key() + "\" was " + valueBytes + " bytes, expected " +
+                    r.length() + ".");
+        }
+
+        out.write('\n');
+    }
+
+    /**
+     * Returns the length of a record, which includes the decimal digits of
+     * the length itself.
+     */
+    static long recordLength(int keyLength, long valueLength) {
+        // ' ', '=' and '\n'.
+        long base = keyLength + valueLength + 3;
+        long length = base + Long.toString(base).length();
+        if (Long.toString(length).length() != Long.toString(base).length())
+            ++length;
+        return length;
+    }
+
+    /**
+     * Formats a time as decimal seconds since the epoch, with as many
+     * decimals as needed.
+     */
+    static String formatTime(Date date) {
+        return BigDecimal.valueOf(date.getTime(), 3).stripTrailingZeros().toPlainString();
+    }
+
+    private static boolean fitsUstarTime(Date date) {
+        long millis = date.getTime();
+        return millis >= 0 && millis % 1000 == 0 && millis / 1000 <= MAX_OCTAL_11;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == 0 || c > 127)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean fitsAscii(String s, int fieldLength) {
+        return s.length() <= fieldLength && isAscii(s);
+    }
+
+    /**
+     * Splits <code>path</code> into the ustar prefix and name fields, or
+     * returns <code>null</code> if it doesn't fit in them.
+     */
+    private static String[] splitPath(String path) {
+        if (!isAscii(path))
+            return null;
+        if (path.length() <= 100)
+            return new String[] {"", path};
+
+        // Don't split at a trailing slash.
+        for (int i = path.lastIndexOf('/', path.length() - 2); i > 0; i = path.lastIndexOf('/', i - 1)) {
+            if (path.length() - i - 1 > 100)
+                return null;
+            if (i <= 155)
+                return new String[] {path.substring(0, i), path.substring(i + 1)};
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns <code>s</code> with non-ASCII characters replaced, cut to
+     * <code>maxLength</code> characters. Used in header fields that are
+     * overridden by pax records.
+     */
+    private static String asciiName(String s, int maxLength) {
+        StringBuilder sb = new StringBuilder(Math.min(s.length(), maxLength));
+        for (int i = 0; i < s.length() && sb.length() < maxLength; ++i) {
+            char c = s.charAt(i);
+            sb.append(c != 0 && c <= 127 ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private void fillHeader(String name, char type, int mode, long userID, long groupID, long size, Date modifyDate,
+                            String linkName) {
+        Arrays.fill(header, (byte) 0);
+        putString(name, 0, 100);
+        putOctal(mode, 100, 8);
+        putOctal(userID <= MAX_OCTAL_7 ? userID : 0, 108, 8);
+        putOctal(groupID <= MAX_OCTAL_7 ? groupID : 0, 116, 8);
+        putOctal(size <= MAX_OCTAL_11 ? size : 0, 124, 12);
+        long seconds = modifyDate != null ? Math.floorDiv(modifyDate.getTime(), 1000) : 0;
+        putOctal(seconds >= 0 && seconds <= MAX_OCTAL_11 ? seconds : 0, 136, 12);
+        header[156] = (byte) type;
+        putString(linkName, 157, 100);
+        putString("ustar", 257, 6);
+        putString("00", 263, 2);
+    }
+
+    /** Puts <code>path</code> in the name and prefix fields, if it fits. */
+    private void setPathFields(String path) {
+        String[] split = splitPath(path);
+        if (split != null) {
+            Arrays.fill(header, 0, 100, (byte) 0);
+            putString(split[1], 0, 100);
+            putString(split[0], 345, 155);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        // The checksum is computed with the checksum field set to spaces.
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header)
+            checksum += b & 0xFF;
+        putOctal(checksum, 148, 7);
+        header[155] = ' ';
+
+        out.write(header);
+    }
+
+    private void putString(String s, int offset, int length) {
+        byte[] data = s.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(data, 0, header, offset, Math.min(data.length, length));
+    }
+
+    /** Puts <code>value</code> as zero-padded octal digits and a NUL. */
+    private void putOctal(long value, int offset, int length) {
+        String s = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; ++i) {
+            int j = i - (digits - s.length());
+            header[offset + i] = (byte) (j >= 0 ? s.charAt(j) : '0');
+        }
+        header[offset + digits] = 0;
+    }
+
+    private static long padding(long size) {
+        int rest = (int) (size % BLOCK_SIZE);
+        return rest == 0 ? 0 : BLOCK_SIZE - rest;
+    }
+
+    private void writeZeros(long count) throws IOException {
+        while (count > 0) {
+            int n = (int) Math.min(ZEROS.length, count);
+            out.write(ZEROS, 0, n);
+            count -= n;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+
+/**
+ * An output stream to a file that leaves holes where whole blocks of zeros
+ * are written, so that the file ends up sparse on file systems that support
+ * it. Data is collected into blocks aligned to the block size of the target
+ * file system; blocks that are all zeros are skipped by moving the file
+ * position instead of writing, and the length of the file is set with
+ * {@link RandomAccessFile#setLength(long)} when the stream is closed, which
+ * also covers any zeros at the end.
+ * <p>
+ * On file systems without support for sparse files the skipped ranges simply
+ * read back as zeros, so the result is the same, only not smaller.
+ */
+public class SparseFileOutputStream extends OutputStream {
+
+    /** The block size used when the file system doesn't report one. */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int blockSize;
+    private final byte[] zeros;
+
+    /** Data of the block at <code>blockStart</code> that hasn't been written yet. */
+    private final byte[] block;
+    private int blockLength = 0;
+    private long blockStart = 0;
+
+    private long skippedBytes = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates (or truncates) <code>target</code>, using the block size of the
+     * file system that it's stored in.
+     */
+    public SparseFileOutputStream(File target) throws IOException {
+        this(target, 0);
+    }
+
+    /**
+     * Creates (or truncates) <code>target</code>.
+     *
+     * @param target    the file to write.
+     * @param blockSize the size of the blocks that are checked for zeros, or
+     *                  0 to use the block size of the file system that the
+     *                  file is stored in.
+     */
+    public SparseFileOutputStream(File target, int blockSize) throws IOException {
+        if (blockSize < 0)
+            throw new IllegalArgumentException("'blockSize' must not be negative");
+
+        this.file = new RandomAccessFile(target, "rw");
+        try {
+            file.setLength(0);
+            this.blockSize = blockSize > 0 ? blockSize : getFileSystemBlockSize(target);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        this.channel = file.getChannel();
+        this.zeros = new byte[this.blockSize];
+        this.block = new byte[this.blockSize];
+    }
+
+    private static int getFileSystemBlockSize(File target) {
+        try {
+            long blockSize = Files.getFileStore(target.toPath()).getBlockSize();
+            if (blockSize > 0 && blockSize <= 1024 * 1024)
+                return (int) blockSize;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Fall through to the default.
+        }
+
+        return DEFAULT_BLOCK_SIZE;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Stream is closed.");
+
+        while (len > 0) {
+            if (blockLength == 0 && len >= blockSize) {
+                // Whole blocks can be handled straight from the caller's array.
+                writeBlock(data, off, blockSize);
+                off += blockSize;
+                len -= blockSize;
+                continue;
+            }
+
+            int bytesToCopy = Math.min(len, blockSize - blockLength);
+            System.arraycopy(data, off, block, blockLength, bytesToCopy);
+            blockLength += bytesToCopy;
+            off += bytesToCopy;
+            len -= bytesToCopy;
+
+            if (blockLength == blockSize) {
+                writeBlock(block, 0, blockSize);
+                blockLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the block at <code>blockStart</code>, or skips it if it's all
+     * zeros.
+     */
+    private void writeBlock(byte[] data, int off, int len) throws IOException {
+        if (Arrays.mismatch(data, off, off + len, zeros, 0, len) == -1) {
+            skippedBytes += len;
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(data, off, len);
+            while (buffer.hasRemaining())
+                channel.write(buffer, blockStart + buffer.position() - off);
+        }
+
+        blockStart += len;
+    }
+
+    /** Returns the number of bytes written so far. */
+    public long getLength() {
+        return blockStart + blockLength;
+    }
+
+    /**
+     * Returns the number of zero bytes that were skipped instead of being
+     * written. The last, partial block is only counted once the stream has
+     * been closed.
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            if (blockLength > 0)
+                writeBlock(block, 0, blockLength);
+
+            file.setLength(blockStart);
+        } finally {
+            file.close();
+        }
+    }
+}
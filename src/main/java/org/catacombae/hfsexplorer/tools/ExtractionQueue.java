@@ -0,0 +1,229 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * Runs the extraction of files on a pool of threads, while a single thread
+ * walks the file system tree and submits them. Anything a task has to say
+ * (progress, warnings, errors) goes into its {@link Report}, and reports are
+ * replayed on the submitting thread in the order that the tasks were
+ * submitted, so the output is the same as if the files were extracted one
+ * after another. An exception thrown by a task is rethrown on the submitting
+ * thread in the same order.
+ * <p>
+ * The sum of the sizes of the files that have been submitted but whose
+ * reports haven't been replayed yet is kept below a limit, by waiting for
+ * the oldest task when it would be exceeded. A single file larger than the
+ * limit is extracted on its own.
+ * <p>
+ * With one thread, tasks run right away in the submitting thread.
+ * <p>
+ * Only the submitting thread may call the methods of this class.
+ */
+public class ExtractionQueue implements AutoCloseable {
+
+    /** The default limit on the number of bytes in flight (64 MiB). */
+    public static final long DEFAULT_MAX_IN_FLIGHT = 64 * 1024 * 1024;
+
+    /** Messages from a task, to be replayed in order. */
+    public static class Report {
+
+        private final List<Runnable> messages = new ArrayList<>();
+
+        /** Adds a message, which is some code that prints or logs it. */
+        public void add(Runnable message) {
+            messages.add(message);
+        }
+
+        private void replay() {
+            for (Runnable message : messages)
+                message.run();
+        }
+    }
+
+    /** What a task left behind. */
+    private static class Result {
+
+        final Report report = new Report();
+        Throwable failure;
+    }
+
+    /** A task whose report hasn't been replayed yet. */
+    private record Pending(long bytes, Future<Result> result) {
+    }
+
+    private final ExecutorService executor;
+    private final long maxInFlightBytes;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final List<Consumer<Report>> finalActions = new ArrayList<>();
+    private long inFlightBytes = 0;
+    private long taskCount = 0;
+
+    /**
+     * Creates a queue that runs tasks on <code>threads</code> threads.
+     *
+     * @param threads          the number of threads. 1 runs every task in
+     *                         the submitting thread.
+     * @param maxInFlightBytes the limit on the sum of the sizes of the tasks
+     *                         that haven't been reported.
+     */
+    public ExtractionQueue(int threads, long maxInFlightBytes) {
+        if (threads < 1)
+            throw new IllegalArgumentException("'threads' must be at least 1");
+        if (maxInFlightBytes < 0)
+            throw new IllegalArgumentException("'maxInFlightBytes' must not be negative");
+
+        this.executor = threads > 1 ? Executors.newWorkStealingPool(threads) : null;
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * Submits a task that extracts <code>bytes</code> bytes. Waits for older
+     * tasks first if there are too many bytes in flight.
+     */
+    public void submit(long bytes, Consumer<Report> task) {
+        ++taskCount;
+        if (executor == null) {
+            Result result = run(task);
+            replay(result);
+            return;
+        }
+
+        while (!pending.isEmpty() && inFlightBytes + bytes > maxInFlightBytes)
+            replayOldest();
+
+        inFlightBytes += bytes;
+        pending.addLast(new Pending(bytes, executor.submit(() -> run(task))));
+        replayFinished();
+    }
+
+    /**
+     * Adds a message from the submitting thread, which is replayed after the
+     * reports of the tasks submitted before it.
+     */
+    public void report(Runnable message) {
+        if (pending.isEmpty()) {
+            message.run();
+        } else {
+            Result result = new Result();
+            result.report.add(message);
+            pending.addLast(new Pending(0, CompletableFuture.completedFuture(result)));
+        }
+    }
+
+    /**
+     * Runs <code>action</code> once all tasks are done, for things that the
+     * tasks could otherwise undo, like setting the times of a directory that
+     * files are still being written to. Actions run in the order that they
+     * were added. With one thread they run right away.
+     */
+    public void runLast(Consumer<Report> action) {
+        if (executor == null) {
+            Result result = run(action);
+            replay(result);
+        } else {
+            finalActions.add(action);
+        }
+    }
+
+    /**
+     * Waits for all tasks, replays their reports and runs the actions added
+     * with {@link #runLast(Consumer)}.
+     */
+    public void finish() {
+        while (!pending.isEmpty())
+            replayOldest();
+
+        for (Consumer<Report> action : finalActions)
+            replay(run(action));
+        finalActions.clear();
+    }
+
+    /** Returns the number of tasks submitted. */
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    /**
+     * Stops the threads. Tasks that haven't been waited for with
+     * {@link #finish()} are cancelled.
+     */
+    @Override
+    public void close() {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    private static Result run(Consumer<Report> task) {
+        Result result = new Result();
+        try {
+            task.accept(result.report);
+        } catch (Throwable t) {
+            result.failure = t;
+        }
+        return result;
+    }
+
+    private void replayFinished() {
+        while (!pending.isEmpty() && pending.peekFirst().result().isDone())
+            replayOldest();
+    }
+
+    private void replayOldest() {
+        Pending p = pending.removeFirst();
+        inFlightBytes -= p.bytes();
+
+        Result result;
+        try {
+            result = p.result().get();
+        } catch (ExecutionException e) {
+            // run(...) catches everything, so this doesn't happen.
+            throw new RuntimeIOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeIOException(e);
+        }
+
+        replay(result);
+    }
+
+    private static void replay(Result result) {
+        result.report.replay();
+
+        Throwable failure = result.failure;
+        if (failure instanceof RuntimeException re)
+            throw re;
+        else if (failure instanceof Error e)
+            throw e;
+        else if (failure != null)
+            throw new RuntimeIOException(failure);
+    }
+}
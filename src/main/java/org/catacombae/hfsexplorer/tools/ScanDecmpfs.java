@@ -17,19 +17,17 @@
 
 package org.catacombae.hfsexplorer.tools;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.catacombae.hfs.AttributesFile;
+import org.catacombae.hfs.CatalogNodeIndex;
 import org.catacombae.hfs.types.decmpfs.DecmpfsHeader;
-import org.catacombae.hfs.types.hfscommon.CommonBTIndexRecord;
-import org.catacombae.hfs.types.hfscommon.CommonBTNode;
-import org.catacombae.hfs.types.hfscommon.CommonHFSAttributesIndexNode;
 import org.catacombae.hfs.types.hfscommon.CommonHFSAttributesKey;
-import org.catacombae.hfs.types.hfscommon.CommonHFSAttributesLeafNode;
 import org.catacombae.hfs.types.hfscommon.CommonHFSAttributesLeafRecord;
-import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogLeafRecord;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogNodeID;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogString;
 import org.catacombae.hfs.types.hfsplus.HFSPlusAttributesData;
 import org.catacombae.hfs.types.hfsplus.HFSPlusAttributesLeafRecordData;
 import org.catacombae.io.ReadableFileStream;
@@ -98,106 +96,120 @@ public class ScanDecmpfs {
 
         AttributesFile attributesFile = fsHandler.getFSView().getAttributesFile();
 
-        LinkedList<Long> nodeQueue = new LinkedList<>();
-        nodeQueue.addLast(attributesFile.getRootNodeNumber());
-
-        // Depth-first search for "com.apple.decmpfs" attribute records.
-        while (!nodeQueue.isEmpty()) {
-            long curNodeNumber = nodeQueue.removeFirst();
-            CommonBTNode<?> curNode = attributesFile.getNode(curNodeNumber);
-
-            if (curNode instanceof CommonHFSAttributesIndexNode indexNode) {
-
-                List<CommonBTIndexRecord<CommonHFSAttributesKey>> records = indexNode.getBTKeyedRecords();
-                ListIterator<CommonBTIndexRecord<CommonHFSAttributesKey>> it = records.listIterator(records.size());
+        // Every compressed file needs its path in verbose mode, so build the
+        // CNID index up front instead of walking the catalog for each file.
+        CatalogNodeIndex nodeIndex = verbose ? fsHandler.getFSView().getCatalogFile().buildNodeIndex() : null;
+
+        // Scan the attributes file in physical order, in parallel, for
+        // "com.apple.decmpfs" attribute records. The attributes file is sorted
+        // by CNID, so the results are sorted the same way before printing.
+        List<DecmpfsEntry> entries = attributesFile.scanAllParallel(ArrayList<DecmpfsEntry>::new,
+                ScanDecmpfs::addEntry, ArrayList::addAll);
+        entries.sort(Comparator.comparingLong(entry -> entry.fileID().toLong()));
+
+        for (DecmpfsEntry entry : entries) {
+            if (entry.warning() != null) {
+                System.err.println("[WARNING] " + entry.warning());
+                continue;
+            }
 
-                // For the search to be depth first, add elements in reverse
-                // order.
-                while (it.hasPrevious()) {
-                    nodeQueue.addFirst(it.previous().getIndex());
+            StringBuilder pathBuilder;
+            if (verbose) {
+                pathBuilder = new StringBuilder();
+
+                // The names come from the CNID index, which doesn't need
+                // any catalog lookups, unless the file isn't in it.
+                CommonHFSCatalogString[] path = nodeIndex.getPath(entry.fileID().toLong());
+                if (path == null) {
+                    path = fsHandler.getFSView().getCatalogFile().getPathTo(entry.fileID()).stream().
+                            map(pathComponent -> pathComponent.getKey().getNodeName()).
+                            toArray(CommonHFSCatalogString[]::new);
                 }
-            } else if (curNode instanceof CommonHFSAttributesLeafNode leafNode) {
-                for (CommonHFSAttributesLeafRecord rec : leafNode.getLeafRecords()) {
-                    CommonHFSAttributesKey k = rec.getKey();
-                    if (!new String(k.getAttrName(), 0, k.getAttrNameLen()).equals("com.apple.decmpfs")) {
-                        continue;
-                    } else if (k.getStartBlock() != 0) {
-                        System.err.println("[WARNING] " + k.getFileID().toLong() + " has " +
-                                "com.apple.decmpfs attribute with non-0 " +
-                                "start block (" + k.getStartBlock() + "). Skipping...");
-                        continue;
-                    }
-
-                    HFSPlusAttributesLeafRecordData data = rec.getRecordData();
-                    if (!(data instanceof HFSPlusAttributesData)) {
-                        System.err.println("[WARNING] " + k.getFileID().toLong() + " has " +
-                                "com.apple.decmpfs attribute without inline " +
-                                "data (" + data.getRecordTypeAsString() + "). Skipping...");
-                        continue;
-                    }
-
-                    DecmpfsHeader header = new DecmpfsHeader(((HFSPlusAttributesData) data).getAttrData(), 0);
-                    if (header.getMagic() != DecmpfsHeader.MAGIC) {
-                        System.err.println("[WARNING] " +
-                                k.getFileID().toLong() + " has " +
-                                "com.apple.decmpfs attribute with " +
-                                "mismatching magic (expected: 0x" +
-                                Util.toHexStringBE((int) DecmpfsHeader.MAGIC) +
-                                ", actual: 0x" +
-                                Util.toHexStringBE(header.getRawMagic()) +
-                                "). Skipping...");
-                        continue;
-                    }
 
-                    StringBuilder pathBuilder;
-                    if (verbose) {
-                        pathBuilder = new StringBuilder();
-
-                        boolean firstComponent = true;
-                        for (CommonHFSCatalogLeafRecord pathComponent :
-                                fsHandler.getFSView().getCatalogFile().getPathTo(k.getFileID())) {
-                            // Skip name of root directory.
-                            if (!firstComponent) {
-                                char[] nodeName = fsHandler.getFSView().decodeString(
-                                                pathComponent.getKey().getNodeName()).toCharArray();
-
-                                for (int i = 0; i < nodeName.length; ++i) {
-                                    // '/' transformed into ':' and vice versa.
-                                    // This is part of the POSIX-translation of
-                                    // filenames in HFS+ (original Mac OS had
-                                    // ':' as a reserved character, while '/' is
-                                    // reserved in Mac OS X/POSIX).
-                                    if (nodeName[i] == '/') {
-                                        nodeName[i] = ':';
-                                    } else if (nodeName[i] == ':') {
-                                        // Note: This should really be
-                                        //       considered an illegal HFS+
-                                        //       character.
-                                        nodeName[i] = '/';
-                                    }
-                                }
-
-                                pathBuilder.append('/').append(nodeName);
-                            } else {
-                                firstComponent = false;
+                boolean firstComponent = true;
+                for (CommonHFSCatalogString pathComponent : path) {
+                    // Skip name of root directory.
+                    if (!firstComponent) {
+                        char[] nodeName = fsHandler.getFSView().decodeString(pathComponent).toCharArray();
+
+                        for (int i = 0; i < nodeName.length; ++i) {
+                            // '/' transformed into ':' and vice versa.
+                            // This is part of the POSIX-translation of
+                            // filenames in HFS+ (original Mac OS had
+                            // ':' as a reserved character, while '/' is
+                            // reserved in Mac OS X/POSIX).
+                            if (nodeName[i] == '/') {
+                                nodeName[i] = ':';
+                            } else if (nodeName[i] == ':') {
+                                // Note: This should really be
+                                //       considered an illegal HFS+
+                                //       character.
+                                nodeName[i] = '/';
                             }
                         }
+
+                        pathBuilder.append('/').append(nodeName);
                     } else {
-                        pathBuilder = null;
+                        firstComponent = false;
                     }
-
-                    System.out.println("CNID: " + k.getFileID().toLong() + " " +
-                            "Type: " + header.getCompressionType() + " " +
-                            "Size: " + header.getFileSize() +
-                            (pathBuilder != null ? " Path: " + pathBuilder : ""));
                 }
             } else {
-                System.err.println("[WARNING] Unexpected attributes B-tree " +
-                        "node type: " + curNode.getClass());
+                pathBuilder = null;
             }
+
+            System.out.println("CNID: " + entry.fileID().toLong() + " " +
+                    "Type: " + entry.header().getCompressionType() + " " +
+                    "Size: " + entry.header().getFileSize() +
+                    (pathBuilder != null ? " Path: " + pathBuilder : ""));
         }
 
         fsHandler.close();
         System.exit(0);
     }
+
+    /**
+     * A "com.apple.decmpfs" attribute found by the scan: either its header, or
+     * a warning about why the attribute was skipped.
+     */
+    private record DecmpfsEntry(CommonHFSCatalogNodeID fileID, DecmpfsHeader header, String warning) {}
+
+    /**
+     * Adds an entry to <code>entries</code> if <code>rec</code> is a
+     * "com.apple.decmpfs" attribute record. Called by the scan workers, each
+     * with its own list.
+     */
+    private static void addEntry(List<DecmpfsEntry> entries, CommonHFSAttributesLeafRecord rec) {
+        CommonHFSAttributesKey k = rec.getKey();
+        if (!new String(k.getAttrName(), 0, k.getAttrNameLen()).equals("com.apple.decmpfs")) {
+            return;
+        } else if (k.getStartBlock() != 0) {
+            entries.add(new DecmpfsEntry(k.getFileID(), null, k.getFileID().toLong() + " has " +
+                    "com.apple.decmpfs attribute with non-0 " +
+                    "start block (" + k.getStartBlock() + "). Skipping..."));
+            return;
+        }
+
+        HFSPlusAttributesLeafRecordData data = rec.getRecordData();
+        if (!(data instanceof HFSPlusAttributesData)) {
+            entries.add(new DecmpfsEntry(k.getFileID(), null, k.getFileID().toLong() + " has " +
+                    "com.apple.decmpfs attribute without inline " +
+                    "data (" + data.getRecordTypeAsString() + "). Skipping..."));
+            return;
+        }
+
+        DecmpfsHeader header = new DecmpfsHeader(((HFSPlusAttributesData) data).getAttrData(), 0);
+        if (header.getMagic() != DecmpfsHeader.MAGIC) {
+            entries.add(new DecmpfsEntry(k.getFileID(), null,
+                    k.getFileID().toLong() + " has " +
+                    "com.apple.decmpfs attribute with " +
+                    "mismatching magic (expected: 0x" +
+                    Util.toHexStringBE((int) DecmpfsHeader.MAGIC) +
+                    ", actual: 0x" +
+                    Util.toHexStringBE(header.getRawMagic()) +
+                    "). Skipping..."));
+            return;
+        }
+
+        entries.add(new DecmpfsEntry(k.getFileID(), header, null));
+    }
 }
@@ -17,18 +17,28 @@
 
 package org.catacombae.hfsexplorer.tools;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import org.catacombae.dmg.encrypted.ReadableCEncryptedEncodingStream;
 import org.catacombae.dmg.sparsebundle.ReadableSparseBundleStream;
@@ -36,20 +46,28 @@ import org.catacombae.dmg.sparseimage.ReadableSparseImageStream;
 import org.catacombae.dmg.sparseimage.SparseImageRecognizer;
 import org.catacombae.dmg.udif.UDIFDetector;
 import org.catacombae.dmg.udif.UDIFRandomAccessStream;
+import org.catacombae.hfs.ProgressMonitor;
+import org.catacombae.hfsexplorer.BasicExtractProgressMonitor;
 import org.catacombae.hfsexplorer.HFSExplorer;
 import org.catacombae.hfsexplorer.IOUtil;
 import org.catacombae.hfsexplorer.Java7Util;
 import org.catacombae.hfsexplorer.fs.AppleSingleBuilder;
-import org.catacombae.hfsexplorer.fs.AppleSingleBuilder.AppleSingleVersion;
-import org.catacombae.hfsexplorer.fs.AppleSingleBuilder.FileSystem;
-import org.catacombae.hfsexplorer.fs.AppleSingleBuilder.FileType;
+import org.catacombae.hfsexplorer.fs.PhysicalOrderPlan;
+import org.catacombae.hfsexplorer.fs.ZipExtractor;
+import org.catacombae.hfsexplorer.io.ParallelZipWriter;
+import org.catacombae.hfsexplorer.io.PaxTarOutputStream;
+import org.catacombae.hfsexplorer.io.SparseFileOutputStream;
+import org.catacombae.hfsexplorer.tools.ExtractionQueue.Report;
 import org.catacombae.storage.io.win32.ReadableWin32FileStream;
 import org.catacombae.io.ReadableFileStream;
 import org.catacombae.io.ReadableRandomAccessStream;
 import org.catacombae.io.RuntimeIOException;
 import org.catacombae.storage.io.DataLocator;
+import org.catacombae.storage.io.MappedFileDataLocator;
+import org.catacombae.storage.io.ReadableFileChannelStream;
 import org.catacombae.storage.io.ReadableStreamDataLocator;
 import org.catacombae.storage.io.SubDataLocator;
+import org.catacombae.storage.fs.FSAttributes;
 import org.catacombae.storage.fs.FSEntry;
 import org.catacombae.storage.fs.FSFile;
 import org.catacombae.storage.fs.FSFolder;
@@ -68,12 +86,8 @@ import org.catacombae.storage.ps.PartitionSystemHandlerFactory;
 import org.catacombae.storage.ps.PartitionSystemType;
 import org.catacombae.storage.ps.PartitionType;
 import org.catacombae.util.ObjectContainer;
-import org.catacombae.util.Util.Pair;
 
 import static java.lang.System.getLogger;
-import static org.catacombae.hfsexplorer.fs.AppleSingleBuilder.AppleSingleVersion.VERSION_2_0;
-import static org.catacombae.hfsexplorer.fs.AppleSingleBuilder.FileSystem.MACOS_X;
-import static org.catacombae.hfsexplorer.fs.AppleSingleBuilder.FileType.APPLEDOUBLE;
 
 
 /**
@@ -110,6 +124,23 @@ public class UnHFS {
         ps.println("      should go.");
         ps.println("      When this option is omitted, all files go to the currect working");
         ps.println("      directory.");
+        ps.println("      With -format TAR or ZIP, this is the archive file to write. The special");
+        ps.println("      marker \"-\" writes a tar archive to stdout, which is also the default");
+        ps.println("      for -format TAR. A ZIP archive can't be written to stdout.");
+        ps.println("    -format DIR|TAR|ZIP");
+        ps.println("      Determines whether files are extracted to a directory, or written into");
+        ps.println("      an archive without writing any other files.");
+        ps.println("      TAR streams a POSIX pax tar archive, which keeps permissions, owners,");
+        ps.println("      times, symbolic links and hard links, and stores resource forks and");
+        ps.println("      extended attributes as SCHILY.xattr records. -resforks, -sparse,");
+        ps.println("      -threads and -physical-order don't apply to it.");
+        ps.println("      ZIP writes a ZIP64 archive, compressing on the number of threads given");
+        ps.println("      with -threads, which defaults to the number of processors. It keeps");
+        ps.println("      permissions, times and symbolic links. Hard links become copies. With");
+        ps.println("      -resforks APPLEDOUBLE, resource forks and extended attributes are stored");
+        ps.println("      under __MACOSX/ the way macOS does it. Data that doesn't compress is");
+        ps.println("      stored as is.");
+        ps.println("      When this option is omitted, files are extracted to a directory.");
         ps.println("    -fsroot <path to extract>");
         ps.println("      A POSIX path in the HFS file system that should be extracted.");
         ps.println("      Example which extracts all the contents of joe's user dir from a backup");
@@ -138,6 +169,21 @@ public class UnHFS {
         ps.println("      Translates the filenames to a format that is more compatible with Windows");
         ps.println("      filesystems, using the translation scheme that was used by the now defunct");
         ps.println("      Services for Mac component in Windows Server.");
+        ps.println("    -sparse");
+        ps.println("      Writes files with holes where they contain whole blocks of zeros, instead");
+        ps.println("      of writing the zeros. This saves space in the output directory if it's on");
+        ps.println("      a file system that supports sparse files.");
+        ps.println("    -threads <number of threads>");
+        ps.println("      Extracts files on the specified number of threads. Directories are");
+        ps.println("      still created in order, and messages are printed in the same order as");
+        ps.println("      when extracting on one thread. Helps with images containing many small");
+        ps.println("      files. When this option is omitted, one thread is used.");
+        ps.println("      With -format ZIP, this is the number of threads compressing the data.");
+        ps.println("    -physical-order");
+        ps.println("      Extracts files in the order their data is stored on disk rather than in");
+        ps.println("      alphabetical order, which avoids seeking back and forth on spinning");
+        ps.println("      disks and optical media. All files are looked up before extraction");
+        ps.println("      starts, and the folder structure is created first.");
         ps.println("    -v");
         ps.println("      Verbose mode. Prints the POSIX path of every extracted file to stdout.");
         ps.println("    --");
@@ -153,12 +199,17 @@ public class UnHFS {
      * @param args program arguments.
      */
     public static void main(String[] args) {
-        String outputDirname = ".";
+        String outputDirname = null;
+        boolean tarFormat = false;
+        boolean zipFormat = false;
         String fsRoot = "/";
         boolean extractFolderDirectly = true;
         boolean extractResourceForks = false;
         boolean verbose = false;
         boolean sfmSubstitutions = false;
+        boolean sparse = false;
+        int threads = 0; // 0 means the default for the format
+        boolean physicalOrder = false;
         int partitionNumber = -1; // -1 means search for first supported partition
         char[] password = null;
 
@@ -176,6 +227,29 @@ label:
                         System.exit(1);
                     }
                     break;
+                case "-format":
+                    if (i + 1 < args.length) {
+                        String value = args[++i];
+                        if (value.equalsIgnoreCase("DIR")) {
+                            tarFormat = false;
+                            zipFormat = false;
+                        } else if (value.equalsIgnoreCase("TAR")) {
+                            tarFormat = true;
+                            zipFormat = false;
+                        } else if (value.equalsIgnoreCase("ZIP")) {
+                            tarFormat = false;
+                            zipFormat = true;
+                        } else {
+                            logger.log(Level.DEBUG, "Error: Invalid value \"" + value +
+                                    "\" for -format!");
+                            printUsage(System.err);
+                            System.exit(1);
+                        }
+                    } else {
+                        printUsage(System.err);
+                        System.exit(1);
+                    }
+                    break;
                 case "-fsroot":
                     if (i + 1 < args.length)
                         fsRoot = args[++i];
@@ -274,6 +348,30 @@ label:
                 case "-sfm-substitutions":
                     sfmSubstitutions = true;
                     break;
+                case "-sparse":
+                    sparse = true;
+                    break;
+                case "-physical-order":
+                    physicalOrder = true;
+                    break;
+                case "-threads":
+                    if (i + 1 < args.length) {
+                        try {
+                            threads = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException nfe) {
+                            threads = 0;
+                        }
+                        if (threads < 1) {
+                            logger.log(Level.DEBUG, "Error: Invalid number of threads \"" +
+                                    args[i] + "\"!");
+                            printUsage(System.err);
+                            System.exit(1);
+                        }
+                    } else {
+                        printUsage(System.err);
+                        System.exit(1);
+                    }
+                    break;
                 case "-v":
                     verbose = true;
                     break;
@@ -298,9 +396,25 @@ label:
             System.exit(1);
         }
 
-        File outputDir = new File(outputDirname);
-        if (!(outputDir.exists() && outputDir.isDirectory())) {
-            logger.log(Level.DEBUG, "Error: Invalid output directory \"" + outputDirname + "\"!");
+        // A ZIP archive is patched as it's written, so it needs a file.
+        if (zipFormat && (outputDirname == null || outputDirname.equals("-"))) {
+            logger.log(Level.DEBUG, "Error: -format ZIP needs an output file given with -o!");
+            printUsage(System.err);
+            System.exit(1);
+        }
+
+        if (threads == 0) {
+            threads = zipFormat ? Runtime.getRuntime().availableProcessors() : 1;
+        }
+
+        // "-o -" streams a tar archive to stdout, as does -format tar
+        // without -o.
+        boolean toStdout = "-".equals(outputDirname) || (tarFormat && outputDirname == null);
+        tarFormat |= toStdout;
+
+        File outputDir = new File(outputDirname != null ? outputDirname : ".");
+        if (!tarFormat && !zipFormat && !(outputDir.exists() && outputDir.isDirectory())) {
+            logger.log(Level.DEBUG, "Error: Invalid output directory \"" + outputDir.getPath() + "\"!");
             printUsage(System.err);
             System.exit(1);
         }
@@ -310,15 +424,37 @@ label:
             inputStream = new ReadableSparseBundleStream(inputFile);
         } else if (ReadableWin32FileStream.isSystemSupported())
             inputStream = new ReadableWin32FileStream(inputFilename);
-        else
+        else if (MappedFileDataLocator.isSupported(inputFile)) {
+            try {
+                inputStream = new MappedFileDataLocator(inputFile).createReadOnlyFile();
+            } catch (RuntimeException e) {
+                logDebug("Could not memory map input file, falling back to regular reads: " + e);
+                inputStream = new ReadableFileChannelStream(inputFile);
+            }
+        } else
             inputStream = new ReadableFileStream(inputFilename);
 
         try {
-            unhfs(System.out, inputStream, outputDir, fsRoot, password,
-                    extractFolderDirectly, extractResourceForks,
-                    partitionNumber, verbose, sfmSubstitutions);
+            if (zipFormat) {
+                FileChannel archiveChannel = FileChannel.open(outputDir.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                unhfsToZip(System.out, inputStream, archiveChannel, fsRoot, password, extractFolderDirectly,
+                        extractResourceForks, partitionNumber, verbose, sfmSubstitutions, threads);
+            } else if (tarFormat) {
+                // Messages must not end up in the archive.
+                PrintStream messageStream = toStdout ? System.err : System.out;
+                try (OutputStream archiveStream = new BufferedOutputStream(toStdout ?
+                        new FileOutputStream(FileDescriptor.out) : new FileOutputStream(outputDir), 128 * 1024)) {
+                    unhfsToTar(messageStream, inputStream, archiveStream, fsRoot, password,
+                            extractFolderDirectly, partitionNumber, verbose, sfmSubstitutions);
+                }
+            } else {
+                unhfs(System.out, inputStream, outputDir, fsRoot, password,
+                        extractFolderDirectly, extractResourceForks,
+                        partitionNumber, verbose, sfmSubstitutions, sparse, threads, physicalOrder);
+            }
             System.exit(0);
-        } catch (RuntimeIOException e) {
+        } catch (RuntimeIOException | IOException e) {
             logger.log(Level.DEBUG, "Exception while executing main routine:");
             logger.log(Level.ERROR, e.getMessage(), e);
             System.exit(1);
@@ -340,15 +476,179 @@ label:
      * @param extractResourceForks
      * @param partitionNumber
      * @param verbose
+     * @param sfmSubstitutions
+     * @param sparse                write files with holes where they contain
+     *                              whole blocks of zeros?
+     * @param threads               the number of threads to extract files on.
+     * @param physicalOrder         extract files in the order their data is
+     *                              stored on disk?
      * @throws org.catacombae.io.RuntimeIOException
      */
     public static void unhfs(PrintStream outputStream,
                              ReadableRandomAccessStream inFileStream, File outputDir,
                              String fsRoot, char[] password, boolean extractFolderDirectly,
                              boolean extractResourceForks, int partitionNumber, boolean verbose,
-                             boolean sfmSubstitutions)
+                             boolean sfmSubstitutions, boolean sparse, int threads, boolean physicalOrder)
             throws RuntimeIOException {
 
+        FileSystemHandler fsHandler = openFileSystem(inFileStream, password, partitionNumber, sfmSubstitutions);
+
+        logDebug("Getting entry by posix path: \"" + fsRoot + "\"");
+        FSEntry entry = fsHandler.getEntryByPosixPath(fsRoot);
+        Extraction x;
+        try (ExtractionQueue queue = new ExtractionQueue(threads, ExtractionQueue.DEFAULT_MAX_IN_FLIGHT)) {
+            x = new Extraction(extractResourceForks, verbose, sparse, queue, physicalOrder);
+            if (entry instanceof FSFolder folder) {
+                File dirForFolder;
+                String folderName = folder.getName();
+                if (extractFolderDirectly || folderName.equals("/") || folderName.isEmpty()) {
+                    dirForFolder = outputDir;
+                } else {
+                    dirForFolder = getFileForFolder(outputDir, folder, x);
+                }
+                if (dirForFolder != null) {
+                    extractFolder(folder, dirForFolder, x);
+                }
+            } else if (entry instanceof FSFile file) {
+                extractFile(file, outputDir, x);
+            } else {
+                logger.log(Level.DEBUG, "Requested path is not a folder or a file!");
+                System.exit(1);
+            }
+
+            x.finish();
+        }
+
+        if (verbose || sparse) {
+            outputStream.println(x.getSummary());
+        }
+    }
+
+    /**
+     * Like {@link #unhfs}, but writes the extracted files as a POSIX pax tar
+     * archive to <code>archiveStream</code> instead of to a directory. Data is
+     * streamed from the file system straight into the archive, one file at a
+     * time. Permissions, owners, times, symbolic links and hard links are
+     * kept, and resource forks, Finder info and other extended attributes
+     * are stored as <code>SCHILY.xattr.*</code> records.
+     *
+     * @param outputStream   the PrintStream where all the messages will go.
+     *                       Must not be the same as
+     *                       <code>archiveStream</code>.
+     * @param inFileStream   the stream containing the file system data.
+     * @param archiveStream  the stream to write the archive to. It's not
+     *                       closed.
+     * @throws org.catacombae.io.RuntimeIOException
+     */
+    public static void unhfsToTar(PrintStream outputStream,
+                                  ReadableRandomAccessStream inFileStream, OutputStream archiveStream,
+                                  String fsRoot, char[] password, boolean extractFolderDirectly,
+                                  int partitionNumber, boolean verbose, boolean sfmSubstitutions)
+            throws RuntimeIOException {
+
+        FileSystemHandler fsHandler = openFileSystem(inFileStream, password, partitionNumber, sfmSubstitutions);
+
+        logDebug("Getting entry by posix path: \"" + fsRoot + "\"");
+        FSEntry entry = fsHandler.getEntryByPosixPath(fsRoot);
+        Archive a = new Archive(new PaxTarOutputStream(archiveStream), outputStream, verbose);
+        try {
+            if (entry instanceof FSFolder folder) {
+                String folderName = folder.getName();
+                if (extractFolderDirectly || folderName.equals("/") || folderName.isEmpty()) {
+                    archiveFolderContents(folder, "", a);
+                } else {
+                    archiveFolder(folder, folderName + "/", a);
+                }
+            } else if (entry instanceof FSFile file) {
+                archiveFile(file, file.getName(), a);
+            } else {
+                logger.log(Level.DEBUG, "Requested path is not a folder or a file!");
+                System.exit(1);
+            }
+
+            a.tar.finish();
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+
+        if (verbose) {
+            outputStream.println("Archived " + a.fileCount + " files (" + a.byteCount + " bytes).");
+        }
+    }
+
+    /**
+     * Like {@link #unhfs}, but writes the extracted files as a ZIP archive to
+     * <code>archiveChannel</code> instead of to a directory. The data is
+     * compressed on <code>threads</code> threads, and stored as is where it
+     * doesn't compress. Permissions, modification times and symbolic links
+     * are kept, and hard links are archived as copies.
+     *
+     * @param outputStream         the PrintStream where all the messages will
+     *                             go.
+     * @param inFileStream         the stream containing the file system data.
+     * @param archiveChannel       the file to write the archive to. It's
+     *                             closed when done.
+     * @param extractResourceForks store resource forks, Finder info and
+     *                             extended attributes as AppleDouble files
+     *                             under <code>__MACOSX/</code>?
+     * @param threads              the number of threads to compress on.
+     * @throws org.catacombae.io.RuntimeIOException
+     */
+    public static void unhfsToZip(PrintStream outputStream,
+                                  ReadableRandomAccessStream inFileStream, FileChannel archiveChannel,
+                                  String fsRoot, char[] password, boolean extractFolderDirectly,
+                                  boolean extractResourceForks, int partitionNumber, boolean verbose,
+                                  boolean sfmSubstitutions, int threads)
+            throws RuntimeIOException {
+
+        FileSystemHandler fsHandler = openFileSystem(inFileStream, password, partitionNumber, sfmSubstitutions);
+
+        logDebug("Getting entry by posix path: \"" + fsRoot + "\"");
+        FSEntry entry = fsHandler.getEntryByPosixPath(fsRoot);
+        ProgressMonitor pm = null;
+        if (verbose) {
+            pm = new BasicExtractProgressMonitor() {
+                @Override
+                public void updateCurrentDir(String dirname) {
+                    outputStream.println(dirname + "/");
+                }
+
+                @Override
+                public void updateCurrentFile(String filename, long fileSize) {
+                    outputStream.println(filename);
+                }
+            };
+        }
+
+        ZipExtractor z;
+        try (ParallelZipWriter zip = new ParallelZipWriter(archiveChannel, threads)) {
+            z = new ZipExtractor(zip, extractResourceForks, pm, message -> logger.log(Level.ERROR, message));
+            if (entry instanceof FSFolder folder) {
+                String folderName = folder.getName();
+                if (extractFolderDirectly || folderName.equals("/") || folderName.isEmpty()) {
+                    z.addFolderContents(folder, "");
+                } else {
+                    z.addEntry(folder, folderName);
+                }
+            } else if (entry instanceof FSFile file) {
+                z.addEntry(file, file.getName());
+            } else {
+                logger.log(Level.DEBUG, "Requested path is not a folder or a file!");
+                System.exit(1);
+            }
+        }
+
+        if (verbose) {
+            outputStream.println("Archived " + z.getFileCount() + " files (" + z.getByteCount() + " bytes).");
+        }
+    }
+
+    /**
+     * Finds the HFS file system in <code>inFileStream</code>, looking through
+     * any encryption, sparse image, UDIF and partition layers around it.
+     */
+    private static FileSystemHandler openFileSystem(ReadableRandomAccessStream inFileStream, char[] password,
+                                                    int partitionNumber, boolean sfmSubstitutions) {
         // First detect any outer layers of UDIF and/or encryption.
         logDebug("Trying to detect encrypted structure...");
         if (ReadableCEncryptedEncodingStream.isCEncryptedEncoding(inFileStream)) {
@@ -418,7 +718,7 @@ outer:
                     } else {
                         logger.log(Level.DEBUG, "Invalid partition number: " + partitionNumber);
                         System.exit(1);
-                        return;
+                        return null;
                     }
 
                     for (Partition p : partitionsToProbe) {
@@ -474,7 +774,7 @@ outer:
         if (posixFilenamesAttribute == null) {
             logger.log(Level.DEBUG, "Unexpected: HFS-ish file system handler does not support POSIX_FILENAMES attribute.");
             System.exit(1);
-            return;
+            return null;
         }
 
         fact.getCreateAttributes().setBooleanAttribute(posixFilenamesAttribute,
@@ -484,35 +784,81 @@ outer:
         if (sfmSubstitutionsAttribute == null) {
             logger.log(Level.DEBUG, "Unexpected: HFS-ish file system handler does not support SFM_SUBSTITUTIONS attribute.");
             System.exit(1);
-            return;
+            return null;
         }
 
         fact.getCreateAttributes().setBooleanAttribute(sfmSubstitutionsAttribute, sfmSubstitutions);
 
-        FileSystemHandler fsHandler = fact.createHandler(inputDataLocator);
+        return fact.createHandler(inputDataLocator);
+    }
 
-        logDebug("Getting entry by posix path: \"" + fsRoot + "\"");
-        FSEntry entry = fsHandler.getEntryByPosixPath(fsRoot);
-        if (entry instanceof FSFolder folder) {
-            File dirForFolder;
-            String folderName = folder.getName();
-            if (extractFolderDirectly || folderName.equals("/") || folderName.isEmpty()) {
-                dirForFolder = outputDir;
-            } else {
-                dirForFolder = getFileForFolder(outputDir, folder, verbose);
-            }
-            if (dirForFolder != null) {
-                extractFolder(folder, dirForFolder, extractResourceForks, verbose);
+    /**
+     * The settings and state of an extraction: where jobs go, and counts of
+     * what has been extracted for the summary printed at the end.
+     */
+    private static class Extraction {
+
+        final boolean extractResourceForks;
+        final boolean verbose;
+        final boolean sparse;
+        final ExtractionQueue queue;
+        /** Jobs waiting to be submitted in physical order, or null. */
+        private final PhysicalOrderPlan<Runnable> plan;
+        private final List<Consumer<Report>> lastActions = new ArrayList<>();
+
+        final LongAdder fileCount = new LongAdder();
+        final LongAdder byteCount = new LongAdder();
+        /** The number of bytes of zeros that were left as holes. */
+        final LongAdder holeBytes = new LongAdder();
+
+        Extraction(boolean extractResourceForks, boolean verbose, boolean sparse, ExtractionQueue queue,
+                   boolean physicalOrder) {
+            this.extractResourceForks = extractResourceForks;
+            this.verbose = verbose;
+            this.sparse = sparse;
+            this.queue = queue;
+            this.plan = physicalOrder ? new PhysicalOrderPlan<>() : null;
+        }
+
+        /**
+         * Extracts <code>bytes</code> bytes whose data starts at
+         * <code>position</code> on disk, now or when the plan is carried out.
+         */
+        void submit(long position, long bytes, Consumer<Report> task) {
+            if (plan != null)
+                plan.add(position, () -> queue.submit(bytes, task));
+            else
+                queue.submit(bytes, task);
+        }
+
+        /** Runs <code>action</code> after all extraction jobs. */
+        void runLast(Consumer<Report> action) {
+            if (plan != null)
+                lastActions.add(action);
+            else
+                queue.runLast(action);
+        }
+
+        void finish() {
+            if (plan != null) {
+                for (Runnable job : plan.drain())
+                    job.run();
+                for (Consumer<Report> action : lastActions)
+                    queue.runLast(action);
             }
-        } else if (entry instanceof FSFile file) {
-            extractFile(file, outputDir, extractResourceForks, verbose);
-        } else {
-            logger.log(Level.DEBUG, "Requested path is not a folder or a file!");
-            System.exit(1);
+
+            queue.finish();
+        }
+
+        String getSummary() {
+            String s = "Extracted " + fileCount.sum() + " files (" + byteCount.sum() + " bytes)";
+            if (sparse)
+                s += ", " + holeBytes.sum() + " bytes of which were left as holes in sparse files";
+            return s + ".";
         }
     }
 
-    private static void setFileTimes(File file, FSEntry entry, String fileType) {
+    private static void setFileTimes(File file, FSEntry entry, String fileType, Report report) {
         Long createdTime = null;
         Long lastAccessedTime = null;
         Long lastModifiedTime = null;
@@ -538,7 +884,7 @@ outer:
                         lastModifiedTime != null ? new Date(lastModifiedTime) : null);
                 fileTimesSet = true;
             } catch (Exception e) {
-                logger.log(Level.ERROR, e.getMessage(), e);
+                report.add(() -> logger.log(Level.ERROR, e.getMessage(), e));
             }
         }
 
@@ -546,112 +892,153 @@ outer:
             boolean setLastModifiedResult;
 
             if (lastModifiedTime < 0) {
-                logger.log(Level.DEBUG, "Warning: Can not set " + fileType + "'s " +
+                String message = "Warning: Can not set " + fileType + "'s " +
                         "last modified timestamp to pre-1970 date " + new Date(lastModifiedTime) + " (raw: " +
-                        lastModifiedTime + "). Setting to earliest possible timestamp (" + new Date(0) + ").");
+                        lastModifiedTime + "). Setting to earliest possible timestamp (" + new Date(0) + ").";
+                report.add(() -> logger.log(Level.DEBUG, message));
 
                 lastModifiedTime = (long) 0;
             }
 
             setLastModifiedResult = file.setLastModified(lastModifiedTime);
             if (!setLastModifiedResult) {
-                logger.log(Level.DEBUG, "Warning: Failed to set last modified timestamp (" + lastModifiedTime + ") for " +
-                        fileType + " \"" + file.getPath() + "\" after extraction.");
+                String message = "Warning: Failed to set last modified timestamp (" + lastModifiedTime + ") for " +
+                        fileType + " \"" + file.getPath() + "\" after extraction.";
+                report.add(() -> logger.log(Level.DEBUG, message));
             }
         }
     }
 
-    private static void extractFolder(FSFolder folder, File targetDir, boolean extractResourceForks, boolean verbose) {
+    private static void extractFolder(FSFolder folder, File targetDir, Extraction x) {
         boolean wasEmpty = targetDir.list().length == 0;
         for (FSEntry e : folder.listEntries()) {
             if (e instanceof FSFile file) {
-                extractFile(file, targetDir, extractResourceForks, verbose);
+                extractFile(file, targetDir, x);
             } else if (e instanceof FSFolder subFolder) {
-                File subFolderFile = getFileForFolder(targetDir, subFolder, verbose);
+                File subFolderFile = getFileForFolder(targetDir, subFolder, x);
                 if (subFolderFile != null) {
-                    extractFolder(subFolder, subFolderFile, extractResourceForks, verbose);
+                    extractFolder(subFolder, subFolderFile, x);
                 }
             } else if (e instanceof FSLink) {
                 // We don't currently handle links.
             }
         }
         if (wasEmpty) {
-            setFileTimes(targetDir, folder, "folder");
+            // Files may still be being written to the folder, which would
+            // change its times.
+            x.runLast(report -> setFileTimes(targetDir, folder, "folder", report));
         }
 
-        if (extractResourceForks) {
+        if (x.extractResourceForks) {
             File resFile = new File(targetDir.getParentFile(), "._" + scrub(targetDir.getName()));
-            ObjectContainer<Boolean> created = new ObjectContainer<>(false);
-            if (!extractAdditionalForksToAppleDoubleFile(folder, resFile, created)) {
-                logger.log(Level.DEBUG, "Failed to extract resource fork to " + resFile.getPath());
-            } else if (created.o) {
-                if (verbose) {
-                    logger.log(Level.DEBUG, resFile.getPath());
-                }
-
-                setFileTimes(resFile, folder, "resource fork AppleDouble file");
-            }
+            x.submit(PhysicalOrderPlan.getPosition(folder, FSForkType.MACOS_RESOURCE), 0,
+                    report -> extractAppleDoubleFile(folder, resFile, x.verbose, report));
         }
     }
 
-    private static void extractFile(FSFile file, File targetDir, boolean extractResourceForks, boolean verbose)
-            throws RuntimeIOException {
+    private static void extractFile(FSFile file, File targetDir, Extraction x) throws RuntimeIOException {
+        FSFork mainFork = file.getMainFork();
         File dataFile = new File(targetDir, scrub(file.getName()));
-        if (!extractRawForkToFile(file.getMainFork(), dataFile)) {
-            logger.log(Level.DEBUG, "Failed to extract data fork to " + dataFile.getPath());
-        } else {
-            if (verbose) {
-                System.out.println(dataFile.getPath());
+        Consumer<Report> extractData = report -> {
+            if (!extractRawForkToFile(mainFork, dataFile, x, report)) {
+                report.add(() -> logger.log(Level.DEBUG, "Failed to extract data fork to " + dataFile.getPath()));
+            } else {
+                if (x.verbose) {
+                    report.add(() -> System.out.println(dataFile.getPath()));
+                }
+
+                setFileTimes(dataFile, file, "data file", report);
             }
+        };
 
-            setFileTimes(dataFile, file, "data file");
+        if (!x.extractResourceForks) {
+            x.submit(mainFork.getPhysicalPosition(), mainFork.getLength(), extractData);
+            return;
         }
 
-        if (extractResourceForks) {
-            File resFile = new File(targetDir, "._" + scrub(file.getName()));
-            ObjectContainer<Boolean> created = new ObjectContainer<>(false);
-            if (!extractAdditionalForksToAppleDoubleFile(file, resFile, created)) {
-                logger.log(Level.DEBUG, "Failed to extract resource fork to " + resFile.getPath());
-            } else if (created.o) {
-                if (verbose) {
-                    logger.log(Level.DEBUG, resFile.getPath());
-                }
+        File resFile = new File(targetDir, "._" + scrub(file.getName()));
+        Consumer<Report> extractResource = report -> extractAppleDoubleFile(file, resFile, x.verbose, report);
+        if (x.plan != null) {
+            // The forks are usually in different places, so they are
+            // ordered separately.
+            x.submit(mainFork.getPhysicalPosition(), mainFork.getLength(), extractData);
+            x.submit(PhysicalOrderPlan.getPosition(file, FSForkType.MACOS_RESOURCE), 0, extractResource);
+        } else {
+            x.submit(-1, mainFork.getLength(), extractData.andThen(extractResource));
+        }
+    }
 
-                setFileTimes(resFile, file, "resource fork AppleDouble file");
+    /**
+     * Extracts the resource fork, Finder info and extended attributes of
+     * <code>entry</code> to an AppleDouble file, if it has any of them.
+     */
+    private static void extractAppleDoubleFile(FSEntry entry, File resFile, boolean verbose, Report report) {
+        ObjectContainer<Boolean> created = new ObjectContainer<>(false);
+        if (!extractAdditionalForksToAppleDoubleFile(entry, resFile, created, report)) {
+            report.add(() -> logger.log(Level.DEBUG, "Failed to extract resource fork to " + resFile.getPath()));
+        } else if (created.o) {
+            if (verbose) {
+                report.add(() -> logger.log(Level.DEBUG, resFile.getPath()));
             }
+
+            setFileTimes(resFile, entry, "resource fork AppleDouble file", report);
         }
     }
 
-    private static File getFileForFolder(File targetDir, FSFolder folder, boolean verbose) {
+    private static File getFileForFolder(File targetDir, FSFolder folder, Extraction x) {
         File folderFile = new File(targetDir, scrub(folder.getName()));
         if (folderFile.isDirectory() || folderFile.mkdir()) {
-            if (verbose)
-                logger.log(Level.DEBUG, folderFile.getPath());
+            if (x.verbose)
+                x.queue.report(() -> logger.log(Level.DEBUG, folderFile.getPath()));
         } else {
-            logger.log(Level.DEBUG, "Failed to create directory " + folderFile.getPath());
-            folderFile = null;
+            x.queue.report(() -> logger.log(Level.DEBUG, "Failed to create directory " + folderFile.getPath()));
+            return null;
         }
         return folderFile;
     }
 
-    private static boolean extractRawForkToFile(FSFork fork, File targetFile) throws RuntimeIOException {
+    private static boolean extractRawForkToFile(FSFork fork, File targetFile, Extraction x, Report report)
+            throws RuntimeIOException {
 
         ReadableRandomAccessStream in = null;
-        try (FileOutputStream os = new FileOutputStream(targetFile)) {
-
-            in = fork.getReadableRandomAccessStream();
-
-            long extractedBytes = IOUtil.streamCopy(in, os, 128 * 1024);
+        try {
+            long extractedBytes;
+            if (x.sparse) {
+                // The zeros have to be seen to be skipped, so always read
+                // through a stream here.
+                SparseFileOutputStream os = new SparseFileOutputStream(targetFile);
+                try {
+                    in = fork.getReadableRandomAccessStream();
+                    extractedBytes = copyFork(in, os, fork.getLength());
+                } finally {
+                    os.close();
+                }
+                x.holeBytes.add(os.getSkippedBytes());
+            } else {
+                try (FileOutputStream os = new FileOutputStream(targetFile)) {
+                    // Let the operating system copy the fork if it's stored
+                    // as-is in the image file, otherwise read it through a
+                    // stream.
+                    extractedBytes = fork.transferTo(0, fork.getLength(), os.getChannel());
+                    if (extractedBytes < 0) {
+                        in = fork.getReadableRandomAccessStream();
+                        extractedBytes = copyFork(in, os, fork.getLength());
+                    }
+                }
+            }
             if (extractedBytes != fork.getLength()) {
-                logger.log(Level.DEBUG, "WARNING: Did not extract intended number of bytes to \"" +
-                        targetFile.getPath() + "\"! Intended: " + fork.getLength() + " Extracted: " + extractedBytes);
+                String message = "WARNING: Did not extract intended number of bytes to \"" +
+                        targetFile.getPath() + "\"! Intended: " + fork.getLength() + " Extracted: " + extractedBytes;
+                report.add(() -> logger.log(Level.DEBUG, message));
             }
 
+            x.fileCount.increment();
+            x.byteCount.add(extractedBytes);
             return true;
         } catch (FileNotFoundException fnfe) {
             return false;
         } catch (Exception ioe) {
-            logger.log(Level.ERROR, ioe.getMessage(), ioe);
+            report.add(() -> logger.log(Level.ERROR, ioe.getMessage(), ioe));
             return false;
 //            throw new RuntimeIOException(ioe);
         } finally {
@@ -664,47 +1051,26 @@ outer:
         }
     }
 
+    /**
+     * Copies a fork stream of <code>length</code> bytes to <code>os</code>,
+     * with reading and writing overlapped if it is large.
+     */
+    private static long copyFork(ReadableRandomAccessStream in, OutputStream os, long length) throws IOException {
+        if (length >= IOUtil.PIPELINE_THRESHOLD)
+            return IOUtil.pipelinedCopy(in, os, null);
+        else
+            return IOUtil.streamCopy(in, os, 128 * 1024);
+    }
+
     private static boolean extractAdditionalForksToAppleDoubleFile(
-            FSEntry entry, File targetFile, ObjectContainer<Boolean> created) {
+            FSEntry entry, File targetFile, ObjectContainer<Boolean> created, Report report) {
 
         FileOutputStream os = null;
-        ReadableRandomAccessStream in = null;
         try {
-            LinkedList<Pair<String, byte[]>> attributeList = new LinkedList<>();
-            byte[] finderInfoData = null;
-            byte[] resourceForkData = null;
-
-            AppleSingleBuilder builder = new AppleSingleBuilder(APPLEDOUBLE, VERSION_2_0, MACOS_X);
-            long extractedBytes = 0;
-
-            for (FSFork f : entry.getAllForks()) {
-                FSForkType forkType = f.getType();
-                if (forkType == FSForkType.MACOS_RESOURCE) {
-                    resourceForkData = IOUtil.readFully(f.getReadableRandomAccessStream());
-                    extractedBytes += resourceForkData.length;
-                } else if (forkType == FSForkType.MACOS_FINDERINFO) {
-                    finderInfoData = IOUtil.readFully(f.getReadableRandomAccessStream());
-                    extractedBytes += finderInfoData.length;
-                } else if (f.hasXattrName()) {
-                    final byte[] attributeData = IOUtil.readFully(f.getReadableRandomAccessStream());
-                    attributeList.add(new Pair<>(f.getXattrName(), attributeData));
-                    extractedBytes += attributeData.length;
-                }
-            }
-
-            if (finderInfoData != null || attributeList.size() > 0) {
-                builder.addFinderInfo(finderInfoData, attributeList);
-            }
-
-            if (resourceForkData != null) {
-                builder.addResourceFork(resourceForkData);
-            } else {
-                builder.addEmptyResourceFork();
-            }
-
-            if (extractedBytes > 0) {
+            byte[] appleDoubleData = AppleSingleBuilder.buildAppleDouble(entry);
+            if (appleDoubleData != null) {
                 os = new FileOutputStream(targetFile);
-                os.write(builder.getResult());
+                os.write(appleDoubleData);
                 created.o = true;
             } else {
                 created.o = false;
@@ -714,7 +1080,7 @@ outer:
         } catch (FileNotFoundException fnfe) {
             return false;
         } catch (Exception ioe) {
-            logger.log(Level.ERROR, ioe.getMessage(), ioe);
+            report.add(() -> logger.log(Level.ERROR, ioe.getMessage(), ioe));
             return false;
 //            throw new RuntimeIOException(ioe);
         } finally {
@@ -722,10 +1088,182 @@ outer:
                 try {
                     os.close();
                 } catch (Exception e) {
-                    logger.log(Level.ERROR, e.getMessage(), e);
+                    report.add(() -> logger.log(Level.ERROR, e.getMessage(), e));
+                }
+            }
+        }
+    }
+
+    /** The state of writing a tar archive. */
+    private static class Archive {
+
+        final PaxTarOutputStream tar;
+        final PrintStream outputStream;
+        final boolean verbose;
+        /** The path of the first file archived for each hard linked inode. */
+        final Map<Long, String> hardLinkPaths = new HashMap<>();
+
+        long fileCount = 0;
+        long byteCount = 0;
+
+        Archive(PaxTarOutputStream tar, PrintStream outputStream, boolean verbose) {
+            this.tar = tar;
+            this.outputStream = outputStream;
+            this.verbose = verbose;
+        }
+
+        void put(PaxTarOutputStream.Entry entry) throws IOException {
+            tar.putEntry(entry);
+            if (verbose)
+                outputStream.println(entry.getPath());
+        }
+    }
+
+    private static void archiveFolder(FSFolder folder, String path, Archive a) throws IOException {
+        PaxTarOutputStream.Entry entry = new PaxTarOutputStream.Entry(path, PaxTarOutputStream.TYPE_DIRECTORY);
+        setEntryAttributes(entry, folder);
+        addXattrs(entry, folder);
+        a.put(entry);
+        a.tar.closeEntry();
+
+        archiveFolderContents(folder, path, a);
+    }
+
+    private static void archiveFolderContents(FSFolder folder, String pathPrefix, Archive a) throws IOException {
+        for (FSEntry e : folder.listEntries()) {
+            String path = pathPrefix + e.getName();
+            if (e instanceof FSFile file) {
+                archiveFile(file, path, a);
+            } else if (e instanceof FSFolder subFolder) {
+                archiveFolder(subFolder, path + "/", a);
+            } else if (e instanceof FSLink link) {
+                PaxTarOutputStream.Entry entry = new PaxTarOutputStream.Entry(path, PaxTarOutputStream.TYPE_SYMLINK);
+                setEntryAttributes(entry, link);
+                entry.setLinkPath(link.getLinkTargetString());
+                a.put(entry);
+                a.tar.closeEntry();
+            }
+        }
+    }
+
+    private static void archiveFile(FSFile file, String path, Archive a) throws IOException {
+        Long inode = getHardLinkInode(file);
+        if (inode != null) {
+            String firstPath = a.hardLinkPaths.putIfAbsent(inode, path);
+            if (firstPath != null) {
+                // The data is already in the archive.
+                PaxTarOutputStream.Entry entry =
+                        new PaxTarOutputStream.Entry(path, PaxTarOutputStream.TYPE_HARD_LINK);
+                setEntryAttributes(entry, file);
+                entry.setLinkPath(firstPath);
+                a.put(entry);
+                a.tar.closeEntry();
+                return;
+            }
+        }
+
+        FSFork mainFork = file.getMainFork();
+        long length = mainFork.getLength();
+        PaxTarOutputStream.Entry entry = new PaxTarOutputStream.Entry(path, PaxTarOutputStream.TYPE_FILE);
+        setEntryAttributes(entry, file);
+        entry.setSize(length);
+        addXattrs(entry, file);
+        a.put(entry);
+
+        ReadableRandomAccessStream in = null;
+        try {
+            in = mainFork.getReadableRandomAccessStream();
+            copyFork(in, a.tar, length);
+        } catch (RuntimeException e) {
+            logger.log(Level.ERROR, e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (Exception e) {
                 }
             }
         }
+
+        long missingBytes = a.tar.closeEntry();
+        if (missingBytes > 0) {
+            logger.log(Level.DEBUG, "WARNING: Could only read " + (length - missingBytes) + " of " + length +
+                    " bytes of \"" + path + "\". The rest was filled with zeros in the archive.");
+        }
+
+        a.fileCount++;
+        a.byteCount += length;
+    }
+
+    /**
+     * Returns the inode number shared by the hard links to <code>entry</code>,
+     * or <code>null</code> if it isn't hard linked.
+     */
+    private static Long getHardLinkInode(FSEntry entry) {
+        FSAttributes attrs = entry.getAttributes();
+        if (attrs.hasLinkCount() && attrs.hasPOSIXFileAttributes()) {
+            Long linkCount = attrs.getLinkCount();
+            FSAttributes.POSIXFileAttributes posixAttrs = attrs.getPOSIXFileAttributes();
+            if (linkCount != null && linkCount > 1 && posixAttrs.hasInodeNumber())
+                return posixAttrs.getInodeNumber();
+        }
+
+        return null;
+    }
+
+    private static void setEntryAttributes(PaxTarOutputStream.Entry tarEntry, FSEntry entry) {
+        FSAttributes attrs = entry.getAttributes();
+        if (attrs.hasPOSIXFileAttributes()) {
+            FSAttributes.POSIXFileAttributes posixAttrs = attrs.getPOSIXFileAttributes();
+            // A file type of 0 means that permissions were never set, like
+            // for files written by Mac OS 9. Keep the defaults for those.
+            if (posixAttrs.getFileType() != FSAttributes.POSIXFileAttributes.FILETYPE_UNDEFINED) {
+                tarEntry.setMode(posixAttrs.getFileModeWord());
+                tarEntry.setUserID(posixAttrs.getUserID());
+                tarEntry.setGroupID(posixAttrs.getGroupID());
+            }
+        }
+
+        if (attrs.hasModifyDate()) {
+            tarEntry.setModifyDate(attrs.getModifyDate());
+        }
+
+        if (attrs.hasAccessDate()) {
+            tarEntry.setAccessDate(attrs.getAccessDate());
+        }
+    }
+
+    /**
+     * Adds the resource fork, Finder info and extended attributes of
+     * <code>entry</code> to <code>tarEntry</code>. Their data is read when
+     * the entry is written.
+     */
+    private static void addXattrs(PaxTarOutputStream.Entry tarEntry, FSEntry entry) {
+        for (FSFork f : entry.getAllForks()) {
+            if (!f.hasXattrName()) {
+                continue;
+            }
+
+            FSForkType forkType = f.getType();
+            if (forkType == FSForkType.MACOS_FINDERINFO) {
+                // Most entries have Finder info that is all zeros, which
+                // macOS doesn't store as an attribute.
+                byte[] finderInfoData = IOUtil.readFully(f.getReadableRandomAccessStream());
+                if (!isAllZeros(finderInfoData)) {
+                    tarEntry.addXattr(f.getXattrName(), finderInfoData);
+                }
+            } else if (forkType != FSForkType.MACOS_RESOURCE || f.getLength() > 0) {
+                tarEntry.addXattr(f.getXattrName(), f.getLength(), f::getInputStream);
+            }
+        }
+    }
+
+    private static boolean isAllZeros(byte[] data) {
+        for (byte b : data) {
+            if (b != 0)
+                return false;
+        }
+        return true;
     }
 
     /**
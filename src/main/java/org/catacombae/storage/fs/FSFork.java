@@ -19,6 +19,7 @@ package org.catacombae.storage.fs;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import org.catacombae.io.RandomAccessStream;
 import org.catacombae.io.ReadableRandomAccessStream;
@@ -146,6 +147,35 @@ public interface FSFork {
      */
     ReadableRandomAccessStream getReadableRandomAccessStream();
 
+    /**
+     * Copies <code>count</code> bytes starting at <code>pos</code> in the fork
+     * to <code>target</code> without reading them into memory, if the fork is
+     * stored uncompressed in a file that the operating system can copy from
+     * (optional operation). The default implementation doesn't support this.
+     *
+     * @return the number of bytes copied, which is less than
+     * <code>count</code> only at the end of the fork, or -1 if the fork can't
+     * be copied this way, in which case nothing has been written and it has
+     * to be read through a stream instead.
+     */
+    default long transferTo(long pos, long count, WritableByteChannel target) {
+        return -1;
+    }
+
+    /**
+     * Returns the position in bytes, relative to the start of the file
+     * system, where the fork's data starts on disk (optional operation). This
+     * is only a hint for reading forks in the order they are stored in, and
+     * says nothing about where the rest of the fork is. The default
+     * implementation doesn't know.
+     *
+     * @return where the fork's data starts, or -1 if that is not known or the
+     * fork has no data on disk.
+     */
+    default long getPhysicalPosition() {
+        return -1;
+    }
+
     /**
      * Opens a WritableRandomAccessStream with access to the fork contents
      * (optional operation).
@@ -91,6 +91,20 @@ public abstract class FileSystemHandler {
      */
     public abstract FSEntry getEntry(String... path);
 
+    /**
+     * Returns the FSEntry with the catalog node ID (CNID), or inode number,
+     * <code>cnid</code>. Not all file systems support this, in which case
+     * <code>null</code> is always returned.
+     *
+     * @param cnid the catalog node ID of the requested entry.
+     * @return the FSEntry with catalog node ID <code>cnid</code>, or
+     * <code>null</code> if no such entry exists or if the file system doesn't
+     * support lookups by ID.
+     */
+    public FSEntry getEntryByCNID(long cnid) {
+        return null;
+    }
+
     /**
      * Looks up the FSEntry denoted by the supplied POSIX path. Since POSIX
      * paths may be relative, a root folder is needed to resolve the relative
@@ -77,6 +77,14 @@ public abstract class HFSCommonAbstractFile extends HFSCommonFSEntry {
         this.resourceFork = new HFSCommonFSFork(this, FSForkType.MACOS_RESOURCE, catalogFile.getResourceFork());
     }
 
+    /**
+     * Returns whether this file was reached through a hard link, in which case
+     * its data and attributes are those of the shared inode.
+     */
+    boolean isHardLink() {
+        return keyRecord != fileRecord;
+    }
+
     @Override
     public FSAttributes getAttributes() {
         return attributes;
@@ -126,7 +126,9 @@ class HFSCommonFSAttributes extends FSAttributes {
 
     @Override
     public boolean hasLinkCount() {
-        if (attributes instanceof CommonHFSCatalogFileRecord fr) {
+        if (isReachedThroughHardLink())
+            return true;
+        else if (attributes instanceof CommonHFSCatalogFileRecord fr) {
             if (fr.getData().isHardFileLink() /* || fr.getData().isHardDirectoryLink() */)
                 return true;
         }
@@ -136,11 +138,19 @@ class HFSCommonFSAttributes extends FSAttributes {
 
     @Override
     public Long getLinkCount() {
-        if (attributes instanceof CommonHFSCatalogFileRecord) {
+        if (isReachedThroughHardLink()) {
+            // The attributes are those of the inode, which keeps the number
+            // of links in its special field.
+            return Util.unsign(attributes.getPermissions().getSpecial());
+        } else if (attributes instanceof CommonHFSCatalogFileRecord) {
             return parentEntry.getFileSystemHandler().getLinkCount(
                     (CommonHFSCatalogFileRecord) attributes);
         }
 
         return null;
     }
+
+    private boolean isReachedThroughHardLink() {
+        return parentEntry instanceof HFSCommonAbstractFile file && file.isHardLink() && attributes.hasPermissions();
+    }
 }
@@ -19,8 +19,12 @@ package org.catacombae.storage.fs.hfscommon;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
+import org.catacombae.hfs.HFSVolume;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentDescriptor;
 import org.catacombae.hfs.types.hfscommon.CommonHFSForkData;
+import org.catacombae.hfs.types.hfscommon.CommonHFSForkType;
 import org.catacombae.io.RandomAccessStream;
 import org.catacombae.io.ReadableRandomAccessInputStream;
 import org.catacombae.io.ReadableRandomAccessStream;
@@ -40,6 +44,8 @@ public class HFSCommonFSFork implements FSFork {
     private final HFSCommonAbstractFile parent;
     private final FSForkType type;
     private final CommonHFSForkData forkData;
+    /** The extents of the fork, once they have been looked up for a transfer. */
+    private volatile CommonHFSExtentDescriptor[] extents = null;
 
     protected HFSCommonFSFork(HFSCommonAbstractFile iParent, FSForkType iType, CommonHFSForkData iForkData) {
         // Input check
@@ -69,7 +75,7 @@ public class HFSCommonFSFork implements FSFork {
 
     @Override
     public long getOccupiedSize() {
-        long blockSize = parent.fsHandler.getFSView().getVolumeHeader().getAllocationBlockSize();
+        long blockSize = parent.fsHandler.getFSView().getAllocationBlockSize();
         long forkBlocks;
         if (forkData.hasTotalBlocks()) {
             forkBlocks = forkData.getTotalBlocks();
@@ -119,6 +125,45 @@ public class HFSCommonFSFork implements FSFork {
         };
     }
 
+    @Override
+    public long transferTo(long pos, long count, WritableByteChannel target) {
+        HFSVolume vol = parent.fsHandler.getFSView();
+        long length = getLength();
+        if (pos >= length)
+            return 0;
+
+        CommonHFSExtentDescriptor[] forkExtents = extents;
+        if (forkExtents == null) {
+            CommonHFSForkType forkType = switch (type) {
+                case DATA -> CommonHFSForkType.DATA_FORK;
+                case MACOS_RESOURCE -> CommonHFSForkType.RESOURCE_FORK;
+                default -> throw new RuntimeException("INTERNAL ERROR: Incorrect fork type: " + type);
+            };
+            forkExtents = vol.getExtentsOverflowFile().getAllExtentDescriptors(parent.getCatalogNodeID(),
+                    forkData, forkType);
+            extents = forkExtents;
+        }
+
+        // Only copy up to the logical end of the fork, which is usually in
+        // the middle of the last block.
+        return vol.transferExtentsTo(forkExtents, pos, Math.min(count, length - pos), target);
+    }
+
+    @Override
+    public long getPhysicalPosition() {
+        // The first extent is always in the catalog record, so this doesn't
+        // need the extents overflow file.
+        for (CommonHFSExtentDescriptor extent : forkData.getBasicExtents()) {
+            if (extent.getBlockCount() > 0) {
+                // On HFS the allocation blocks start after the volume bitmap.
+                return parent.fsHandler.getFSView().getAllocationBlockStartOffset() +
+                        extent.getStartBlock() * parent.fsHandler.getFSView().getAllocationBlockSize();
+            }
+        }
+
+        return -1;
+    }
+
     @Override
     public WritableRandomAccessStream getWritableRandomAccessStream() throws UnsupportedOperationException {
         throw new UnsupportedOperationException("Not supported yet.");
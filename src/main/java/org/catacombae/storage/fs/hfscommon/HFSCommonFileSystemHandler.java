@@ -21,17 +21,31 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.catacombae.hfs.CatalogFile;
+import org.catacombae.hfs.CatalogNodeIndex;
 import org.catacombae.hfs.HFSVolume;
 import org.catacombae.hfs.UnicodeNormalizationToolkit;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFileRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFileThreadRecord;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolder;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolderRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolderThread;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolderThreadRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogLeafRecord;
 import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogNodeID;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogNodeID.ReservedID;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogThread;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogThreadRecord;
 import org.catacombae.hfs.util.ServicesForMac;
 import org.catacombae.io.ReadableRandomAccessStream;
 import org.catacombae.storage.fs.FSEntry;
@@ -56,12 +70,21 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
 
     private static final Logger logger = getLogger(HFSCommonFileSystemHandler.class.getName());
 
+    /**
+     * Subtrees are scanned instead of listed if their folders directly hold
+     * at least this fraction (1/n) of the catalog's records. The whole
+     * subtree usually holds many times that.
+     */
+    private static final int SUBTREE_SCAN_RATIO = 64;
+
     protected final HFSVolume view;
     private final boolean posixNames;
     private final boolean sfmSubstitutions;
     private final boolean doUnicodeFileNameComposition;
     protected boolean hideProtected;
 
+    private final HFSCommonLookupCache lookupCache = new HFSCommonLookupCache(HFSCommonLookupCache.DEFAULT_CAPACITY);
+
     protected HFSCommonFileSystemHandler(HFSVolume iView,
                                          boolean posixNames,
                                          boolean sfmSubstitutions,
@@ -90,9 +113,38 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
         return getStaticCapabilities();
     }
 
+    /**
+     * Returns the cache of resolved path components used by this handler, for
+     * statistics and tuning.
+     */
+    public HFSCommonLookupCache getLookupCache() {
+        return lookupCache;
+    }
+
+    /**
+     * Returns the root folder record, from the lookup cache if possible. This
+     * also drops the lookup cache if the volume header stamp has changed since
+     * it was filled, so it should be called at the start of every lookup. The
+     * volume reads the stamp from disk at most once per recheck interval.
+     */
+    protected CommonHFSCatalogFolderRecord getRootFolderRecord() {
+        lookupCache.validate(view.getVolumeHeaderStamp());
+        return getCachedRootFolderRecord();
+    }
+
+    private CommonHFSCatalogFolderRecord getCachedRootFolderRecord() {
+        CommonHFSCatalogFolderRecord rootFolder = lookupCache.getRootFolder();
+        if (rootFolder == null) {
+            rootFolder = view.getCatalogFile().getRootFolder();
+            lookupCache.putRootFolder(rootFolder);
+        }
+
+        return rootFolder;
+    }
+
     @Override
     public FSEntry[] list(String... path) {
-        CommonHFSCatalogFolderRecord curFolder = view.getCatalogFile().getRootFolder();
+        CommonHFSCatalogFolderRecord curFolder = getRootFolderRecord();
         for (String nextFolderName : path) {
             CommonHFSCatalogLeafRecord subRecord = getRecord(curFolder, nextFolderName);
 
@@ -106,7 +158,7 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
 
     @Override
     public FSEntry getEntry(String... path) {
-        return getEntry(view.getCatalogFile().getRootFolder(), path);
+        return getEntry(getRootFolderRecord(), path);
     }
 
     FSEntry getEntry(CommonHFSCatalogFolderRecord rootRecord, String... path) {
@@ -174,13 +226,21 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
             LinkedList<String[]> curVisitedList = null;
 
             // Iterate through all links.
-            while (currentRoot instanceof CommonHFSCatalogFileRecord) {
-                String[] absPath;
-
-                absPath = getAbsoluteLinkPath(path, i,
-                        (CommonHFSCatalogFileRecord) currentRoot);
+            while (currentRoot instanceof CommonHFSCatalogFileRecord linkRecord) {
+                // A symbolic link may be relative, so its target depends on
+                // the path it was reached by. Hard links don't.
+                long linkID = linkRecord.getData().getFileID().toLong();
+                List<String> linkPath = linkRecord.getData().isSymbolicLink() ?
+                        List.of(Arrays.copyOf(path, i)) : List.of();
+
+                String[] absPath = lookupCache.getLinkTargetPath(linkID, linkPath);
                 if (absPath == null) {
-                    break;
+                    absPath = getAbsoluteLinkPath(path, i, linkRecord);
+                    if (absPath == null) {
+                        break;
+                    }
+
+                    lookupCache.putLinkTargetPath(linkID, linkPath, absPath);
                 }
 
                 // Reset visited list before usage if this is the first time
@@ -206,7 +266,7 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
                 } else {
                     curVisitedList.addLast(absPath);
 //                    log(prefix + "  getRecord: Trying to get record for absolute link target...");
-                    CommonHFSCatalogLeafRecord linkTarget = getRecord(view.getCatalogFile().getRootFolder(), absPath);
+                    CommonHFSCatalogLeafRecord linkTarget = getRecord(getCachedRootFolderRecord(), absPath);
 //                    log(prefix + "  getRecord: target record = " + linkTarget);
                     if (linkTarget != null) {
                         currentRoot = linkTarget;
@@ -223,8 +283,14 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
             }
 
 //            log(prefix + "  getting record (" + currentRootFolder.getData().getFolderID().toLong() + ":\"" + curPathComponent + "\")");
-            CommonHFSCatalogLeafRecord newRoot =
-                    view.getCatalogFile().getRecord(currentRootFolder.getData().getFolderID(), view.encodeString(curPathComponent));
+            long parentID = currentRootFolder.getData().getFolderID().toLong();
+            CommonHFSCatalogLeafRecord newRoot = lookupCache.getChild(parentID, curPathComponent);
+            if (newRoot == null) {
+                newRoot = view.getCatalogFile().getRecord(currentRootFolder.getData().getFolderID(),
+                        view.encodeString(curPathComponent));
+                if (newRoot != null)
+                    lookupCache.putChild(parentID, curPathComponent, newRoot);
+            }
 
             if (newRoot != null)
                 currentRoot = newRoot;
@@ -417,6 +483,130 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
         return result.toArray(FSEntry[]::new);
     }
 
+    /**
+     * Returns whether {@link #scanSubtrees(FSFolder...)} is likely to be
+     * faster for <code>folders</code> than listing the folders one by one.
+     * A scan reads the whole catalog file, while listing costs a lookup per
+     * folder, so a scan only pays off if the root folder is one of them or if
+     * they directly hold a good share of the catalog's records.
+     *
+     * @param folders the roots of the subtrees.
+     * @return whether the subtrees should be scanned.
+     */
+    public boolean isSubtreeScanPreferred(FSFolder... folders) {
+        long valence = 0;
+        for (FSFolder folder : folders) {
+            if (!(folder instanceof HFSCommonFSFolder hfsFolder)) {
+                return false;
+            }
+
+            CommonHFSCatalogFolder catalogFolder = hfsFolder.getInternalCatalogFolder();
+            CommonHFSCatalogNodeID folderID = catalogFolder.getFolderID();
+            if (folderID.equals(folderID.getReservedID(ReservedID.ROOT_FOLDER))) {
+                return true;
+            }
+
+            valence += catalogFolder.getValence();
+        }
+
+        // Every entry has a thread record besides its file or folder record.
+        return valence * 2 * SUBTREE_SCAN_RATIO >= view.getCatalogFile().getLeafRecordCount();
+    }
+
+    /**
+     * Returns the entries of all files and links below <code>folders</code>,
+     * at any depth. They are found with a single parallel scan of the catalog
+     * file instead of by listing each folder, and are returned in no
+     * particular order. Use {@link #isSubtreeScanPreferred(FSFolder...)} to
+     * find out whether this is worth it.<br>
+     * Hidden entries and the contents of hidden folders are skipped, just like
+     * when the folders are listed. Directory hard links are returned as
+     * folders, but their contents are not included.
+     * <p>
+     * The returned stream must be closed after usage.
+     *
+     * @param folders the roots of the subtrees to scan.
+     * @return a stream of the file and link entries in the subtrees.
+     */
+    public Stream<FSEntry> scanSubtrees(FSFolder... folders) {
+        Map<Long, Boolean> inSubtree = new HashMap<>();
+        for (FSFolder folder : folders) {
+            if (!(folder instanceof HFSCommonFSFolder hfsFolder)) {
+                throw new IllegalArgumentException("Not a folder of this file system: " + folder);
+            }
+
+            inSubtree.put(hfsFolder.getInternalCatalogFolder().getFolderID().toLong(), true);
+        }
+
+        // The records of a folder may come before or after the records of its
+        // parent in physical order, so the files are kept until the parent of
+        // every folder is known. The per-worker results are merged.
+        FolderTree tree = view.getCatalogFile().scanAllParallel(FolderTree::new,
+                (FolderTree t, CommonHFSCatalogLeafRecord rec) -> {
+                    if (rec instanceof CommonHFSCatalogFolderRecord folderRec) {
+                        long folderID = folderRec.getData().getFolderID().toLong();
+                        t.folderParents.put(folderID, rec.getKey().getParentID().toLong());
+                        if (shouldHide(rec)) {
+                            t.hiddenFolders.add(folderID);
+                        }
+                    } else if (rec instanceof CommonHFSCatalogFileRecord fileRec && !shouldHide(rec)) {
+                        t.files.add(fileRec);
+                    }
+                },
+                FolderTree::merge);
+
+        return tree.files.stream().
+                filter(rec -> isInSubtree(rec.getKey().getParentID().toLong(), tree, inSubtree)).
+                map(rec -> entryFromRecord(rec));
+    }
+
+    /**
+     * The folder hierarchy of the volume and its visible files, as collected
+     * by a catalog scan.
+     */
+    private static class FolderTree {
+
+        /** Maps each folder ID to the ID of its parent folder. */
+        private final Map<Long, Long> folderParents = new HashMap<>();
+        private final Set<Long> hiddenFolders = new HashSet<>();
+        private final ArrayList<CommonHFSCatalogFileRecord> files = new ArrayList<>();
+
+        void merge(FolderTree other) {
+            folderParents.putAll(other.folderParents);
+            hiddenFolders.addAll(other.hiddenFolders);
+            files.addAll(other.files);
+        }
+    }
+
+    /**
+     * Checks if the folder <code>folderID</code> is in one of the subtrees in
+     * <code>inSubtree</code>, and remembers the result for the folders on the
+     * way up.
+     */
+    private static boolean isInSubtree(long folderID, FolderTree tree, Map<Long, Boolean> inSubtree) {
+        ArrayList<Long> visited = new ArrayList<>();
+        Boolean result;
+        long currentID = folderID;
+        while ((result = inSubtree.get(currentID)) == null) {
+            Long parentID = tree.folderParents.get(currentID);
+            if (parentID == null || tree.hiddenFolders.contains(currentID) ||
+                    visited.size() > tree.folderParents.size()) {
+                // Reached the root, a hidden folder or a loop (corrupt volume).
+                result = false;
+                break;
+            }
+
+            visited.add(currentID);
+            currentID = parentID;
+        }
+
+        for (Long id : visited) {
+            inSubtree.put(id, result);
+        }
+
+        return result;
+    }
+
     HFSCommonFSFolder lookupParentFolder(CommonHFSCatalogLeafRecord childRecord) {
         CommonHFSCatalogFolderRecord folderRec = lookupParentFolderRecord(childRecord);
         if (folderRec != null)
@@ -425,9 +615,55 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
             return null;
     }
 
+    /**
+     * Looks up an entry by its catalog node ID. If a CNID index has been
+     * built for the catalog file, the key of the entry's record is taken from
+     * it, otherwise the entry's thread record is looked up first.
+     */
+    @Override
+    public FSEntry getEntryByCNID(long cnid) {
+        if (cnid <= 0 || cnid > 0xFFFFFFFFL)
+            return null;
+
+        CatalogFile catalogFile = view.getCatalogFile();
+        CommonHFSCatalogLeafRecord rec;
+
+        CatalogNodeIndex index = catalogFile.getNodeIndex();
+        if (index != null && index.contains(cnid)) {
+            rec = catalogFile.getRecord(view.createCommonHFSCatalogNodeID((int) index.getParentID(cnid)),
+                    index.getName(cnid));
+        } else {
+            CommonHFSCatalogLeafRecord threadRec =
+                    catalogFile.getRecord(view.createCommonHFSCatalogNodeID((int) cnid), view.getEmptyString());
+            if (threadRec instanceof CommonHFSCatalogThreadRecord<?> tr) {
+                CommonHFSCatalogThread thread = tr.getData();
+                rec = catalogFile.getRecord(thread.getParentID(), thread.getNodeName());
+            } else
+                rec = null;
+        }
+
+        if (rec instanceof CommonHFSCatalogFileRecord fileRec)
+            return entryFromRecord(fileRec);
+        else if (rec instanceof CommonHFSCatalogFolderRecord folderRec)
+            return entryFromRecord(folderRec);
+        else
+            return null;
+    }
+
     private CommonHFSCatalogFolderRecord lookupParentFolderRecord(CommonHFSCatalogLeafRecord childRecord) {
         CommonHFSCatalogNodeID parentID = childRecord.getKey().getParentID();
 
+        CatalogNodeIndex index = view.getCatalogFile().getNodeIndex();
+        if (index != null && index.contains(parentID.toLong())) {
+            // The index gives us the key of the parent's folder record
+            // directly, so we can skip the thread record.
+            CommonHFSCatalogLeafRecord rec = view.getCatalogFile().getRecord(
+                    view.createCommonHFSCatalogNodeID((int) index.getParentID(parentID.toLong())),
+                    index.getName(parentID.toLong()));
+            if (rec instanceof CommonHFSCatalogFolderRecord folderRec)
+                return folderRec;
+        }
+
         // Look for the thread record associated with the parent dir
         CommonHFSCatalogLeafRecord parent = view.getCatalogFile().getRecord(parentID, view.getEmptyString());
         if (parent == null) {
@@ -475,7 +711,7 @@ public abstract class HFSCommonFileSystemHandler extends FileSystemHandler {
 
     @Override
     public FSFolder getRoot() {
-        return new HFSCommonFSFolder(this, view.getCatalogFile().getRootFolder());
+        return new HFSCommonFSFolder(this, getRootFolderRecord());
     }
 
     @Override
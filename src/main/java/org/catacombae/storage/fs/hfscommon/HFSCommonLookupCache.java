@@ -0,0 +1,222 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.fs.hfscommon;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogFolderRecord;
+import org.catacombae.hfs.types.hfscommon.CommonHFSCatalogLeafRecord;
+
+
+/**
+ * A bounded cache for path resolution in {@link HFSCommonFileSystemHandler}.
+ * It maps (parent folder CNID, on-disk name) to the catalog leaf record of
+ * the child, and a link (CNID and the path it was reached by) to the
+ * absolute path of its target. The root folder record is kept separately
+ * and is never evicted.
+ * <p>
+ * Entries are evicted in LRU order when there are more than the capacity.
+ * Everything is dropped when the volume header stamp changes.
+ */
+public class HFSCommonLookupCache {
+
+    /** The default capacity (number of entries). */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private static final class ChildKey {
+
+        private final long parentID;
+        private final String name;
+
+        ChildKey(long parentID, String name) {
+            this.parentID = parentID;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ChildKey k))
+                return false;
+            return parentID == k.parentID && name.equals(k.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(parentID) * 31 + name.hashCode();
+        }
+    }
+
+    private static final class LinkKey {
+
+        private final long linkID;
+        private final List<String> linkPath;
+
+        LinkKey(long linkID, List<String> linkPath) {
+            this.linkID = linkID;
+            this.linkPath = linkPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LinkKey k))
+                return false;
+            return linkID == k.linkID && linkPath.equals(k.linkPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(linkID) * 31 + linkPath.hashCode();
+        }
+    }
+
+    /** Values are leaf records for {@link ChildKey}s and String[] for {@link LinkKey}s. */
+    private final LinkedHashMap<Object, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private CommonHFSCatalogFolderRecord rootFolder = null;
+    /** Only written with the lock held, but read without it by {@link #validate(long)}. */
+    private volatile long headerStamp = 0;
+
+    private int capacity;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    HFSCommonLookupCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Sets the maximum number of entries to keep in the cache, not counting
+     * the root folder. A capacity of 0 disables the cache.
+     *
+     * @param capacity the new capacity.
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("'capacity' must not be negative");
+
+        this.capacity = capacity;
+        evict();
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        rootFolder = null;
+    }
+
+    /**
+     * Clears the cache if <code>headerStamp</code> differs from the volume
+     * header stamp that the cached entries were read under. The lock is only
+     * taken if it differs, so that concurrent lookups don't contend here.
+     */
+    void validate(long headerStamp) {
+        if (headerStamp == this.headerStamp)
+            return;
+
+        synchronized (this) {
+            if (headerStamp != this.headerStamp) {
+                clear();
+                this.headerStamp = headerStamp;
+            }
+        }
+    }
+
+    synchronized CommonHFSCatalogFolderRecord getRootFolder() {
+        if (rootFolder == null) {
+            ++missCount;
+        } else {
+            ++hitCount;
+        }
+
+        return rootFolder;
+    }
+
+    synchronized void putRootFolder(CommonHFSCatalogFolderRecord rootFolder) {
+        this.rootFolder = rootFolder;
+    }
+
+    synchronized CommonHFSCatalogLeafRecord getChild(long parentID, String onDiskName) {
+        return (CommonHFSCatalogLeafRecord) get(new ChildKey(parentID, onDiskName));
+    }
+
+    synchronized void putChild(long parentID, String onDiskName, CommonHFSCatalogLeafRecord rec) {
+        put(new ChildKey(parentID, onDiskName), rec);
+    }
+
+    synchronized String[] getLinkTargetPath(long linkID, List<String> linkPath) {
+        return (String[]) get(new LinkKey(linkID, linkPath));
+    }
+
+    synchronized void putLinkTargetPath(long linkID, List<String> linkPath, String[] targetPath) {
+        put(new LinkKey(linkID, linkPath), targetPath);
+    }
+
+    private Object get(Object key) {
+        Object value = entries.get(key);
+        if (value == null) {
+            ++missCount;
+        } else {
+            ++hitCount;
+        }
+
+        return value;
+    }
+
+    private void put(Object key, Object value) {
+        if (capacity == 0)
+            return;
+
+        entries.put(key, value);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Object> it = entries.keySet().iterator();
+        while (entries.size() > capacity) {
+            it.next();
+            it.remove();
+            ++evictionCount;
+        }
+    }
+}
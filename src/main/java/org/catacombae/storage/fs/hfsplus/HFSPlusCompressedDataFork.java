@@ -24,6 +24,7 @@ import java.lang.System.Logger.Level;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import org.catacombae.hfs.io.ByteArrayPool;
 import org.catacombae.hfs.types.decmpfs.DecmpfsHeader;
 import org.catacombae.hfsexplorer.IOUtil;
 import org.catacombae.hfsexplorer.fs.ResourceForkReader;
@@ -53,6 +54,9 @@ public class HFSPlusCompressedDataFork implements FSFork {
 
     private static final Logger logger = getLogger(HFSPlusCompressedDataFork.class.getName());
 
+    /** Decompression buffers shared by all compressed resource streams. */
+    private static final ByteArrayPool decompressionBuffers = new ByteArrayPool(16 * 1024, 16);
+
     private final FSFork decmpfsFork;
     private final FSFork resourceFork;
 
@@ -199,6 +203,15 @@ public class HFSPlusCompressedDataFork implements FSFork {
         return null;
     }
 
+    @Override
+    public long getPhysicalPosition() {
+        // Compressed data is either in the resource fork or inline in the
+        // decmpfs attribute. Which one doesn't matter here, since an empty
+        // resource fork has no position.
+        long position = resourceFork != null ? resourceFork.getPhysicalPosition() : -1;
+        return position >= 0 ? position : decmpfsFork.getPhysicalPosition();
+    }
+
     @Override
     public InputStream getInputStream() {
         return new ReadableRandomAccessInputStream(
@@ -394,6 +407,10 @@ public class HFSPlusCompressedDataFork implements FSFork {
         private final byte[] blockTableData;
         private final Inflater inflater = new Inflater(true);
 
+        /** Buffers reused between reads, until the stream is closed. */
+        private byte[] compressedBuffer = null;
+        private byte[] decompressedBuffer = null;
+
         private long fp = 0;
 
         private int processedBlocks = 0;
@@ -424,6 +441,10 @@ public class HFSPlusCompressedDataFork implements FSFork {
         @Override
         public synchronized void close() throws RuntimeIOException {
             resourceStream.close();
+
+            decompressionBuffers.release(decompressedBuffer);
+            decompressedBuffer = null;
+            compressedBuffer = null;
         }
 
         @Override
@@ -447,8 +468,9 @@ public class HFSPlusCompressedDataFork implements FSFork {
 
         @Override
         public synchronized int read(byte[] data, int pos, int len) throws RuntimeIOException {
-            logger.log(Level.TRACE, "[CompressedResourceStream.read(byte[], " +
-                    "int, int)] Called with data=" + data + ", pos=" + pos + ", len=" + len + "...");
+            if (logger.isLoggable(Level.TRACE))
+                logger.log(Level.TRACE, "[CompressedResourceStream.read(byte[], " +
+                        "int, int)] Called with data=" + data + ", pos=" + pos + ", len=" + len + "...");
 
             // Input check.
             if (data == null) {
@@ -505,15 +527,17 @@ public class HFSPlusCompressedDataFork implements FSFork {
                 endFp = uncompressedSize;
             }
 
-            byte[] compressedBuffer = null;
-            byte[] decompressedBuffer = new byte[16 * 1024];
+            if (decompressedBuffer == null)
+                decompressedBuffer = decompressionBuffers.acquire();
+
             int bytesRead = 0;
 
             while (curFp < endFp) {
                 boolean skip;
 
-                logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)]     Iterating... curFp " +
-                        "(" + curFp + ") < endFp (" + endFp + ")");
+                if (logger.isLoggable(Level.DEBUG))
+                    logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)]     Iterating... " +
+                            "curFp (" + curFp + ") < endFp (" + endFp + ")");
 
                 if (curBlock < processedBlocks) {
                     long nextBlockOffset;
@@ -559,9 +583,10 @@ public class HFSPlusCompressedDataFork implements FSFork {
                         int rawDataOffset = curOffset + 1;
                         int rawDataLength = curLength - 1;
 
-                        logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)]     Copying " +
-                                "raw data at logical offset " + curFp + ": [offset=" + rawDataOffset +
-                                ", length=" + rawDataLength + "]");
+                        if (logger.isLoggable(Level.DEBUG))
+                            logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)]     Copying " +
+                                    "raw data at logical offset " + curFp + ": [offset=" + rawDataOffset +
+                                    ", length=" + rawDataLength + "]");
 
                         int remainingLen = len - bytesRead;
                         int remainingInBlock = rawDataLength;
@@ -592,9 +617,10 @@ public class HFSPlusCompressedDataFork implements FSFork {
                         int compressedDataOffset = curOffset + 2;
                         int compressedDataLength = curLength - 2;
 
-                        logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)]     " +
-                                "Decompressing compressed data at logical offset " + curFp + ": [offset=" +
-                                compressedDataOffset + ", length=" + compressedDataLength + "]");
+                        if (logger.isLoggable(Level.DEBUG))
+                            logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)]     " +
+                                    "Decompressing compressed data at logical offset " + curFp + ": [offset=" +
+                                    compressedDataOffset + ", length=" + compressedDataLength + "]");
 
                         if (compressedBuffer == null ||
                                 compressedBuffer.length < compressedDataLength) {
@@ -629,8 +655,9 @@ public class HFSPlusCompressedDataFork implements FSFork {
                                         "(" + ex + ").", ex);
                             }
 
-                            logger.log(Level.DEBUG, "Inflated " + inflatedBytes +
-                                    " to decompressedBuffer (length: " + decompressedBuffer.length + ").");
+                            if (logger.isLoggable(Level.DEBUG))
+                                logger.log(Level.DEBUG, "Inflated " + inflatedBytes +
+                                        " to decompressedBuffer (length: " + decompressedBuffer.length + ").");
 
                             if (inflatedBytes <= 0) {
                                 throw new RuntimeIOException("No (" + inflatedBytes + ") inflated " +
@@ -651,22 +678,24 @@ public class HFSPlusCompressedDataFork implements FSFork {
                                 int remainingBytes = len - bytesRead;
                                 int copyLength = Math.min(remainingBytes, inflatedBytes);
 
-                                logger.log(Level.DEBUG, "Copying " + copyLength +
-                                        " bytes from decompressedBuffer @ " + inOffset + " to data @ " +
-                                        (pos + bytesRead) + " (curDecompressedOffsetInBlock=" +
-                                        curDecompressedOffsetInBlock + ", fp=" + fp + ", curBlockOffset=" +
-                                        curBlockOffset + ")...");
+                                if (logger.isLoggable(Level.DEBUG))
+                                    logger.log(Level.DEBUG, "Copying " + copyLength +
+                                            " bytes from decompressedBuffer @ " + inOffset + " to data @ " +
+                                            (pos + bytesRead) + " (curDecompressedOffsetInBlock=" +
+                                            curDecompressedOffsetInBlock + ", fp=" + fp + ", curBlockOffset=" +
+                                            curBlockOffset + ")...");
 
                                 System.arraycopy(decompressedBuffer, inOffset, data, pos + bytesRead, copyLength);
 
                                 fp += copyLength;
                                 bytesRead += copyLength;
                             } else {
-                                logger.log(Level.DEBUG, "Skipping copy of data outside bounds of read. " +
-                                        "fp=" + fp + " curBlockOffset=" + curBlockOffset + " " +
-                                        "curOffsetInBlock=" + curOffsetInBlock + " " +
-                                        "curDecompressedOffsetInBlock=" + curDecompressedOffsetInBlock + " " +
-                                        "inflatedBytes=" + inflatedBytes);
+                                if (logger.isLoggable(Level.DEBUG))
+                                    logger.log(Level.DEBUG, "Skipping copy of data outside bounds of read. " +
+                                            "fp=" + fp + " curBlockOffset=" + curBlockOffset + " " +
+                                            "curOffsetInBlock=" + curOffsetInBlock + " " +
+                                            "curDecompressedOffsetInBlock=" + curDecompressedOffsetInBlock + " " +
+                                            "inflatedBytes=" + inflatedBytes);
                             }
 
                             curDecompressedOffsetInBlock += inflatedBytes;
@@ -713,8 +742,9 @@ public class HFSPlusCompressedDataFork implements FSFork {
                 ++curBlock;
             }
 
-            logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)] Leaving with " +
-                    (bytesRead == 0 ? -1 : bytesRead) + ".");
+            if (logger.isLoggable(Level.DEBUG))
+                logger.log(Level.DEBUG, "[CompressedResourceStream.read(byte[], int, int)] Leaving with " +
+                        (bytesRead == 0 ? -1 : bytesRead) + ".");
 
             return bytesRead == 0 ? -1 : bytesRead;
         }
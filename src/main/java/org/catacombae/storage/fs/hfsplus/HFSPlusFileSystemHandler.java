@@ -136,7 +136,7 @@ public class HFSPlusFileSystemHandler extends HFSCommonFileSystemHandler {
 
     private CommonHFSCatalogFileRecord lookupFileInode(int inodeNumber) {
         long trueInodeNumber = Util.unsign(inodeNumber);
-        CommonHFSCatalogLeafRecord res = getRecord(view.getCatalogFile().getRootFolder(),
+        CommonHFSCatalogLeafRecord res = getRecord(getRootFolderRecord(),
                         FILE_HARD_LINK_DIR, FILE_HARD_LINK_PREFIX + trueInodeNumber);
         if (res == null) {
             // Could not find any inode
@@ -152,7 +152,7 @@ public class HFSPlusFileSystemHandler extends HFSCommonFileSystemHandler {
 
     private CommonHFSCatalogFolderRecord lookupDirectoryInode(int inodeNumber) {
         long trueInodeNumber = Util.unsign(inodeNumber);
-        CommonHFSCatalogLeafRecord res = getRecord(view.getCatalogFile().getRootFolder(),
+        CommonHFSCatalogLeafRecord res = getRecord(getRootFolderRecord(),
                         DIRECTORY_HARD_LINK_DIR,
                         DIRECTORY_HARD_LINK_PREFIX + trueInodeNumber);
         if (res == null) {
@@ -0,0 +1,78 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * Data that may be stored as-is in a file, in which case it can be copied to
+ * a channel with {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * The operating system then moves the bytes (with <code>sendfile</code> or
+ * <code>copy_file_range</code> on Linux) without copying them through the
+ * Java heap.
+ */
+public interface ChannelTransferable {
+
+    /**
+     * Returns whether {@link #transferTo(long, long, WritableByteChannel)}
+     * can be used, i.e. whether the data is currently backed by a file.
+     */
+    boolean isTransferable();
+
+    /**
+     * Copies up to <code>count</code> bytes at position <code>pos</code> to
+     * <code>target</code>, at its current position.
+     *
+     * @return the number of bytes copied, which is less than
+     * <code>count</code> only at the end of the data.
+     * @throws UnsupportedOperationException if {@link #isTransferable()}
+     *                                       returns <code>false</code>.
+     */
+    long transferTo(long pos, long count, WritableByteChannel target) throws RuntimeIOException;
+
+    /**
+     * Copies <code>count</code> bytes at <code>position</code> in
+     * <code>channel</code> to <code>target</code>, for as long as the
+     * channel keeps transferring.
+     *
+     * @return the number of bytes copied.
+     */
+    static long transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+            throws RuntimeIOException {
+        long bytesTransferred = 0;
+        try {
+            while (bytesTransferred < count) {
+                long curBytesTransferred = channel.transferTo(position + bytesTransferred,
+                        count - bytesTransferred, target);
+                if (curBytesTransferred <= 0)
+                    break;
+
+                bytesTransferred += curBytesTransferred;
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+
+        return bytesTransferred;
+    }
+}
@@ -0,0 +1,95 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.io.File;
+
+import org.catacombae.io.RandomAccessStream;
+import org.catacombae.io.ReadableRandomAccessStream;
+
+
+/**
+ * A read-only DataLocator for a plain file, which is read through memory
+ * mapped segments (see {@link ReadableMappedFileStream}) instead of seek and
+ * read calls on a file handle. This is mostly useful for large raw disk
+ * images.
+ */
+public class MappedFileDataLocator extends DataLocator {
+
+    private final File file;
+    private final long pos, len;
+
+    /**
+     * Creates a new DataLocator for all of <code>file</code>.
+     *
+     * @param file the backing file.
+     */
+    public MappedFileDataLocator(File file) {
+        this(file, 0, -1);
+    }
+
+    /**
+     * Creates a new DataLocator for a region of <code>file</code>.
+     *
+     * @param file the backing file.
+     * @param pos  the start offset in the file for the data.
+     * @param len  the length of the data being addressed, or -1 for the rest
+     *             of the file.
+     */
+    public MappedFileDataLocator(File file, long pos, long len) {
+        if (!file.canRead())
+            throw new RuntimeException("Can not read from file!");
+
+        this.file = file;
+        this.pos = pos;
+        this.len = len;
+    }
+
+    /**
+     * Returns whether <code>file</code> can be read through memory mapping,
+     * i.e. whether it is a regular file (not a directory or a device) and the
+     * JVM has a 64-bit address space. Memory mapping isn't used on Windows,
+     * where a mapped file can't be deleted until the mapping is garbage
+     * collected.
+     */
+    public static boolean isSupported(File file) {
+        return file.isFile() && file.length() > 0 &&
+                !"32".equals(System.getProperty("sun.arch.data.model")) &&
+                !System.getProperty("os.name", "").startsWith("Windows");
+    }
+
+    @Override
+    public ReadableRandomAccessStream createReadOnlyFile() {
+        return new ReadableMappedFileStream(file, pos, len, ReadableMappedFileStream.DEFAULT_SEGMENT_SIZE);
+    }
+
+    @Override
+    public RandomAccessStream createReadWriteFile() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Memory mapped files are read only.");
+    }
+
+    @Override
+    public boolean isWritable() {
+        return false;
+    }
+
+    @Override
+    public void releaseResources() {
+        // Each stream holds its own file channel and mappings.
+    }
+}
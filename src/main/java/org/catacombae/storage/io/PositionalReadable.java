@@ -0,0 +1,82 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.nio.ByteBuffer;
+
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * Data that can be read at an explicit position, like <code>pread</code>,
+ * without a shared file pointer. Implementations must allow concurrent calls
+ * from several threads, and should not serialize them more than the
+ * underlying storage requires.
+ */
+public interface PositionalReadable {
+
+    /**
+     * Reads up to <code>len</code> bytes at position <code>pos</code> into
+     * <code>data</code>, starting at <code>off</code>.
+     *
+     * @return the number of bytes read, or -1 if <code>pos</code> is at or
+     * beyond the end of the data.
+     */
+    int readAt(long pos, byte[] data, int off, int len) throws RuntimeIOException;
+
+    /**
+     * Reads up to <code>dst.remaining()</code> bytes at position
+     * <code>pos</code> into <code>dst</code>, and advances its position by the
+     * number of bytes read.
+     *
+     * @return the number of bytes read, or -1 if <code>pos</code> is at or
+     * beyond the end of the data.
+     */
+    default int readAt(long pos, ByteBuffer dst) throws RuntimeIOException {
+        int bytesRead;
+        if (dst.hasArray()) {
+            bytesRead = readAt(pos, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (bytesRead > 0)
+                dst.position(dst.position() + bytesRead);
+        } else {
+            byte[] data = new byte[dst.remaining()];
+            bytesRead = readAt(pos, data, 0, data.length);
+            if (bytesRead > 0)
+                dst.put(data, 0, bytesRead);
+        }
+
+        return bytesRead;
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes at position <code>pos</code> into
+     * <code>data</code>, starting at <code>off</code>.
+     *
+     * @throws RuntimeIOException if the end of the data is reached first.
+     */
+    default void readFullyAt(long pos, byte[] data, int off, int len) throws RuntimeIOException {
+        int bytesRead = 0;
+        while (bytesRead < len) {
+            int curBytesRead = readAt(pos + bytesRead, data, off + bytesRead, len - bytesRead);
+            if (curBytesRead <= 0)
+                throw new RuntimeIOException("Couldn't read the entire length.");
+
+            bytesRead += curBytesRead;
+        }
+    }
+}
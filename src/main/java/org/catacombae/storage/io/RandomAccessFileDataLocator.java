@@ -139,6 +139,11 @@ public class RandomAccessFileDataLocator extends DataLocator {
 
     @Override
     public ReadableRandomAccessStream createReadOnlyFile() {
+        // Regular files are read with positional reads, which several threads
+        // can do at once. Devices are left to ReadableFileStream.
+        if (file.isFile() && (pos == null || len == null || pos + len <= file.length()))
+            return new ReadableFileChannelStream(file, pos != null ? pos : 0, len != null ? len : -1);
+
         ReadableRandomAccessStream llf = new ReadableFileStream(file);
         if (pos != null && len != null)
             return new ReadableConcatenatedStream(llf, pos, len);
@@ -0,0 +1,166 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.catacombae.io.BasicReadableRandomAccessStream;
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * A read-only stream over a file (or a region of a file) that reads with
+ * {@link FileChannel#read(ByteBuffer, long)}, i.e. <code>pread</code>. The
+ * channel has no shared file pointer, so positional reads from several threads
+ * go to the file concurrently. The stream can also be copied to another
+ * channel by the operating system (see {@link ChannelTransferable}).
+ */
+public class ReadableFileChannelStream extends BasicReadableRandomAccessStream
+        implements PositionalReadable, ChannelTransferable {
+
+    private final FileChannel channel;
+    private final long start;
+    private final long length;
+
+    private long fp = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a stream over all of <code>file</code>.
+     */
+    public ReadableFileChannelStream(File file) {
+        this(file, 0, -1);
+    }
+
+    /**
+     * Creates a stream over a region of <code>file</code>.
+     *
+     * @param file   the file to read.
+     * @param start  the offset in the file where the stream starts.
+     * @param length the length of the stream, or -1 to extend to the end of
+     *               the file.
+     */
+    public ReadableFileChannelStream(File file, long start, long length) {
+        if (start < 0)
+            throw new IllegalArgumentException("'start' must not be negative");
+
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+            long fileSize = channel.size();
+            if (start > fileSize || (length >= 0 && start + length > fileSize)) {
+                channel.close();
+                throw new IllegalArgumentException("Region (" + start + ", " + length + ") is outside of the " +
+                        "file (size " + fileSize + ").");
+            }
+
+            this.start = start;
+            this.length = length >= 0 ? length : fileSize - start;
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    @Override
+    public int readAt(long pos, byte[] data, int off, int len) throws RuntimeIOException {
+        return readAt(pos, ByteBuffer.wrap(data, off, len));
+    }
+
+    @Override
+    public int readAt(long pos, ByteBuffer dst) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos >= length)
+            return dst.hasRemaining() ? -1 : 0;
+
+        int totalBytesToRead = (int) Math.min(dst.remaining(), length - pos);
+        ByteBuffer buf = dst.slice().limit(totalBytesToRead);
+        try {
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, start + pos + buf.position()) < 0)
+                    break;
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+
+        int bytesRead = buf.position();
+        dst.position(dst.position() + bytesRead);
+        return bytesRead == 0 && totalBytesToRead > 0 ? -1 : bytesRead;
+    }
+
+    @Override
+    public boolean isTransferable() {
+        return !closed;
+    }
+
+    @Override
+    public long transferTo(long pos, long count, WritableByteChannel target) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos >= length)
+            return 0;
+
+        return ChannelTransferable.transfer(channel, start + pos, Math.min(count, length - pos), target);
+    }
+
+    @Override
+    public synchronized int read(byte[] data, int pos, int len) throws RuntimeIOException {
+        int bytesRead = readAt(fp, data, pos, len);
+        if (bytesRead > 0)
+            fp += bytesRead;
+
+        return bytesRead;
+    }
+
+    @Override
+    public synchronized void seek(long pos) throws RuntimeIOException {
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative seek position: " + pos);
+
+        fp = pos;
+    }
+
+    @Override
+    public long length() throws RuntimeIOException {
+        return length;
+    }
+
+    @Override
+    public synchronized long getFilePointer() throws RuntimeIOException {
+        return fp;
+    }
+
+    @Override
+    public synchronized void close() throws RuntimeIOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+}
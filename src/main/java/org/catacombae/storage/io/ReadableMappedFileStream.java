@@ -0,0 +1,213 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.catacombae.io.BasicReadableRandomAccessStream;
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * A read-only stream over a file (or a region of a file) that is memory
+ * mapped in large segments. Reads are copies from the mapped pages, so
+ * reading data that is in the page cache doesn't need a system call.
+ * <p>
+ * Segments are mapped on first access. Reads spanning a segment boundary are
+ * served from both segments. Mapped segments are only unmapped when they are
+ * garbage collected, which is why this stream should only be used for files
+ * that aren't going to be modified or deleted while the program runs.
+ */
+public class ReadableMappedFileStream extends BasicReadableRandomAccessStream
+        implements PositionalReadable, ChannelTransferable {
+
+    /** The default segment size (1 GiB). */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long length;
+    private final int segmentSize;
+
+    private final AtomicReferenceArray<MappedByteBuffer> segments;
+    private long fp = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a stream over all of <code>file</code>.
+     */
+    public ReadableMappedFileStream(File file) {
+        this(file, 0, -1, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a stream over a region of <code>file</code>.
+     *
+     * @param file        the file to map.
+     * @param start       the offset in the file where the stream starts.
+     * @param length      the length of the stream, or -1 to extend to the end
+     *                    of the file.
+     * @param segmentSize the size of each mapping.
+     */
+    public ReadableMappedFileStream(File file, long start, long length, int segmentSize) {
+        if (start < 0)
+            throw new IllegalArgumentException("'start' must not be negative");
+        if (segmentSize <= 0)
+            throw new IllegalArgumentException("'segmentSize' must be positive");
+
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+            long fileSize = channel.size();
+            if (start > fileSize || (length >= 0 && start + length > fileSize)) {
+                channel.close();
+                throw new IllegalArgumentException("Region (" + start + ", " + length + ") is outside of the " +
+                        "file (size " + fileSize + ").");
+            }
+
+            this.start = start;
+            this.length = length >= 0 ? length : fileSize - start;
+            this.segmentSize = segmentSize;
+            this.segments = new AtomicReferenceArray<>((int) ((this.length + segmentSize - 1) / segmentSize));
+
+            // Map the first segment now, so that we fail here rather than at
+            // the first read if the file can't be mapped.
+            if (segments.length() > 0)
+                getSegment(0);
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    private MappedByteBuffer getSegment(int index) throws IOException {
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null) {
+            synchronized (segments) {
+                segment = segments.get(index);
+                if (segment == null) {
+                    long segmentStart = (long) index * segmentSize;
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, start + segmentStart,
+                            Math.min(segmentSize, length - segmentStart));
+                    segments.set(index, segment);
+                }
+            }
+        }
+
+        return segment;
+    }
+
+    @Override
+    public int readAt(long pos, byte[] data, int off, int len) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative position: " + pos);
+        if (pos >= length)
+            return len == 0 ? 0 : -1;
+
+        int totalBytesToRead = (int) Math.min(len, length - pos);
+        int bytesRead = 0;
+        try {
+            while (bytesRead < totalBytesToRead) {
+                long curPos = pos + bytesRead;
+                int index = (int) (curPos / segmentSize);
+                int offsetInSegment = (int) (curPos % segmentSize);
+
+                MappedByteBuffer segment = getSegment(index);
+                int bytesToRead = Math.min(totalBytesToRead - bytesRead, segment.limit() - offsetInSegment);
+
+                // Absolute bulk get, so that the buffer's position isn't
+                // shared between readers.
+                segment.get(offsetInSegment, data, off + bytesRead, bytesToRead);
+                bytesRead += bytesToRead;
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+
+        return bytesRead;
+    }
+
+    @Override
+    public boolean isTransferable() {
+        return !closed;
+    }
+
+    @Override
+    public long transferTo(long pos, long count, WritableByteChannel target) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative position: " + pos);
+        if (pos >= length)
+            return 0;
+
+        // Straight from the file, so the mapping isn't needed.
+        return ChannelTransferable.transfer(channel, start + pos, Math.min(count, length - pos), target);
+    }
+
+    @Override
+    public synchronized int read(byte[] data, int pos, int len) throws RuntimeIOException {
+        int bytesRead = readAt(fp, data, pos, len);
+        if (bytesRead > 0)
+            fp += bytesRead;
+
+        return bytesRead;
+    }
+
+    @Override
+    public synchronized void seek(long pos) throws RuntimeIOException {
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative seek position: " + pos);
+
+        fp = pos;
+    }
+
+    @Override
+    public long length() throws RuntimeIOException {
+        return length;
+    }
+
+    @Override
+    public synchronized long getFilePointer() throws RuntimeIOException {
+        return fp;
+    }
+
+    @Override
+    public synchronized void close() throws RuntimeIOException {
+        if (closed)
+            return;
+
+        closed = true;
+        // Drop our references so that the mappings can be released at the
+        // next garbage collection.
+        for (int i = 0; i < segments.length(); ++i)
+            segments.set(i, null);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+}
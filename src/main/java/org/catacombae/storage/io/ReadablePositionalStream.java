@@ -0,0 +1,132 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.nio.channels.WritableByteChannel;
+
+import org.catacombae.io.BasicReadableRandomAccessStream;
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * A stream over a region of a {@link PositionalReadable}, with its own file
+ * pointer. Streams created over the same source don't share any state, so
+ * reads from different streams don't wait for each other (unless the source
+ * makes them). The stream is itself a PositionalReadable, so positional reads
+ * pass through it, and so do transfers if the source is
+ * {@link ChannelTransferable}.
+ */
+public class ReadablePositionalStream extends BasicReadableRandomAccessStream
+        implements PositionalReadable, ChannelTransferable {
+
+    private final PositionalReadable source;
+    private final long offset;
+    private final long length;
+    private final Runnable closeAction;
+
+    private long fp = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a stream over <code>length</code> bytes of <code>source</code>,
+     * starting at <code>offset</code>.
+     *
+     * @param source      the data to read.
+     * @param offset      the position in <code>source</code> where the stream
+     *                    starts.
+     * @param length      the length of the stream.
+     * @param closeAction called when the stream is closed, or
+     *                    <code>null</code> if the source doesn't need to be
+     *                    closed with this stream.
+     */
+    public ReadablePositionalStream(PositionalReadable source, long offset, long length, Runnable closeAction) {
+        if (offset < 0)
+            throw new IllegalArgumentException("'offset' must not be negative");
+        if (length < 0)
+            throw new IllegalArgumentException("'length' must not be negative");
+
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.closeAction = closeAction;
+    }
+
+    @Override
+    public int readAt(long pos, byte[] data, int off, int len) throws RuntimeIOException {
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos >= length)
+            return len == 0 ? 0 : -1;
+
+        return source.readAt(offset + pos, data, off, (int) Math.min(len, length - pos));
+    }
+
+    @Override
+    public boolean isTransferable() {
+        return !closed && source instanceof ChannelTransferable c && c.isTransferable();
+    }
+
+    @Override
+    public long transferTo(long pos, long count, WritableByteChannel target) throws RuntimeIOException {
+        if (!(source instanceof ChannelTransferable c))
+            throw new UnsupportedOperationException("The source is not backed by a file.");
+        if (closed)
+            throw new RuntimeIOException("Stream is closed.");
+        if (pos >= length)
+            return 0;
+
+        return c.transferTo(offset + pos, Math.min(count, length - pos), target);
+    }
+
+    @Override
+    public synchronized int read(byte[] data, int pos, int len) throws RuntimeIOException {
+        int bytesRead = readAt(fp, data, pos, len);
+        if (bytesRead > 0)
+            fp += bytesRead;
+
+        return bytesRead;
+    }
+
+    @Override
+    public synchronized void seek(long pos) throws RuntimeIOException {
+        if (pos < 0)
+            throw new IllegalArgumentException("Negative seek position: " + pos);
+
+        fp = pos;
+    }
+
+    @Override
+    public long length() throws RuntimeIOException {
+        return length;
+    }
+
+    @Override
+    public synchronized long getFilePointer() throws RuntimeIOException {
+        return fp;
+    }
+
+    @Override
+    public synchronized void close() throws RuntimeIOException {
+        if (closed)
+            return;
+
+        closed = true;
+        if (closeAction != null)
+            closeAction.run();
+    }
+}
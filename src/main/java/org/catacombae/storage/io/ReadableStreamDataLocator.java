@@ -29,14 +29,24 @@ import org.catacombae.io.ReadableRandomAccessStream;
 public class ReadableStreamDataLocator extends DataLocator {
 
     private final SynchronizedReadableRandomAccessStream backingStream;
+    /**
+     * The source stream if it can be read at a position, in which case the
+     * streams we create read from it directly instead of through
+     * <code>backingStream</code>.
+     */
+    private final PositionalReadable positionalSource;
     private boolean closed = false;
 
     public ReadableStreamDataLocator(ReadableRandomAccessStream sourceStream) {
         this.backingStream = new SynchronizedReadableRandomAccessStream(sourceStream);
+        this.positionalSource = sourceStream instanceof PositionalReadable p ? p : null;
     }
 
     @Override
     public ReadableRandomAccessStream createReadOnlyFile() {
+        if (positionalSource != null)
+            return new ReadablePositionalStream(positionalSource, 0, backingStream.length(), null);
+
         return new ReadableRandomAccessSubstream(backingStream);
     }
 
@@ -42,7 +42,11 @@ public class SubDataLocator extends DataLocator {
 
     @Override
     public ReadableRandomAccessStream createReadOnlyFile() {
-        return new ReadableConcatenatedStream(source.createReadOnlyFile(), offset, length);
+        ReadableRandomAccessStream sourceStream = source.createReadOnlyFile();
+        if (sourceStream instanceof PositionalReadable p)
+            return new ReadablePositionalStream(p, offset, length, sourceStream::close);
+
+        return new ReadableConcatenatedStream(sourceStream, offset, length);
     }
 
     @Override
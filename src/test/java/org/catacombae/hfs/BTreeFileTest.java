@@ -0,0 +1,312 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.catacombae.hfs.types.hfscommon.CommonBTHeaderRecord;
+import org.catacombae.hfs.types.hfscommon.CommonBTNode;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentIndexNode;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentKey;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentLeafNode;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentLeafRecord;
+import org.catacombae.hfs.types.hfscommon.CommonHFSVolumeHeader;
+import org.catacombae.hfs.types.hfsplus.BTHeaderRec;
+import org.catacombae.hfs.types.hfsplus.HFSCatalogNodeID;
+import org.catacombae.hfs.types.hfsplus.HFSPlusExtentKey;
+import org.catacombae.io.ReadableByteArrayStream;
+import org.catacombae.io.ReadableRandomAccessStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests the in-node searches of {@link BTreeFile}, both the binary search
+ * used for well formed nodes and the linear fallback for nodes with keys out
+ * of order.
+ */
+class BTreeFileTest {
+
+    private static final int NODE_SIZE = 4096;
+    private static final int FILE_ID = 16;
+
+    /**
+     * A B-tree file that is used for its search methods, and for cursors over
+     * the nodes in {@link #nodes}.
+     */
+    private static class ExtentsTree extends BTreeFile<CommonHFSExtentKey, CommonHFSExtentLeafRecord> {
+
+        final Map<Long, CommonBTNode<?>> nodes = new HashMap<>();
+        CommonBTHeaderRecord headerRecord;
+
+        ExtentsTree() {
+            super(null);
+        }
+
+        @Override
+        BTreeFileSession createSession() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        BTreeFileSession openSession() {
+            return new BTreeFileSession(headerRecord, new ReadableByteArrayStream(new byte[0])) {
+                @Override
+                protected ReadableRandomAccessStream getBTreeStream(CommonHFSVolumeHeader header) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        CommonBTNode<?> getNode(long nodeNumber, BTreeFileSession ses) {
+            return nodes.get(nodeNumber);
+        }
+
+        @Override
+        protected CommonHFSExtentIndexNode createIndexNode(byte[] nodeData, int offset, int nodeSize) {
+            return CommonHFSExtentIndexNode.createHFSPlus(nodeData, offset, nodeSize);
+        }
+
+        @Override
+        protected CommonHFSExtentLeafNode createLeafNode(byte[] nodeData, int offset, int nodeSize) {
+            return CommonHFSExtentLeafNode.createHFSPlus(nodeData, offset, nodeSize);
+        }
+    }
+
+    private final ExtentsTree tree = new ExtentsTree();
+
+    /**
+     * Builds an HFS+ extents leaf node with one record for each start block
+     * in <code>startBlocks</code>, in the given order.
+     */
+    private static CommonHFSExtentLeafNode createLeafNode(int... startBlocks) {
+        return createLinkedLeafNode(0, 0, startBlocks);
+    }
+
+    /** Like {@link #createLeafNode(int...)}, with links to other leaf nodes. */
+    private static CommonHFSExtentLeafNode createLinkedLeafNode(int forwardLink, int backwardLink, int... startBlocks) {
+        final int recordSize = 12 + 8 * 8; // HFSPlusExtentKey + HFSPlusExtentRecord
+        byte[] data = new byte[NODE_SIZE];
+
+        data[3] = (byte) forwardLink;
+        data[7] = (byte) backwardLink;
+        data[8] = -1; // kind = kBTLeafNode
+        data[9] = 1; // height
+        data[10] = (byte) (startBlocks.length >> 8);
+        data[11] = (byte) startBlocks.length;
+
+        int offset = 14;
+        for (int i = 0; i <= startBlocks.length; ++i) {
+            int offsetPos = NODE_SIZE - (i + 1) * 2;
+            data[offsetPos] = (byte) (offset >> 8);
+            data[offsetPos + 1] = (byte) offset;
+
+            if (i < startBlocks.length) {
+                byte[] key = new HFSPlusExtentKey(HFSPlusExtentKey.DATA_FORK,
+                        new HFSCatalogNodeID(FILE_ID), startBlocks[i]).getBytes();
+                System.arraycopy(key, 0, data, offset, key.length);
+                offset += recordSize;
+            }
+        }
+
+        return CommonHFSExtentLeafNode.createHFSPlus(data, 0, NODE_SIZE);
+    }
+
+    /** Builds a header record for a tree whose root is a leaf node. */
+    private static CommonBTHeaderRecord createHeaderRecord(int rootNode, int firstLeafNode, int lastLeafNode,
+                                                           int totalNodes) {
+        byte[] data = new byte[106];
+        data[0 + 1] = 1; // treeDepth
+        data[2 + 3] = (byte) rootNode;
+        data[10 + 3] = (byte) firstLeafNode;
+        data[14 + 3] = (byte) lastLeafNode;
+        data[18] = (byte) (NODE_SIZE >> 8); // nodeSize
+        data[22 + 3] = (byte) totalNodes;
+        return CommonBTHeaderRecord.create(new BTHeaderRec(data, 0));
+    }
+
+    private static CommonHFSExtentKey key(int fileID, int startBlock) {
+        return CommonHFSExtentKey.create(new HFSPlusExtentKey(HFSPlusExtentKey.DATA_FORK,
+                new HFSCatalogNodeID(fileID), startBlock));
+    }
+
+    /** Reference implementation of findLEKey. */
+    private static CommonHFSExtentLeafRecord expectedLE(CommonHFSExtentLeafNode node, CommonHFSExtentKey searchKey) {
+        CommonHFSExtentLeafRecord result = null;
+        for (CommonHFSExtentLeafRecord rec : node.getBTKeyedRecords()) {
+            if (rec.getKey().compareTo(searchKey) <= 0 &&
+                    (result == null || rec.getKey().compareTo(result.getKey()) > 0)) {
+                result = rec;
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> startBlocks(List<CommonHFSExtentLeafRecord> records) {
+        List<Long> result = new ArrayList<>();
+        for (CommonHFSExtentLeafRecord rec : records) {
+            result.add(rec.getKey().getStartBlock());
+        }
+        return result;
+    }
+
+    @Test
+    void testFindLEKeyOrdered() throws Exception {
+        CommonHFSExtentLeafNode node = createLeafNode(0, 10, 20, 30, 40, 50, 60, 70, 80, 90);
+
+        for (int startBlock = 0; startBlock < 100; ++startBlock) {
+            CommonHFSExtentKey searchKey = key(FILE_ID, startBlock);
+            assertSame(expectedLE(node, searchKey), tree.findLEKey(node, searchKey));
+        }
+        assertFalse(node.hasUnorderedKeys());
+
+        assertEquals(20, tree.findLEKey(node, key(FILE_ID, 25)).getKey().getStartBlock());
+        assertEquals(90, tree.findLEKey(node, key(FILE_ID + 1, 0)).getKey().getStartBlock());
+        assertNull(tree.findLEKey(node, key(FILE_ID - 1, 0)));
+    }
+
+    @Test
+    void testFindLEKeyUnordered() throws Exception {
+        CommonHFSExtentLeafNode node = createLeafNode(0, 50, 10, 40, 20, 90, 30, 80, 60, 70);
+
+        // The first search finds the keys out of order.
+        CommonHFSExtentKey firstKey = key(FILE_ID, 25);
+        assertSame(expectedLE(node, firstKey), tree.findLEKey(node, firstKey));
+        assertTrue(node.hasUnorderedKeys());
+
+        for (int startBlock = 0; startBlock < 100; ++startBlock) {
+            CommonHFSExtentKey searchKey = key(FILE_ID, startBlock);
+            assertSame(expectedLE(node, searchKey), tree.findLEKey(node, searchKey));
+        }
+
+        assertNull(tree.findLEKey(node, key(FILE_ID - 1, 0)));
+    }
+
+    @Test
+    void testFindEqualKey() throws Exception {
+        CommonHFSExtentLeafNode ordered = createLeafNode(0, 10, 20, 30, 40);
+        CommonHFSExtentLeafNode unordered = createLeafNode(40, 0, 30, 10, 20);
+
+        for (CommonHFSExtentLeafNode node : List.of(ordered, unordered)) {
+            for (int startBlock = 0; startBlock <= 50; ++startBlock) {
+                CommonHFSExtentLeafRecord rec = tree.findEqualKey(node, key(FILE_ID, startBlock));
+                if (startBlock % 10 == 0 && startBlock <= 40) {
+                    assertEquals(startBlock, rec.getKey().getStartBlock());
+                } else {
+                    assertNull(rec);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFindLEKeys() throws Exception {
+        CommonHFSExtentLeafNode ordered = createLeafNode(0, 10, 20, 30, 40, 50);
+        CommonHFSExtentLeafNode unordered = createLeafNode(30, 0, 50, 10, 40, 20);
+
+        for (CommonHFSExtentLeafNode node : List.of(ordered, unordered)) {
+            // Matches in range, not strict: the record before the first match is included.
+            LinkedList<CommonHFSExtentLeafRecord> result = new LinkedList<>();
+            assertTrue(tree.findLEKeys(node, key(FILE_ID, 20), key(FILE_ID, 50), false, result));
+            assertEquals(List.of(10L, 20L, 30L, 40L), sorted(startBlocks(result)));
+
+            // Matches in range, strict.
+            result.clear();
+            assertTrue(tree.findLEKeys(node, key(FILE_ID, 20), key(FILE_ID, 50), true, result));
+            assertEquals(List.of(20L, 30L, 40L), sorted(startBlocks(result)));
+
+            // No matches: only the largest smaller record is returned.
+            result.clear();
+            assertFalse(tree.findLEKeys(node, key(FILE_ID, 21), key(FILE_ID, 30), true, result));
+            assertEquals(List.of(20L), startBlocks(result));
+
+            // Nothing smaller and nothing in range.
+            result.clear();
+            assertFalse(tree.findLEKeys(node, key(FILE_ID - 1, 0), key(FILE_ID - 1, 10), false, result));
+            assertTrue(result.isEmpty());
+
+            // Records already in the list are left in front of the new ones.
+            result.clear();
+            result.add(null);
+            assertFalse(tree.findLEKeys(node, key(FILE_ID, 21), key(FILE_ID, 30), true, result));
+            assertNull(result.getFirst());
+            assertEquals(20L, result.getLast().getKey().getStartBlock());
+        }
+
+        assertFalse(ordered.hasUnorderedKeys());
+        assertTrue(unordered.hasUnorderedKeys());
+    }
+
+    @Test
+    void testCursorLinkCycle() {
+        // Two leaf nodes whose forward and backward links point at each other.
+        tree.headerRecord = createHeaderRecord(1, 1, 2, 3);
+        tree.nodes.put(1L, createLinkedLeafNode(2, 2, 0, 10));
+        tree.nodes.put(2L, createLinkedLeafNode(1, 1, 20, 30));
+
+        try (BTreeCursor<CommonHFSExtentKey, CommonHFSExtentLeafRecord> cursor = tree.openCursor()) {
+            for (int startBlock = 0; startBlock <= 30; startBlock += 10)
+                assertEquals(startBlock, cursor.next().getKey().getStartBlock());
+            assertThrows(RuntimeException.class, cursor::next);
+        }
+
+        try (BTreeCursor<CommonHFSExtentKey, CommonHFSExtentLeafRecord> cursor = tree.openCursor()) {
+            cursor.seekLast();
+            for (int startBlock = 30; startBlock >= 0; startBlock -= 10)
+                assertEquals(startBlock, cursor.prev().getKey().getStartBlock());
+            assertThrows(RuntimeException.class, cursor::prev);
+        }
+
+        // A range scan past the end of the cycle must not keep going.
+        List<CommonHFSExtentLeafRecord> result = new ArrayList<>();
+        assertThrows(RuntimeException.class, () -> tree.listRecords(key(FILE_ID, 0), key(FILE_ID + 1, 0), result));
+        assertEquals(List.of(0L, 10L, 20L, 30L), startBlocks(result));
+    }
+
+    @Test
+    void testCursorEmptyLeafCycle() {
+        // A leaf node followed by two empty leaf nodes linked to each other.
+        tree.headerRecord = createHeaderRecord(1, 1, 3, 4);
+        tree.nodes.put(1L, createLinkedLeafNode(2, 0, 0, 10));
+        tree.nodes.put(2L, createLinkedLeafNode(3, 1));
+        tree.nodes.put(3L, createLinkedLeafNode(2, 2));
+
+        try (BTreeCursor<CommonHFSExtentKey, CommonHFSExtentLeafRecord> cursor = tree.openCursor()) {
+            assertEquals(0, cursor.next().getKey().getStartBlock());
+            assertEquals(10, cursor.next().getKey().getStartBlock());
+            assertThrows(RuntimeException.class, cursor::next);
+        }
+    }
+
+    private static List<Long> sorted(List<Long> list) {
+        List<Long> result = new ArrayList<>(list);
+        result.sort(null);
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Tests that {@link VolumeHeaderStamp} notices changes to the volume header.
+ */
+class VolumeHeaderStampTest {
+
+    private static final long MILLIS = 1000000;
+
+    /** The stamp "on disk". */
+    private final AtomicLong diskStamp = new AtomicLong(1);
+    private final AtomicInteger readCount = new AtomicInteger();
+    private final AtomicInteger changeCount = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1);
+
+    private final VolumeHeaderStamp stamp = new VolumeHeaderStamp(() -> {
+        readCount.incrementAndGet();
+        return diskStamp.get();
+    }, now::get, changeCount::incrementAndGet);
+
+    @Test
+    void testCachedWithinInterval() {
+        stamp.setRecheckInterval(100);
+
+        assertEquals(1, stamp.get());
+        diskStamp.set(2);
+        now.addAndGet(99 * MILLIS);
+        assertEquals(1, stamp.get());
+        assertEquals(1, readCount.get());
+        assertEquals(0, changeCount.get());
+    }
+
+    @Test
+    void testChangeNoticedAfterInterval() {
+        stamp.setRecheckInterval(100);
+
+        assertEquals(1, stamp.get());
+        diskStamp.set(2);
+        now.addAndGet(100 * MILLIS);
+        assertEquals(2, stamp.get());
+        assertEquals(2, readCount.get());
+        assertEquals(1, changeCount.get());
+
+        // Reading the same stamp again is not a change.
+        now.addAndGet(100 * MILLIS);
+        assertEquals(2, stamp.get());
+        assertEquals(1, changeCount.get());
+    }
+
+    @Test
+    void testInvalidate() {
+        stamp.setRecheckInterval(100);
+
+        assertEquals(1, stamp.get());
+        diskStamp.set(2);
+        stamp.invalidate();
+        assertEquals(2, stamp.get());
+        assertEquals(1, changeCount.get());
+    }
+
+    @Test
+    void testZeroInterval() {
+        stamp.setRecheckInterval(0);
+
+        assertEquals(1, stamp.get());
+        assertEquals(1, stamp.get());
+        diskStamp.set(2);
+        assertEquals(2, stamp.get());
+        assertEquals(3, readCount.get());
+        assertEquals(1, changeCount.get());
+    }
+}
@@ -0,0 +1,196 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.catacombae.storage.io.PositionalReadable;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests {@link ConcurrentBlockCache}.
+ */
+class ConcurrentBlockCacheTest {
+
+    static final int BLOCK_SIZE = 4096;
+
+    /** A source over a byte array that counts the reads made from it. */
+    static class CountingSource implements PositionalReadable {
+
+        final byte[] data;
+        final AtomicLong readCount = new AtomicLong();
+        /** A delay for each read, to simulate a slow source. */
+        long readDelayMillis = 0;
+
+        CountingSource(int length, long seed) {
+            data = new byte[length];
+            new Random(seed).nextBytes(data);
+        }
+
+        @Override
+        public int readAt(long pos, byte[] buffer, int off, int len) {
+            readCount.incrementAndGet();
+            if (readDelayMillis > 0) {
+                try {
+                    Thread.sleep(readDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (pos >= data.length)
+                return -1;
+
+            int bytesToCopy = (int) Math.min(len, data.length - pos);
+            System.arraycopy(data, (int) pos, buffer, off, bytesToCopy);
+            return bytesToCopy;
+        }
+    }
+
+    @Test
+    void testRandomReads() {
+        // A length that ends in the middle of the last block.
+        CountingSource source = new CountingSource(100 * BLOCK_SIZE + 123, 1);
+        ConcurrentBlockCache cache = new ConcurrentBlockCache(source, source.data.length, BLOCK_SIZE, 16);
+        Random random = new Random(2);
+
+        for (int i = 0; i < 5000; ++i) {
+            int position = random.nextInt(source.data.length);
+            int length = Math.min(1 + random.nextInt(3 * BLOCK_SIZE), source.data.length - position);
+
+            byte[] actual = new byte[length];
+            cache.readFullyAt(position, actual, 0, length);
+
+            assertArrayEquals(Arrays.copyOfRange(source.data, position, position + length), actual,
+                    "read of " + length + " bytes at " + position);
+        }
+
+        assertEquals(-1, cache.readAt(source.data.length, new byte[1], 0, 1));
+        assertTrue(cache.getBlockCount() <= cache.getCapacity());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    void testHotBlocksSurviveScan() {
+        CountingSource source = new CountingSource(2000 * BLOCK_SIZE, 3);
+        ConcurrentBlockCache cache = new ConcurrentBlockCache(source, source.data.length, BLOCK_SIZE, 64);
+        byte[] buffer = new byte[BLOCK_SIZE];
+
+        // A hot set of 8 blocks, read a number of times...
+        for (int round = 0; round < 10; ++round) {
+            for (int block = 0; block < 8; ++block)
+                cache.readFullyAt((long) block * BLOCK_SIZE, buffer, 0, BLOCK_SIZE);
+        }
+
+        // ...then a scan over 20 times the cache size.
+        for (int block = 100; block < 100 + 20 * 64; ++block)
+            cache.readFullyAt((long) block * BLOCK_SIZE, buffer, 0, BLOCK_SIZE);
+
+        long readsBefore = source.readCount.get();
+        for (int block = 0; block < 8; ++block)
+            cache.readFullyAt((long) block * BLOCK_SIZE, buffer, 0, BLOCK_SIZE);
+
+        assertEquals(readsBefore, source.readCount.get(), "hot blocks were evicted by the scan");
+        assertTrue(cache.getBlockCount() <= cache.getCapacity());
+    }
+
+    @Test
+    void testConcurrentReads() throws Exception {
+        CountingSource source = new CountingSource(500 * BLOCK_SIZE, 4);
+        ConcurrentBlockCache cache = new ConcurrentBlockCache(source, source.data.length, BLOCK_SIZE, 64);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                Random random = new Random(5 + t);
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; ++i) {
+                        // Mostly a small hot region, sometimes anywhere.
+                        int range = random.nextInt(4) == 0 ? source.data.length : 32 * BLOCK_SIZE;
+                        int position = random.nextInt(range);
+                        int length = Math.min(1 + random.nextInt(2 * BLOCK_SIZE), source.data.length - position);
+
+                        byte[] actual = new byte[length];
+                        cache.readFullyAt(position, actual, 0, length);
+
+                        assertArrayEquals(Arrays.copyOfRange(source.data, position, position + length), actual,
+                                "read of " + length + " bytes at " + position);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.getHitCount() > cache.getMissCount());
+        assertTrue(cache.getBlockCount() <= cache.getCapacity());
+    }
+
+    @Test
+    void testConcurrentMissesAreCoalesced() throws Exception {
+        CountingSource source = new CountingSource(16 * BLOCK_SIZE, 6);
+        source.readDelayMillis = 200;
+        ConcurrentBlockCache cache = new ConcurrentBlockCache(source, source.data.length, BLOCK_SIZE, 16);
+
+        int threads = 8;
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                int position = 3 * BLOCK_SIZE + t * 100;
+                results.add(executor.submit(() -> {
+                    byte[] actual = new byte[100];
+                    barrier.await();
+                    cache.readFullyAt(position, actual, 0, actual.length);
+
+                    assertArrayEquals(Arrays.copyOfRange(source.data, position, position + actual.length), actual);
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        // All threads missed on the same block, but only one of them read it.
+        assertEquals(1, source.readCount.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(threads - 1, cache.getCoalescedCount() + cache.getHitCount());
+        assertTrue(cache.getCoalescedCount() > 0);
+    }
+}
@@ -0,0 +1,127 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import org.catacombae.hfs.io.ForkFilter.ForkType;
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentDescriptor;
+import org.catacombae.hfs.types.hfsplus.HFSPlusExtentDescriptor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+/**
+ * Tests {@link ForkExtentCache}.
+ */
+class ForkExtentCacheTest {
+
+    private static final long FORK_LENGTH = 100 * 4096;
+
+    /**
+     * Creates a basic extent record of 8 extents, where the first one starts
+     * at <code>startBlock</code> and the rest are empty.
+     */
+    private static CommonHFSExtentDescriptor[] basicExtents(int startBlock) {
+        CommonHFSExtentDescriptor[] extents = new CommonHFSExtentDescriptor[8];
+        extents[0] = CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(startBlock, 50));
+        for (int i = 1; i < extents.length; ++i)
+            extents[i] = CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(0, 0));
+        return extents;
+    }
+
+    private static ForkExtentCache.Entry entry(CommonHFSExtentDescriptor[] basicExtents, int overflowExtentCount) {
+        CommonHFSExtentDescriptor[] overflowExtents = new CommonHFSExtentDescriptor[overflowExtentCount];
+        for (int i = 0; i < overflowExtentCount; ++i)
+            overflowExtents[i] = CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(1000 + i, 1));
+        return new ForkExtentCache.Entry(FORK_LENGTH, basicExtents, overflowExtents, true);
+    }
+
+    @Test
+    void testHit() {
+        ForkExtentCache cache = new ForkExtentCache(ForkExtentCache.DEFAULT_BUDGET);
+        ForkExtentCache.Entry e = entry(basicExtents(10), 2);
+        cache.put(16, ForkType.DATA, e);
+
+        // The fork's extents are read again for every lookup, so they are
+        // compared by value.
+        assertSame(e, cache.get(16, ForkType.DATA, FORK_LENGTH, basicExtents(10)));
+        assertNull(cache.get(16, ForkType.RESOURCE, FORK_LENGTH, basicExtents(10)));
+        assertNull(cache.get(17, ForkType.DATA, FORK_LENGTH, basicExtents(10)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void testEvictionUnderBudget() {
+        // Forks without overflow extents are charged too, so three of them
+        // fill the budget.
+        int entryCost = ForkExtentCache.ENTRY_COST + 8;
+        ForkExtentCache cache = new ForkExtentCache(3 * entryCost);
+
+        cache.put(16, ForkType.DATA, entry(basicExtents(10), 0));
+        cache.put(17, ForkType.DATA, entry(basicExtents(20), 0));
+        cache.put(18, ForkType.DATA, entry(basicExtents(30), 0));
+        assertEquals(3 * entryCost, cache.getUsedBudget());
+
+        // Use the first fork, so that the second one is the least recently
+        // used when the fourth is added.
+        cache.get(16, ForkType.DATA, FORK_LENGTH, basicExtents(10));
+        cache.put(19, ForkType.DATA, entry(basicExtents(40), 0));
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3 * entryCost, cache.getUsedBudget());
+        assertNull(cache.get(17, ForkType.DATA, FORK_LENGTH, basicExtents(20)));
+
+        // A fork with overflow extents is charged for them.
+        cache.put(20, ForkType.DATA, entry(basicExtents(50), entryCost));
+        assertEquals(2, cache.size());
+        assertEquals(3 * entryCost, cache.getUsedBudget());
+
+        // A fork that can never fit isn't cached.
+        cache.put(21, ForkType.DATA, entry(basicExtents(60), 3 * entryCost));
+        assertNull(cache.get(21, ForkType.DATA, FORK_LENGTH, basicExtents(60)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testInvalidatedByLengthChange() {
+        ForkExtentCache cache = new ForkExtentCache(ForkExtentCache.DEFAULT_BUDGET);
+        cache.put(16, ForkType.DATA, entry(basicExtents(10), 2));
+
+        assertNull(cache.get(16, ForkType.DATA, FORK_LENGTH + 1, basicExtents(10)));
+
+        // The entry is gone, not just skipped.
+        assertNull(cache.get(16, ForkType.DATA, FORK_LENGTH, basicExtents(10)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getUsedBudget());
+    }
+
+    @Test
+    void testInvalidatedByBasicExtentsChange() {
+        ForkExtentCache cache = new ForkExtentCache(ForkExtentCache.DEFAULT_BUDGET);
+        cache.put(16, ForkType.DATA, entry(basicExtents(10), 2));
+
+        assertNull(cache.get(16, ForkType.DATA, FORK_LENGTH, basicExtents(11)));
+        assertNull(cache.get(16, ForkType.DATA, FORK_LENGTH, basicExtents(10)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getUsedBudget());
+    }
+}
@@ -0,0 +1,67 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.util.Random;
+
+
+/**
+ * Times small random and sequential reads through {@link ForkFilter} on a
+ * synthetic fork of 10000 extents. Run it with
+ * <code>java org.catacombae.hfs.io.ForkFilterBenchmark [extentCount]</code>
+ * from the test classpath.
+ */
+public class ForkFilterBenchmark {
+
+    private static final int READ_SIZE = 512;
+    private static final int RANDOM_READS = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int extentCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        ForkFilterTest.SyntheticFork fork = new ForkFilterTest.SyntheticFork(extentCount, 1);
+        System.out.println("Fork: " + extentCount + " extents, " + fork.expected.length + " bytes.");
+
+        byte[] buffer = new byte[READ_SIZE];
+        for (int round = 1; round <= ROUNDS; ++round) {
+            ForkFilter filter = fork.open();
+            Random random = new Random(round);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < RANDOM_READS; ++i) {
+                filter.seek(random.nextInt(fork.expected.length - READ_SIZE));
+                filter.readFully(buffer);
+            }
+            long randomNanos = System.nanoTime() - start;
+
+            filter.seek(0);
+            long bytesRead = 0;
+            start = System.nanoTime();
+            int curBytesRead;
+            while ((curBytesRead = filter.read(buffer)) > 0) {
+                bytesRead += curBytesRead;
+            }
+            long sequentialNanos = System.nanoTime() - start;
+
+            System.out.printf("Round %d: random %.0f ns/read, sequential %.0f ns/read (%d bytes)%n",
+                    round, (double) randomNanos / RANDOM_READS,
+                    (double) sequentialNanos / (bytesRead / READ_SIZE), bytesRead);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.catacombae.hfs.types.hfscommon.CommonHFSExtentDescriptor;
+import org.catacombae.hfs.types.hfsplus.HFSPlusExtentDescriptor;
+import org.catacombae.io.ReadableByteArrayStream;
+import org.catacombae.storage.io.PositionalReadable;
+import org.catacombae.storage.io.ReadablePositionalStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests the translation from logical to physical positions in
+ * {@link ForkFilter} on a synthetic, heavily fragmented fork.
+ */
+class ForkFilterTest {
+
+    static final int BLOCK_SIZE = 512;
+
+    /** Returns the number of bytes allocated by the current thread so far. */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getCurrentThreadAllocatedBytes();
+    }
+
+    /** A volume over the data of <code>fork</code> that can be read at any position. */
+    static PositionalReadable positionalVolume(SyntheticFork fork) {
+        return (pos, data, off, len) -> {
+            if (pos >= fork.volume.length)
+                return -1;
+            int bytesToCopy = (int) Math.min(len, fork.volume.length - pos);
+            System.arraycopy(fork.volume, (int) pos, data, off, bytesToCopy);
+            return bytesToCopy;
+        };
+    }
+
+    /**
+     * A fork with its extents scattered over a synthetic volume, and the
+     * data that the fork should read as.
+     */
+    static class SyntheticFork {
+
+        final byte[] volume;
+        final CommonHFSExtentDescriptor[] extents;
+        final byte[] expected;
+
+        /**
+         * Creates a fork of <code>extentCount</code> extents of 1 to 4 blocks
+         * each, in random physical order, with a logical length that ends in
+         * the middle of the last block.
+         */
+        SyntheticFork(int extentCount, long seed) {
+            Random random = new Random(seed);
+
+            int[] blockCounts = new int[extentCount];
+            int totalBlocks = 0;
+            for (int i = 0; i < extentCount; ++i) {
+                blockCounts[i] = 1 + random.nextInt(4);
+                totalBlocks += blockCounts[i];
+            }
+
+            // Place the extents in the volume in shuffled order.
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < extentCount; ++i)
+                order.add(i);
+            Collections.shuffle(order, random);
+
+            int[] startBlocks = new int[extentCount];
+            int nextBlock = 0;
+            for (int i : order) {
+                startBlocks[i] = nextBlock;
+                nextBlock += blockCounts[i];
+            }
+
+            volume = new byte[totalBlocks * BLOCK_SIZE];
+            random.nextBytes(volume);
+
+            extents = new CommonHFSExtentDescriptor[extentCount];
+            expected = new byte[totalBlocks * BLOCK_SIZE - BLOCK_SIZE / 2];
+            int logicalOffset = 0;
+            for (int i = 0; i < extentCount; ++i) {
+                extents[i] = CommonHFSExtentDescriptor.create(
+                        new HFSPlusExtentDescriptor(startBlocks[i], blockCounts[i]));
+
+                int length = Math.min(blockCounts[i] * BLOCK_SIZE, expected.length - logicalOffset);
+                System.arraycopy(volume, startBlocks[i] * BLOCK_SIZE, expected, logicalOffset, length);
+                logicalOffset += length;
+            }
+        }
+
+        ForkFilter open() {
+            return new ForkFilter(expected.length, extents, new ReadableByteArrayStream(volume), 0, BLOCK_SIZE, 0);
+        }
+    }
+
+    @Test
+    void testSequentialRead() {
+        SyntheticFork fork = new SyntheticFork(1000, 1);
+        ForkFilter filter = fork.open();
+
+        byte[] actual = new byte[fork.expected.length];
+        int offset = 0;
+        while (offset < actual.length) {
+            // Odd read sizes, so that reads start and end inside extents.
+            int bytesRead = filter.read(actual, offset, Math.min(1000, actual.length - offset));
+            offset += bytesRead;
+        }
+
+        assertArrayEquals(fork.expected, actual);
+        assertEquals(-1, filter.read(new byte[1], 0, 1));
+    }
+
+    @Test
+    void testRandomReads() {
+        SyntheticFork fork = new SyntheticFork(1000, 2);
+        ForkFilter filter = fork.open();
+        Random random = new Random(3);
+
+        for (int i = 0; i < 2000; ++i) {
+            int position = random.nextInt(fork.expected.length);
+            int length = Math.min(1 + random.nextInt(4 * BLOCK_SIZE), fork.expected.length - position);
+
+            byte[] actual = new byte[length];
+            filter.seek(position);
+            filter.readFully(actual);
+
+            assertArrayEquals(Arrays.copyOfRange(fork.expected, position, position + length), actual,
+                    "read of " + length + " bytes at " + position);
+            assertEquals(position + length, filter.getFilePointer());
+        }
+    }
+
+    @Test
+    void testEmptyExtentsAreSkipped() {
+        byte[] volume = new byte[4 * BLOCK_SIZE];
+        for (int i = 0; i < volume.length; ++i)
+            volume[i] = (byte) (i / BLOCK_SIZE);
+
+        // Logical blocks 0, 1, 2 are physical blocks 3, 1, 2, with empty
+        // extents in between as in a basic extent record.
+        CommonHFSExtentDescriptor[] extents = {
+                CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(3, 1)),
+                CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(0, 0)),
+                CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(1, 2)),
+                CommonHFSExtentDescriptor.create(new HFSPlusExtentDescriptor(0, 0)),
+        };
+        ForkFilter filter = new ForkFilter(3 * BLOCK_SIZE, extents, new ReadableByteArrayStream(volume), 0,
+                BLOCK_SIZE, 0);
+
+        filter.seek(BLOCK_SIZE - 1);
+        byte[] actual = new byte[2 * BLOCK_SIZE + 1];
+        filter.readFully(actual);
+
+        assertEquals(3, actual[0]);
+        assertEquals(1, actual[1]);
+        assertEquals(2, actual[actual.length - 1]);
+    }
+
+    @Test
+    void testConcurrentPositionalReads() throws Exception {
+        SyntheticFork fork = new SyntheticFork(1000, 4);
+        PositionalReadable volume = positionalVolume(fork);
+        ForkFilter filter = new ForkFilter(fork.expected.length, fork.extents,
+                new ReadablePositionalStream(volume, 0, fork.volume.length, null), 0, BLOCK_SIZE, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                Random random = new Random(5 + t);
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; ++i) {
+                        int position = random.nextInt(fork.expected.length);
+                        int length = Math.min(1 + random.nextInt(4 * BLOCK_SIZE), fork.expected.length - position);
+
+                        byte[] actual = new byte[length];
+                        filter.readFullyAt(position, actual, 0, length);
+
+                        assertArrayEquals(Arrays.copyOfRange(fork.expected, position, position + length), actual,
+                                "read of " + length + " bytes at " + position);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        // Positional reads leave the stream's file pointer alone.
+        assertEquals(0, filter.getFilePointer());
+    }
+
+    @Test
+    void testSingleByteReadsDoNotAllocate() {
+        SyntheticFork fork = new SyntheticFork(100, 6);
+        ForkFilter filter = new ForkFilter(fork.expected.length, fork.extents,
+                new ReadablePositionalStream(positionalVolume(fork), 0, fork.volume.length, null), 0, BLOCK_SIZE, 0);
+
+        // Warm up, then measure a pass over the whole fork.
+        for (int pass = 0; pass < 3; ++pass) {
+            filter.seek(0);
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < fork.expected.length; ++i) {
+                int b = filter.read();
+                if (b != (fork.expected[i] & 0xFF))
+                    assertEquals(fork.expected[i] & 0xFF, b, "byte " + i);
+            }
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            assertEquals(-1, filter.read());
+            if (pass == 2)
+                assertTrue(allocated < fork.expected.length / 16, allocated + " bytes allocated");
+        }
+    }
+}
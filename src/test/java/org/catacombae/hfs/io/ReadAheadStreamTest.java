@@ -0,0 +1,113 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfs.io;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.catacombae.hfs.io.ForkFilterTest.SyntheticFork;
+import org.junit.jupiter.api.Test;
+
+import static org.catacombae.hfs.io.ForkFilterTest.BLOCK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests {@link ReadAheadStream} over a fragmented {@link ForkFilter}.
+ */
+class ReadAheadStreamTest {
+
+    private static ReadAheadStream open(SyntheticFork fork, ReadAheadStream.Statistics statistics) {
+        return new ReadAheadStream(fork.open(), 4 * BLOCK_SIZE, 32 * BLOCK_SIZE, 64 * BLOCK_SIZE, null,
+                statistics);
+    }
+
+    @Test
+    void testSequentialRead() {
+        SyntheticFork fork = new SyntheticFork(2000, 1);
+        ReadAheadStream.Statistics statistics = new ReadAheadStream.Statistics();
+        ReadAheadStream stream = open(fork, statistics);
+
+        byte[] actual = new byte[fork.expected.length];
+        int offset = 0;
+        while (offset < actual.length) {
+            int bytesRead = stream.read(actual, offset, Math.min(1000, actual.length - offset));
+            offset += bytesRead;
+        }
+
+        assertArrayEquals(fork.expected, actual);
+        assertEquals(-1, stream.read(new byte[1], 0, 1));
+        stream.close();
+
+        // All but the first two reads should have been served from windows.
+        assertEquals(2 * 1000, statistics.getMissBytes());
+        assertEquals(fork.expected.length - 2 * 1000, statistics.getHitBytes());
+    }
+
+    @Test
+    void testSeeksDuringSequentialRead() {
+        SyntheticFork fork = new SyntheticFork(1000, 2);
+        ReadAheadStream.Statistics statistics = new ReadAheadStream.Statistics();
+        ReadAheadStream stream = open(fork, statistics);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 200; ++i) {
+            // Runs of sequential reads from random positions.
+            int position = random.nextInt(fork.expected.length);
+            stream.seek(position);
+            for (int j = 0; j < 20 && position < fork.expected.length; ++j) {
+                int length = Math.min(1 + random.nextInt(2 * BLOCK_SIZE), fork.expected.length - position);
+                byte[] actual = new byte[length];
+                stream.readFully(actual);
+
+                assertArrayEquals(Arrays.copyOfRange(fork.expected, position, position + length), actual,
+                        "read of " + length + " bytes at " + position);
+                position += length;
+                assertEquals(position, stream.getFilePointer());
+            }
+        }
+
+        stream.close();
+        assertTrue(statistics.getHitBytes() > 0);
+    }
+
+    @Test
+    void testReadAt() {
+        SyntheticFork fork = new SyntheticFork(500, 4);
+        ReadAheadStream stream = open(fork, new ReadAheadStream.Statistics());
+        Random random = new Random(5);
+
+        stream.seek(100);
+        for (int i = 0; i < 100; ++i) {
+            int position = random.nextInt(fork.expected.length);
+            int length = Math.min(1 + random.nextInt(4 * BLOCK_SIZE), fork.expected.length - position);
+            byte[] actual = new byte[length];
+            stream.readFullyAt(position, actual, 0, length);
+
+            assertArrayEquals(Arrays.copyOfRange(fork.expected, position, position + length), actual,
+                    "read of " + length + " bytes at " + position);
+        }
+
+        // Positional reads leave the file pointer alone.
+        assertEquals(100, stream.getFilePointer());
+        assertEquals(-1, stream.readAt(fork.expected.length, new byte[1], 0, 1));
+        stream.close();
+    }
+}
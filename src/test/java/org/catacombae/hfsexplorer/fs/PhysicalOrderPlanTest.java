@@ -0,0 +1,46 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.fs;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Tests {@link PhysicalOrderPlan}.
+ */
+class PhysicalOrderPlanTest {
+
+    @Test
+    void testOrder() {
+        PhysicalOrderPlan<String> plan = new PhysicalOrderPlan<>();
+        plan.add(8192, "c");
+        plan.add(-1, "unknown1");
+        plan.add(0, "a");
+        plan.add(4096, "b1");
+        plan.add(-1, "unknown2");
+        plan.add(4096, "b2");
+
+        assertEquals(6, plan.size());
+        assertEquals(List.of("a", "b1", "b2", "c", "unknown1", "unknown2"), plan.drain());
+        assertEquals(0, plan.size());
+    }
+}
@@ -0,0 +1,106 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.catacombae.hfs.ProgressMonitor;
+import org.catacombae.io.OutputStreamWritable;
+import org.catacombae.io.ReadableByteArrayStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests {@link CopyPipeline}.
+ */
+class CopyPipelineTest {
+
+    /** Cancels after a number of bytes. */
+    private static class CancellingMonitor implements ProgressMonitor {
+
+        final long cancelAfter;
+        long progress = 0;
+        volatile boolean cancelled = false;
+
+        CancellingMonitor(long cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void signalCancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean cancelSignaled() {
+            return cancelled;
+        }
+
+        @Override
+        public void confirmCancel() {
+        }
+
+        @Override
+        public void addDataProgress(long dataSize) {
+            progress += dataSize;
+            if (progress >= cancelAfter)
+                cancelled = true;
+        }
+    }
+
+    private static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void testCopy() {
+        // Not a multiple of the buffer size, and then exactly one.
+        for (int length : new int[] {1_000_003, 1000 * 1000}) {
+            byte[] data = randomData(length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CancellingMonitor pm = new CancellingMonitor(Long.MAX_VALUE);
+
+            long bytesCopied = CopyPipeline.copy(new ReadableByteArrayStream(data), new OutputStreamWritable(out),
+                    1000, 3, pm);
+
+            assertEquals(length, bytesCopied);
+            assertEquals(length, pm.progress);
+            assertArrayEquals(data, out.toByteArray());
+        }
+    }
+
+    @Test
+    void testCancel() {
+        byte[] data = randomData(1_000_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CancellingMonitor pm = new CancellingMonitor(100_000);
+
+        long bytesCopied = CopyPipeline.copy(new ReadableByteArrayStream(data), new OutputStreamWritable(out),
+                1000, 3, pm);
+
+        assertTrue(bytesCopied >= 100_000 && bytesCopied < data.length, "copied " + bytesCopied);
+        assertEquals(bytesCopied, out.size());
+    }
+}
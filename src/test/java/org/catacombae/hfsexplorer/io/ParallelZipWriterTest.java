@@ -0,0 +1,133 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.catacombae.io.ReadableByteArrayStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests {@link ParallelZipWriter}.
+ */
+class ParallelZipWriterTest {
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Test
+    void testEntries() throws IOException {
+        // Many chunks of text that compresses, and random data that doesn't.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 20 * CHUNK_SIZE + 123; ++i)
+            sb.append("line ").append(i).append('\n');
+        byte[] text = sb.toString().getBytes();
+        byte[] random = new byte[3 * CHUNK_SIZE];
+        new Random(1).nextBytes(random);
+        Date mtime = new Date(1_700_000_000_000L);
+
+        File target = File.createTempFile("zipwriter", ".zip");
+        try {
+            try (ParallelZipWriter zip = new ParallelZipWriter(openChannel(target), 4, CHUNK_SIZE)) {
+                zip.addDirectory("dir", 0755, mtime);
+                assertEquals(text.length, zip.addFile("dir/text.txt", 0644, mtime, text.length,
+                        new ReadableByteArrayStream(text), false, null));
+                zip.addFile("dir/random.bin", 0600, mtime, random.length, new ReadableByteArrayStream(random), false,
+                        null);
+                zip.addFile("dir/empty", 0644, null, 0, new ReadableByteArrayStream(new byte[0]), false, null);
+                zip.addSymlink("dir/link", 0755, mtime, "text.txt");
+            }
+
+            try (ZipFile zipFile = new ZipFile(target)) {
+                assertEquals(5, zipFile.size());
+                assertTrue(zipFile.getEntry("dir/").isDirectory());
+
+                ZipEntry textEntry = zipFile.getEntry("dir/text.txt");
+                assertEquals(ZipEntry.DEFLATED, textEntry.getMethod());
+                assertTrue(textEntry.getCompressedSize() < text.length / 2);
+                assertEquals(mtime.getTime(), textEntry.getLastModifiedTime().toMillis());
+                try (InputStream in = zipFile.getInputStream(textEntry)) {
+                    assertArrayEquals(text, in.readAllBytes());
+                }
+
+                ZipEntry randomEntry = zipFile.getEntry("dir/random.bin");
+                assertEquals(ZipEntry.STORED, randomEntry.getMethod());
+                try (InputStream in = zipFile.getInputStream(randomEntry)) {
+                    assertArrayEquals(random, in.readAllBytes());
+                }
+
+                try (InputStream in = zipFile.getInputStream(zipFile.getEntry("dir/link"))) {
+                    assertArrayEquals("text.txt".getBytes(), in.readAllBytes());
+                }
+            }
+
+            // The patched local headers must agree with the central directory.
+            try (ZipInputStream in = new ZipInputStream(new FileInputStream(target))) {
+                int count = 0;
+                for (ZipEntry e = in.getNextEntry(); e != null; e = in.getNextEntry()) {
+                    in.readAllBytes();
+                    ++count;
+                }
+                assertEquals(5, count);
+            }
+        } finally {
+            target.delete();
+        }
+    }
+
+    @Test
+    void testManyEntries() throws IOException {
+        // More entries than fit in the end of central directory record.
+        int entryCount = 70000;
+        File target = File.createTempFile("zipwriter", ".zip");
+        try {
+            try (ParallelZipWriter zip = new ParallelZipWriter(openChannel(target), 2, CHUNK_SIZE)) {
+                byte[] data = {1, 2, 3};
+                for (int i = 0; i < entryCount; ++i)
+                    zip.addFile("f" + i, 0644, null, data.length, new ReadableByteArrayStream(data), true, null);
+            }
+
+            try (ZipFile zipFile = new ZipFile(target)) {
+                assertEquals(entryCount, zipFile.size());
+                try (InputStream in = zipFile.getInputStream(zipFile.getEntry("f" + (entryCount - 1)))) {
+                    assertArrayEquals(new byte[] {1, 2, 3}, in.readAllBytes());
+                }
+            }
+        } finally {
+            target.delete();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Tests {@link PaxTarOutputStream}.
+ */
+class PaxTarOutputStreamTest {
+
+    private static String field(byte[] block, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && block[end] != 0)
+            ++end;
+        return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(byte[] block, int offset, int length) {
+        return Long.parseLong(field(block, offset, length).trim(), 8);
+    }
+
+    private static Map<String, String> parseRecords(byte[] data) {
+        Map<String, String> records = new LinkedHashMap<>();
+        int pos = 0;
+        while (pos < data.length) {
+            int space = pos;
+            while (data[space] != ' ')
+                ++space;
+            int length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+            String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.ISO_8859_1);
+            assertEquals('\n', data[pos + length - 1]);
+            int eq = record.indexOf('=');
+            records.put(record.substring(0, eq), record.substring(eq + 1));
+            pos += length;
+        }
+        return records;
+    }
+
+    @Test
+    void testArchive() throws IOException {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'x');
+        byte[] resourceFork = new byte[] {0, 1, '\n', (byte) 0xFF};
+        String longName = "dir/" + "n".repeat(120) + "-\u00e5";
+        Date mtime = new Date(1_700_000_000_000L);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PaxTarOutputStream tar = new PaxTarOutputStream(bytes)) {
+            PaxTarOutputStream.Entry dir = new PaxTarOutputStream.Entry("dir/", PaxTarOutputStream.TYPE_DIRECTORY);
+            dir.setModifyDate(mtime);
+            tar.putEntry(dir);
+
+            PaxTarOutputStream.Entry file = new PaxTarOutputStream.Entry(longName, PaxTarOutputStream.TYPE_FILE);
+            file.setSize(data.length);
+            file.setMode(0100755);
+            file.setUserID(501);
+            file.setModifyDate(mtime);
+            file.addXattr("com.apple.ResourceFork", resourceFork);
+            tar.putEntry(file);
+            tar.write(data, 0, 600);
+            tar.write(data, 600, 400);
+            assertEquals(0, tar.closeEntry());
+        }
+
+        byte[] archive = bytes.toByteArray();
+        assertEquals(0, archive.length % 512);
+
+        // The directory fits in a plain ustar header.
+        byte[] block = Arrays.copyOfRange(archive, 0, 512);
+        assertEquals("dir/", field(block, 0, 100));
+        assertEquals('5', block[156]);
+        assertEquals("ustar", field(block, 257, 6));
+        assertEquals(mtime.getTime() / 1000, octal(block, 136, 12));
+        long checksum = 0;
+        for (int i = 0; i < 512; ++i)
+            checksum += i >= 148 && i < 156 ? ' ' : block[i] & 0xFF;
+        assertEquals(checksum, octal(block, 148, 8));
+
+        // The file needs a pax header for its path and resource fork.
+        block = Arrays.copyOfRange(archive, 512, 1024);
+        assertEquals('x', block[156]);
+        int paxLength = (int) octal(block, 124, 12);
+        Map<String, String> records = parseRecords(Arrays.copyOfRange(archive, 1024, 1024 + paxLength));
+        assertEquals(longName, new String(records.get("path").getBytes(StandardCharsets.ISO_8859_1),
+                StandardCharsets.UTF_8));
+        assertArrayEquals(resourceFork,
+                records.get("SCHILY.xattr.com.apple.ResourceFork").getBytes(StandardCharsets.ISO_8859_1));
+
+        int headerOffset = 1024 + (paxLength + 511) / 512 * 512;
+        block = Arrays.copyOfRange(archive, headerOffset, headerOffset + 512);
+        assertEquals('0', block[156]);
+        assertEquals(0755, octal(block, 100, 8));
+        assertEquals(501, octal(block, 108, 8));
+        assertEquals(data.length, octal(block, 124, 12));
+        assertArrayEquals(data, Arrays.copyOfRange(archive, headerOffset + 512, headerOffset + 512 + data.length));
+
+        // Data padded to a block, then two zero blocks.
+        assertEquals(headerOffset + 512 + 1024 + 1024, archive.length);
+    }
+
+    @Test
+    void testShortEntry() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PaxTarOutputStream tar = new PaxTarOutputStream(bytes)) {
+            PaxTarOutputStream.Entry file = new PaxTarOutputStream.Entry("file", PaxTarOutputStream.TYPE_FILE);
+            file.setSize(100);
+            tar.putEntry(file);
+            tar.write(new byte[40], 0, 40);
+            assertThrows(IOException.class, () -> tar.write(new byte[61], 0, 61));
+            assertEquals(60, tar.closeEntry());
+        }
+
+        assertEquals(512 + 512 + 1024, bytes.size());
+    }
+
+    @Test
+    void testRecordLength() {
+        // "8 a=bcd\n", and "11 a=bcdef\n" where the length gets a second digit.
+        assertEquals(8, PaxTarOutputStream.recordLength(1, 3));
+        assertEquals(11, PaxTarOutputStream.recordLength(1, 5));
+        assertEquals("-1.5", PaxTarOutputStream.formatTime(new Date(-1500)));
+        assertEquals("1000", PaxTarOutputStream.formatTime(new Date(1_000_000)));
+    }
+}
@@ -0,0 +1,84 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.io;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Tests {@link SparseFileOutputStream}.
+ */
+class SparseFileOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @Test
+    void testZeroBlocksAreSkipped() throws Exception {
+        // Data, a run of zeros that covers blocks 2 to 5 and parts of
+        // blocks 1 and 6, more data, and zeros at the end.
+        byte[] expected = new byte[10 * BLOCK_SIZE + 100];
+        Random random = new Random(1);
+        for (int i = 0; i < expected.length; ++i) {
+            boolean zero = (i >= BLOCK_SIZE + 10 && i < 6 * BLOCK_SIZE + 10) || i >= 8 * BLOCK_SIZE;
+            expected[i] = zero ? 0 : (byte) (1 + random.nextInt(255));
+        }
+
+        File target = File.createTempFile("sparse", ".bin");
+        try {
+            SparseFileOutputStream os = new SparseFileOutputStream(target, BLOCK_SIZE);
+            int offset = 0;
+            while (offset < expected.length) {
+                // Odd write sizes, so that writes start and end inside blocks.
+                int length = Math.min(1 + random.nextInt(3 * BLOCK_SIZE), expected.length - offset);
+                os.write(expected, offset, length);
+                offset += length;
+            }
+            os.close();
+
+            assertArrayEquals(expected, Files.readAllBytes(target.toPath()));
+            // Blocks 2-5, and 8-9 plus the partial block at the end.
+            assertEquals(4 * BLOCK_SIZE + 2 * BLOCK_SIZE + 100, os.getSkippedBytes());
+        } finally {
+            target.delete();
+        }
+    }
+
+    @Test
+    void testExistingFileIsTruncated() throws Exception {
+        File target = File.createTempFile("sparse", ".bin");
+        try {
+            Files.write(target.toPath(), new byte[3 * BLOCK_SIZE]);
+
+            SparseFileOutputStream os = new SparseFileOutputStream(target, BLOCK_SIZE);
+            os.write(new byte[] {1, 2, 3});
+            os.close();
+
+            assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(target.toPath()));
+            assertEquals(0, os.getSkippedBytes());
+        } finally {
+            target.delete();
+        }
+    }
+}
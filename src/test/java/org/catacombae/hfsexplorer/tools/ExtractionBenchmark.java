@@ -0,0 +1,120 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.catacombae.io.ReadableFileStream;
+import org.catacombae.io.RuntimeIOException;
+
+
+/**
+ * Compares extraction throughput on one thread and on several.
+ * <p>
+ * Given an image, extracts all of it with {@link UnHFS#unhfs} once per
+ * thread count. An image with many small files can be made on a Mac with
+ * <code>hdiutil create -fs HFS+ -srcfolder &lt;folder&gt; small.dmg</code>.
+ * <p>
+ * Without an image, a generated tree of small files is extracted through
+ * {@link ExtractionQueue}, where reading each file from the image is
+ * simulated with a fixed latency.
+ * <p>
+ * Run it with
+ * <code>java org.catacombae.hfsexplorer.tools.ExtractionBenchmark [image] [threads]</code>
+ * from the test classpath.
+ */
+public class ExtractionBenchmark {
+
+    private static final int FILE_COUNT = 20000;
+    private static final int FILES_PER_DIR = 500;
+    private static final int FILE_SIZE = 4096;
+    /** The simulated time it takes to read the metadata and data of a file. */
+    private static final long READ_LATENCY_NANOS = 200_000;
+
+    public static void main(String[] args) throws IOException {
+        String image = args.length > 0 ? args[0] : null;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+                Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        for (int t : new int[] {1, threads}) {
+            Path outDir = Files.createTempDirectory("extraction-benchmark");
+            try {
+                long start = System.nanoTime();
+                long fileCount = image != null ? extractImage(image, outDir.toFile(), t) :
+                        extractGenerated(outDir.toFile(), t);
+                long nanos = System.nanoTime() - start;
+
+                System.out.printf("%d thread(s): %d files in %.2f s, %.0f files/s%n",
+                        t, fileCount, nanos / 1e9, fileCount / (nanos / 1e9));
+            } finally {
+                try (Stream<Path> paths = Files.walk(outDir)) {
+                    paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+                }
+            }
+        }
+    }
+
+    private static long extractImage(String image, File outDir, int threads) throws IOException {
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        UnHFS.unhfs(out, new ReadableFileStream(image), outDir, "/", null, true, false, -1, false, false, false,
+                threads, false);
+
+        try (Stream<Path> paths = Files.walk(outDir.toPath())) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static long extractGenerated(File outDir, int threads) {
+        byte[] data = new byte[FILE_SIZE];
+        new Random(1).nextBytes(data);
+
+        try (ExtractionQueue queue = new ExtractionQueue(threads, ExtractionQueue.DEFAULT_MAX_IN_FLIGHT)) {
+            File dir = null;
+            for (int i = 0; i < FILE_COUNT; ++i) {
+                if (i % FILES_PER_DIR == 0) {
+                    dir = new File(outDir, "dir" + i / FILES_PER_DIR);
+                    dir.mkdir();
+                }
+
+                File file = new File(dir, "file" + i);
+                queue.submit(FILE_SIZE, report -> {
+                    LockSupport.parkNanos(READ_LATENCY_NANOS);
+                    try (FileOutputStream os = new FileOutputStream(file)) {
+                        os.write(data);
+                    } catch (IOException e) {
+                        throw new RuntimeIOException(e);
+                    }
+                });
+            }
+
+            queue.finish();
+        }
+
+        return FILE_COUNT;
+    }
+}
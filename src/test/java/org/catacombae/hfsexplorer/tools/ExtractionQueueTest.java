@@ -0,0 +1,124 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.hfsexplorer.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests {@link ExtractionQueue}.
+ */
+class ExtractionQueueTest {
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Submits tasks of random duration interleaved with messages from the
+     * submitting thread, and returns the messages in the order they came out.
+     */
+    private static List<String> run(int threads, AtomicLong maxInFlight) {
+        List<String> output = new ArrayList<>();
+        AtomicLong inFlight = new AtomicLong();
+        Random random = new Random(1);
+
+        try (ExtractionQueue queue = new ExtractionQueue(threads, 10 * 1000)) {
+            for (int i = 0; i < 200; ++i) {
+                String name = "file" + i;
+                long bytes = 1000 + random.nextInt(2000);
+                long millis = random.nextInt(3);
+                if (i % 20 == 0)
+                    queue.report(() -> output.add("dir before " + name));
+
+                queue.submit(bytes, report -> {
+                    maxInFlight.accumulateAndGet(inFlight.addAndGet(bytes), Math::max);
+                    sleep(millis);
+                    report.add(() -> output.add(name));
+                    inFlight.addAndGet(-bytes);
+                });
+                if (i % 50 == 0)
+                    queue.runLast(report -> report.add(() -> output.add("last " + name)));
+            }
+
+            queue.finish();
+        }
+
+        return output;
+    }
+
+    @Test
+    void testOutputIsInSubmissionOrder() {
+        AtomicLong maxInFlight = new AtomicLong();
+        List<String> sequential = run(1, new AtomicLong());
+        List<String> parallel = run(8, maxInFlight);
+
+        assertEquals(sequential.size(), parallel.size());
+        // With one thread the final actions run right away, so only compare
+        // everything else.
+        List<String> parallelFiles = new ArrayList<>(parallel);
+        List<String> sequentialFiles = new ArrayList<>(sequential);
+        parallelFiles.removeIf(s -> s.startsWith("last "));
+        sequentialFiles.removeIf(s -> s.startsWith("last "));
+        assertEquals(sequentialFiles, parallelFiles);
+        assertEquals(List.of("last file0", "last file50", "last file100", "last file150"),
+                parallel.subList(parallel.size() - 4, parallel.size()));
+
+        assertTrue(maxInFlight.get() <= 10 * 1000, "in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    void testFailureIsRethrownInOrder() {
+        List<String> output = new ArrayList<>();
+        RuntimeException failure = new RuntimeException("test");
+        RuntimeException thrown = null;
+
+        try (ExtractionQueue queue = new ExtractionQueue(4, Long.MAX_VALUE)) {
+            for (int i = 0; i < 10; ++i) {
+                String name = "file" + i;
+                int index = i;
+                queue.submit(1, report -> {
+                    // Later tasks finish first.
+                    sleep(2 * (10 - index));
+                    report.add(() -> output.add(name));
+                    if (index == 5)
+                        throw failure;
+                });
+            }
+
+            queue.finish();
+        } catch (RuntimeException e) {
+            thrown = e;
+        }
+
+        assertTrue(thrown == failure);
+        assertEquals(List.of("file0", "file1", "file2", "file3", "file4", "file5"), output);
+    }
+}
@@ -0,0 +1,132 @@
+/*-
+ * Copyright (C) 2026 The HFSExplorer contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.catacombae.storage.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests {@link ReadableFileChannelStream}.
+ */
+class ReadableFileChannelStreamTest {
+
+    @Test
+    void testTransferThroughRegions() throws Exception {
+        byte[] data = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+
+        File image = File.createTempFile("image", ".bin");
+        File output = File.createTempFile("output", ".bin");
+        try {
+            Files.write(image.toPath(), data);
+
+            // A region of the file, and a region of that, like a partition
+            // and a volume in it.
+            ReadableFileChannelStream file = new ReadableFileChannelStream(image, 1000, data.length - 1000);
+            ReadablePositionalStream region = new ReadablePositionalStream(file, 24, data.length - 2000, null);
+            assertTrue(region.isTransferable());
+
+            try (FileOutputStream os = new FileOutputStream(output)) {
+                FileChannel target = os.getChannel();
+                assertEquals(300, region.transferTo(5000, 300, target));
+                assertEquals(100, region.transferTo(region.length() - 100, 1000, target));
+                assertEquals(0, region.transferTo(region.length(), 1000, target));
+            }
+
+            byte[] expected = new byte[400];
+            System.arraycopy(data, 1024 + 5000, expected, 0, 300);
+            System.arraycopy(data, data.length - 976 - 100, expected, 300, 100);
+            assertArrayEquals(expected, Files.readAllBytes(output.toPath()));
+
+            region.close();
+            file.close();
+            assertFalse(file.isTransferable());
+        } finally {
+            image.delete();
+            output.delete();
+        }
+    }
+
+    @Test
+    void testReadsMatchFile() throws Exception {
+        byte[] data = new byte[100 * 1000];
+        new Random(2).nextBytes(data);
+
+        File image = File.createTempFile("image", ".bin");
+        try {
+            Files.write(image.toPath(), data);
+
+            ReadableFileChannelStream file = new ReadableFileChannelStream(image, 100, -1);
+            byte[] actual = new byte[5000];
+            assertEquals(actual.length, file.readAt(20000, actual, 0, actual.length));
+            assertArrayEquals(Arrays.copyOfRange(data, 20100, 25100), actual);
+            assertEquals(-1, file.readAt(data.length - 100, actual, 0, 1));
+            file.close();
+        } finally {
+            image.delete();
+        }
+    }
+
+    @Test
+    void testMappedReadsAcrossSegments() throws Exception {
+        byte[] data = new byte[10 * 1000];
+        new Random(3).nextBytes(data);
+
+        File image = File.createTempFile("image", ".bin");
+        try {
+            Files.write(image.toPath(), data);
+
+            // Small segments, so that most reads span a segment boundary.
+            ReadableMappedFileStream file = new ReadableMappedFileStream(image, 100, -1, 1024);
+            assertEquals(data.length - 100, file.length());
+
+            byte[] actual = new byte[200];
+            assertEquals(actual.length, file.readAt(1024 - 100, actual, 0, actual.length));
+            assertArrayEquals(Arrays.copyOfRange(data, 1024, 1224), actual);
+
+            // A read spanning several segments.
+            actual = new byte[3000];
+            assertEquals(actual.length, file.readAt(2000, actual, 0, actual.length));
+            assertArrayEquals(Arrays.copyOfRange(data, 2100, 5100), actual);
+
+            // The last segment is shorter than the others.
+            assertEquals(50, file.readAt(file.length() - 50, actual, 0, actual.length));
+            assertArrayEquals(Arrays.copyOfRange(data, data.length - 50, data.length),
+                    Arrays.copyOf(actual, 50));
+            assertEquals(-1, file.readAt(file.length(), actual, 0, 1));
+
+            assertThrows(IllegalArgumentException.class, () -> file.readAt(-1, new byte[1], 0, 1));
+            file.close();
+        } finally {
+            image.delete();
+        }
+    }
+}